@@ -34,6 +34,7 @@ import android.graphics.BitmapFactory;
 import android.graphics.drawable.GradientDrawable;
 import android.location.Location;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -43,8 +44,8 @@ import android.widget.TextView;
 
 import com.amazon.geo.mapsv2.AmazonMap;
 import com.amazon.geo.mapsv2.model.BitmapDescriptor;
-import com.amazon.geo.mapsv2.model.BitmapDescriptorFactory;
 import com.amazon.geo.mapsv2.model.LatLng;
+import com.amazon.geo.mapsv2.model.LatLngBounds;
 import com.amazon.geo.mapsv2.model.Marker;
 import com.amazon.geo.mapsv2.model.MarkerOptions;
 
@@ -56,19 +57,23 @@ import org.onebusaway.android.io.elements.ObaTripDetails;
 import org.onebusaway.android.io.elements.ObaTripStatus;
 import org.onebusaway.android.io.elements.OccupancyState;
 import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
+import org.onebusaway.android.map.VehicleDeltaTracker;
+import org.onebusaway.android.map.VehicleInterpolator;
 import org.onebusaway.android.ui.TripDetailsActivity;
 import org.onebusaway.android.ui.TripDetailsListFragment;
 import org.onebusaway.android.util.ArrivalInfoUtils;
+import org.onebusaway.android.util.DecodedShape;
 import org.onebusaway.android.util.MathUtils;
+import org.onebusaway.android.util.ShapeCache;
 import org.onebusaway.android.util.UIUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import androidx.collection.LruCache;
 import androidx.core.content.ContextCompat;
 
 /**
@@ -86,6 +91,9 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
 
     private MarkerData mMarkerData;
 
+    // True while the map isn't visible, so vehicles aren't moved between refreshes
+    private boolean mPaused = false;
+
     private final Activity mActivity;
 
     private ObaTripsForRouteResponse mLastResponse;
@@ -116,11 +124,8 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
 
     private static final int DEFAULT_VEHICLE_TYPE = ObaRoute.TYPE_BUS; // fall back on bus
 
-    // Vehicle type (if available) -> icon set
-    private static LruCache<String, Bitmap> mVehicleUncoloredIcons;
-
-    private static LruCache<String, Bitmap> mVehicleColoredIconCache;
-    // Colored versions of vehicle_icons
+    // Uncolored vehicle templates and their colored versions, shared with StopOverlay
+    private static final MarkerIconCache mIconCache = MarkerIconCache.getInstance();
 
     /**
      * If a vehicle moves less than this distance (in meters), it will be animated, otherwise it
@@ -133,10 +138,22 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
      */
     private static final float VEHICLE_MARKER_Z_INDEX = 1;
 
+    /**
+     * Time between frames when moving vehicles along their trips' shapes
+     */
+    private static final long FRAME_PERIOD_MS = 33;
+
+    /**
+     * Time each frame may spend moving markers.  Markers that don't fit are moved in the next
+     * frame, so a route with many vehicles can't hold up the UI thread.
+     */
+    private static final long FRAME_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private static final String PHASE_IN_PROGRESS = "in_progress";
+
     public VehicleOverlay(Activity activity, AmazonMap map) {
         mActivity = activity;
         mMap = map;
-        loadIcons();
         // Set adapter for custom info window that appears when tapping on vehicle markers
         mCustomInfoWindowAdapter = new CustomInfoWindowAdapter(mActivity);
         setupInfoWindow();
@@ -169,6 +186,36 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
         mMarkerData.populate(routeIds, response);
     }
 
+    /**
+     * Called when the camera has moved, to show interpolated vehicles that came into view at
+     * their current estimated positions
+     */
+    public synchronized void onCameraChange() {
+        if (mMarkerData != null) {
+            mMarkerData.moveToEstimates();
+        }
+    }
+
+    /**
+     * Stops moving vehicles along their trip shapes between refreshes, until resume() is called
+     */
+    public synchronized void pause() {
+        mPaused = true;
+        if (mMarkerData != null) {
+            mMarkerData.stopFrames();
+        }
+    }
+
+    /**
+     * Continues moving vehicles along their trip shapes between refreshes, after pause()
+     */
+    public synchronized void resume() {
+        mPaused = false;
+        if (mMarkerData != null) {
+            mMarkerData.startFrames();
+        }
+    }
+
     public synchronized int size() {
         if (mMarkerData != null) {
             return mMarkerData.size();
@@ -190,29 +237,6 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
         }
     }
 
-    /**
-     * Cache the core black template Bitmaps used for vehicle icons
-     */
-    private static final void loadIcons() {
-        /**
-         * Cache for colored versions of the vehicle icons.  Total possible number of entries is
-         * 9 directions * 4 color types (early, ontime, delayed, scheduled) = 36.  In a test,
-         * the RouteMapController used around 15 bitmaps over a 30 min period for 4 vehicles on the
-         * map at 10 sec refresh rate.  This can be more depending on the route configuration (if
-         * the route has lots of curves) and number of vehicles.  To conserve memory, we'll set the
-         * max cache size at 15.
-         */
-        final int MAX_CACHE_SIZE = 15;
-
-        if (mVehicleUncoloredIcons == null) {
-            mVehicleUncoloredIcons = new LruCache<>(MAX_CACHE_SIZE);
-        }
-
-        if (mVehicleColoredIconCache == null) {
-            mVehicleColoredIconCache = new LruCache<>(MAX_CACHE_SIZE);
-        }
-    }
-
     /**
      * Gets the icon, ready to color for the given direction and vehicle type
      *
@@ -228,33 +252,57 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
             vehicleType = DEFAULT_VEHICLE_TYPE;
         }
 
-        String cacheKey = String.format("%d %d", halfWind, vehicleType);
-
-        Bitmap b = mVehicleUncoloredIcons.get(cacheKey);
+        return mIconCache.getBitmap(MarkerIconCache.vehicleTemplateKey(vehicleType, halfWind),
+                TEMPLATE_ICON_FACTORY);
+    }
 
-        if (b == null) {  // cache miss
-            switch (vehicleType) {
-                case ObaRoute.TYPE_BUS:
-                    b = createBusIcon(halfWind);
-                    break;
-                case ObaRoute.TYPE_FERRY:
-                    b = createFerryIcon(halfWind);
-                    break;
-                case ObaRoute.TYPE_TRAM:
-                    b = createTramIcon(halfWind);
-                    break;
-                case ObaRoute.TYPE_SUBWAY:
-                    b = createSubwayIcon(halfWind);
-                    break;
-                case ObaRoute.TYPE_RAIL:
-                    b = createRailIcon(halfWind);
-                    break;
-                // default: not needed, since supported vehicles are checked prior
-            }
-        }
+    /**
+     * Creates the uncolored icon for the vehicle type and direction of a key
+     */
+    private static final MarkerIconCache.IconFactory TEMPLATE_ICON_FACTORY =
+            new MarkerIconCache.IconFactory() {
+                @Override
+                public Bitmap createIcon(int key) {
+                    return createUncoloredIcon(MarkerIconCache.getDirection(key),
+                            MarkerIconCache.getVehicleType(key));
+                }
+            };
 
-        mVehicleUncoloredIcons.put(cacheKey, b);
+    /**
+     * Colors the uncolored icon for the vehicle type and direction of a key with its color
+     */
+    private static final MarkerIconCache.IconFactory COLORED_ICON_FACTORY =
+            new MarkerIconCache.IconFactory() {
+                @Override
+                public Bitmap createIcon(int key) {
+                    return UIUtils.colorBitmap(getIcon(MarkerIconCache.getDirection(key),
+                            MarkerIconCache.getVehicleType(key)), mIconCache.getColor(key));
+                }
+            };
 
+    /**
+     * Creates the uncolored icon for the given direction and a supported vehicle type
+     */
+    private static Bitmap createUncoloredIcon(int halfWind, int vehicleType) {
+        Bitmap b = null;
+        switch (vehicleType) {
+            case ObaRoute.TYPE_BUS:
+                b = createBusIcon(halfWind);
+                break;
+            case ObaRoute.TYPE_FERRY:
+                b = createFerryIcon(halfWind);
+                break;
+            case ObaRoute.TYPE_TRAM:
+                b = createTramIcon(halfWind);
+                break;
+            case ObaRoute.TYPE_SUBWAY:
+                b = createSubwayIcon(halfWind);
+                break;
+            case ObaRoute.TYPE_RAIL:
+                b = createRailIcon(halfWind);
+                break;
+            // default: not needed, since supported vehicles are checked prior
+        }
         return b;
     }
 
@@ -469,71 +517,27 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
     }
 
     /**
-     * Add a Bitmap for a colored vehicle icon to the cache
-     *
-     * @param key    Key for the Bitmap to be added, created by createBitmapCacheKey(halfWind, colorResource)
-     * @param bitmap Bitmap to be added that is a colored version of the core black vehicle icons
-     */
-    private void addBitmapToCache(String key, Bitmap bitmap) {
-        // Only add if its not already in the cache
-        if (getBitmapFromCache(key) == null) {
-            mVehicleColoredIconCache.put(key, bitmap);
-        }
-    }
-
-    /**
-     * Get a Bitmap for a colored vehicle icon from the cache
-     *
-     * @param key Key for the Bitmap, created by createBitmapCacheKey(halfWind, colorResource)
-     * @return Bitmap that is a colored version of the core black vehicle icons corresponding to the given key
-     */
-    private Bitmap getBitmapFromCache(String key) {
-        return mVehicleColoredIconCache.get(key);
-    }
-
-    /**
-     * Creates a key for the vehicle colored icons cache, based on the halfWind (direction) and
-     * colorResource
-     *
-     * @param vehicleType   The type of vehicle based on the GTFS value
-     *
-     * @param halfWind      an index between 0 and numHalfWinds-1 that can be used to retrieve
-     *                      the direction name for that heading (known as "boxing the compass", down to the half-wind
-     *                      level).
-     * @param colorResource the color resource ID for the schedule deviation
-     * @return a String key for this direction and color vehicle bitmap icon
-     */
-    private String createBitmapCacheKey(int vehicleType, int halfWind, int colorResource) {
-        if (!supportedVehicleType(vehicleType)) {
-            vehicleType = DEFAULT_VEHICLE_TYPE;
-        }
-
-        return String.valueOf(vehicleType) + " " + String.valueOf(halfWind) + " " + String.valueOf(colorResource);
-    }
-
-    /**
-     * Get the bitmap, using the cache where possible
+     * Get the shared BitmapDescriptor for a vehicle icon, using the cache where possible
      * @param vehicleType the vehicle type, as defined by the GTFS value
      * @param colorResource color resource ID for schedule deviation
      * @param halfWind the direction pointed for the icon
-     * @return The bitmap representing the vehicle type with the color and direction
+     * @return The descriptor for the icon representing the vehicle type with the color and
+     * direction
      */
-    private Bitmap getBitmap(int vehicleType, int colorResource, int halfWind) {
+    private BitmapDescriptor getBitmapDescriptor(int vehicleType, int colorResource,
+            int halfWind) {
         int color = ContextCompat.getColor(mActivity, colorResource);
 
         // Use tram icon for cablecar
         if (vehicleType == ObaRoute.TYPE_CABLECAR) {
             vehicleType = ObaRoute.TYPE_TRAM;
         }
-
-        String key = createBitmapCacheKey(vehicleType, halfWind, colorResource);
-        Bitmap b = getBitmapFromCache(key);
-        if (b == null) {
-            // Cache miss - create Bitmap and add to cache
-            b = UIUtils.colorBitmap(getIcon(halfWind, vehicleType), color);
-            addBitmapToCache(key, b);
+        if (!supportedVehicleType(vehicleType)) {
+            vehicleType = DEFAULT_VEHICLE_TYPE;
         }
-        return b;
+
+        return mIconCache.getDescriptor(mIconCache.vehicleKey(vehicleType, halfWind, color),
+                COLORED_ICON_FACTORY);
     }
 
     @Override
@@ -602,11 +606,46 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
          */
         private HashMap<String, Marker> mVehicleMarkers;
 
+        /**
+         * What was last drawn for each marker in mVehicleMarkers, so markers are only updated
+         * for vehicles that changed since the last refresh
+         */
+        private VehicleDeltaTracker mDeltaTracker;
+
+        /**
+         * Moves the markers of vehicles whose trip shapes are known along the shapes between
+         * refreshes.  The activeTripIds of those vehicles are in mInterpolated.
+         */
+        private VehicleInterpolator mInterpolator;
+
+        private ArrayList<String> mInterpolated = new ArrayList<>();
+
+        // Index in mInterpolated of the first marker to move in the next frame
+        private int mNextFrameIndex;
+
+        // Server time minus SystemClock.elapsedRealtime(), as of the last response
+        private long mClockOffset;
+
+        private final double[] mPoint = new double[2];
+
+        private final float[] mDistance = new float[1];
+
+        private final Handler mFrameHandler = new Handler();
+
+        private final Runnable mFrame = new Runnable() {
+            @Override
+            public void run() {
+                drawFrame();
+            }
+        };
+
         private static final int INITIAL_HASHMAP_SIZE = 5;
 
         MarkerData() {
             mVehicles = new HashMap<>(INITIAL_HASHMAP_SIZE);
             mVehicleMarkers = new HashMap<>(INITIAL_HASHMAP_SIZE);
+            mDeltaTracker = new VehicleDeltaTracker();
+            mInterpolator = new VehicleInterpolator();
         }
 
         /**
@@ -620,13 +659,11 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
          * @param response response that contains the real-time status info
          */
         synchronized void populate(HashSet<String> routeIds, ObaTripsForRouteResponse response) {
-            int added = 0;
-            int updated = 0;
             ObaTripDetails[] trips = response.getTrips();
-
-            // Keep track of the activeTripIds that should be shown on the map, so we don't need
-            // to iterate again later for this same info
-            HashSet<String> activeTripIds = new HashSet<>();
+            mDeltaTracker.beginRefresh();
+            mClockOffset = response.getCurrentTime() - SystemClock.elapsedRealtime();
+            long now = response.getCurrentTime();
+            ArrayList<String> interpolated = new ArrayList<>();
 
             // Add or move markers for vehicles included in response
             for (ObaTripDetails trip : trips) {
@@ -647,52 +684,180 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
                             isRealtime = false;
                         }
 
+                        int colorResource = getVehicleColor(isRealtime, status);
+                        int halfWind = getVehicleHalfWind(status);
+                        int delta = mDeltaTracker.update(status.getActiveTripId(),
+                                l.getLatitude(), l.getLongitude(), halfWind, isRealtime,
+                                colorResource);
                         Marker m = mVehicleMarkers.get(status.getActiveTripId());
+                        boolean isInterpolated = updateInterpolator(status, response, now);
 
                         if (m == null) {
                             // New activeTripId
-                            addMarkerToMap(l, isRealtime, status, response);
-                            added++;
+                            addMarkerToMap(l, status, getVehicleIcon(status, response,
+                                    colorResource, halfWind));
+                        } else if (delta != VehicleDeltaTracker.UNCHANGED) {
+                            updateMarker(m, l, status, getVehicleIcon(status, response,
+                                    colorResource, halfWind), isInterpolated);
                         } else {
-                            updateMarker(m, l, isRealtime, status, response);
-                            updated++;
+                            // Marker is current - just keep the newest status for the info window
+                            mVehicles.put(m, status);
+                        }
+                        if (isInterpolated) {
+                            interpolated.add(status.getActiveTripId());
+                            snapToEstimate(status.getActiveTripId());
                         }
-                        activeTripIds.add(status.getActiveTripId());
                     }
                 }
             }
             // Remove markers for any previously added tripIds that aren't in the current response
-            int removed = removeInactiveMarkers(activeTripIds);
+            removeInactiveMarkers(mDeltaTracker.endRefresh());
+
+            mInterpolated = interpolated;
+            mNextFrameIndex = 0;
+            startFrames();
+
+            Log.d(TAG, mDeltaTracker + ", total vehicle markers = " + mVehicleMarkers.size());
+            Log.d(TAG, mIconCache.toString());
+        }
+
+        /**
+         * Passes the status of a vehicle to the interpolator, if the shape of its trip is known
+         *
+         * @param now current time on the server
+         * @return true if the marker of the vehicle should be moved by the interpolator
+         */
+        private boolean updateInterpolator(ObaTripStatus status,
+                                           ObaTripsForRouteResponse response, long now) {
+            String tripId = status.getActiveTripId();
+            ObaTrip trip = response.getTrip(tripId);
+            Double distance = status.getDistanceAlongTrip();
+            if (trip == null || trip.getShapeId() == null || distance == null) {
+                mInterpolator.remove(tripId);
+                return false;
+            }
+            DecodedShape shape = ShapeCache.getInstance().getByShapeId(trip.getShapeId());
+            Double total = status.getTotalDistanceAlongTrip();
+            Double scheduled = status.getScheduledDistanceAlongTrip();
+            String phase = status.getPhase();
+            VehicleInterpolator.Snapshot snapshot = new VehicleInterpolator.Snapshot(
+                    response.getCurrentTime(), distance, total != null ? total : 0,
+                    scheduled != null ? scheduled : Double.NaN, status.getScheduleDeviation(),
+                    status.getLastUpdateTime(), status.isPredicted(),
+                    phase == null || PHASE_IN_PROGRESS.equals(phase));
+            return mInterpolator.update(tripId, shape, snapshot, now);
+        }
 
-            Log.d(TAG,
-                    "Added " + added + ", updated " + updated + ", removed " + removed
-                            + ", total vehicle markers = "
-                            + mVehicleMarkers.size());
-            Log.d(TAG, "Vehicle LRU cache size=" + mVehicleColoredIconCache.size() + ", hits="
-                    + mVehicleColoredIconCache.hitCount() + ", misses=" + mVehicleColoredIconCache
-                    .missCount());
+        /**
+         * Moves the marker of an interpolated vehicle straight to its estimated position if
+         * drawFrame() won't move it there - because the vehicle isn't moving, or the estimate is
+         * too far away to animate to
+         */
+        private void snapToEstimate(String tripId) {
+            Marker m = mVehicleMarkers.get(tripId);
+            long now = SystemClock.elapsedRealtime() + mClockOffset;
+            if (m == null || !mInterpolator.getPosition(tripId, now, mPoint)) {
+                return;
+            }
+            LatLng position = m.getPosition();
+            Location.distanceBetween(position.latitude, position.longitude, mPoint[0], mPoint[1],
+                    mDistance);
+            if (!mInterpolator.isMoving(tripId, now)
+                    || mDistance[0] > MAX_VEHICLE_ANIMATION_DISTANCE) {
+                m.setPosition(new LatLng(mPoint[0], mPoint[1]));
+            }
+        }
 
-            Log.d(TAG, String.format("Raw uncolored vehicle LRU cache size=%d, hits=%d, misses=%d",
-                    mVehicleUncoloredIcons.size(),
-                    mVehicleUncoloredIcons.hitCount(),
-                    mVehicleUncoloredIcons.missCount()));
+        /**
+         * Moves the markers of all interpolated vehicles to their estimated positions, including
+         * those that drawFrame() skipped because they couldn't be seen
+         */
+        synchronized void moveToEstimates() {
+            if (mVehicleMarkers == null) {
+                // Cleared
+                return;
+            }
+            long now = SystemClock.elapsedRealtime() + mClockOffset;
+            for (String tripId : mInterpolated) {
+                Marker m = mVehicleMarkers.get(tripId);
+                if (m != null && mInterpolator.getPosition(tripId, now, mPoint)) {
+                    m.setPosition(new LatLng(mPoint[0], mPoint[1]));
+                }
+            }
+        }
+
+        /**
+         * Moves the markers of interpolated vehicles to their estimated positions, for as long
+         * as FRAME_BUDGET_NS allows, and schedules the next frame while any are moving
+         */
+        synchronized void drawFrame() {
+            if (mVehicleMarkers == null) {
+                // Cleared
+                return;
+            }
+            long start = System.nanoTime();
+            long now = SystemClock.elapsedRealtime() + mClockOffset;
+            LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+            int count = mInterpolated.size();
+            boolean moving = false;
+            int i = 0;
+            for (; i < count; i++) {
+                if (i > 0 && System.nanoTime() - start > FRAME_BUDGET_NS) {
+                    // Continue from here in the next frame
+                    moving = true;
+                    break;
+                }
+                String tripId = mInterpolated.get((mNextFrameIndex + i) % count);
+                if (!mInterpolator.isMoving(tripId, now)) {
+                    continue;
+                }
+                moving = true;
+                Marker m = mVehicleMarkers.get(tripId);
+                if (m == null || !mInterpolator.getPosition(tripId, now, mPoint)) {
+                    continue;
+                }
+                LatLng position = new LatLng(mPoint[0], mPoint[1]);
+                // Markers that can't be seen are moved by moveToEstimates() when the camera
+                // brings them into view
+                if (bounds.contains(position)) {
+                    m.setPosition(position);
+                }
+            }
+            if (count > 0) {
+                mNextFrameIndex = (mNextFrameIndex + i) % count;
+            }
+            if (moving) {
+                mFrameHandler.postDelayed(mFrame, FRAME_PERIOD_MS);
+            }
+        }
+
+        /**
+         * Starts moving the interpolated vehicles, unless the overlay is paused
+         */
+        synchronized void startFrames() {
+            mFrameHandler.removeCallbacks(mFrame);
+            if (!mPaused && mVehicleMarkers != null && !mInterpolated.isEmpty()) {
+                mFrameHandler.post(mFrame);
+            }
+        }
+
+        synchronized void stopFrames() {
+            mFrameHandler.removeCallbacks(mFrame);
         }
 
         /**
          * Places a marker on the map for this vehicle, and adds it to our marker HashMap
          *
-         * @param l          Location to add the marker at
-         * @param isRealtime true if the marker shown indicate real-time info, false if it should indicate schedule
-         * @param status     the vehicles status to add to the map
-         * @param response   the response which contained the provided status
+         * @param l      Location to add the marker at
+         * @param status the vehicles status to add to the map
+         * @param icon   icon for the vehicle
          */
-        private void addMarkerToMap(Location l, boolean isRealtime, ObaTripStatus status,
-                                    ObaTripsForRouteResponse response) {
+        private void addMarkerToMap(Location l, ObaTripStatus status, BitmapDescriptor icon) {
 
             Marker m = mMap.addMarker(new MarkerOptions()
                     .position(MapHelpV2.makeLatLng(l))
                     .title(status.getVehicleId())
-                    .icon(getVehicleIcon(isRealtime, status, response))
+                    .icon(icon)
             );
             ProprietaryMapHelpV2.setZIndex(m, VEHICLE_MARKER_Z_INDEX);
             mVehicleMarkers.put(status.getActiveTripId(), m);
@@ -702,27 +867,29 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
         /**
          * Update an existing marker on the map with the current vehicle status
          *
-         * @param m          Marker to update
-         * @param l          Location to add the marker at
-         * @param isRealtime true if the marker shown indicate real-time info, false if it should
-         *                   indicate schedule
-         * @param status     real-time status of the vehicle
-         * @param response   response containing the provided status
+         * @param m      Marker to update
+         * @param l      Location to add the marker at
+         * @param status real-time status of the vehicle
+         * @param icon   icon for the vehicle
+         * @param isInterpolated true if the marker is moved by the interpolator, so its
+         *                       position shouldn't be changed here
          */
-        private void updateMarker(Marker m, Location l, boolean isRealtime, ObaTripStatus status,
-                                  ObaTripsForRouteResponse response) {
+        private void updateMarker(Marker m, Location l, ObaTripStatus status,
+                                  BitmapDescriptor icon, boolean isInterpolated) {
             boolean showInfo = m.isInfoWindowShown();
-            m.setIcon(getVehicleIcon(isRealtime, status, response));
+            m.setIcon(icon);
             // Update Hashmap with newest status - needed to show info when tapping on marker
             mVehicles.put(m, status);
-            // Update vehicle position
-            Location markerLoc = MapHelpV2.makeLocation(m.getPosition());
-            // If its a small distance, animate the movement
-            if (l.distanceTo(markerLoc) < MAX_VEHICLE_ANIMATION_DISTANCE) {
-                AnimationUtil.animateMarkerTo(m, MapHelpV2.makeLatLng(l));
-            } else {
-                // Just snap the marker to the new location - large animations look weird
-                m.setPosition(MapHelpV2.makeLatLng(l));
+            // Update vehicle position, unless the next frame moves it towards the new position
+            if (!isInterpolated) {
+                Location markerLoc = MapHelpV2.makeLocation(m.getPosition());
+                // If its a small distance, animate the movement
+                if (l.distanceTo(markerLoc) < MAX_VEHICLE_ANIMATION_DISTANCE) {
+                    AnimationUtil.animateMarkerTo(m, MapHelpV2.makeLatLng(l));
+                } else {
+                    // Just snap the marker to the new location - large animations look weird
+                    m.setPosition(MapHelpV2.makeLatLng(l));
+                }
             }
             // If the info window was shown, make sure its open (changing the icon could have closed it)
             if (showInfo) {
@@ -731,82 +898,63 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
         }
 
         /**
-         * Removes any markers that don't currently represent active vehicles running a route
+         * Removes the markers of vehicles that are no longer running the routes
          *
-         * @param activeTripIds a set of active tripIds that are currently running the routes.  Any
-         *                      markers for tripIds that aren't in this set will be removed
-         *                      from the map.
-         * @return the number of removed markers
+         * @param inactiveTripIds activeTripIds of the markers to remove from the map
          */
-        private int removeInactiveMarkers(HashSet<String> activeTripIds) {
-            int removed = 0;
-            // Loop using an Iterator, since per Oracle Iterator.remove() is the only safe way
-            // to remove an item from a Collection during iteration:
-            // http://docs.oracle.com/javase/tutorial/collections/interfaces/collection.html
-            try {
-                Iterator<Map.Entry<String, Marker>> iterator = mVehicleMarkers.entrySet()
-                        .iterator();
-                while (iterator.hasNext()) {
-                    Map.Entry<String, Marker> entry = iterator.next();
-                    String tripId = entry.getKey();
-                    Marker m = entry.getValue();
-                    if (!activeTripIds.contains(tripId)) {
-                        // Remove the marker from map and data structures
-                        entry.getValue().remove();
-                        mVehicles.remove(m);
-                        iterator.remove();
-                        removed++;
-                    }
-                }
-            } catch (UnsupportedOperationException e) {
-                Log.w(TAG, "Problem removing vehicle from HashMap using iterator: " + e);
-                //The platform apparently didn't like the "efficient" way to do this, so we'll just
-                //loop through a copy and remove what we don't want from the original
-                HashMap<String, Marker> copy = new HashMap<>(mVehicleMarkers);
-                for (Map.Entry<String, Marker> entry : copy.entrySet()) {
-                    String tripId = entry.getKey();
-                    Marker m = entry.getValue();
-                    if (!activeTripIds.contains(tripId)) {
-                        // Remove the marker from map and data structures
-                        entry.getValue().remove();
-                        mVehicles.remove(m);
-                        mVehicleMarkers.remove(tripId);
-                        removed++;
-                    }
+        private void removeInactiveMarkers(List<String> inactiveTripIds) {
+            for (String tripId : inactiveTripIds) {
+                Marker m = mVehicleMarkers.remove(tripId);
+                if (m != null) {
+                    m.remove();
+                    mVehicles.remove(m);
                 }
+                mInterpolator.remove(tripId);
             }
-            return removed;
         }
 
         /**
-         * Returns an icon for the vehicle that should be shown on the map
+         * Returns the color resource for the vehicle marker
          *
          * @param isRealtime true if the marker shown indicate real-time info, false if it should
          *                   indicate schedule
          * @param status     the vehicles status to add to the map
-         * @param response   the response which contained the provided status
-         * @return an icon for the vehicle that should be shown on the map
          */
-        private BitmapDescriptor getVehicleIcon(boolean isRealtime, ObaTripStatus status,
-                                                ObaTripsForRouteResponse response) {
-            String routeId = response.getTrip(status.getActiveTripId()).getRouteId();
-            ObaRoute route = response.getRoute(routeId);
-            int vehicleType = route.getType();
-
-            int colorResource;
-
+        private int getVehicleColor(boolean isRealtime, ObaTripStatus status) {
             if (isRealtime) {
                 long deviationMin = TimeUnit.SECONDS.toMinutes(status.getScheduleDeviation());
-                colorResource = ArrivalInfoUtils.computeColorFromDeviation(deviationMin);
+                return ArrivalInfoUtils.computeColorFromDeviation(deviationMin);
             } else {
-                colorResource = R.color.stop_info_scheduled_time;
+                return R.color.stop_info_scheduled_time;
             }
+        }
+
+        /**
+         * Returns the direction of the vehicle marker, as an index between 0 and NUM_DIRECTIONS-1
+         *
+         * @param status the vehicles status to add to the map
+         */
+        private int getVehicleHalfWind(ObaTripStatus status) {
             double direction = MathUtils.toDirection(status.getOrientation());
-            int halfWind = MathUtils.getHalfWindIndex((float) direction, NUM_DIRECTIONS - 1);
-            //Log.d(TAG, "VehicleId=" + status.getVehicleId() + ", orientation= " + status.getOrientation() + ", direction=" + direction + ", halfWind= " + halfWind + ", deviation=" + status.getScheduleDeviation());
+            //Log.d(TAG, "VehicleId=" + status.getVehicleId() + ", orientation= " + status.getOrientation() + ", direction=" + direction + ", deviation=" + status.getScheduleDeviation());
+            return MathUtils.getHalfWindIndex((float) direction, NUM_DIRECTIONS - 1);
+        }
 
-            Bitmap b = getBitmap(vehicleType, colorResource, halfWind);
-            return BitmapDescriptorFactory.fromBitmap(b);
+        /**
+         * Returns an icon for the vehicle that should be shown on the map
+         *
+         * @param status        the vehicles status to add to the map
+         * @param response      the response which contained the provided status
+         * @param colorResource color resource for the icon, from getVehicleColor()
+         * @param halfWind      direction of the icon, from getVehicleHalfWind()
+         * @return an icon for the vehicle that should be shown on the map
+         */
+        private BitmapDescriptor getVehicleIcon(ObaTripStatus status,
+                                                ObaTripsForRouteResponse response,
+                                                int colorResource, int halfWind) {
+            String routeId = response.getTrip(status.getActiveTripId()).getRouteId();
+            ObaRoute route = response.getRoute(routeId);
+            return getBitmapDescriptor(route.getType(), colorResource, halfWind);
         }
 
         synchronized ObaTripStatus getStatusFromMarker(Marker marker) {
@@ -831,6 +979,16 @@ public class VehicleOverlay implements AmazonMap.OnInfoWindowClickListener, Mark
                 mVehicleMarkers.clear();
                 mVehicleMarkers = null;
             }
+            if (mDeltaTracker != null) {
+                mDeltaTracker.clear();
+                mDeltaTracker = null;
+            }
+            mFrameHandler.removeCallbacks(mFrame);
+            if (mInterpolator != null) {
+                mInterpolator.clear();
+                mInterpolator = null;
+            }
+            mInterpolated.clear();
             if (mVehicles != null) {
                 mVehicles.clear();
                 mVehicles = null;
@@ -39,17 +39,22 @@ import org.onebusaway.android.io.test.ObaTestCase;
 import org.onebusaway.android.mock.MockRegion;
 import org.onebusaway.android.ui.ArrivalsListAdapterStyleA;
 import org.onebusaway.android.ui.ArrivalsListAdapterStyleB;
+import org.onebusaway.android.ui.ArrivalsListModel;
 import org.onebusaway.android.util.UIUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import androidx.core.widget.ImageViewCompat;
 import androidx.test.runner.AndroidJUnit4;
 
 import static androidx.test.InstrumentationRegistry.getTargetContext;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 /**
@@ -182,6 +187,74 @@ public class AdapterTest extends ObaTestCase {
         }
     }
 
+    /**
+     * Tests that ArrivalsListModel only reports the cards that changed between refreshes, and that
+     * ArrivalsListAdapterStyleB doesn't bind the cards that didn't
+     */
+    @Test
+    public void testAdapterBDiff() {
+        ObaRegion tampa = MockRegion.getTampa(getTargetContext());
+        assertNotNull(tampa);
+        Application.get().setCurrentRegion(tampa);
+        ObaArrivalInfoResponse response =
+                new ObaArrivalInfoRequest.Builder(getTargetContext(),
+                        "Hillsborough Area Regional Transit_3105").build().call();
+        assertOK(response);
+        final ObaArrivalInfo[] arrivals = response.getArrivalInfo();
+        final long time = response.getCurrentTime();
+        final ArrayList<String> filter = new ArrayList<String>();
+
+        ArrivalsListModel first = ArrivalsListModel.build(getTargetContext(), arrivals, filter,
+                time, true, null);
+        assertNull(first.getDiff());
+        assertTrue(first.isFor(arrivals, null, true));
+        assertFalse(first.isFor(arrivals, filter, false));
+
+        adapterB = new ArrivalsListAdapterStyleB(getTargetContext());
+        adapterB.setModel(first);
+        final int count = adapterB.getCount();
+        assertTrue(count > 1);
+        View[] views = new View[count];
+        for (int i = 0; i < count; i++) {
+            views[i] = adapterB.getView(i, null, null);
+        }
+        assertEquals(count, adapterB.getBindCount());
+
+        // The same arrivals at the same time - nothing changed, so nothing is bound again
+        ArrivalsListModel same = ArrivalsListModel.build(getTargetContext(), arrivals, filter,
+                time, true, first);
+        assertEquals(first.getVersion(), same.getDiff().getFromVersion());
+        assertTrue(same.getDiff().isEmpty());
+        adapterB.setModel(same);
+        for (int i = 0; i < count; i++) {
+            assertSame(views[i], adapterB.getView(i, views[i], null));
+        }
+        assertEquals(count, adapterB.getBindCount());
+
+        // Filtering for one route removes the other cards
+        ArrayList<String> oneRoute = new ArrayList<String>();
+        oneRoute.add(first.getArrivals().get(0).getInfo().getRouteId());
+        ArrivalsListModel filtered = ArrivalsListModel.build(getTargetContext(), arrivals,
+                oneRoute, time, true, same);
+        assertEquals(0, filtered.getDiff().getInserted());
+        assertEquals(0, filtered.getDiff().getChanged());
+        ArrivalsListAdapterStyleB filteredAdapter =
+                new ArrivalsListAdapterStyleB(getTargetContext());
+        filteredAdapter.setModel(filtered);
+        assertTrue(filteredAdapter.getCount() >= 1);
+        assertEquals(count - filteredAdapter.getCount(), filtered.getDiff().getRemoved());
+
+        // Later, the ETAs of the arrivals change
+        ArrivalsListModel later = ArrivalsListModel.build(getTargetContext(), arrivals, filter,
+                time + TimeUnit.MINUTES.toMillis(2), true, same);
+        assertFalse(later.getDiff().isEmpty());
+        adapterB.setModel(later);
+        for (int i = 0; i < adapterB.getCount(); i++) {
+            adapterB.getView(i, null, null);
+        }
+        assertTrue(adapterB.getBindCount() > count);
+    }
+
     /**
      * Test occupancy visibility and color - we need to do this somewhere with an inflated view, so this
      * adapter works. Right now this test uses a response from a HART stop that doesn't include occupancy
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.directions.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onebusaway.android.directions.tasks.OtpPlanClient;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.ws.Request;
+import org.opentripplanner.api.ws.Response;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.runner.AndroidJUnit4;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Makes plan requests to a local stand-in for an OTP server, to check that OtpPlanClient
+ * remembers the URL layout of each server, reuses connections, and requests plan variants in
+ * parallel.  Latencies are written to logcat under the "OtpPlanClientTest" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OtpPlanClientTest {
+
+    private static final String TAG = "OtpPlanClientTest";
+
+    // Time the stand-in server takes to plan a trip
+    private static final long PLAN_DELAY_MS = 300;
+
+    // Plans for this mode fail with a server error
+    private static final String FAILING_MODE = "FERRY";
+
+    private static final String PLAN_BODY = "{\"requestParameters\":{},\"plan\":{\"date\":0}}";
+
+    private MockWebServer mServer;
+
+    private OkHttpClient mHttpClient;
+
+    private OtpPlanClient mClient;
+
+    private String mBaseUrl;
+
+    // True if the stand-in server has the plan API at /plan, false for /routers/default/plan
+    private volatile boolean mOldLayout;
+
+    @Before
+    public void before() throws IOException {
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                String plan = mOldLayout ? "/otp/plan?" : "/otp/routers/default/plan?";
+                if (!path.startsWith(plan)) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                if (path.contains("mode=" + FAILING_MODE)) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(PLAN_BODY)
+                        .setBodyDelay(PLAN_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        });
+        mServer.start();
+        mBaseUrl = mServer.url("/otp").toString();
+        mHttpClient = new OkHttpClient();
+        mClient = new OtpPlanClient(mHttpClient);
+    }
+
+    @After
+    public void after() {
+        try {
+            mServer.shutdown();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    @Test
+    public void testBuildUrl() {
+        Request request = newRequest("TRANSIT,WALK", false);
+        String url = OtpPlanClient.buildUrl("http://otp.example.com/otp", false, request);
+        assertTrue(url.startsWith("http://otp.example.com/otp/routers/default/plan?"));
+        assertTrue(url.contains("mode=TRANSIT,WALK"));
+        assertEquals(request.getParameters().size(), url.split("&").length);
+
+        url = OtpPlanClient.buildUrl("http://otp.example.com/otp", true, request);
+        assertTrue(url.startsWith("http://otp.example.com/otp/plan?"));
+    }
+
+    @Test
+    public void testBuildUrlBikeRental() {
+        Request request = newRequest("TRANSIT,BICYCLE", false);
+        request.setBikeRental(true);
+        String url = OtpPlanClient.buildUrl("http://otp.example.com/otp", false, request);
+        assertTrue(url.contains("mode=TRANSIT,BICYCLE_RENT"));
+
+        url = OtpPlanClient.buildUrl("http://otp.example.com/otp", true, request);
+        assertTrue(url.contains("mode=TRANSIT,BICYCLE, WALK"));
+
+        // Without bike rental, modes are used as they are in both layouts
+        request.setBikeRental(false);
+        url = OtpPlanClient.buildUrl("http://otp.example.com/otp", false, request);
+        assertTrue(url.contains("mode=TRANSIT,BICYCLE"));
+        assertFalse(url.contains("BICYCLE_RENT"));
+        url = OtpPlanClient.buildUrl("http://otp.example.com/otp", true, request);
+        assertFalse(url.contains("WALK"));
+    }
+
+    @Test
+    public void testUrlLayout() throws Exception {
+        assertEquals(OtpPlanClient.LAYOUT_UNKNOWN, mClient.getUrlLayout(mBaseUrl));
+        assertNotNull(mClient.plan(mBaseUrl, newRequest("TRANSIT,WALK", false)));
+        assertEquals(OtpPlanClient.LAYOUT_ROUTERS, mClient.getUrlLayout(mBaseUrl));
+        assertEquals(1, mServer.getRequestCount());
+
+        // An old server is found on the second try, and after that on the first
+        mOldLayout = true;
+        mClient.setUrlLayout(mBaseUrl, OtpPlanClient.LAYOUT_UNKNOWN);
+        long start = System.nanoTime();
+        assertNotNull(mClient.plan(mBaseUrl, newRequest("TRANSIT,WALK", false)));
+        long firstMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(OtpPlanClient.LAYOUT_OLD, mClient.getUrlLayout(mBaseUrl));
+        assertEquals(3, mServer.getRequestCount());
+
+        start = System.nanoTime();
+        assertNotNull(mClient.plan(mBaseUrl, newRequest("TRANSIT,WALK", false)));
+        long rememberedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(4, mServer.getRequestCount());
+
+        mServer.takeRequest();
+        assertTrue(mServer.takeRequest().getPath().startsWith("/otp/routers/default/plan"));
+        assertTrue(mServer.takeRequest().getPath().startsWith("/otp/plan"));
+        assertTrue(mServer.takeRequest().getPath().startsWith("/otp/plan"));
+
+        // All requests share one connection
+        assertEquals(1, mHttpClient.connectionPool().connectionCount());
+
+        Log.i(TAG, String.format(Locale.US,
+                "Old URL layout: %d ms for the first plan, %d ms once remembered",
+                firstMs, rememberedMs));
+    }
+
+    @Test
+    public void testParallelVariants() throws Exception {
+        List<Request> variants = Arrays.asList(
+                newRequest("TRANSIT,WALK", false),
+                newRequest("BUS,WALK", false),
+                newRequest("TRANSIT,WALK", true),
+                newRequest("BUS,WALK", true));
+        // Learn the layout first
+        mClient.plan(mBaseUrl, variants.get(0));
+
+        long start = System.nanoTime();
+        for (Request variant : variants) {
+            assertNotNull(mClient.plan(mBaseUrl, variant));
+        }
+        long sequentialMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        List<Response> responses = mClient.planAll(mBaseUrl, variants);
+        long parallelMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(variants.size(), responses.size());
+        for (Response response : responses) {
+            assertNotNull(response);
+        }
+        assertEquals(1 + 2 * variants.size(), mServer.getRequestCount());
+        assertTrue("Variants weren't requested in parallel: " + parallelMs + " ms",
+                parallelMs < 2 * PLAN_DELAY_MS);
+
+        Log.i(TAG, String.format(Locale.US,
+                "%d plan variants: %d ms sequential, %d ms parallel",
+                variants.size(), sequentialMs, parallelMs));
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        // A variant that fails doesn't fail the others
+        mClient.setUrlLayout(mBaseUrl, OtpPlanClient.LAYOUT_ROUTERS);
+        List<Response> responses = mClient.planAll(mBaseUrl, Arrays.asList(
+                newRequest("TRANSIT,WALK", false), newRequest(FAILING_MODE, false)));
+        assertNotNull(responses.get(0));
+        assertNull(responses.get(1));
+        // Server errors aren't mistaken for the other URL layout
+        assertEquals(OtpPlanClient.LAYOUT_ROUTERS, mClient.getUrlLayout(mBaseUrl));
+
+        // But if all of them fail, so does planAll()
+        mServer.shutdown();
+        try {
+            mClient.planAll(mBaseUrl, Arrays.asList(
+                    newRequest("TRANSIT,WALK", false), newRequest("BUS,WALK", false)));
+            assertTrue("planAll() should have thrown", false);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        Itinerary a = newItinerary("1000", "5000", "trip_1");
+        Itinerary b = newItinerary("2000", "4000", "trip_2");
+        Itinerary c = newItinerary("1000", "5000", "trip_1");
+        Itinerary d = newItinerary("3000", "9000", "trip_3");
+
+        // A single plan keeps the order from the server
+        List<Itinerary> single = Arrays.asList(a, d, b);
+        assertSame(single, OtpPlanClient.merge(Arrays.asList(single)));
+
+        List<List<Itinerary>> plans = new ArrayList<>();
+        plans.add(Arrays.asList(a, d));
+        plans.add(Arrays.asList(c, b));
+        List<Itinerary> merged = OtpPlanClient.merge(plans);
+        assertEquals(3, merged.size());
+        assertSame(b, merged.get(0));
+        assertSame(a, merged.get(1));
+        assertSame(d, merged.get(2));
+
+        List<Response> responses = new ArrayList<>();
+        responses.add(null);
+        assertTrue(OtpPlanClient.mergeItineraries(responses).isEmpty());
+    }
+
+    private static Request newRequest(String modes, boolean arriveBy) {
+        Request request = new Request();
+        request.setFrom("28.0587,-82.4139");
+        request.setTo("27.9506,-82.4572");
+        request.setArriveBy(arriveBy);
+        request.setDateTime("10-18-2019", "08:00am");
+        request.getParameters().put("mode", modes);
+        return request;
+    }
+
+    private static Itinerary newItinerary(String startTime, String endTime, String tripId) {
+        Leg leg = new Leg();
+        leg.mode = "BUS";
+        leg.tripId = tripId;
+        leg.endTime = endTime;
+        Itinerary itinerary = new Itinerary();
+        itinerary.startTime = startTime;
+        itinerary.legs = new ArrayList<>();
+        itinerary.legs.add(leg);
+        return itinerary;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
+import com.fasterxml.jackson.databind.node.TreeTraversingParser;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaResponse;
+import org.onebusaway.android.io.request.ObaStopsForLocationResponse;
+import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
+import org.onebusaway.android.mock.Resources;
+
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares parse time and allocation of the streaming JacksonSerializer against the previous
+ * readTree() + TreeTraversingParser approach, using the largest JSON responses in /res/raw.
+ * Results are written to logcat under the "JacksonBenchmark" tag.
+ */
+public class JacksonBenchmarkTest extends ObaTestCase {
+
+    private static final String TAG = "JacksonBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    private static final int ITERATIONS = 20;
+
+    private static final ObjectMapper mTreeMapper = new ObjectMapper();
+
+    static {
+        // Same configuration as JacksonSerializer
+        mTreeMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mTreeMapper.setVisibilityChecker(
+                VisibilityChecker.Std.defaultInstance()
+                        .withFieldVisibility(JsonAutoDetect.Visibility.ANY));
+    }
+
+    @Test
+    public void testTripsForRoute() throws IOException {
+        benchmark("trips_for_route_hart_5", ObaTripsForRouteResponse.class);
+    }
+
+    @Test
+    public void testStopsForLocation() throws IOException {
+        benchmark("stops_for_location_downtown_seattle", ObaStopsForLocationResponse.class);
+    }
+
+    @Test
+    public void testArrivalsAndDepartures() throws IOException {
+        benchmark("arrivals_and_departures_for_stop_hart_6497", ObaArrivalInfoResponse.class);
+    }
+
+    private <T extends ObaResponse> void benchmark(String fixture, Class<T> cls)
+            throws IOException {
+        final String json = IOUtils.toString(
+                Resources.read(getTargetContext(), Resources.getTestUri(fixture)));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            assertOK(parseTree(json, cls));
+            assertOK(parseStreaming(json, cls));
+        }
+
+        long treeAlloc = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseTree(json, cls);
+        }
+        long treeNanos = System.nanoTime() - start;
+        treeAlloc = getAllocatedBytes() - treeAlloc;
+
+        long streamAlloc = getAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseStreaming(json, cls);
+        }
+        long streamNanos = System.nanoTime() - start;
+        streamAlloc = getAllocatedBytes() - streamAlloc;
+
+        Log.i(TAG, String.format("%s (%d chars): tree %.2f ms/%d KB, streaming %.2f ms/%d KB",
+                fixture, json.length(),
+                treeNanos / 1e6 / ITERATIONS, treeAlloc / 1024 / ITERATIONS,
+                streamNanos / 1e6 / ITERATIONS, streamAlloc / 1024 / ITERATIONS));
+
+        // Both paths must produce the same response
+        assertEquals(parseTree(json, cls).getCode(), parseStreaming(json, cls).getCode());
+        if (treeAlloc > 0 && streamAlloc > 0) {
+            // The tree is an extra copy of the response, so streaming must allocate less
+            assertTrue(streamAlloc < treeAlloc);
+        }
+    }
+
+    private static <T> T parseTree(String json, Class<T> cls) throws IOException {
+        JsonNode node = mTreeMapper.readTree(new StringReader(json));
+        TreeTraversingParser parser = new TreeTraversingParser(node);
+        parser.setCodec(mTreeMapper);
+        return parser.readValueAs(cls);
+    }
+
+    private static <T> T parseStreaming(String json, Class<T> cls) {
+        return ObaApi.getSerializer(cls).deserialize(new StringReader(json), cls);
+    }
+
+    /**
+     * @return the total number of bytes allocated by the runtime so far, or 0 if the platform
+     * doesn't report it
+     */
+    private static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            String stat = Debug.getRuntimeStat("art.gc.bytes-allocated");
+            if (stat != null) {
+                return Long.parseLong(stat);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.onebusaway.android.io.JacksonSerializer;
+import org.onebusaway.android.io.JacksonWarmUp;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaResponse;
+import org.onebusaway.android.io.request.ObaStopsForLocationResponse;
+import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
+import org.onebusaway.android.mock.Resources;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures the latency of the first parse of the hot response classes, with and without
+ * warming up their readers first.  Each measurement uses a new ObjectMapper, configured like
+ * JacksonSerializer's, so that it starts with no cached deserializers.  Results are written to
+ * logcat under the "JacksonWarmUp" tag.
+ */
+public class JacksonWarmUpTest extends ObaTestCase {
+
+    private static final String TAG = "JacksonWarmUp";
+
+    private static final String[] FIXTURES = {
+            "arrivals_and_departures_for_stop_hart_6497",
+            "stops_for_location_downtown_seattle",
+            "trips_for_route_hart_5"
+    };
+
+    private static final Class<?>[] CLASSES = {
+            ObaArrivalInfoResponse.class,
+            ObaStopsForLocationResponse.class,
+            ObaTripsForRouteResponse.class
+    };
+
+    private static final String EMPTY_JSON = "{\"code\":200,\"version\":\"2\",\"text\":\"\"}";
+
+    @Test
+    public void testFirstParseLatency() throws IOException {
+        List<String> jsons = new ArrayList<>();
+        for (String fixture : FIXTURES) {
+            jsons.add(IOUtils.toString(
+                    Resources.read(getTargetContext(), Resources.getTestUri(fixture))));
+        }
+
+        // Load Jackson's own classes, so that the first measurement doesn't pay for them
+        newMapper().readerFor(ObaResponse.class).readValue(EMPTY_JSON);
+
+        long coldTotal = 0;
+        long warmTotal = 0;
+        long warmUpTotal = 0;
+        for (int i = 0; i < FIXTURES.length; i++) {
+            // Without warm-up: the first parse introspects the class
+            long start = System.nanoTime();
+            ObaResponse cold = (ObaResponse) newMapper().readerFor(CLASSES[i])
+                    .readValue(jsons.get(i));
+            long coldNanos = System.nanoTime() - start;
+
+            // With warm-up: the reader is built and used on an empty response beforehand
+            ObjectMapper mapper = newMapper();
+            start = System.nanoTime();
+            ObjectReader reader = mapper.readerFor(CLASSES[i]);
+            reader.readValue(EMPTY_JSON);
+            long warmUpNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ObaResponse warm = reader.readValue(jsons.get(i));
+            long warmNanos = System.nanoTime() - start;
+
+            assertEquals(ObaApi.OBA_OK, cold.getCode());
+            assertEquals(ObaApi.OBA_OK, warm.getCode());
+            coldTotal += coldNanos;
+            warmTotal += warmNanos;
+            warmUpTotal += warmUpNanos;
+
+            Log.i(TAG, String.format(Locale.US,
+                    "%s: first parse %.2f ms cold, %.2f ms after a %.2f ms warm-up",
+                    CLASSES[i].getSimpleName(), coldNanos / 1e6, warmNanos / 1e6,
+                    warmUpNanos / 1e6));
+        }
+        Log.i(TAG, String.format(Locale.US,
+                "Total: first parse %.2f ms cold, %.2f ms after a %.2f ms warm-up",
+                coldTotal / 1e6, warmTotal / 1e6, warmUpTotal / 1e6));
+
+        // Introspection is the bulk of a cold parse
+        assertTrue(warmTotal < coldTotal);
+    }
+
+    @Test
+    public void testWarmUp() {
+        List<Class<?>> classes = new ArrayList<>(JacksonWarmUp.HOT_CLASSES);
+        long nanos = JacksonWarmUp.warmUp(classes);
+        assertTrue(nanos > 0);
+        assertEquals(nanos, JacksonWarmUp.getWarmUpTime());
+        Log.i(TAG, String.format(Locale.US, "Warmed up %d classes in %.2f ms",
+                classes.size(), nanos / 1e6));
+
+        // The first response is recorded, for JacksonWarmUp.save()
+        ObaStopsForLocationResponse response = ObaApi.getSerializer(
+                ObaStopsForLocationResponse.class).deserialize(
+                new StringReader(EMPTY_JSON), ObaStopsForLocationResponse.class);
+        assertEquals(ObaApi.OBA_OK, response.getCode());
+        assertTrue(JacksonSerializer.getDeserializedClasses()
+                .contains(ObaStopsForLocationResponse.class));
+        assertTrue(JacksonSerializer.getFirstLookupTime(ObaStopsForLocationResponse.class) >= 0);
+    }
+
+    private static ObjectMapper newMapper() {
+        // Same configuration as JacksonSerializer
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.setVisibilityChecker(
+                VisibilityChecker.Std.defaultInstance()
+                        .withFieldVisibility(JsonAutoDetect.Visibility.ANY));
+        return mapper;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onebusaway.android.io.ObaConnection;
+import org.onebusaway.android.io.ObaRequestExecutor;
+
+import android.net.Uri;
+
+import java.io.Reader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests sharing and cancelling requests on the ObaRequestExecutor
+ */
+@RunWith(AndroidJUnit4.class)
+public class ObaRequestExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    /**
+     * A request that waits until it's released, and counts how many times it was made
+     */
+    private static class BlockingRequest implements Callable<String> {
+
+        final CountDownLatch mStarted = new CountDownLatch(1);
+
+        final CountDownLatch mRelease = new CountDownLatch(1);
+
+        final CountDownLatch mInterrupted = new CountDownLatch(1);
+
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        final FakeConnection mConnection = new FakeConnection();
+
+        @Override
+        public String call() throws Exception {
+            mCalls.incrementAndGet();
+            ObaRequestExecutor.setCurrentConnection(mConnection);
+            mStarted.countDown();
+            try {
+                mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                mInterrupted.countDown();
+                throw e;
+            }
+            return "result";
+        }
+    }
+
+    private static class FakeConnection implements ObaConnection {
+
+        final CountDownLatch mDisconnected = new CountDownLatch(1);
+
+        @Override
+        public void disconnect() {
+            mDisconnected.countDown();
+        }
+
+        @Override
+        public Reader get() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Reader post(String string) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getResponseCode() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testSharedRequest() throws Exception {
+        ObaRequestExecutor executor = ObaRequestExecutor.getInstance();
+        Uri uri = Uri.parse("http://example.com/shared.json?id=" + System.nanoTime());
+        BlockingRequest request = new BlockingRequest();
+        int shared = executor.getSharedCount();
+
+        Future<String> first = executor.submit(uri, ObaRequestExecutor.PRIORITY_BACKGROUND,
+                request);
+        Future<String> second = executor.submit(uri, ObaRequestExecutor.PRIORITY_UI, request);
+        assertEquals(shared + 1, executor.getSharedCount());
+
+        request.mRelease.countDown();
+        assertEquals("result", ObaRequestExecutor.getResult(first));
+        assertEquals("result", ObaRequestExecutor.getResult(second));
+        assertEquals(1, request.mCalls.get());
+    }
+
+    @Test
+    public void testCancelSharedRequest() throws Exception {
+        ObaRequestExecutor executor = ObaRequestExecutor.getInstance();
+        Uri uri = Uri.parse("http://example.com/cancel-shared.json?id=" + System.nanoTime());
+        BlockingRequest request = new BlockingRequest();
+
+        Future<String> first = executor.submit(uri, ObaRequestExecutor.PRIORITY_UI, request);
+        Future<String> second = executor.submit(uri, ObaRequestExecutor.PRIORITY_UI, request);
+        assertTrue(request.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // The request continues for the caller that didn't cancel
+        assertTrue(first.cancel(true));
+        assertTrue(first.isCancelled());
+        assertNull(ObaRequestExecutor.getResult(first));
+        assertFalse(second.isCancelled());
+
+        request.mRelease.countDown();
+        assertEquals("result", ObaRequestExecutor.getResult(second));
+        assertEquals(1, request.mConnection.mDisconnected.getCount());
+    }
+
+    @Test
+    public void testCancelAbortsConnection() throws Exception {
+        ObaRequestExecutor executor = ObaRequestExecutor.getInstance();
+        Uri uri = Uri.parse("http://example.com/cancel.json?id=" + System.nanoTime());
+        BlockingRequest request = new BlockingRequest();
+        int cancelled = executor.getCancelledCount();
+
+        Future<String> future = executor.submit(uri, ObaRequestExecutor.PRIORITY_UI, request);
+        assertTrue(request.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+
+        assertTrue(request.mConnection.mDisconnected.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(request.mInterrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(cancelled + 1, executor.getCancelledCount());
+
+        // A new request for the same URI isn't shared with the cancelled one
+        BlockingRequest next = new BlockingRequest();
+        next.mRelease.countDown();
+        assertEquals("result", ObaRequestExecutor.getResult(
+                executor.submit(uri, ObaRequestExecutor.PRIORITY_UI, next)));
+        assertEquals(1, next.mCalls.get());
+    }
+
+    @Test
+    public void testCancelWakesWaitingCaller() throws Exception {
+        ObaRequestExecutor executor = ObaRequestExecutor.getInstance();
+        Uri uri = Uri.parse("http://example.com/cancel-waiting.json?id=" + System.nanoTime());
+        BlockingRequest request = new BlockingRequest();
+
+        final Future<String> first = executor.submit(uri, ObaRequestExecutor.PRIORITY_UI,
+                request);
+        Future<String> second = executor.submit(uri, ObaRequestExecutor.PRIORITY_UI, request);
+        assertTrue(request.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final CountDownLatch returned = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ObaRequestExecutor.getResult(first);
+                returned.countDown();
+            }
+        }).start();
+
+        // The waiting caller returns when its own Future is cancelled, although the shared
+        // request is still running for the other caller
+        assertTrue(first.cancel(true));
+        assertTrue(returned.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(second.isDone());
+
+        request.mRelease.countDown();
+        assertEquals("result", ObaRequestExecutor.getResult(second));
+    }
+
+    @Test
+    public void testExecutorRethrowsExceptions() throws Exception {
+        final CountDownLatch uncaught = new CountDownLatch(1);
+        final AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                thrown.set(e);
+                uncaught.countDown();
+            }
+        });
+        try {
+            final IllegalStateException failure = new IllegalStateException("failed");
+            ObaRequestExecutor.getInstance().getExecutor(ObaRequestExecutor.PRIORITY_BACKGROUND)
+                    .execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            throw failure;
+                        }
+                    });
+
+            // The exception isn't swallowed by the Future that nobody reads
+            assertTrue(uncaught.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertSame(failure, thrown.get());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.app.Application;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaConnection;
+import org.onebusaway.android.io.ObaPooledConnectionFactory;
+import org.onebusaway.android.io.request.ObaArrivalInfoRequest;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaRouteRequest;
+import org.onebusaway.android.io.request.ObaShapeRequest;
+import org.onebusaway.android.io.request.ObaStopRequest;
+import org.onebusaway.android.io.request.ObaStopResponse;
+import org.onebusaway.android.io.request.ObaStopsForLocationRequest;
+import org.onebusaway.android.mock.MockConnectionFactory;
+import org.onebusaway.android.mock.Resources;
+import org.onebusaway.android.util.LocationUtils;
+
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Replays the JSON responses from /res/raw through a local HTTP server to make sure that
+ * ObaPooledConnectionFactory reuses sockets across requests and negotiates gzip
+ */
+public class PooledConnectionTest extends ObaTestCase {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    // Requests for this path never get a response
+    private static final String HANG_PATH = "/hang";
+
+    private MockWebServer mServer;
+
+    @Before
+    public void before() {
+        super.before();
+        final MockConnectionFactory.UriMap uriMap =
+                new MockConnectionFactory(getTargetContext()).getUriMap();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().startsWith(HANG_PATH)) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+                }
+                String resource;
+                try {
+                    resource = uriMap.getUri(Uri.parse(request.getPath()));
+                } catch (RuntimeException e) {
+                    // No fixture for this URI
+                    resource = "__404__";
+                }
+                if ("__404__".equals(resource)) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                try {
+                    return gzip(IOUtils.toString(
+                            Resources.read(getTargetContext(), Resources.getTestUri(resource))));
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        });
+        try {
+            mServer.start();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        ObaPooledConnectionFactory.getInstance().evictAll();
+        // ObaTestCase restores the previous connection factory in after()
+        ObaApi.getDefaultContext().setConnectionFactory(ObaPooledConnectionFactory.getInstance());
+        Application.get().setCustomApiUrl(mServer.url("/").toString());
+    }
+
+    @After
+    public void after() {
+        try {
+            mServer.shutdown();
+        } catch (IOException e) {
+            // Ignore
+        }
+        super.after();
+    }
+
+    @Test
+    public void testSocketReuse() throws InterruptedException {
+        final int ROUNDS = 3;
+        for (int i = 0; i < ROUNDS; i++) {
+            ObaArrivalInfoResponse arrivals =
+                    new ObaArrivalInfoRequest.Builder(getTargetContext(), "1_29261")
+                            .build()
+                            .call();
+            assertOK(arrivals);
+            assertOK(new ObaStopsForLocationRequest.Builder(getTargetContext(),
+                    LocationUtils.makeLocation(47.610980, -122.33845)).build().call());
+            assertOK(ObaRouteRequest.newRequest(getTargetContext(), "1_10").call());
+            assertOK(ObaShapeRequest.newRequest(getTargetContext(), "1_40046045").call());
+        }
+        final int total = ROUNDS * 4;
+        assertEquals(total, mServer.getRequestCount());
+
+        // Sequential requests should all share a single connection
+        int maxSequence = 0;
+        for (int i = 0; i < total; i++) {
+            RecordedRequest request = mServer.takeRequest();
+            assertTrue(request.getHeader("Accept-Encoding").contains("gzip"));
+            maxSequence = Math.max(maxSequence, request.getSequenceNumber());
+        }
+        assertEquals(total - 1, maxSequence);
+        assertEquals(1, ObaPooledConnectionFactory.getInstance().getPooledConnectionCount());
+    }
+
+    @Test
+    public void testNotFound() {
+        ObaStopResponse response =
+                ObaStopRequest.newRequest(getTargetContext(), "1_no_such_stop").call();
+        assertEquals(ObaApi.OBA_NOT_FOUND, response.getCode());
+
+        // The connection must still be usable for the next request
+        assertOK(ObaStopRequest.newRequest(getTargetContext(), "1_29261").call());
+        assertEquals(1, ObaPooledConnectionFactory.getInstance().getPooledConnectionCount());
+    }
+
+    @Test
+    public void testDisconnectAbortsRequest() throws Exception {
+        final ObaConnection connection = ObaPooledConnectionFactory.getInstance()
+                .newConnection(Uri.parse(mServer.url(HANG_PATH).toString()));
+        final CountDownLatch failed = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    connection.get();
+                } catch (IOException e) {
+                    failed.countDown();
+                }
+            }
+        });
+        thread.start();
+        mServer.takeRequest(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // disconnect() must not wait for the request, as it's called from the UI thread
+        long start = System.nanoTime();
+        connection.disconnect();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertTrue(failed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisconnectBeforeRequest() throws Exception {
+        ObaConnection connection = ObaPooledConnectionFactory.getInstance()
+                .newConnection(Uri.parse(mServer.url(HANG_PATH).toString()));
+        connection.disconnect();
+        try {
+            connection.get();
+            assertTrue("get() should have thrown", false);
+        } catch (IOException e) {
+            // Expected - the cancel isn't lost
+        }
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    private static MockResponse gzip(String body) throws IOException {
+        Buffer buffer = new Buffer();
+        GZIPOutputStream out = new GZIPOutputStream(buffer.outputStream());
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setHeader("Content-Encoding", "gzip")
+                .setBody(buffer);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.elements.ObaReferencesElement;
+import org.onebusaway.android.io.elements.ObaStop;
+
+import android.util.Log;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Measures ObaReferencesElement lookup cost against the size of the reference set, compared
+ * to a linear scan of the same elements.  Results are written to logcat under the
+ * "ReferencesBenchmark" tag.
+ */
+public class ReferencesBenchmarkTest extends ObaTestCase {
+
+    private static final String TAG = "ReferencesBenchmark";
+
+    private static final int[] SIZES = {4, 16, 64, 256, 1024, 4096};
+
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void testLookupCost() {
+        for (int size : SIZES) {
+            String[] ids = new String[size];
+            ObaReferencesElement refs = createReferences(size, ids);
+
+            // Correctness, and builds the index outside of the timed section
+            List<ObaStop> stops = refs.getStops(ids);
+            assertEquals(size, stops.size());
+            assertNull(refs.getStop("missing"));
+            ObaStop[] array = stops.toArray(new ObaStop[size]);
+
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (String id : ids) {
+                    assertNotNull(refs.getStop(id));
+                }
+            }
+            long indexed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (String id : ids) {
+                    assertNotNull(linearSearch(array, id));
+                }
+            }
+            long linear = System.nanoTime() - start;
+
+            final int lookups = size * ROUNDS;
+            Log.i(TAG, String.format("%5d stops: indexed %6d ns/lookup, linear %6d ns/lookup",
+                    size, indexed / lookups, linear / lookups));
+        }
+    }
+
+    private static ObaReferencesElement createReferences(int size, String[] ids) {
+        StringBuilder json = new StringBuilder("{\"stops\":[");
+        for (int i = 0; i < size; i++) {
+            ids[i] = "1_" + i;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(ids[i]).append("\"}");
+        }
+        json.append("]}");
+        return ObaApi.getSerializer(ObaReferencesElement.class)
+                .deserializeFromResponse(json.toString(), ObaReferencesElement.class);
+    }
+
+    private static ObaStop linearSearch(ObaStop[] stops, String id) {
+        for (ObaStop stop : stops) {
+            if (stop.getId().equals(id)) {
+                return stop;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaConnection;
+import org.onebusaway.android.io.ObaConnectionFactory;
+import org.onebusaway.android.io.ObaRequestCoalescer;
+import org.onebusaway.android.io.request.ObaArrivalInfoRequest;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaStopRequest;
+import org.onebusaway.android.mock.MockConnectionFactory;
+
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests ObaRequestCoalescer, using the responses in /res/raw and counting the requests that
+ * reach the connection
+ */
+public class RequestCoalescerTest extends ObaTestCase {
+
+    private static final int THREADS = 4;
+
+    private CountingConnectionFactory mFactory;
+
+    private ObaRequestCoalescer mCoalescer;
+
+    private long mOldWindow;
+
+    @Before
+    public void before() {
+        super.before();
+        // ObaTestCase restores the previous connection factory in after()
+        mFactory = new CountingConnectionFactory();
+        ObaApi.getDefaultContext().setConnectionFactory(mFactory);
+        mCoalescer = ObaRequestCoalescer.getInstance();
+        mOldWindow = mCoalescer.getWindow();
+        mCoalescer.setWindow(ObaRequestCoalescer.DEFAULT_WINDOW_MS);
+    }
+
+    @After
+    public void after() {
+        mCoalescer.setWindow(mOldWindow);
+        super.after();
+    }
+
+    @Test
+    public void testCanonicalKey() {
+        assertEquals(ObaRequestCoalescer.getKey(Uri.parse(
+                "http://example.com/api/where/stop/1_1.json?key=test&app_ver=10&app_uid=1")),
+                ObaRequestCoalescer.getKey(Uri.parse(
+                        "http://example.com/api/where/stop/1_1.json?app_uid=2&key=test")));
+        assertEquals(ObaRequestCoalescer.getKey(Uri.parse(
+                "http://example.com/api/where/arrivals.json?minutesAfter=65&key=test")),
+                ObaRequestCoalescer.getKey(Uri.parse(
+                        "http://example.com/api/where/arrivals.json?key=test&minutesAfter=65")));
+        assertTrue(!ObaRequestCoalescer.getKey(Uri.parse(
+                "http://example.com/api/where/arrivals.json?minutesAfter=65&key=test"))
+                .equals(ObaRequestCoalescer.getKey(Uri.parse(
+                        "http://example.com/api/where/arrivals.json?minutesAfter=125&key=test"))));
+    }
+
+    @Test
+    public void testWithinWindow() {
+        int hits = mCoalescer.getHitCount();
+        ObaArrivalInfoResponse first = arrivals();
+        assertOK(first);
+        ObaArrivalInfoResponse second = arrivals();
+        assertSame(first, second);
+        assertEquals(1, mFactory.mCount.get());
+        assertEquals(hits + 1, mCoalescer.getHitCount());
+
+        // Once the window has passed, the request is made again
+        mCoalescer.clear();
+        assertNotSame(first, arrivals());
+        assertEquals(2, mFactory.mCount.get());
+    }
+
+    @Test
+    public void testNoWindow() {
+        mCoalescer.setWindow(0);
+        assertOK(arrivals());
+        assertOK(arrivals());
+        assertEquals(2, mFactory.mCount.get());
+    }
+
+    @Test
+    public void testErrorsAreNotReused() {
+        assertEquals(ObaApi.OBA_INTERNAL_ERROR,
+                ObaStopRequest.newRequest(getTargetContext(), "404test").call().getCode());
+        assertEquals(ObaApi.OBA_INTERNAL_ERROR,
+                ObaStopRequest.newRequest(getTargetContext(), "404test").call().getCode());
+        assertEquals(2, mFactory.mCount.get());
+    }
+
+    @Test
+    public void testConcurrentCallers() throws InterruptedException {
+        // No window, so only the requests made at the same time are shared
+        mCoalescer.setWindow(0);
+        mFactory.mGate = new CountDownLatch(1);
+
+        final ObaArrivalInfoResponse[] responses = new ObaArrivalInfoResponse[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    responses[index] = arrivals();
+                }
+            });
+            threads[i].start();
+        }
+        // Give the other threads time to find the first request in progress
+        Thread.sleep(500);
+        mFactory.mGate.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, mFactory.mCount.get());
+        for (ObaArrivalInfoResponse response : responses) {
+            assertSame(responses[0], response);
+        }
+        assertOK(responses[0]);
+    }
+
+    private static ObaArrivalInfoResponse arrivals() {
+        return ObaArrivalInfoRequest.newRequest(getTargetContext(), "1_29261").call();
+    }
+
+    /**
+     * Serves the mock responses, and counts the requests.  If the gate is set, requests wait
+     * for it to open.
+     */
+    private static final class CountingConnectionFactory implements ObaConnectionFactory {
+
+        private final MockConnectionFactory mMock =
+                new MockConnectionFactory(getTargetContext());
+
+        final AtomicInteger mCount = new AtomicInteger();
+
+        volatile CountDownLatch mGate;
+
+        @Override
+        public ObaConnection newConnection(Uri uri) throws IOException {
+            mCount.incrementAndGet();
+            CountDownLatch gate = mGate;
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.toString());
+                }
+            }
+            return mMock.newConnection(uri);
+        }
+    }
+}
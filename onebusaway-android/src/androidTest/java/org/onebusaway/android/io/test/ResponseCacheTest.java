@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaConnection;
+import org.onebusaway.android.io.ObaConnectionFactory;
+import org.onebusaway.android.io.ObaRequestCoalescer;
+import org.onebusaway.android.io.ObaResponseCache;
+import org.onebusaway.android.io.request.ObaArrivalInfoRequest;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaRouteRequest;
+import org.onebusaway.android.io.request.ObaRouteResponse;
+import org.onebusaway.android.io.request.ObaShapeRequest;
+import org.onebusaway.android.io.request.ObaShapeResponse;
+import org.onebusaway.android.mock.MockConnectionFactory;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests ObaResponseCache, using the responses in /res/raw and counting the requests that reach
+ * the connection
+ */
+public class ResponseCacheTest extends ObaTestCase {
+
+    private CountingConnectionFactory mFactory;
+
+    private ObaResponseCache mCache;
+
+    private long mOldWindow;
+
+    @Before
+    public void before() {
+        super.before();
+        // ObaTestCase restores the previous connection factory and response cache in after()
+        mFactory = new CountingConnectionFactory();
+        ObaApi.getDefaultContext().setConnectionFactory(mFactory);
+        mCache = new ObaResponseCache(new File(getTargetContext().getCacheDir(),
+                "response_cache_test"), ObaResponseCache.DEFAULT_MAX_SIZE_BYTES);
+        mCache.clear();
+        ObaApi.getDefaultContext().setResponseCache(mCache);
+        // Test the cache on its own, without ObaRequestCoalescer returning recent responses
+        mOldWindow = ObaRequestCoalescer.getInstance().getWindow();
+        ObaRequestCoalescer.getInstance().setWindow(0);
+    }
+
+    @After
+    public void after() {
+        ObaRequestCoalescer.getInstance().setWindow(mOldWindow);
+        mCache.clear();
+        super.after();
+    }
+
+    @Test
+    public void testCachedEndpoints() {
+        ObaRouteResponse route = ObaRouteRequest.newRequest(getTargetContext(), "1_10").call();
+        assertOK(route);
+        assertEquals(1, mFactory.mCount);
+
+        route = ObaRouteRequest.newRequest(getTargetContext(), "1_10").call();
+        assertOK(route);
+        assertEquals("1_10", route.getId());
+        assertEquals(1, mFactory.mCount);
+
+        ObaShapeResponse shape = ObaShapeRequest.newRequest(getTargetContext(), "1_40046045")
+                .call();
+        assertOK(shape);
+        int points = shape.getPoints().size();
+        shape = ObaShapeRequest.newRequest(getTargetContext(), "1_40046045").call();
+        assertOK(shape);
+        assertEquals(points, shape.getPoints().size());
+        assertEquals(2, mFactory.mCount);
+
+        assertEquals(2, mCache.getHitCount());
+        assertTrue(mCache.getSizeBytes() > 0);
+    }
+
+    @Test
+    public void testRealtimeEndpointsBypassCache() {
+        for (int i = 0; i < 2; i++) {
+            ObaArrivalInfoResponse response =
+                    new ObaArrivalInfoRequest.Builder(getTargetContext(), "1_29261").build()
+                            .call();
+            assertOK(response);
+        }
+        assertEquals(2, mFactory.mCount);
+        assertEquals(0, mCache.getSizeBytes());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws InterruptedException {
+        final long ttl = 500;
+        mCache.setTtl("route", ttl);
+
+        assertOK(ObaRouteRequest.newRequest(getTargetContext(), "1_10").call());
+        assertEquals(1, mFactory.mCount);
+
+        // Stale - returned from the cache, then refreshed in the background
+        Thread.sleep(ttl + 100);
+        assertOK(ObaRouteRequest.newRequest(getTargetContext(), "1_10").call());
+        assertEquals(1, mCache.getStaleHitCount());
+        assertTrue(mCache.awaitRevalidation(10, TimeUnit.SECONDS));
+        assertEquals(2, mFactory.mCount);
+
+        // The refreshed response is fresh
+        assertOK(ObaRouteRequest.newRequest(getTargetContext(), "1_10").call());
+        assertEquals(2, mFactory.mCount);
+
+        // Too old to return - requested from the server before returning
+        Thread.sleep(2 * ttl + 100);
+        assertOK(ObaRouteRequest.newRequest(getTargetContext(), "1_10").call());
+        assertEquals(3, mFactory.mCount);
+    }
+
+    @Test
+    public void testLruEviction() {
+        ObaResponseCache cache = new ObaResponseCache(new File(getTargetContext().getCacheDir(),
+                "response_cache_test_lru"), 3000);
+        cache.clear();
+        try {
+            Uri a = Uri.parse("http://example.com/api/where/route/a.json?key=test");
+            Uri b = Uri.parse("http://example.com/api/where/route/b.json?key=test");
+            Uri c = Uri.parse("http://example.com/api/where/route/c.json?key=test");
+            String body = new String(new char[1000]).replace('\0', 'x');
+
+            cache.put(a, body);
+            cache.put(b, body);
+            // Use a, so that b is the least recently used
+            assertNotNull(cache.get(a));
+            cache.put(c, body);
+
+            assertTrue(cache.getSizeBytes() <= cache.getMaxSizeBytes());
+            assertNotNull(cache.get(a));
+            assertNull(cache.get(b));
+            assertNotNull(cache.get(c));
+
+            // Not cacheable
+            Uri arrivals = Uri.parse(
+                    "http://example.com/api/where/arrivals-and-departures-for-stop/1_1.json");
+            cache.put(arrivals, body);
+            assertNull(cache.get(arrivals));
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testAppInfoIgnored() {
+        Uri uri = Uri.parse("http://example.com/api/where/route/a.json?key=test&app_uid=1");
+        mCache.put(uri, "{}");
+        assertNotNull(mCache.get(
+                Uri.parse("http://example.com/api/where/route/a.json?key=test&app_uid=2")));
+        assertNull(mCache.get(
+                Uri.parse("http://example.com/api/where/route/a.json?key=other")));
+    }
+
+    /**
+     * Serves the mock responses, and counts the requests
+     */
+    private static final class CountingConnectionFactory implements ObaConnectionFactory {
+
+        private final MockConnectionFactory mMock =
+                new MockConnectionFactory(getTargetContext());
+
+        volatile int mCount = 0;
+
+        @Override
+        public ObaConnection newConnection(Uri uri) throws IOException {
+            mCount++;
+            return mMock.newConnection(uri);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.io.elements.ObaShape;
+import org.onebusaway.android.io.elements.ObaShapeElement;
+import org.onebusaway.android.io.request.ObaShapeRequest;
+import org.onebusaway.android.io.request.ObaShapeResponse;
+import org.onebusaway.android.io.request.ObaStopsForRouteRequest;
+import org.onebusaway.android.io.request.ObaStopsForRouteResponse;
+import org.onebusaway.android.util.DecodedShape;
+import org.onebusaway.android.util.ShapeCache;
+
+import android.location.Location;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the strategies for getting the points of route shapes: decoding to Locations with
+ * ObaShapeElement.decodeLine(), decoding to a DecodedShape, reading from ShapeCache, and
+ * simplifying for a zoom level.  Timings are written to logcat under the "ShapeBenchmark" tag.
+ */
+public class ShapeBenchmarkTest extends ObaTestCase {
+
+    private static final String TAG = "ShapeBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    private static final int ITERATIONS = 20;
+
+    private static final int[] ZOOMS = {10, 13, 16};
+
+    // Encoded polylines and their lengths, from ShapeTest and the shape and stops-for-route
+    // responses in /res/raw
+    private final List<String> mEncoded = new ArrayList<>();
+
+    private final List<Integer> mLengths = new ArrayList<>();
+
+    private int mTotalPoints;
+
+    @Before
+    public void before() {
+        super.before();
+        add("_p~iF~ps|U_ulLnnqC_mqNvxq`@", 3);
+
+        ObaShapeResponse shape = ObaShapeRequest.newRequest(getTargetContext(), "1_40046045")
+                .call();
+        assertOK(shape);
+        add(shape.getRawPoints(), shape.getLength());
+
+        ObaStopsForRouteResponse route = new ObaStopsForRouteRequest.Builder(getTargetContext(),
+                "1_44").build().call();
+        assertOK(route);
+        for (ObaShape s : route.getShapes()) {
+            add(s.getRawPoints(), s.getLength());
+        }
+        ShapeCache.getInstance().clear();
+    }
+
+    private void add(String encoded, int length) {
+        mEncoded.add(encoded);
+        mLengths.add(length);
+        mTotalPoints += length;
+    }
+
+    @Test
+    public void testDecodedShapeMatchesDecodeLine() {
+        for (int i = 0; i < mEncoded.size(); i++) {
+            List<Location> expected = ObaShapeElement.decodeLine(mEncoded.get(i),
+                    mLengths.get(i));
+            DecodedShape decoded = DecodedShape.decode(mEncoded.get(i), mLengths.get(i));
+            assertEquals(expected.size(), decoded.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j).getLatitude(), decoded.getLatitude(j));
+                assertEquals(expected.get(j).getLongitude(), decoded.getLongitude(j));
+            }
+            assertSame(ShapeCache.getInstance().get(mEncoded.get(i), mLengths.get(i)),
+                    ShapeCache.getInstance().get(mEncoded.get(i), mLengths.get(i)));
+        }
+    }
+
+    @Test
+    public void testSimplify() {
+        for (String encoded : mEncoded) {
+            DecodedShape full = DecodedShape.decode(encoded, 0);
+            int previous = 0;
+            for (int zoom : ZOOMS) {
+                DecodedShape simplified = ShapeCache.getInstance().get(encoded, 0, zoom);
+                assertTrue(simplified.size() <= full.size());
+                // More points are kept at higher zoom levels
+                assertTrue(simplified.size() >= previous);
+                previous = simplified.size();
+                if (full.size() > 0) {
+                    // The ends of the line are always kept
+                    assertEquals(full.getLatitude(0), simplified.getLatitude(0));
+                    assertEquals(full.getLongitude(full.size() - 1),
+                            simplified.getLongitude(simplified.size() - 1));
+                }
+            }
+            assertSame(ShapeCache.getInstance().get(encoded, 0),
+                    ShapeCache.getInstance().get(encoded, 0, ShapeCache.MAX_SIMPLIFIED_ZOOM));
+        }
+    }
+
+    @Test
+    public void testDecodeBenchmark() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            decodeLocations();
+            decodeArrays();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decodeLocations();
+        }
+        long locationNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decodeArrays();
+        }
+        long arrayNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        ShapeCache cache = ShapeCache.getInstance();
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int j = 0; j < mEncoded.size(); j++) {
+                cache.get(mEncoded.get(j), mLengths.get(j));
+            }
+        }
+        long cacheNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        StringBuilder simplified = new StringBuilder();
+        for (int zoom : ZOOMS) {
+            int points = 0;
+            start = System.nanoTime();
+            for (int j = 0; j < mEncoded.size(); j++) {
+                points += DecodedShape.decode(mEncoded.get(j), mLengths.get(j))
+                        .simplify(ShapeCache.getTolerance(zoom)).size();
+            }
+            long simplifyNanos = System.nanoTime() - start;
+            simplified.append(String.format(Locale.US,
+                    ", zoom %d: %d points (%.2f ms to decode and simplify)",
+                    zoom, points, simplifyNanos / 1e6));
+        }
+
+        Log.i(TAG, String.format(Locale.US,
+                "%d shapes, %d points: %.2f ms to Locations, %.2f ms to arrays, "
+                        + "%.3f ms from cache%s",
+                mEncoded.size(), mTotalPoints, locationNanos / 1e6, arrayNanos / 1e6,
+                cacheNanos / 1e6, simplified));
+    }
+
+    private void decodeLocations() {
+        for (int j = 0; j < mEncoded.size(); j++) {
+            ObaShapeElement.decodeLine(mEncoded.get(j), mLengths.get(j));
+        }
+    }
+
+    private void decodeArrays() {
+        for (int j = 0; j < mEncoded.size(); j++) {
+            DecodedShape.decode(mEncoded.get(j), mLengths.get(j));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map.test;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaConnection;
+import org.onebusaway.android.io.ObaConnectionFactory;
+import org.onebusaway.android.io.ObaRequestCoalescer;
+import org.onebusaway.android.io.elements.ObaStop;
+import org.onebusaway.android.io.test.ObaTestCase;
+import org.onebusaway.android.map.StopTileCache;
+import org.onebusaway.android.mock.Resources;
+import org.onebusaway.android.util.LocationUtils;
+
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Drives a scripted pan sequence through StopTileCache and counts the stops-for-location
+ * requests that reach the connection
+ */
+public class StopTileCacheTest extends ObaTestCase {
+
+    private static final String SCOPE = "1";
+
+    private static final double LAT = 47.6098;
+
+    private static final double LON = -122.3384;
+
+    private static final double LAT_SPAN = 0.006;
+
+    private static final double LON_SPAN = 0.008;
+
+    private static final double ZOOM = 17;
+
+    // StopTileCache.MAX_TILE_REQUESTS, plus the request for all missing tiles
+    private static final int MAX_REQUESTS_PER_LOAD = 5;
+
+    private CountingConnectionFactory mFactory;
+
+    private long mOldWindow;
+
+    @Before
+    public void before() {
+        super.before();
+        // ObaTestCase restores the previous connection factory in after()
+        mFactory = new CountingConnectionFactory();
+        ObaApi.getDefaultContext().setConnectionFactory(mFactory);
+        StopTileCache.getInstance().clear();
+        // Count every request that reaches the connection
+        mOldWindow = ObaRequestCoalescer.getInstance().getWindow();
+        ObaRequestCoalescer.getInstance().setWindow(0);
+    }
+
+    @After
+    public void after() {
+        ObaRequestCoalescer.getInstance().setWindow(mOldWindow);
+        super.after();
+    }
+
+    @Test
+    public void testPanSequence() {
+        final int STEPS = 20;
+        final double STEP = 0.001;
+        int pans = 0;
+
+        // Pan east, then back west over the same area
+        for (int i = 0; i <= STEPS; i++) {
+            load(LAT, LON + i * STEP);
+            pans++;
+        }
+        final int eastRequests = mFactory.mCount;
+        for (int i = STEPS; i >= 0; i--) {
+            load(LAT, LON + i * STEP);
+            pans++;
+        }
+
+        // Every tile was loaded on the way east, so panning back is free
+        assertEquals(eastRequests, mFactory.mCount);
+        // One request for the initial view, then one per new column of tiles
+        assertTrue("Made " + mFactory.mCount + " requests for " + pans + " pans",
+                mFactory.mCount <= 2 + Math.ceil(STEPS * STEP / getTileSize(ZOOM)));
+    }
+
+    @Test
+    public void testStopsAreNotDuplicated() {
+        // Load overlapping views, then make sure each stop appears once in the merged result
+        load(LAT, LON);
+        load(LAT + 0.003, LON + 0.004);
+        StopTileCache.Result result = load(LAT + 0.0015, LON + 0.002);
+        assertEquals(ObaApi.OBA_OK, result.getResponse().getCode());
+        HashSet<String> ids = new HashSet<>();
+        for (ObaStop stop : result.getStops()) {
+            assertTrue(ids.add(stop.getId()));
+            assertTrue(result.getRefs().getRoutes(stop.getRouteIds()).size() > 0);
+        }
+    }
+
+    @Test
+    public void testScopeChangeClearsCache() {
+        load(LAT, LON);
+        final int count = mFactory.mCount;
+        load(LAT, LON);
+        assertEquals(count, mFactory.mCount);
+        StopTileCache.getInstance().getStops(getTargetContext(), "2",
+                LocationUtils.makeLocation(LAT, LON), LAT_SPAN, LON_SPAN, ZOOM);
+        assertEquals(count + 1, mFactory.mCount);
+    }
+
+    @Test
+    public void testLimitExceededPanSequence() {
+        final int STEPS = 20;
+        final double STEP = 0.001;
+        // Every response exceeds the server's limit, as in a dense downtown
+        mFactory.mLimitExceeded = true;
+
+        // Pan east and back twice, as a user browsing downtown would
+        int loads = 0;
+        int maxPerLoad = 0;
+        int firstRound = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int i = -STEPS; i <= STEPS; i++) {
+                int before = mFactory.mCount;
+                StopTileCache.Result result = load(LAT, LON + (STEPS - Math.abs(i)) * STEP);
+                assertEquals(ObaApi.OBA_OK, result.getResponse().getCode());
+                assertTrue(result.getStops().size() > 0);
+                maxPerLoad = Math.max(maxPerLoad, mFactory.mCount - before);
+                loads++;
+            }
+            if (round == 0) {
+                firstRound = mFactory.mCount;
+            }
+        }
+
+        // Truncated tiles are cached until INCOMPLETE_TILE_TTL_MS, so the second round and the
+        // way back are free
+        assertEquals(firstRound, mFactory.mCount);
+        assertTrue("Made " + maxPerLoad + " requests in one load",
+                maxPerLoad <= MAX_REQUESTS_PER_LOAD);
+        assertTrue("Made " + mFactory.mCount + " requests for " + loads + " pans",
+                mFactory.mCount <= MAX_REQUESTS_PER_LOAD
+                        * (2 + Math.ceil(STEPS * STEP / getTileSize(ZOOM))));
+    }
+
+    private StopTileCache.Result load(double lat, double lon) {
+        return StopTileCache.getInstance().getStops(getTargetContext(), SCOPE,
+                LocationUtils.makeLocation(lat, lon), LAT_SPAN, LON_SPAN, ZOOM);
+    }
+
+    /**
+     * @return the width of a StopTileCache tile at the given zoom level, in degrees
+     */
+    private static double getTileSize(double zoom) {
+        return 360.0 / (1 << ((int) Math.floor(zoom) - 1));
+    }
+
+    /**
+     * Serves the downtown Seattle stops-for-location fixture for every request, and counts them.
+     * The fixture exceeded the server's limit, so limitExceeded is replaced by mLimitExceeded.
+     */
+    private static final class CountingConnectionFactory implements ObaConnectionFactory {
+
+        int mCount = 0;
+
+        boolean mLimitExceeded = false;
+
+        @Override
+        public ObaConnection newConnection(Uri uri) throws IOException {
+            assertTrue(uri.getPath().endsWith("stops-for-location.json"));
+            mCount++;
+            return new ObaConnection() {
+                @Override
+                public void disconnect() {
+                }
+
+                @Override
+                public Reader get() throws IOException {
+                    String json = IOUtils.toString(Resources.read(getTargetContext(),
+                            Resources.getTestUri("stops_for_location_downtown_seattle1")));
+                    return new StringReader(json.replace("\"limitExceeded\":true",
+                            "\"limitExceeded\":" + mLimitExceeded));
+                }
+
+                @Override
+                public Reader post(String string) throws IOException {
+                    throw new RuntimeException("Not implemented");
+                }
+
+                @Override
+                public int getResponseCode() throws IOException {
+                    return HttpURLConnection.HTTP_OK;
+                }
+            };
+        }
+    }
+}
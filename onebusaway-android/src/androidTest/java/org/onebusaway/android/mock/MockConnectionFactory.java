@@ -48,6 +48,10 @@ public class MockConnectionFactory implements ObaConnectionFactory {
         return new MockConnection(mContext, mUriMap, uri);
     }
 
+    public UriMap getUriMap() {
+        return mUriMap;
+    }
+
     public static class UriMap {
 
         //
@@ -18,6 +18,8 @@ package org.onebusaway.android.mock;
 import org.onebusaway.android.app.Application;
 import org.onebusaway.android.io.ObaApi;
 import org.onebusaway.android.io.ObaConnectionFactory;
+import org.onebusaway.android.io.ObaRequestCoalescer;
+import org.onebusaway.android.io.ObaResponseCache;
 import org.onebusaway.android.io.elements.ObaRegion;
 
 import android.content.Context;
@@ -28,6 +30,8 @@ public class ObaMock {
 
     private final ObaConnectionFactory mOldFactory;
 
+    private final ObaResponseCache mOldResponseCache;
+
     private ObaRegion mOldRegion = null;
 
     private String mOldCustomApiUrl = null;
@@ -35,6 +39,10 @@ public class ObaMock {
     public ObaMock(Context context) {
         mMockFactory = new MockConnectionFactory(context);
         mOldFactory = ObaApi.getDefaultContext().setConnectionFactory(mMockFactory);
+        // Always serve the mock responses, rather than responses cached by the app
+        mOldResponseCache = ObaApi.getDefaultContext().setResponseCache(null);
+        // Don't return responses from other tests
+        ObaRequestCoalescer.getInstance().clear();
 
         // Save the current region or custom API URL
         if (Application.get().getCurrentRegion() != null) {
@@ -46,6 +54,8 @@ public class ObaMock {
 
     public void finish() {
         ObaApi.getDefaultContext().setConnectionFactory(mOldFactory);
+        ObaApi.getDefaultContext().setResponseCache(mOldResponseCache);
+        ObaRequestCoalescer.getInstance().clear();
 
         /*
          * Restore the previous region or custom API URL
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.nav.test;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.onebusaway.android.io.test.ObaTestCase;
+import org.onebusaway.android.mock.Resources;
+import org.onebusaway.android.nav.NavigationLogWriter;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Replays the recorded trips in /res/raw through NavigationLogWriter, and compares the output
+ * and throughput with appending each row to the file with FileUtils, as NavigationService did
+ * before.  Results are written to logcat under the "NavigationLogWriter" tag.
+ */
+public class NavigationLogWriterTest extends ObaTestCase {
+
+    private static final String TAG = "NavigationLogWriter";
+
+    private static final String[] TRIPS = {
+            "nav_trip1", "nav_trip1c", "nav_trip2", "nav_trip2c", "nav_trip3", "nav_trip3c",
+            "nav_trip4", "nav_trip4c", "nav_trip5", "nav_trip5c", "nav_trip6", "nav_trip6c",
+            "nav_trip7", "nav_trip7c", "nav_trip8", "nav_trip8c", "nav_trip9", "nav_trip9c",
+            "nav_trip10", "nav_trip10c", "nav_trip11", "nav_trip11c", "nav_trip12",
+            "nav_trip12c", "nav_trip13", "nav_trip13c", "nav_trip14", "nav_trip14c",
+            "nav_trip15", "nav_trip15c", "nav_trip16", "nav_trip16c", "nav_trip17",
+            "nav_trip18", "nav_trip18c", "nav_trip20", "nav_trip20c", "nav_trip21",
+            "nav_trip21c", "nav_trip22", "nav_trip22c", "nav_trip23", "nav_trip23c",
+            "nav_trip24", "nav_trip24c", "nav_trip25", "nav_trip25c", "nav_trip26",
+            "nav_trip27", "nav_trip28", "nav_trip29", "nav_trip30", "nav_trip31", "nav_trip32",
+            "nav_trip33"};
+
+    @Test
+    public void testReplayTrips() throws IOException {
+        File dir = getTargetContext().getCacheDir();
+        File expectedFile = new File(dir, "nav_log_expected.csv");
+        File actualFile = new File(dir, "nav_log_actual.csv");
+
+        long totalFixes = 0;
+        long totalDirectNanos = 0;
+        long totalWriterNanos = 0;
+
+        try {
+            for (String trip : TRIPS) {
+                List<Row> rows = readTrip(trip);
+                FileUtils.write(expectedFile, "header\n", false);
+                FileUtils.write(actualFile, "header\n", false);
+
+                // Previous implementation - open, append and close the file for each fix
+                long start = System.nanoTime();
+                for (Row row : rows) {
+                    FileUtils.write(expectedFile, format(row), true);
+                }
+                long directNanos = System.nanoTime() - start;
+
+                // Time spent on the caller's thread, then wait for the writer to finish.  Fixes
+                // arrive much faster than 1 Hz here, so size the buffer to not drop any.
+                NavigationLogWriter writer = new NavigationLogWriter(actualFile, rows.size());
+                start = System.nanoTime();
+                for (Row row : rows) {
+                    writer.write(row.mCoordId, row.mGetReady, row.mFinished, row.mLocation);
+                }
+                long writerNanos = System.nanoTime() - start;
+                writer.close();
+
+                assertEquals(0, writer.getDroppedCount());
+                assertEquals(trip, FileUtils.readFileToString(expectedFile),
+                        FileUtils.readFileToString(actualFile));
+
+                totalFixes += rows.size();
+                totalDirectNanos += directNanos;
+                totalWriterNanos += writerNanos;
+            }
+        } finally {
+            expectedFile.delete();
+            actualFile.delete();
+        }
+
+        Log.i(TAG, String.format(Locale.US,
+                "%d fixes: direct append %.1f us/fix, writer %.1f us/fix on caller thread",
+                totalFixes, totalDirectNanos / 1e3 / totalFixes,
+                totalWriterNanos / 1e3 / totalFixes));
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        File file = new File(getTargetContext().getCacheDir(), "nav_log_flush.csv");
+        FileUtils.write(file, "", false);
+        List<Row> rows = readTrip("nav_trip1");
+        NavigationLogWriter writer = new NavigationLogWriter(file);
+        try {
+            StringBuilder expected = new StringBuilder();
+            for (Row row : rows.subList(0, 10)) {
+                writer.write(row.mCoordId, row.mGetReady, row.mFinished, row.mLocation);
+                expected.append(format(row));
+            }
+            // Rows are on disk after flush(), without waiting for the flush interval
+            writer.flush();
+            assertEquals(expected.toString(), FileUtils.readFileToString(file));
+        } finally {
+            writer.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * Formats a row the way NavigationService.writeToLog() did before NavigationLogWriter
+     */
+    private static String format(Row row) {
+        Location l = row.mLocation;
+        String nanoTime = "";
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            nanoTime = Long.toString(l.getElapsedRealtimeNanos());
+        }
+        int satellites = 0;
+        if (l.getExtras() != null) {
+            satellites = l.getExtras().getInt("satellites", 0);
+        }
+        return String.format(Locale.US, "%d,%s,%s,%s,%d,%f,%f,%f,%f,%f,%f,%d,%s\n",
+                row.mCoordId, row.mGetReady, row.mFinished, nanoTime, l.getTime(),
+                l.getLatitude(), l.getLongitude(), l.getAltitude(), l.getSpeed(),
+                l.getBearing(), l.getAccuracy(), satellites, l.getProvider());
+    }
+
+    private static List<Row> readTrip(String name) throws IOException {
+        String csv = IOUtils.toString(Resources.read(getTargetContext(),
+                Resources.getTestUri(name)));
+        String[] lines = csv.split("\n");
+        List<Row> rows = new ArrayList<>(lines.length - 1);
+        // Skip the header - see NavigationTest for the row format
+        for (int i = 1; i < lines.length; i++) {
+            String[] values = lines[i].trim().split(",");
+            Location l = new Location(values[12]);
+            if (!values[3].equals("")
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+                l.setElapsedRealtimeNanos(Long.parseLong(values[3]));
+            }
+            l.setTime(Long.parseLong(values[4]));
+            l.setLatitude(Double.parseDouble(values[5]));
+            l.setLongitude(Double.parseDouble(values[6]));
+            l.setAltitude(Double.parseDouble(values[7]));
+            l.setSpeed(Float.parseFloat(values[8]));
+            l.setBearing(Float.parseFloat(values[9]));
+            l.setAccuracy(Float.parseFloat(values[10]));
+            Bundle extras = new Bundle();
+            extras.putInt("satellites", Integer.parseInt(values[11]));
+            l.setExtras(extras);
+            rows.add(new Row(Integer.parseInt(values[0]), Boolean.parseBoolean(values[1]),
+                    Boolean.parseBoolean(values[2]), l));
+        }
+        return rows;
+    }
+
+    private static final class Row {
+
+        final int mCoordId;
+
+        final boolean mGetReady;
+
+        final boolean mFinished;
+
+        final Location mLocation;
+
+        Row(int coordId, boolean getReady, boolean finished, Location location) {
+            mCoordId = coordId;
+            mGetReady = getReady;
+            mFinished = finished;
+            mLocation = location;
+        }
+    }
+}
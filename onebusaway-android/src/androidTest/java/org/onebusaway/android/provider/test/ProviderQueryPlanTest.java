@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.provider.test;
+
+import org.onebusaway.android.provider.ObaContract;
+import org.onebusaway.android.provider.ObaProvider;
+
+import android.net.Uri;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the queries that ObaContract and the trip service make with a
+ * selection, and fails if any of them scans a whole table instead of using an index.  Deletes
+ * are checked as queries with the same selection.
+ */
+public class ProviderQueryPlanTest extends ProviderTestCase2<ObaProvider> {
+
+    private static final String TAG = "ProviderQueryPlanTest";
+
+    public ProviderQueryPlanTest() {
+        super(ObaProvider.class, ObaContract.AUTHORITY);
+    }
+
+    public void testStops() {
+        assertUsesIndex(Uri.withAppendedPath(ObaContract.Stops.CONTENT_URI, "1_29261"),
+                null, null);
+        assertUsesIndex(ObaContract.Stops.CONTENT_URI,
+                ObaContract.Stops._ID + "=?", new String[]{"1_29261"});
+    }
+
+    public void testRoutes() {
+        assertUsesIndex(Uri.withAppendedPath(ObaContract.Routes.CONTENT_URI, "1_10"),
+                null, null);
+        assertUsesIndex(ObaContract.Routes.CONTENT_URI,
+                ObaContract.Routes._ID + "=?", new String[]{"1_10"});
+    }
+
+    public void testTrips() {
+        assertUsesIndex(ObaContract.Trips.buildUri("1_12345", "1_29261"), null, null);
+    }
+
+    public void testTripAlerts() {
+        // SchedulerTask.scheduleAlert() and TripAlerts.insertIfNotExists()
+        assertUsesIndex(ObaContract.TripAlerts.CONTENT_URI,
+                String.format("%s=? AND %s=? AND %s=?",
+                        ObaContract.TripAlerts.TRIP_ID,
+                        ObaContract.TripAlerts.STOP_ID,
+                        ObaContract.TripAlerts.START_TIME),
+                new String[]{"1_12345", "1_29261", "1500000000000"});
+        // SchedulerTask.cleanupOldAlerts()
+        assertUsesIndex(ObaContract.TripAlerts.CONTENT_URI,
+                ObaContract.TripAlerts.START_TIME + " < 1500000000000", null);
+        assertUsesIndex(ObaContract.TripAlerts.buildUri(1), null, null);
+        // PollerTask reminders
+        assertUsesIndex(ObaContract.TripAlerts.REMINDERS_URI,
+                ObaContract.TripAlerts.PATH + "." + ObaContract.TripAlerts.STOP_ID
+                        + " IN (?,?) AND " + ObaContract.TripAlerts.STATE + "!="
+                        + ObaContract.TripAlerts.STATE_CANCELLED,
+                new String[]{"1_29261", "1_29262"});
+    }
+
+    public void testStopRouteFilters() {
+        assertUsesIndex(ObaContract.StopRouteFilters.CONTENT_URI,
+                ObaContract.StopRouteFilters.STOP_ID + "=?", new String[]{"1_29261"});
+    }
+
+    public void testServiceAlerts() {
+        assertUsesIndex(ObaContract.ServiceAlerts.CONTENT_URI,
+                ObaContract.ServiceAlerts._ID + "=? AND " + ObaContract.ServiceAlerts.HIDDEN
+                        + "=?", new String[]{"1_1234", "1"});
+    }
+
+    public void testRegions() {
+        assertUsesIndex(ObaContract.Regions.buildUri(1), null, null);
+        assertUsesIndex(ObaContract.RegionBounds.CONTENT_URI,
+                "(" + ObaContract.RegionBounds.REGION_ID + " = 1)", null);
+        assertUsesIndex(ObaContract.RegionOpen311Servers.CONTENT_URI,
+                "(" + ObaContract.RegionOpen311Servers.REGION_ID + " = 1)", null);
+    }
+
+    public void testRouteHeadsignFavorites() {
+        String[] args = {"1_10", "Downtown", "1_29261", "0"};
+        assertUsesIndex(ObaContract.RouteHeadsignFavorites.CONTENT_URI,
+                ObaContract.RouteHeadsignFavorites.ROUTE_ID + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.HEADSIGN + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.STOP_ID + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.EXCLUDE + "=?", args);
+        assertUsesIndex(ObaContract.RouteHeadsignFavorites.CONTENT_URI,
+                ObaContract.RouteHeadsignFavorites.ROUTE_ID + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.HEADSIGN + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.STOP_ID + "=?",
+                new String[]{"1_10", "Downtown", "1_29261"});
+        assertUsesIndex(ObaContract.RouteHeadsignFavorites.CONTENT_URI,
+                ObaContract.RouteHeadsignFavorites.ROUTE_ID + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.HEADSIGN + "=?",
+                new String[]{"1_10", "Downtown"});
+        assertUsesIndex(ObaContract.RouteHeadsignFavorites.CONTENT_URI,
+                ObaContract.RouteHeadsignFavorites.ROUTE_ID + "=? AND "
+                        + ObaContract.RouteHeadsignFavorites.EXCLUDE + "=?",
+                new String[]{"1_10", "0"});
+    }
+
+    public void testNavStops() {
+        assertUsesIndex(ObaContract.NavStops.CONTENT_URI, ObaContract.NavStops.NAV_ID + "=?",
+                new String[]{"1"}, ObaContract.NavStops.SEQUENCE + " ASC");
+    }
+
+    private void assertUsesIndex(Uri uri, String selection, String[] selectionArgs) {
+        assertUsesIndex(uri, selection, selectionArgs, null);
+    }
+
+    /**
+     * Fails if the plan of the query scans a table, rather than searching it with an index
+     */
+    private void assertUsesIndex(Uri uri, String selection, String[] selectionArgs,
+            String sortOrder) {
+        List<String> plan = getProvider().getQueryPlan(uri, null, selection, selectionArgs,
+                sortOrder);
+        assertFalse(plan.isEmpty());
+        for (String detail : plan) {
+            Log.d(TAG, uri + " " + selection + ": " + detail);
+            assertFalse("Full scan for " + uri + " where " + selection + ": " + detail,
+                    detail.startsWith("SCAN"));
+        }
+    }
+}
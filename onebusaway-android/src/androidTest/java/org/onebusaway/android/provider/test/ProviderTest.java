@@ -19,17 +19,27 @@ import org.junit.Test;
 import org.onebusaway.android.provider.ObaContract;
 import org.onebusaway.android.provider.ObaProvider;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
 
 /**
  * Tests the provider that stores and reads persistent OBA data on the device
  */
 public class ProviderTest extends ProviderTestCase2<ObaProvider> {
 
+    private static final String TAG = "ProviderTest";
+
+    private static final int BENCHMARK_STOPS = 1000;
+
     public ProviderTest() {
         super(ObaProvider.class, ObaContract.AUTHORITY);
     }
@@ -143,4 +153,142 @@ public class ProviderTest extends ProviderTestCase2<ObaProvider> {
         assertEquals(c.getCount(), 1);
         c.close();
     }
+
+    public void testUpsert() {
+        ContentResolver cr = getMockContentResolver();
+        final String stopId = "1_11060-TEST";
+        ContentValues values = newStopValues(stopId);
+        values.put(ObaContract.Stops.USE_COUNT, 1);
+
+        Uri uri = cr.insert(ObaContract.getUpsertUri(ObaContract.Stops.CONTENT_URI, true),
+                values);
+        assertEquals(Uri.withAppendedPath(ObaContract.Stops.CONTENT_URI, stopId), uri);
+        assertUseCount(cr, uri, 1);
+
+        // Columns that aren't in the values, like FAVORITE, must be kept
+        ContentValues favorite = new ContentValues();
+        favorite.put(ObaContract.Stops.FAVORITE, 1);
+        assertEquals(1, cr.update(uri, favorite, null, null));
+
+        values = newStopValues(stopId);
+        values.put(ObaContract.Stops.NAME, "Broadway & Denny");
+        values.put(ObaContract.Stops.USE_COUNT, 1);
+        uri = cr.insert(ObaContract.getUpsertUri(ObaContract.Stops.CONTENT_URI, true), values);
+        assertUseCount(cr, uri, 2);
+
+        // Without incrementing the use count
+        uri = cr.insert(ObaContract.getUpsertUri(ObaContract.Stops.CONTENT_URI, false),
+                newStopValues(stopId));
+        assertUseCount(cr, uri, 2);
+
+        Cursor c = cr.query(uri, new String[]{ObaContract.Stops.FAVORITE}, null, null, null);
+        assertNotNull(c);
+        assertEquals(1, c.getCount());
+        c.moveToNext();
+        assertEquals(1, c.getInt(0));
+        c.close();
+
+        c = cr.query(ObaContract.Stops.CONTENT_URI, new String[]{ObaContract.Stops._COUNT},
+                null, null, null);
+        assertNotNull(c);
+        c.moveToNext();
+        assertEquals(1, c.getInt(0));
+        c.close();
+    }
+
+    public void testApplyBatch() throws Exception {
+        ContentResolver cr = getMockContentResolver();
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ops.add(ContentProviderOperation.newInsert(ObaContract.Stops.CONTENT_URI)
+                    .withValues(newStopValues("1_" + i))
+                    .build());
+        }
+        ops.add(ContentProviderOperation.newDelete(
+                Uri.withAppendedPath(ObaContract.Stops.CONTENT_URI, "1_0")).build());
+        ContentProviderResult[] results = cr.applyBatch(ObaContract.AUTHORITY, ops);
+        assertEquals(ops.size(), results.length);
+        assertEquals(1, (int) results[results.length - 1].count);
+        assertEquals(9, getStopCount(cr));
+    }
+
+    /**
+     * Logs the time to write BENCHMARK_STOPS stops with individual inserts, bulkInsert() and
+     * applyBatch()
+     */
+    public void testInsertBenchmark() throws Exception {
+        ContentResolver cr = getMockContentResolver();
+        ContentValues[] values = new ContentValues[BENCHMARK_STOPS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = newStopValues("1_" + i);
+        }
+
+        long start = System.nanoTime();
+        for (ContentValues v : values) {
+            cr.insert(ObaContract.Stops.CONTENT_URI, v);
+        }
+        long insertNanos = System.nanoTime() - start;
+        assertEquals(BENCHMARK_STOPS, getStopCount(cr));
+        cr.delete(ObaContract.Stops.CONTENT_URI, null, null);
+
+        start = System.nanoTime();
+        assertEquals(BENCHMARK_STOPS, cr.bulkInsert(ObaContract.Stops.CONTENT_URI, values));
+        long bulkInsertNanos = System.nanoTime() - start;
+        assertEquals(BENCHMARK_STOPS, getStopCount(cr));
+        cr.delete(ObaContract.Stops.CONTENT_URI, null, null);
+
+        start = System.nanoTime();
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(values.length);
+        for (ContentValues v : values) {
+            ops.add(ContentProviderOperation.newInsert(ObaContract.Stops.CONTENT_URI)
+                    .withValues(v)
+                    .build());
+        }
+        cr.applyBatch(ObaContract.AUTHORITY, ops);
+        long batchNanos = System.nanoTime() - start;
+        assertEquals(BENCHMARK_STOPS, getStopCount(cr));
+
+        // Upsert the same stops again, as an update of each one
+        start = System.nanoTime();
+        cr.bulkInsert(ObaContract.getUpsertUri(ObaContract.Stops.CONTENT_URI, true), values);
+        long upsertNanos = System.nanoTime() - start;
+        assertEquals(BENCHMARK_STOPS, getStopCount(cr));
+
+        Log.i(TAG, String.format(Locale.US,
+                "%d stops: %.1f ms with insert(), %.1f ms with bulkInsert(), "
+                        + "%.1f ms with applyBatch(), %.1f ms with upsert bulkInsert()",
+                BENCHMARK_STOPS, insertNanos / 1e6, bulkInsertNanos / 1e6, batchNanos / 1e6,
+                upsertNanos / 1e6));
+    }
+
+    private static ContentValues newStopValues(String stopId) {
+        ContentValues values = new ContentValues();
+        values.put(ObaContract.Stops._ID, stopId);
+        values.put(ObaContract.Stops.CODE, "11060");
+        values.put(ObaContract.Stops.NAME, "Broadway & E Denny Way");
+        values.put(ObaContract.Stops.DIRECTION, "S");
+        values.put(ObaContract.Stops.USE_COUNT, 0);
+        values.put(ObaContract.Stops.LATITUDE, 47.617676);
+        values.put(ObaContract.Stops.LONGITUDE, -122.314523);
+        return values;
+    }
+
+    private static void assertUseCount(ContentResolver cr, Uri uri, int expected) {
+        Cursor c = cr.query(uri, new String[]{ObaContract.Stops.USE_COUNT}, null, null, null);
+        assertNotNull(c);
+        assertEquals(1, c.getCount());
+        c.moveToNext();
+        assertEquals(expected, c.getInt(0));
+        c.close();
+    }
+
+    private static int getStopCount(ContentResolver cr) {
+        Cursor c = cr.query(ObaContract.Stops.CONTENT_URI,
+                new String[]{ObaContract.Stops._COUNT}, null, null, null);
+        assertNotNull(c);
+        c.moveToNext();
+        int count = c.getInt(0);
+        c.close();
+        return count;
+    }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.tripservice.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaConnection;
+import org.onebusaway.android.io.ObaConnectionFactory;
+import org.onebusaway.android.io.ObaRequestCoalescer;
+import org.onebusaway.android.io.test.ObaTestCase;
+import org.onebusaway.android.mock.MockConnectionFactory;
+import org.onebusaway.android.provider.ObaContract;
+import org.onebusaway.android.tripservice.PollerTask;
+import org.onebusaway.android.tripservice.TaskContext;
+
+import android.app.Notification;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+
+/**
+ * Runs PollerTask for trip alerts spread over several stops, and counts the arrivals requests
+ * that reach the connection
+ */
+public class PollerTaskTest extends ObaTestCase {
+
+    // Stops with arrivals responses in /res/raw
+    private static final String[] STOPS = {"1_29261", "1_75403"};
+
+    private static final int ALERTS_PER_STOP = 4;
+
+    private final List<Uri> mAlerts = new ArrayList<>();
+
+    private CountingConnectionFactory mFactory;
+
+    private long mOldWindow;
+
+    @Before
+    public void before() {
+        super.before();
+        // ObaTestCase restores the previous connection factory in after()
+        mFactory = new CountingConnectionFactory();
+        ObaApi.getDefaultContext().setConnectionFactory(mFactory);
+        PollerTask.clearRecentlyPolled();
+        // Count every request that reaches the connection
+        mOldWindow = ObaRequestCoalescer.getInstance().getWindow();
+        ObaRequestCoalescer.getInstance().setWindow(0);
+
+        // Trip IDs don't match any arrivals, so the alerts never fire a notification
+        final long startTime = System.currentTimeMillis();
+        for (int i = 0; i < ALERTS_PER_STOP; i++) {
+            for (String stopId : STOPS) {
+                Uri uri = ObaContract.TripAlerts.insertIfNotExists(getTargetContext(),
+                        "test_trip_" + i, stopId, startTime);
+                assertNotNull(uri);
+                ObaContract.TripAlerts.setState(getTargetContext(), uri,
+                        ObaContract.TripAlerts.STATE_POLLING);
+                mAlerts.add(uri);
+            }
+        }
+    }
+
+    @After
+    public void after() {
+        for (Uri uri : mAlerts) {
+            getTargetContext().getContentResolver().delete(uri, null, null);
+        }
+        PollerTask.clearRecentlyPolled();
+        ObaRequestCoalescer.getInstance().setWindow(mOldWindow);
+        super.after();
+    }
+
+    @Test
+    public void testOneRequestPerStop() {
+        // The alarms for all alerts fire at the same time - one pass per stop makes the requests
+        pollAll();
+        assertEquals(STOPS.length, mFactory.mCount);
+
+        // Next minute, the same again
+        PollerTask.clearRecentlyPolled();
+        pollAll();
+        assertEquals(2 * STOPS.length, mFactory.mCount);
+    }
+
+    @Test
+    public void testRecentlyPolledAlertsAreSkipped() {
+        pollAll();
+        assertEquals(STOPS.length, mFactory.mCount);
+
+        // Alarms delivered again within the same minute don't poll
+        pollAll();
+        assertEquals(STOPS.length, mFactory.mCount);
+    }
+
+    @Test
+    public void testAllAlertsUri() {
+        new PollerTask(getTargetContext(), new NullTaskContext(),
+                ObaContract.TripAlerts.CONTENT_URI).run();
+        assertEquals(STOPS.length, mFactory.mCount);
+    }
+
+    private void pollAll() {
+        for (Uri uri : mAlerts) {
+            new PollerTask(getTargetContext(), new NullTaskContext(), uri).run();
+        }
+    }
+
+    private static final class NullTaskContext implements TaskContext {
+
+        @Override
+        public void taskComplete() {
+        }
+
+        @Override
+        public void setNotification(int id, Notification notification) {
+        }
+
+        @Override
+        public void cancelNotification(int id) {
+        }
+    }
+
+    /**
+     * Serves the mock responses, and counts the arrivals requests
+     */
+    private static final class CountingConnectionFactory implements ObaConnectionFactory {
+
+        private final MockConnectionFactory mMock =
+                new MockConnectionFactory(getTargetContext());
+
+        int mCount = 0;
+
+        @Override
+        public ObaConnection newConnection(Uri uri) throws IOException {
+            if (uri.getPath().contains("arrivals-and-departures-for-stop")) {
+                mCount++;
+            }
+            return mMock.newConnection(uri);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.R;
+import org.onebusaway.android.app.Application;
+import org.onebusaway.android.io.elements.ObaArrivalInfo;
+import org.onebusaway.android.io.elements.ObaRegion;
+import org.onebusaway.android.io.request.ObaArrivalInfoRequest;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.test.ObaTestCase;
+import org.onebusaway.android.mock.MockRegion;
+import org.onebusaway.android.provider.ObaContract;
+import org.onebusaway.android.provider.RouteHeadsignFavoritesIndex;
+import org.onebusaway.android.ui.ArrivalInfo;
+import org.onebusaway.android.util.ArrivalInfoUtils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+
+/**
+ * Measures the time to convert a large arrivals response with
+ * ArrivalInfoUtils.convertObaArrivalInfo(), where favorites are read from
+ * RouteHeadsignFavoritesIndex, against the provider queries and preference reads that each
+ * arrival previously made.  Results are written to logcat under the "ArrivalInfoBenchmark" tag.
+ */
+public class ArrivalInfoBenchmarkTest extends ObaTestCase {
+
+    private static final String TAG = "ArrivalInfoBenchmark";
+
+    private static final String STOP_ID = "Hillsborough Area Regional Transit_6497";
+
+    // The response has 32 arrivals - repeat them for a busy transit center
+    private static final int COPIES = 3;
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static final int ITERATIONS = 10;
+
+    private static final String[][] FAVORITES = {
+            // Route, headsign, stop (null for all stops)
+            {"Hillsborough Area Regional Transit_6", "North to University Area TC", STOP_ID},
+            {"Hillsborough Area Regional Transit_6", "South to Downtown/MTC", null},
+            {"Hillsborough Area Regional Transit_5", "South to Downtown/MTC", null},
+    };
+
+    private ObaArrivalInfo[] mArrivals;
+
+    private long mTime;
+
+    @Before
+    public void before() {
+        super.before();
+        ObaRegion tampa = MockRegion.getTampa(getTargetContext());
+        assertNotNull(tampa);
+        Application.get().setCurrentRegion(tampa);
+
+        ObaArrivalInfoResponse response =
+                new ObaArrivalInfoRequest.Builder(getTargetContext(), STOP_ID).build().call();
+        assertOK(response);
+        ObaArrivalInfo[] arrivals = response.getArrivalInfo();
+        mArrivals = new ObaArrivalInfo[arrivals.length * COPIES];
+        for (int i = 0; i < COPIES; i++) {
+            System.arraycopy(arrivals, 0, mArrivals, i * arrivals.length, arrivals.length);
+        }
+        mTime = response.getCurrentTime();
+
+        for (String[] favorite : FAVORITES) {
+            ObaContract.RouteHeadsignFavorites.markAsFavorite(getTargetContext(), favorite[0],
+                    favorite[1], favorite[2], true);
+        }
+        // Unstar a single stop for a route/headsign that's starred for all stops
+        ObaContract.RouteHeadsignFavorites.markAsFavorite(getTargetContext(), FAVORITES[2][0],
+                FAVORITES[2][1], STOP_ID, false);
+    }
+
+    @After
+    public void after() {
+        for (String[] favorite : FAVORITES) {
+            ObaContract.RouteHeadsignFavorites.markAsFavorite(getTargetContext(), favorite[0],
+                    favorite[1], null, false);
+        }
+        super.after();
+    }
+
+    @Test
+    public void testIndexMatchesProvider() {
+        ArrayList<ArrivalInfo> list = ArrivalInfoUtils.convertObaArrivalInfo(getTargetContext(),
+                mArrivals, null, mTime, true);
+        int favorites = 0;
+        for (ArrivalInfo info : list) {
+            ObaArrivalInfo arrival = info.getInfo();
+            boolean expected = isFavoriteFromProvider(arrival.getRouteId(),
+                    arrival.getHeadsign(), arrival.getStopId());
+            assertEquals(arrival.getRouteId() + " " + arrival.getHeadsign(), expected,
+                    info.isRouteAndHeadsignFavorite());
+            if (expected) {
+                favorites++;
+            }
+        }
+        Log.d(TAG, favorites + " of " + list.size() + " arrivals are favorites");
+    }
+
+    @Test
+    public void testIndexReloadsAfterChange() {
+        RouteHeadsignFavoritesIndex index = RouteHeadsignFavoritesIndex.getInstance();
+        String routeId = "Hillsborough Area Regional Transit_1";
+        String headsign = "UATC to Downtown via Florida Ave";
+        assertEquals(false, index.isFavorite(routeId, headsign, STOP_ID));
+
+        int loads = index.getLoadCount();
+        ObaContract.RouteHeadsignFavorites.markAsFavorite(getTargetContext(), routeId, headsign,
+                STOP_ID, true);
+        try {
+            assertEquals(true, index.isFavorite(routeId, headsign, STOP_ID));
+            assertEquals(loads + 1, index.getLoadCount());
+            // No change - no reload
+            index.isFavorite(routeId, headsign, STOP_ID);
+            assertEquals(loads + 1, index.getLoadCount());
+        } finally {
+            ObaContract.RouteHeadsignFavorites.markAsFavorite(getTargetContext(), routeId,
+                    headsign, STOP_ID, false);
+        }
+        assertEquals(false, index.isFavorite(routeId, headsign, STOP_ID));
+    }
+
+    @Test
+    public void testConversionBenchmark() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            convertWithIndex();
+            convertWithProviderQueries();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            convertWithIndex();
+        }
+        long indexNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            convertWithProviderQueries();
+        }
+        long providerNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        Log.i(TAG, String.format(Locale.US,
+                "%d arrivals per refresh: %.2f ms with index, %.2f ms with provider queries",
+                mArrivals.length, indexNanos / 1e6, providerNanos / 1e6));
+    }
+
+    private void convertWithIndex() {
+        ArrivalInfoUtils.convertObaArrivalInfo(getTargetContext(), mArrivals, null, mTime, true);
+    }
+
+    /**
+     * Converts the arrivals, then adds the provider queries and preference read that each
+     * arrival made before RouteHeadsignFavoritesIndex
+     */
+    private void convertWithProviderQueries() {
+        ArrayList<ArrivalInfo> list = ArrivalInfoUtils.convertObaArrivalInfo(getTargetContext(),
+                mArrivals, null, mTime, true);
+        for (ArrivalInfo info : list) {
+            ObaArrivalInfo arrival = info.getInfo();
+            isFavoriteFromProvider(arrival.getRouteId(), arrival.getHeadsign(),
+                    arrival.getStopId());
+            Application.getPrefs().getBoolean(Application.get().getResources()
+                    .getString(R.string.preference_key_show_negative_arrivals), true);
+        }
+    }
+
+    /**
+     * The previous implementation of ObaContract.RouteHeadsignFavorites.isFavorite(), which
+     * makes up to three provider queries
+     */
+    private static boolean isFavoriteFromProvider(String routeId, String headsign,
+            String stopId) {
+        if (headsign == null) {
+            headsign = "";
+        }
+        final String[] selection = {ObaContract.RouteHeadsignFavorites.ROUTE_ID,
+                ObaContract.RouteHeadsignFavorites.HEADSIGN,
+                ObaContract.RouteHeadsignFavorites.STOP_ID,
+                ObaContract.RouteHeadsignFavorites.EXCLUDE};
+        final String allFields = ObaContract.RouteHeadsignFavorites.ROUTE_ID + "=? AND "
+                + ObaContract.RouteHeadsignFavorites.HEADSIGN + "=? AND "
+                + ObaContract.RouteHeadsignFavorites.STOP_ID + "=? AND "
+                + ObaContract.RouteHeadsignFavorites.EXCLUDE + "=?";
+        final String partial = ObaContract.RouteHeadsignFavorites.ROUTE_ID + "=? AND "
+                + ObaContract.RouteHeadsignFavorites.HEADSIGN + "=? AND "
+                + ObaContract.RouteHeadsignFavorites.STOP_ID + "=?";
+        ContentResolver cr = getTargetContext().getContentResolver();
+        if (hasRows(cr.query(ObaContract.RouteHeadsignFavorites.CONTENT_URI, selection,
+                allFields, new String[]{routeId, headsign, stopId, "0"}, null))) {
+            return true;
+        }
+        if (!hasRows(cr.query(ObaContract.RouteHeadsignFavorites.CONTENT_URI, selection,
+                partial, new String[]{routeId, headsign, "all"}, null))) {
+            return false;
+        }
+        return !hasRows(cr.query(ObaContract.RouteHeadsignFavorites.CONTENT_URI, selection,
+                allFields, new String[]{routeId, headsign, stopId, "1"}, null));
+    }
+
+    private static boolean hasRows(Cursor c) {
+        if (c == null) {
+            return false;
+        }
+        try {
+            return c.getCount() > 0;
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
+import org.onebusaway.android.mock.Resources;
+import org.onebusaway.android.util.AdaptiveRefreshPolicy;
+import org.onebusaway.android.util.RefreshPolicy;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Tests the refresh delays that AdaptiveRefreshPolicy chooses for the recorded responses in
+ * /res/raw
+ */
+@RunWith(AndroidJUnit4.class)
+public class RefreshPolicyTest {
+
+    private static final long FAST = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long NORMAL = TimeUnit.SECONDS.toMillis(60);
+
+    private static final long SLOW = TimeUnit.SECONDS.toMillis(120);
+
+    @Test
+    public void testArrivals() throws IOException {
+        RefreshPolicy policy = AdaptiveRefreshPolicy.newArrivalsPolicy();
+
+        // A real-time arrival in under a minute
+        assertEquals(FAST, policy.getNextDelay(arrivals("1_75403")));
+        // The soonest real-time arrival is 10 minutes away
+        assertEquals(NORMAL, policy.getNextDelay(arrivals("1_29261")));
+        // The soonest real-time arrival (25 minutes) is used rather than a sooner scheduled one
+        assertEquals(NORMAL, policy.getNextDelay(arrivals("mts_13353_route_and_stop_alerts")));
+        // Only scheduled arrivals
+        assertEquals(SLOW, policy.getNextDelay(arrivals("psta_4077_alerts")));
+        // Only an arrival that already happened
+        assertEquals(SLOW, policy.getNextDelay(arrivals("hart_1622_one_past_arrival")));
+        // No arrivals
+        assertEquals(SLOW, policy.getNextDelay(arrivals("dart_4041_alerts")));
+        assertEquals(SLOW, policy.getCurrentDelay());
+    }
+
+    @Test
+    public void testVehicles() throws IOException {
+        RefreshPolicy policy = AdaptiveRefreshPolicy.newVehiclesPolicy();
+        assertEquals(TimeUnit.SECONDS.toMillis(10), policy.getNextDelay(
+                Resources.readAs(getTargetContext(),
+                        Resources.getTestUri("trips_for_route_hart_5"),
+                        ObaTripsForRouteResponse.class)));
+        // Without trip status, there are no real-time positions
+        assertEquals(TimeUnit.SECONDS.toMillis(30), policy.getNextDelay(
+                Resources.readAs(getTargetContext(),
+                        Resources.getTestUri("trips_for_route_hart_5_no_status"),
+                        ObaTripsForRouteResponse.class)));
+    }
+
+    private static ObaArrivalInfoResponse arrivals(String stop) throws IOException {
+        return Resources.readAs(getTargetContext(),
+                Resources.getTestUri("arrivals_and_departures_for_stop_" + stop),
+                ObaArrivalInfoResponse.class);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.onebusaway.android.io.elements.ObaRegion;
+import org.onebusaway.android.region.RegionIndex;
+import org.onebusaway.android.util.LocationUtils;
+import org.onebusaway.android.util.RegionUtils;
+
+import android.location.Location;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import static androidx.test.InstrumentationRegistry.getTargetContext;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks RegionIndex against a scan of every region in the regions resource, and measures the
+ * time for each to find the closest region and test if a location is within a region.  Results
+ * are written to logcat under the "RegionIndexBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RegionIndexBenchmarkTest {
+
+    private static final String TAG = "RegionIndexBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static final int ITERATIONS = 10;
+
+    // The index measures distance on a sphere, and Location.distanceBetween() on the ellipsoid
+    private static final double DISTANCE_TOLERANCE = 0.005;
+
+    private ArrayList<ObaRegion> mRegions;
+
+    private ArrayList<ObaRegion> mUsableRegions;
+
+    private ArrayList<Location> mLocations;
+
+    @Before
+    public void before() {
+        mRegions = RegionUtils.getRegionsFromResources(getTargetContext());
+        assertNotNull(mRegions);
+        mUsableRegions = new ArrayList<>();
+        for (ObaRegion region : mRegions) {
+            if (RegionUtils.isRegionUsable(region)) {
+                mUsableRegions.add(region);
+            }
+        }
+
+        // A grid over the world, and a denser one over the regions in the US
+        mLocations = new ArrayList<>();
+        for (double lat = -80; lat <= 80; lat += 5) {
+            for (double lon = -180; lon < 180; lon += 5) {
+                mLocations.add(LocationUtils.makeLocation(lat, lon));
+            }
+        }
+        for (double lat = 25; lat <= 50; lat += 0.25) {
+            for (double lon = -125; lon <= -70; lon += 0.5) {
+                mLocations.add(LocationUtils.makeLocation(lat, lon));
+            }
+        }
+    }
+
+    @Test
+    public void testClosestRegion() {
+        RegionIndex index = RegionUtils.getRegionIndex(mRegions);
+        assertEquals(mUsableRegions.size(), index.size());
+        // The index is reused for the same regions, and for a new copy of them
+        assertSame(index, RegionUtils.getRegionIndex(mRegions));
+        ArrayList<ObaRegion> copy = RegionUtils.getRegionsFromResources(getTargetContext());
+        assertSame(index, RegionUtils.getRegionIndex(copy));
+        // Regions are returned from the list that was passed in
+        ObaRegion fromCopy = RegionUtils.getClosestRegion(copy, mLocations.get(0), false);
+        assertTrue(copy.contains(fromCopy));
+
+        for (Location loc : mLocations) {
+            ObaRegion expected = getClosestRegionByScan(loc);
+            ObaRegion closest = RegionUtils.getClosestRegion(mRegions, loc, false);
+            assertNotNull(closest);
+            if (closest != expected) {
+                // Only a tie within the difference between the distance calculations
+                double expectedDistance = RegionUtils.getDistanceAway(expected, loc);
+                double distance = RegionUtils.getDistanceAway(closest, loc);
+                assertTrue("Wrong region for " + loc,
+                        distance <= expectedDistance * (1 + DISTANCE_TOLERANCE));
+            }
+        }
+    }
+
+    @Test
+    public void testWithinRegion() {
+        RegionIndex index = RegionUtils.getRegionIndex(mRegions);
+        double[] span = new double[4];
+        for (ObaRegion region : mUsableRegions) {
+            assertTrue(index.contains(region));
+            RegionUtils.getRegionSpan(region, span);
+            for (Location loc : mLocations) {
+                assertEquals(RegionUtils.isLocationWithinRegion(loc, span),
+                        RegionUtils.isLocationWithinRegion(loc, region));
+            }
+        }
+    }
+
+    @Test
+    public void testBenchmark() {
+        RegionIndex index = RegionUtils.getRegionIndex(mRegions);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            closestWithIndex(index);
+            closestWithScan();
+            withinWithIndex(index);
+            withinWithScan();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            closestWithIndex(index);
+        }
+        long closestIndexNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            closestWithScan();
+        }
+        long closestScanNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            withinWithIndex(index);
+        }
+        long withinIndexNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            withinWithScan();
+        }
+        long withinScanNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        int queries = mLocations.size();
+        Log.i(TAG, String.format(Locale.US,
+                "%d regions, %d queries: closest region %.2f us with index, %.2f us with scan; "
+                        + "within region %.3f us with index, %.3f us with spans",
+                mUsableRegions.size(), queries,
+                closestIndexNanos / 1e3 / queries, closestScanNanos / 1e3 / queries,
+                withinIndexNanos / 1e3 / queries, withinScanNanos / 1e3 / queries));
+    }
+
+    private void closestWithIndex(RegionIndex index) {
+        for (Location loc : mLocations) {
+            index.getClosestRegion(loc.getLatitude(), loc.getLongitude(), Double.MAX_VALUE);
+        }
+    }
+
+    private void closestWithScan() {
+        for (Location loc : mLocations) {
+            getClosestRegionByScan(loc);
+        }
+    }
+
+    private void withinWithIndex(RegionIndex index) {
+        ObaRegion region = mUsableRegions.get(0);
+        for (Location loc : mLocations) {
+            index.isLocationWithinRegion(loc.getLatitude(), loc.getLongitude(), region);
+        }
+    }
+
+    /**
+     * Computes the span for each location, as isLocationWithinRegion() did before RegionIndex
+     */
+    private void withinWithScan() {
+        ObaRegion region = mUsableRegions.get(0);
+        for (Location loc : mLocations) {
+            double[] span = new double[4];
+            RegionUtils.getRegionSpan(region, span);
+            RegionUtils.isLocationWithinRegion(loc, span);
+        }
+    }
+
+    /**
+     * The closest usable region, as RegionUtils.getClosestRegion() found it before RegionIndex
+     */
+    private ObaRegion getClosestRegionByScan(Location loc) {
+        float minDist = Float.MAX_VALUE;
+        ObaRegion closestRegion = null;
+        for (ObaRegion region : mUsableRegions) {
+            Float distToRegion = RegionUtils.getDistanceAway(region, loc);
+            if (distToRegion != null && distToRegion < minDist) {
+                closestRegion = region;
+                minDist = distToRegion;
+            }
+        }
+        return closestRegion;
+    }
+}
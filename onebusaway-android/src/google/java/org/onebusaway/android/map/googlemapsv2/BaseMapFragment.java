@@ -72,10 +72,12 @@ import org.onebusaway.android.map.bike.BikeshareMapController;
 import org.onebusaway.android.map.googlemapsv2.bike.BikeStationOverlay;
 import org.onebusaway.android.region.ObaRegionsTask;
 import org.onebusaway.android.ui.LayersSpeedDialAdapter;
+import org.onebusaway.android.util.DecodedShape;
 import org.onebusaway.android.util.LocationHelper;
 import org.onebusaway.android.util.LocationUtils;
 import org.onebusaway.android.util.PermissionUtils;
 import org.onebusaway.android.util.PreferenceUtils;
+import org.onebusaway.android.util.ShapeCache;
 import org.onebusaway.android.util.UIUtils;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 
@@ -162,6 +164,13 @@ public class BaseMapFragment extends SupportMapFragment
 
     private ArrayList<Polyline> mLineOverlay = new ArrayList<Polyline>();
 
+    // Shapes of the polylines in mLineOverlay, so they can be simplified again when the zoom
+    // level changes
+    private ArrayList<ObaShape> mLineOverlayShapes = new ArrayList<ObaShape>();
+
+    // Zoom level that the polylines in mLineOverlay were simplified for
+    private int mLineOverlayZoom;
+
     // Markers that are added to the map by classes external to this map package
     private SimpleMarkerOverlay mSimpleMarkerOverlay;
 
@@ -1019,25 +1028,58 @@ public class BaseMapFragment extends SupportMapFragment
         if (mMap != null) {
             if (clear) {
                 mLineOverlay.clear();
+                mLineOverlayShapes.clear();
             }
             PolylineOptions lineOptions;
 
             int totalPoints = 0;
+            mLineOverlayZoom = (int) getZoomLevelAsFloat();
 
             for (ObaShape s : shapes) {
                 lineOptions = new PolylineOptions();
                 lineOptions.color(lineOverlayColor);
+                lineOptions.addAll(getLinePoints(s, mLineOverlayZoom));
 
-                for (Location l : s.getPoints()) {
-                    lineOptions.add(MapHelpV2.makeLatLng(l));
-                }
                 // Add the line to the map, and keep a reference in the ArrayList
                 mLineOverlay.add(mMap.addPolyline(lineOptions));
+                mLineOverlayShapes.add(s);
 
                 totalPoints += lineOptions.getPoints().size();
             }
 
             Log.d(TAG, "Total points for route polylines = " + totalPoints);
+            Log.d(TAG, ShapeCache.getInstance().toString());
+        }
+    }
+
+    /**
+     * Returns the points of the shape that can be seen at the zoom level
+     */
+    private static List<LatLng> getLinePoints(ObaShape shape, int zoom) {
+        DecodedShape decoded = ShapeCache.getInstance()
+                .get(shape.getRawPoints(), shape.getLength(), zoom);
+        List<LatLng> points = new ArrayList<>(decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            points.add(new LatLng(decoded.getLatitude(i), decoded.getLongitude(i)));
+        }
+        return points;
+    }
+
+    /**
+     * Simplifies the route polylines again if the zoom level changed since they were added
+     */
+    private void updateRouteOverlayZoom() {
+        if (mLineOverlay.isEmpty()) {
+            return;
+        }
+        int zoom = (int) getZoomLevelAsFloat();
+        int maxZoom = ShapeCache.MAX_SIMPLIFIED_ZOOM;
+        if (zoom == mLineOverlayZoom || (zoom >= maxZoom && mLineOverlayZoom >= maxZoom)) {
+            return;
+        }
+        mLineOverlayZoom = zoom;
+        for (int i = 0; i < mLineOverlay.size(); i++) {
+            mLineOverlay.get(i).setPoints(getLinePoints(mLineOverlayShapes.get(i), zoom));
         }
     }
 
@@ -1069,6 +1111,20 @@ public class BaseMapFragment extends SupportMapFragment
         }
     }
 
+    @Override
+    public void pauseVehicleOverlay() {
+        if (mVehicleOverlay != null) {
+            mVehicleOverlay.pause();
+        }
+    }
+
+    @Override
+    public void resumeVehicleOverlay() {
+        if (mVehicleOverlay != null) {
+            mVehicleOverlay.resume();
+        }
+    }
+
     @Override
     public void zoomToRoute() {
         if (mMap != null) {
@@ -1161,6 +1217,7 @@ public class BaseMapFragment extends SupportMapFragment
         }
 
         mLineOverlay.clear();
+        mLineOverlayShapes.clear();
     }
 
     /**
@@ -1199,6 +1256,10 @@ public class BaseMapFragment extends SupportMapFragment
     @Override
     public void onCameraChange(CameraPosition cameraPosition) {
         Log.d(TAG, "onCameraChange");
+        updateRouteOverlayZoom();
+        if (mVehicleOverlay != null) {
+            mVehicleOverlay.onCameraChange();
+        }
         if (mControllers != null) {
             for (MapModeController controller : mControllers) {
                 controller.notifyMapChanged();
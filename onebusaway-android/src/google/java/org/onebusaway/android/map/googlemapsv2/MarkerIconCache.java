@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map.googlemapsv2;
+
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+
+/**
+ * A cache of the Bitmaps and BitmapDescriptors used for stop and vehicle marker icons, shared by
+ * StopOverlay and VehicleOverlay.  Icons are identified by int keys built from the icon kind,
+ * vehicle type, direction and color (see stopKey(), vehicleTemplateKey() and vehicleKey()), and
+ * the cache is bounded by the number of bytes held by its Bitmaps.
+ *
+ * Markers that show the same icon share a single BitmapDescriptor, so populating the map with
+ * hundreds of stops or vehicles doesn't create a new descriptor (and copy of the Bitmap) for
+ * each marker.  Entries are kept in a SparseArray and a linked list in least recently used
+ * order, so looking up an icon that is cached doesn't allocate.
+ */
+public class MarkerIconCache {
+
+    /**
+     * Creates the Bitmap for an icon that isn't in the cache.  Factories get the key of the
+     * icon, so a single factory can create all icons of a kind.
+     */
+    interface IconFactory {
+
+        Bitmap createIcon(int key);
+    }
+
+    private static final int KIND_STOP = 1;
+
+    private static final int KIND_VEHICLE_TEMPLATE = 2;
+
+    private static final int KIND_VEHICLE = 3;
+
+    /**
+     * Maximum number of distinct colors in vehicle keys - the color slot is 8 bits
+     */
+    private static final int MAX_COLORS = 0xFF;
+
+    /**
+     * Upper bound on the size of the cache, in bytes.  A vehicle icon is around 10-20 KB, so this
+     * holds every direction (9) and deviation color (4) for a couple of vehicle types, plus the
+     * stop icons.
+     */
+    private static final int MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private final int mMaxSizeBytes;
+
+    private final SparseArray<Entry> mEntries = new SparseArray<>();
+
+    // Sentinel of the list of entries, from the least (mNext) to the most (mPrev) recently used
+    private final Entry mLru = new Entry(0, null);
+
+    private int mSizeBytes;
+
+    private int mHitCount;
+
+    private int mMissCount;
+
+    private int mEvictionCount;
+
+    // Maps ARGB colors to the slot used in vehicle keys, and slots back to colors
+    private final SparseIntArray mColorSlots = new SparseIntArray();
+
+    private final int[] mSlotColors = new int[MAX_COLORS];
+
+    private static final class Entry {
+
+        final int mKey;
+
+        final Bitmap mBitmap;
+
+        BitmapDescriptor mDescriptor;
+
+        Entry mPrev = this;
+
+        Entry mNext = this;
+
+        Entry(int key, Bitmap bitmap) {
+            mKey = key;
+            mBitmap = bitmap;
+        }
+    }
+
+    private static class SingletonHolder {
+
+        static final MarkerIconCache INSTANCE = new MarkerIconCache();
+    }
+
+    public static MarkerIconCache getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private MarkerIconCache() {
+        // Don't take more than 1/32 of the heap on low-memory devices
+        mMaxSizeBytes = (int) Math.min(MAX_SIZE_BYTES, Runtime.getRuntime().maxMemory() / 32);
+    }
+
+    /**
+     * Returns the key for a stop icon
+     *
+     * @param direction index of the stop direction arrow, between 0 and 15
+     */
+    static int stopKey(int direction) {
+        return makeKey(KIND_STOP, 0, direction, 0);
+    }
+
+    /**
+     * Returns the key for an uncolored vehicle icon, which is used as the template for colored
+     * icons
+     *
+     * @param vehicleType type as defined by GTFS spec, between 0 and 255
+     * @param halfWind    index of the vehicle direction, between 0 and 15
+     */
+    static int vehicleTemplateKey(int vehicleType, int halfWind) {
+        return makeKey(KIND_VEHICLE_TEMPLATE, vehicleType, halfWind, 0);
+    }
+
+    /**
+     * Returns the key for a colored vehicle icon
+     *
+     * @param vehicleType type as defined by GTFS spec, between 0 and 255
+     * @param halfWind    index of the vehicle direction, between 0 and 15
+     * @param color       ARGB color of the icon
+     */
+    int vehicleKey(int vehicleType, int halfWind, int color) {
+        return makeKey(KIND_VEHICLE, vehicleType, halfWind, getColorSlot(color));
+    }
+
+    /**
+     * @return the vehicle type of a key, for factories
+     */
+    static int getVehicleType(int key) {
+        return (key >> 16) & 0xFF;
+    }
+
+    /**
+     * @return the stop direction or vehicle half-wind of a key, for factories
+     */
+    static int getDirection(int key) {
+        return (key >> 8) & 0xF;
+    }
+
+    /**
+     * @return the ARGB color of a key created by vehicleKey(), for factories
+     */
+    synchronized int getColor(int key) {
+        return mSlotColors[key & 0xFF];
+    }
+
+    private static int makeKey(int kind, int vehicleType, int direction, int colorSlot) {
+        return kind << 24 | (vehicleType & 0xFF) << 16 | (direction & 0xF) << 8 | colorSlot;
+    }
+
+    private synchronized int getColorSlot(int color) {
+        int slot = mColorSlots.get(color, -1);
+        if (slot == -1) {
+            if (mColorSlots.size() == MAX_COLORS) {
+                // Shouldn't happen, since there are only a handful of deviation colors, but
+                // don't let two colors share a slot
+                mColorSlots.clear();
+                clear();
+            }
+            slot = mColorSlots.size();
+            mColorSlots.put(color, slot);
+            mSlotColors[slot] = color;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the Bitmap for the given key, creating it with the given factory if it isn't cached
+     *
+     * @param key     key created by one of the *Key() methods
+     * @param factory creates the Bitmap on a cache miss
+     * @return the Bitmap for the given key
+     */
+    Bitmap getBitmap(int key, IconFactory factory) {
+        return getEntry(key, factory).mBitmap;
+    }
+
+    /**
+     * Returns a shared BitmapDescriptor for the given key, creating the Bitmap with the given
+     * factory if it isn't cached
+     *
+     * @param key     key created by one of the *Key() methods
+     * @param factory creates the Bitmap on a cache miss
+     * @return a BitmapDescriptor for the given key, which may be shared with other markers
+     */
+    BitmapDescriptor getDescriptor(int key, IconFactory factory) {
+        Entry entry = getEntry(key, factory);
+        synchronized (entry) {
+            if (entry.mDescriptor == null) {
+                entry.mDescriptor = BitmapDescriptorFactory.fromBitmap(entry.mBitmap);
+            }
+            return entry.mDescriptor;
+        }
+    }
+
+    /**
+     * Adds the Bitmap for the given key if it isn't already cached
+     */
+    void preload(int key, IconFactory factory) {
+        getEntry(key, factory);
+    }
+
+    private Entry getEntry(int key, IconFactory factory) {
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                mHitCount++;
+                unlink(entry);
+                linkLast(entry);
+                return entry;
+            }
+            mMissCount++;
+        }
+        // Create the icon outside the lock, like LruCache.get() - if another thread added the
+        // same icon in the meantime, keep that one
+        Bitmap bitmap = factory.createIcon(key);
+        synchronized (this) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, bitmap);
+                mEntries.put(key, entry);
+                linkLast(entry);
+                mSizeBytes += bitmap.getByteCount();
+                trimToSize();
+            }
+            return entry;
+        }
+    }
+
+    private void trimToSize() {
+        // Always keep the most recently used entry, even if it's larger than the cache
+        while (mSizeBytes > mMaxSizeBytes && mLru.mNext != mLru.mPrev) {
+            Entry eldest = mLru.mNext;
+            unlink(eldest);
+            mEntries.remove(eldest.mKey);
+            mSizeBytes -= eldest.mBitmap.getByteCount();
+            mEvictionCount++;
+        }
+    }
+
+    private void linkLast(Entry entry) {
+        entry.mPrev = mLru.mPrev;
+        entry.mNext = mLru;
+        mLru.mPrev.mNext = entry;
+        mLru.mPrev = entry;
+    }
+
+    private static void unlink(Entry entry) {
+        entry.mPrev.mNext = entry.mNext;
+        entry.mNext.mPrev = entry.mPrev;
+        entry.mPrev = entry;
+        entry.mNext = entry;
+    }
+
+    /**
+     * Removes all icons from the cache
+     */
+    public synchronized void clear() {
+        mEvictionCount += mEntries.size();
+        mEntries.clear();
+        mLru.mPrev = mLru;
+        mLru.mNext = mLru;
+        mSizeBytes = 0;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return the number of bytes held by the cached Bitmaps
+     */
+    public synchronized int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public int getMaxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MarkerIconCache size=%d/%d bytes, hits=%d, misses=%d, evictions=%d",
+                getSizeBytes(), getMaxSizeBytes(), getHitCount(), getMissCount(),
+                getEvictionCount());
+    }
+}
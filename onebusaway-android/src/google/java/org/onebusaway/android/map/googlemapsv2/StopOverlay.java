@@ -31,6 +31,7 @@ import android.graphics.drawable.Drawable;
 import android.location.Location;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.animation.BounceInterpolator;
@@ -40,7 +41,6 @@ import android.widget.Toast;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.Projection;
 import com.google.android.gms.maps.model.BitmapDescriptor;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
@@ -53,7 +53,12 @@ import org.onebusaway.android.io.elements.ObaRoute;
 import org.onebusaway.android.io.elements.ObaStop;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -91,7 +96,9 @@ public class StopOverlay implements MarkerListeners {
 
     private static final int NUM_DIRECTIONS = 9; // 8 directions + undirected mStops
 
-    private static Bitmap[] bus_stop_icons = new Bitmap[NUM_DIRECTIONS];
+    // Stop directions, in the order of the stop icon keys in MarkerIconCache
+    private static final String[] DIRECTIONS = {NORTH, NORTH_WEST, WEST, SOUTH_WEST, SOUTH,
+            SOUTH_EAST, EAST, NORTH_EAST, NO_DIRECTION};
 
     private static int mPx; // Bus stop icon size
 
@@ -175,16 +182,20 @@ public class StopOverlay implements MarkerListeners {
         mOnFocusChangedListener = onFocusChangedListener;
     }
 
+    /**
+     * Shows the stops from a stops response on the map.  These stops replace the stops currently
+     * on the map - markers for stops that are still in the response are kept, and markers for
+     * stops that aren't are removed.
+     */
     public synchronized void populateStops(List<ObaStop> stops, ObaReferences refs) {
-        populate(stops, refs.getRoutes());
+        setupMarkerData();
+        mMarkerData.update(stops, refs.getRoutes());
     }
 
+    /**
+     * Adds the given stops to the map, without removing any stops that are already shown
+     */
     public synchronized void populateStops(List<ObaStop> stops, List<ObaRoute> routes) {
-        populate(stops, routes);
-    }
-
-    private void populate(List<ObaStop> stops, List<ObaRoute> routes) {
-        // Make sure that the MarkerData has been initialized
         setupMarkerData();
         mMarkerData.populate(stops, routes);
     }
@@ -208,7 +219,7 @@ public class StopOverlay implements MarkerListeners {
     }
 
     /**
-     * Cache the BitmapDescriptors that hold the images used for icons
+     * Add the bus stop icons to the shared MarkerIconCache
      */
     private static final void loadIcons() {
         // Initialize variables used for all marker icons
@@ -229,17 +240,27 @@ public class StopOverlay implements MarkerListeners {
         mArrowPaintStroke.setStrokeWidth(1.0f);
         mArrowPaintStroke.setAntiAlias(true);
 
-        bus_stop_icons[0] = createBusStopIcon(NORTH);
-        bus_stop_icons[1] = createBusStopIcon(NORTH_WEST);
-        bus_stop_icons[2] = createBusStopIcon(WEST);
-        bus_stop_icons[3] = createBusStopIcon(SOUTH_WEST);
-        bus_stop_icons[4] = createBusStopIcon(SOUTH);
-        bus_stop_icons[5] = createBusStopIcon(SOUTH_EAST);
-        bus_stop_icons[6] = createBusStopIcon(EAST);
-        bus_stop_icons[7] = createBusStopIcon(NORTH_EAST);
-        bus_stop_icons[8] = createBusStopIcon(NO_DIRECTION);
+        for (int i = 0; i < NUM_DIRECTIONS; i++) {
+            getIconCache().preload(MarkerIconCache.stopKey(i), STOP_ICON_FACTORY);
+        }
+    }
+
+    private static MarkerIconCache getIconCache() {
+        return MarkerIconCache.getInstance();
     }
 
+    /**
+     * Creates the bus stop icon for the index in DIRECTIONS of a key, when it isn't in the
+     * MarkerIconCache
+     */
+    private static final MarkerIconCache.IconFactory STOP_ICON_FACTORY =
+            new MarkerIconCache.IconFactory() {
+                @Override
+                public Bitmap createIcon(int key) {
+                    return createBusStopIcon(DIRECTIONS[MarkerIconCache.getDirection(key)]);
+                }
+            };
+
     /**
      * Creates a bus stop icon with the given direction arrow, or without a direction arrow if
      * the direction is NO_DIRECTION
@@ -544,27 +565,15 @@ public class StopOverlay implements MarkerListeners {
      * @return BitmapDescriptor for the bus stop icon that should be used for that direction
      */
     private static BitmapDescriptor getBitmapDescriptorForBusStopDirection(String direction) {
-        if (direction.equals(NORTH)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[0]);
-        } else if (direction.equals(NORTH_WEST)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[1]);
-        } else if (direction.equals(WEST)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[2]);
-        } else if (direction.equals(SOUTH_WEST)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[3]);
-        } else if (direction.equals(SOUTH)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[4]);
-        } else if (direction.equals(SOUTH_EAST)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[5]);
-        } else if (direction.equals(EAST)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[6]);
-        } else if (direction.equals(NORTH_EAST)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[7]);
-        } else if (direction.equals(NO_DIRECTION)) {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[8]);
-        } else {
-            return BitmapDescriptorFactory.fromBitmap(bus_stop_icons[8]);
+        int index = NUM_DIRECTIONS - 1; // NO_DIRECTION, or unknown
+        for (int i = 0; i < NUM_DIRECTIONS - 1; i++) {
+            if (DIRECTIONS[i].equals(direction)) {
+                index = i;
+                break;
+            }
         }
+        // Markers for stops in the same direction share a single descriptor
+        return getIconCache().getDescriptor(MarkerIconCache.stopKey(index), STOP_ICON_FACTORY);
     }
 
     /**
@@ -678,6 +687,13 @@ public class StopOverlay implements MarkerListeners {
          */
         private static final int FUZZY_MAX_MARKER_COUNT = 200;
 
+        /**
+         * Maximum number of markers added to or removed from the map in a single pass on the
+         * main thread.  Larger diffs are spread over several passes so that other messages
+         * (including frame rendering) get a chance to run in between.
+         */
+        private static final int MAX_MARKER_OPS_PER_PASS = 25;
+
         /**
          * A cached set of markers currently shown on the map, up to roughly
          * FUZZY_MAX_MARKER_COUNT in size.  This is needed to add/remove markers from the map.
@@ -714,6 +730,24 @@ public class StopOverlay implements MarkerListeners {
          */
         private List<ObaRoute> mFocusedRoutes;
 
+        /**
+         * Stops from the last diff update that still need a marker, and stopIds of markers that
+         * still need to be removed.  These are drained by mBatchRunnable.
+         */
+        private final LinkedHashMap<String, ObaStop> mPendingAdds =
+                new LinkedHashMap<String, ObaStop>();
+
+        private final LinkedList<String> mPendingRemoves = new LinkedList<String>();
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        private final Runnable mBatchRunnable = new Runnable() {
+            @Override
+            public void run() {
+                processPendingBatch();
+            }
+        };
+
         MarkerData() {
             mStopMarkers = new HashMap<String, Marker>();
             mStops = new HashMap<Marker, ObaStop>();
@@ -721,6 +755,120 @@ public class StopOverlay implements MarkerListeners {
             mFocusedRoutes = new LinkedList<ObaRoute>();
         }
 
+        /**
+         * Makes the markers on the map match the provided stops, keeping existing markers for
+         * stops that are still in the list.  Markers are added and removed in batches of
+         * MAX_MARKER_OPS_PER_PASS.  At most FUZZY_MAX_MARKER_COUNT stops are shown - if there
+         * are more, the stops farthest from the center of the map are left out.
+         *
+         * @param stops  the stops that should be shown on the map
+         * @param routes the ObaRoutes that serve these stops
+         */
+        synchronized void update(List<ObaStop> stops, List<ObaRoute> routes) {
+            // Replace any work left over from the previous update
+            mPendingAdds.clear();
+            mPendingRemoves.clear();
+
+            if (stops.size() > FUZZY_MAX_MARKER_COUNT) {
+                stops = getClosestStops(stops, FUZZY_MAX_MARKER_COUNT);
+            }
+
+            HashSet<String> ids = new HashSet<String>(stops.size() * 4 / 3 + 1);
+            int kept = 0;
+            for (ObaStop stop : stops) {
+                if (!ids.add(stop.getId())) {
+                    continue;
+                }
+                if (mStopMarkers.containsKey(stop.getId())) {
+                    kept++;
+                } else {
+                    mPendingAdds.put(stop.getId(), stop);
+                }
+            }
+            for (String id : mStopMarkers.keySet()) {
+                if (!ids.contains(id) && (mCurrentFocusStop == null
+                        || !id.equals(mCurrentFocusStop.getId()))) {
+                    mPendingRemoves.add(id);
+                }
+            }
+
+            // Only keep the routes of the stops that will be shown, so panning doesn't grow
+            // mStopRoutes
+            HashMap<String, ObaRoute> available = new HashMap<String, ObaRoute>(mStopRoutes);
+            for (ObaRoute route : routes) {
+                available.put(route.getId(), route);
+            }
+            mStopRoutes.clear();
+            for (ObaStop stop : stops) {
+                for (String routeId : stop.getRouteIds()) {
+                    ObaRoute route = available.get(routeId);
+                    if (route != null) {
+                        mStopRoutes.put(routeId, route);
+                    }
+                }
+            }
+            addRoutes(mFocusedRoutes);
+
+            Log.d(TAG, "Stop marker update - added " + mPendingAdds.size() + ", kept " + kept
+                    + ", removed " + mPendingRemoves.size());
+
+            mHandler.removeCallbacks(mBatchRunnable);
+            processPendingBatch();
+        }
+
+        /**
+         * Removes, then adds, up to MAX_MARKER_OPS_PER_PASS markers from the pending diff, and
+         * schedules another pass if there's work left
+         */
+        private synchronized void processPendingBatch() {
+            int ops = 0;
+            while (ops < MAX_MARKER_OPS_PER_PASS && !mPendingRemoves.isEmpty()) {
+                Marker m = mStopMarkers.remove(mPendingRemoves.removeFirst());
+                if (m != null) {
+                    mStops.remove(m);
+                    m.remove();
+                }
+                ops++;
+            }
+            Iterator<ObaStop> i = mPendingAdds.values().iterator();
+            while (ops < MAX_MARKER_OPS_PER_PASS && i.hasNext()) {
+                ObaStop stop = i.next();
+                i.remove();
+                if (!mStopMarkers.containsKey(stop.getId())) {
+                    addMarkerToMap(stop);
+                }
+                ops++;
+            }
+            if (!mPendingRemoves.isEmpty() || !mPendingAdds.isEmpty()) {
+                mHandler.post(mBatchRunnable);
+            }
+        }
+
+        /**
+         * Returns the given number of stops that are closest to the center of the map
+         */
+        private List<ObaStop> getClosestStops(List<ObaStop> stops, int count) {
+            LatLng center = mMap.getCameraPosition().target;
+            final double lat = center.latitude;
+            final double lon = center.longitude;
+            // Scale longitude differences so they're comparable with latitude differences
+            final double lonScale = Math.cos(Math.toRadians(lat));
+            ArrayList<ObaStop> sorted = new ArrayList<ObaStop>(stops);
+            Collections.sort(sorted, new Comparator<ObaStop>() {
+                @Override
+                public int compare(ObaStop a, ObaStop b) {
+                    return Double.compare(distanceSq(a), distanceSq(b));
+                }
+
+                private double distanceSq(ObaStop stop) {
+                    double dLat = stop.getLatitude() - lat;
+                    double dLon = (stop.getLongitude() - lon) * lonScale;
+                    return dLat * dLat + dLon * dLon;
+                }
+            });
+            return sorted.subList(0, count);
+        }
+
         synchronized void populate(List<ObaStop> stops, List<ObaRoute> routes) {
             int count = 0;
 
@@ -734,14 +882,17 @@ public class StopOverlay implements MarkerListeners {
 
                 // Make sure the currently focused stop still exists on the map
                 if (mCurrentFocusStop != null && mFocusedRoutes != null) {
-                    addMarkerToMap(mCurrentFocusStop, mFocusedRoutes);
+                    addRoutes(mFocusedRoutes);
+                    addMarkerToMap(mCurrentFocusStop);
                     count++;
                 }
             }
 
+            addRoutes(routes);
             for (ObaStop stop : stops) {
                 if (!mStopMarkers.containsKey(stop.getId())) {
-                    addMarkerToMap(stop, routes);
+                    addMarkerToMap(stop);
+                    mPendingAdds.remove(stop.getId());
                     count++;
                 }
             }
@@ -753,9 +904,8 @@ public class StopOverlay implements MarkerListeners {
          * Places a marker on the map for this stop, and adds it to our marker HashMap
          *
          * @param stop   ObaStop that should be shown on the map
-         * @param routes A list of ObaRoutes that serve this stop
          */
-        private void addMarkerToMap(ObaStop stop, List<ObaRoute> routes) {
+        private void addMarkerToMap(ObaStop stop) {
             Marker m = mMap.addMarker(new MarkerOptions()
                             .position(MapHelpV2.makeLatLng(stop.getLocation()))
                             .icon(getBitmapDescriptorForBusStopDirection(stop.getDirection()))
@@ -765,6 +915,14 @@ public class StopOverlay implements MarkerListeners {
             );
             mStopMarkers.put(stop.getId(), m);
             mStops.put(m, stop);
+        }
+
+        /**
+         * Adds ObaRoutes to our route HashMap
+         *
+         * @param routes A list of ObaRoutes that serve stops on the map
+         */
+        private void addRoutes(List<ObaRoute> routes) {
             for (ObaRoute route : routes) {
                 // ObaRoutes may have already been added for other stops, so check before adding
                 if (!mStopRoutes.containsKey(route.getId())) {
@@ -919,6 +1077,11 @@ public class StopOverlay implements MarkerListeners {
          * @param clearFocusedStop true to clear the currently focused stop, false to leave it on map
          */
         synchronized void clear(boolean clearFocusedStop) {
+            // Cancel any diff updates that are still in progress
+            mHandler.removeCallbacks(mBatchRunnable);
+            mPendingAdds.clear();
+            mPendingRemoves.clear();
+
             if (mStopMarkers != null) {
                 // Clear all markers from the map
                 removeMarkersFromMap();
@@ -937,7 +1100,8 @@ public class StopOverlay implements MarkerListeners {
             } else {
                 // Make sure the currently focused stop still exists on the map
                 if (mCurrentFocusStop != null && mFocusedRoutes != null) {
-                    addMarkerToMap(mCurrentFocusStop, mFocusedRoutes);
+                    addRoutes(mFocusedRoutes);
+                    addMarkerToMap(mCurrentFocusStop);
                 }
             }
         }
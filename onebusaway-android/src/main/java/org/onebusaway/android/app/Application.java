@@ -20,13 +20,12 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PackageManager.NameNotFoundException;
 import android.hardware.GeomagneticField;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
@@ -41,9 +40,12 @@ import com.microsoft.embeddedsocial.sdk.EmbeddedSocial;
 
 import org.onebusaway.android.BuildConfig;
 import org.onebusaway.android.R;
+import org.onebusaway.android.io.JacksonWarmUp;
 import org.onebusaway.android.io.ObaAnalytics;
 import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaResponseCache;
 import org.onebusaway.android.io.elements.ObaRegion;
+import org.onebusaway.android.map.StopTileCache;
 import org.onebusaway.android.provider.ObaContract;
 import org.onebusaway.android.report.ui.util.SocialReportHandler;
 import org.onebusaway.android.ui.social.SocialAppProfile;
@@ -53,6 +55,7 @@ import org.onebusaway.android.util.EmbeddedSocialUtils;
 import org.onebusaway.android.util.LocationUtils;
 import org.onebusaway.android.util.PreferenceUtils;
 
+import java.io.File;
 import java.security.MessageDigest;
 import java.util.Iterator;
 import java.util.List;
@@ -79,6 +82,23 @@ public class Application extends MultiDexApplication {
     public static final String CHANNEL_ARRIVAL_REMINDERS_ID = "arrival_reminders";
     public static final String CHANNEL_DESTINATION_ALERT_ID = "destination_alerts";
 
+    // Names of the startup tasks
+    private static final String STARTUP_OBA = "oba";
+
+    private static final String STARTUP_LIFECYCLE = "lifecycle";
+
+    private static final String STARTUP_REGION = "region";
+
+    private static final String STARTUP_OPEN311 = "open311";
+
+    private static final String STARTUP_ANALYTICS = "analytics";
+
+    private static final String STARTUP_NOTIFICATIONS = "notifications";
+
+    private static final String STARTUP_JACKSON = "jackson";
+
+    private static final String STARTUP_FIRST_FRAME = "first_frame";
+
     private SharedPreferences mPrefs;
 
     private static Application mApp;
@@ -101,6 +121,10 @@ public class Application extends MultiDexApplication {
 
     private FirebaseAnalytics mFirebaseAnalytics;
 
+    private StartupPipeline mStartup;
+
+    private boolean mFirstFrameReported;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -108,6 +132,56 @@ public class Application extends MultiDexApplication {
         mApp = this;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 
+        // Only what the first frame needs runs on the main thread.  Code that needs the region
+        // before it's read waits for it in getCurrentRegion() and awaitRegion().
+        mStartup = new StartupPipeline()
+                .add(STARTUP_OBA, StartupPipeline.MAIN, new Runnable() {
+                    @Override
+                    public void run() {
+                        initOba();
+                    }
+                })
+                .add(STARTUP_LIFECYCLE, StartupPipeline.MAIN, new Runnable() {
+                    @Override
+                    public void run() {
+                        observeProcessLifecycle();
+                    }
+                })
+                .add(STARTUP_REGION, StartupPipeline.BACKGROUND, new Runnable() {
+                    @Override
+                    public void run() {
+                        initObaRegion();
+                    }
+                })
+                .add(STARTUP_OPEN311, StartupPipeline.BACKGROUND, new Runnable() {
+                    @Override
+                    public void run() {
+                        initOpen311(getCurrentRegion());
+                    }
+                }, STARTUP_REGION)
+                .add(STARTUP_ANALYTICS, StartupPipeline.BACKGROUND, new Runnable() {
+                    @Override
+                    public void run() {
+                        reportAnalytics();
+                    }
+                }, STARTUP_REGION)
+                .add(STARTUP_NOTIFICATIONS, StartupPipeline.BACKGROUND, new Runnable() {
+                    @Override
+                    public void run() {
+                        createNotificationChannels();
+                    }
+                })
+                .add(STARTUP_JACKSON, StartupPipeline.BACKGROUND, new Runnable() {
+                    @Override
+                    public void run() {
+                        // Introspect the common response classes before the first requests
+                        JacksonWarmUp.warmUp(Application.this, true);
+                    }
+                });
+        mStartup.start();
+    }
+
+    private void observeProcessLifecycle() {
         // Make sure ES SDK only runs when the app is in the foreground
         // (Workaround for #933 until ES SDK doesn't run Services in the background)
         ProcessLifecycleOwner.get().getLifecycle().addObserver(
@@ -116,15 +190,46 @@ public class Application extends MultiDexApplication {
                     public void onStart(@NonNull LifecycleOwner owner) {
                         setUpSocial();
                     }
+
+                    @Override
+                    public void onStop(@NonNull LifecycleOwner owner) {
+                        JacksonWarmUp.save(Application.this);
+                    }
                 });
+    }
 
-        initOba();
-        initObaRegion();
-        initOpen311(getCurrentRegion());
+    /**
+     * @return the pipeline that initialized the app, with the timing spans of its tasks
+     */
+    public StartupPipeline getStartup() {
+        return mStartup;
+    }
 
-        reportAnalytics();
+    /**
+     * Waits for the current region to be read from the database at startup, if it hasn't been
+     * yet
+     */
+    public void awaitRegion() {
+        if (mStartup != null) {
+            mStartup.await(STARTUP_REGION);
+        }
+    }
 
-        createNotificationChannels();
+    /**
+     * Records the first frame drawn after a cold start, and logs the startup timing spans.  Only
+     * the first call has an effect.
+     */
+    public void reportFirstFrame() {
+        if (mStartup == null || mFirstFrameReported) {
+            return;
+        }
+        mFirstFrameReported = true;
+        mStartup.mark(STARTUP_FIRST_FRAME);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            Log.d(TAG, "First frame " + (SystemClock.elapsedRealtime()
+                    - Process.getStartElapsedRealtime()) + " ms after process start");
+        }
+        Log.d(TAG, "Startup spans:\n" + mStartup.dump());
     }
 
     /**
@@ -308,15 +413,26 @@ public class Application extends MultiDexApplication {
     //
     // Helper to get/set the regions
     //
-    public synchronized ObaRegion getCurrentRegion() {
-        return ObaApi.getDefaultContext().getRegion();
+    public ObaRegion getCurrentRegion() {
+        awaitRegion();
+        synchronized (this) {
+            return ObaApi.getDefaultContext().getRegion();
+        }
     }
 
-    public synchronized void setCurrentRegion(ObaRegion region) {
+    public void setCurrentRegion(ObaRegion region) {
         setCurrentRegion(region, true);
     }
 
-    public synchronized void setCurrentRegion(ObaRegion region, boolean regionChanged) {
+    public void setCurrentRegion(ObaRegion region, boolean regionChanged) {
+        // Don't let the region read at startup replace this one
+        awaitRegion();
+        synchronized (this) {
+            setCurrentRegionLocked(region, regionChanged);
+        }
+    }
+
+    private void setCurrentRegionLocked(ObaRegion region, boolean regionChanged) {
         if (region != null) {
             // First set it in preferences, then set it in OBA.
             ObaApi.getDefaultContext().setRegion(region);
@@ -333,6 +449,10 @@ public class Application extends MultiDexApplication {
             ObaApi.getDefaultContext().setRegion(null);
             PreferenceUtils.saveLong(mPrefs, getString(R.string.preference_key_region), -1);
         }
+        if (regionChanged) {
+            // Stops cached for the map belong to the previous region or API
+            StopTileCache.getInstance().clear();
+        }
         // Init the reporting with the new endpoints
         initOpen311(region);
     }
@@ -454,16 +574,12 @@ public class Application extends MultiDexApplication {
 
         checkArrivalStylePreferenceDefault();
 
-        // Get the current app version.
-        PackageManager pm = getPackageManager();
-        PackageInfo appInfo = null;
-        try {
-            appInfo = pm.getPackageInfo(getPackageName(), PackageManager.GET_META_DATA);
-        } catch (NameNotFoundException e) {
-            // Do nothing, perhaps we'll get to show it again? Or never.
-            return;
-        }
-        ObaApi.getDefaultContext().setAppInfo(appInfo.versionCode, uuid);
+        // Cache responses that rarely change, like routes and shapes
+        ObaApi.getDefaultContext().setResponseCache(new ObaResponseCache(
+                new File(getCacheDir(), "oba_responses"), ObaResponseCache.DEFAULT_MAX_SIZE_BYTES));
+
+        // The version code of this package, without a PackageManager lookup
+        ObaApi.getDefaultContext().setAppInfo(BuildConfig.VERSION_CODE, uuid);
     }
 
     private void checkArrivalStylePreferenceDefault() {
@@ -516,7 +632,7 @@ public class Application extends MultiDexApplication {
         ObaApi.getDefaultContext().setRegion(region);
     }
 
-    private void initOpen311(ObaRegion region) {
+    private synchronized void initOpen311(ObaRegion region) {
         if (BuildConfig.DEBUG) {
             Open311Manager.getSettings().setDebugMode(true);
             Open311Manager.getSettings().setDryRun(true);
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks that initialize the app at startup.  Each task declares the tasks it depends
+ * on, and runs either on the thread that calls start() (MAIN - only for what the first frame
+ * needs) or on a pool of background threads (BACKGROUND), as soon as its dependencies are
+ * done.  Code that needs the result of a background task calls await() for it.
+ *
+ * Each task records a Span with the time it started and ended, and so does each await() that
+ * had to wait, so that the timeline of a cold start can be dumped with dump() and analyzed.
+ *
+ * This class doesn't use the Android framework, so it can be tested on the JVM.
+ */
+public class StartupPipeline {
+
+    /**
+     * The task runs on the thread that calls start()
+     */
+    public static final int MAIN = 0;
+
+    /**
+     * The task runs on the background pool
+     */
+    public static final int BACKGROUND = 1;
+
+    public static final int DEFAULT_THREADS = 3;
+
+    private static final long KEEP_ALIVE_SECONDS = 5;
+
+    /**
+     * The time a task or wait took, in nanoseconds since the pipeline was created
+     */
+    public static final class Span {
+
+        private final String mName;
+
+        private final String mThread;
+
+        private final long mStart;
+
+        private final long mEnd;
+
+        Span(String name, String thread, long start, long end) {
+            mName = name;
+            mThread = thread;
+            mStart = start;
+            mEnd = end;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getThread() {
+            return mThread;
+        }
+
+        public long getStart() {
+            return mStart;
+        }
+
+        public long getEnd() {
+            return mEnd;
+        }
+
+        public long getDuration() {
+            return mEnd - mStart;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-24s %-16s %8.2f ms %8.2f ms %8.2f ms", mName,
+                    mThread, mStart / 1e6, mEnd / 1e6, (mEnd - mStart) / 1e6);
+        }
+    }
+
+    private static final class Task {
+
+        final String mName;
+
+        final int mThread;
+
+        final Runnable mRunnable;
+
+        final List<Task> mDependencies = new ArrayList<>();
+
+        final List<Task> mDependents = new ArrayList<>();
+
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        // Dependencies that aren't done yet
+        int mPending;
+
+        Task(String name, int thread, Runnable runnable) {
+            mName = name;
+            mThread = thread;
+            mRunnable = runnable;
+        }
+    }
+
+    private final LinkedHashMap<String, Task> mTasks = new LinkedHashMap<>();
+
+    private final List<Span> mSpans = new ArrayList<>();
+
+    private final Executor mExecutor;
+
+    private final long mOrigin = System.nanoTime();
+
+    private boolean mStarted;
+
+    public StartupPipeline() {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * @param threads maximum number of BACKGROUND tasks to run at the same time
+     */
+    public StartupPipeline(int threads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "Startup-" + threadCount.incrementAndGet());
+                    }
+                });
+        // The pool is only needed at startup
+        executor.allowCoreThreadTimeOut(true);
+        mExecutor = executor;
+    }
+
+    /**
+     * Adds a task.  Dependencies must be added before the tasks that depend on them, so there
+     * can't be cycles.
+     *
+     * @param name         unique name of the task
+     * @param thread       MAIN or BACKGROUND
+     * @param runnable     the task
+     * @param dependencies names of the tasks that must be done before this one starts
+     * @return this pipeline
+     * @throws IllegalArgumentException if the name is already used or a dependency hasn't been
+     *                                  added
+     * @throws IllegalStateException    if the pipeline has been started
+     */
+    public synchronized StartupPipeline add(String name, int thread, Runnable runnable,
+            String... dependencies) {
+        if (mStarted) {
+            throw new IllegalStateException("Tasks can't be added after start()");
+        }
+        if (thread != MAIN && thread != BACKGROUND) {
+            throw new IllegalArgumentException("thread must be MAIN or BACKGROUND");
+        }
+        if (mTasks.containsKey(name)) {
+            throw new IllegalArgumentException("Task " + name + " was already added");
+        }
+        Task task = new Task(name, thread, runnable);
+        for (String dependency : dependencies) {
+            Task other = mTasks.get(dependency);
+            if (other == null) {
+                throw new IllegalArgumentException(
+                        "Task " + name + " depends on " + dependency + ", which wasn't added");
+            }
+            other.mDependents.add(task);
+            task.mDependencies.add(other);
+            task.mPending++;
+        }
+        mTasks.put(name, task);
+        return this;
+    }
+
+    /**
+     * Starts the BACKGROUND tasks that don't have dependencies, then runs the MAIN tasks on this
+     * thread in the order they were added, waiting for their dependencies if needed.  Returns
+     * when the MAIN tasks are done.
+     */
+    public void start() {
+        List<Task> main = new ArrayList<>();
+        synchronized (this) {
+            if (mStarted) {
+                throw new IllegalStateException("The pipeline was already started");
+            }
+            mStarted = true;
+            for (Task task : mTasks.values()) {
+                if (task.mThread == MAIN) {
+                    main.add(task);
+                } else if (task.mPending == 0) {
+                    submit(task);
+                }
+            }
+        }
+        for (Task task : main) {
+            for (Task dependency : task.mDependencies) {
+                await(dependency.mName);
+            }
+            run(task);
+        }
+    }
+
+    private void submit(final Task task) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupPipeline.this.run(task);
+            }
+        });
+    }
+
+    private void run(Task task) {
+        final long start = now();
+        try {
+            task.mRunnable.run();
+        } finally {
+            addSpan(task.mName, start, now());
+            task.mDone.countDown();
+            synchronized (this) {
+                for (Task dependent : task.mDependents) {
+                    if (--dependent.mPending == 0 && dependent.mThread == BACKGROUND) {
+                        submit(dependent);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a task to be done.  Returns immediately if it's done, if there's no task with
+     * that name, or if the pipeline hasn't been started (so start() itself can't be waiting on
+     * this thread).  A wait is recorded as a span named "await:" followed by the task name.
+     *
+     * Tasks must not wait for themselves or for tasks that depend on them.
+     */
+    public void await(String name) {
+        Task task;
+        synchronized (this) {
+            task = mStarted ? mTasks.get(name) : null;
+        }
+        if (task == null || task.mDone.getCount() == 0) {
+            return;
+        }
+        final long start = now();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                task.mDone.await();
+                break;
+            } catch (InterruptedException e) {
+                // Startup must finish, so keep waiting
+                interrupted = true;
+            }
+        }
+        addSpan("await:" + name, start, now());
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the task is done or there's no task with that name
+     */
+    public boolean isDone(String name) {
+        Task task;
+        synchronized (this) {
+            task = mTasks.get(name);
+        }
+        return task == null || task.mDone.getCount() == 0;
+    }
+
+    /**
+     * Records an event that isn't a task, such as the first frame, as a span that starts and
+     * ends now
+     */
+    public void mark(String name) {
+        long time = now();
+        addSpan(name, time, time);
+    }
+
+    /**
+     * @return the spans recorded so far, in the order they ended
+     */
+    public List<Span> getSpans() {
+        synchronized (mSpans) {
+            return new ArrayList<>(mSpans);
+        }
+    }
+
+    /**
+     * @return the spans recorded so far as a table, one per line
+     */
+    public String dump() {
+        StringBuilder result = new StringBuilder(String.format(Locale.US,
+                "%-24s %-16s %11s %11s %11s", "Span", "Thread", "Start", "End", "Duration"));
+        for (Span span : getSpans()) {
+            result.append('\n').append(span);
+        }
+        return result.toString();
+    }
+
+    private void addSpan(String name, long start, long end) {
+        Span span = new Span(name, Thread.currentThread().getName(), start, end);
+        synchronized (mSpans) {
+            mSpans.add(span);
+        }
+    }
+
+    private long now() {
+        return System.nanoTime() - mOrigin;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.directions.tasks;
+
+import org.onebusaway.android.directions.util.JacksonConfig;
+import org.onebusaway.android.io.ObaPooledConnectionFactory;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.ws.Request;
+import org.opentripplanner.api.ws.Response;
+import org.opentripplanner.routing.core.TraverseMode;
+
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+
+/**
+ * Makes plan requests to OTP servers over the connections pooled by ObaPooledConnectionFactory.
+ *
+ * OTP servers put the plan API at either {base}/routers/default/plan or (older servers)
+ * {base}/plan.  The layout used by each server is remembered after the first successful
+ * request, so later requests to the server go straight to the right URL; the other layout is
+ * only tried if the remembered one isn't found.
+ *
+ * Several variants of a plan (e.g. with different modes, or arrive-by and depart-at times) can
+ * be requested in parallel with planAll(), and their itineraries merged with
+ * mergeItineraries().
+ */
+public class OtpPlanClient {
+
+    private static final String TAG = "OtpPlanClient";
+
+    /**
+     * The URL layout of a server that hasn't been used yet
+     */
+    public static final int LAYOUT_UNKNOWN = 0;
+
+    /**
+     * Plans are at {base}/routers/default/plan
+     */
+    public static final int LAYOUT_ROUTERS = 1;
+
+    /**
+     * Plans are at {base}/plan
+     */
+    public static final int LAYOUT_OLD = 2;
+
+    private static final String ROUTERS_PREFIX = "/routers/default";
+
+    /**
+     * Maximum number of plan requests made at the same time by planAll()
+     */
+    private static final int MAX_PARALLEL_PLANS = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final OkHttpClient mClient;
+
+    // URL layout of each server, by base URL
+    private final ConcurrentHashMap<String, Integer> mLayouts = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private static class SingletonHolder {
+
+        static final OtpPlanClient INSTANCE = new OtpPlanClient(
+                ObaPooledConnectionFactory.getInstance().getClient().newBuilder()
+                        .connectTimeout(TripRequest.HTTP_CONNECTION_TIMEOUT,
+                                TimeUnit.MILLISECONDS)
+                        .readTimeout(TripRequest.HTTP_SOCKET_TIMEOUT, TimeUnit.MILLISECONDS)
+                        .build());
+    }
+
+    public static OtpPlanClient getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * @param client the client to make requests with.  getInstance() shares the connection pool
+     *               of ObaPooledConnectionFactory.
+     */
+    public OtpPlanClient(OkHttpClient client) {
+        mClient = client;
+        mExecutor = new ThreadPoolExecutor(MAX_PARALLEL_PLANS, MAX_PARALLEL_PLANS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return LAYOUT_ROUTERS or LAYOUT_OLD if a plan has been requested from the server,
+     * otherwise LAYOUT_UNKNOWN unless it was set with setUrlLayout()
+     */
+    public int getUrlLayout(String baseUrl) {
+        Integer layout = mLayouts.get(baseUrl);
+        return layout != null ? layout : LAYOUT_UNKNOWN;
+    }
+
+    /**
+     * Sets the URL layout to try first for a server, e.g. from a saved preference
+     */
+    public void setUrlLayout(String baseUrl, int layout) {
+        if (layout == LAYOUT_UNKNOWN) {
+            mLayouts.remove(baseUrl);
+        } else {
+            mLayouts.put(baseUrl, layout);
+        }
+    }
+
+    /**
+     * @return the URL a plan would be requested from, with the URL layout currently known for
+     * the server
+     */
+    public String getPlanUrl(String baseUrl, Request request) {
+        return buildUrl(baseUrl, getUrlLayout(baseUrl) == LAYOUT_OLD, request);
+    }
+
+    /**
+     * Builds the URL for a plan request.  Parameter values are used as they are, so they must
+     * already be URL-encoded (as TripRequestBuilder does for addresses).
+     *
+     * @param oldLayout true for the {base}/plan layout, false for {base}/routers/default/plan
+     */
+    public static String buildUrl(String baseUrl, boolean oldLayout, Request request) {
+        Map<String, String> params = request.getParameters();
+        StringBuilder url = new StringBuilder(baseUrl.length() + 32 + params.size() * 32);
+        url.append(baseUrl);
+        if (!oldLayout) {
+            url.append(ROUTERS_PREFIX);
+        }
+        url.append(TripRequest.PLAN_LOCATION);
+
+        // Servers with the routers layout plan bike rental as BICYCLE_RENT, and older ones as
+        // BICYCLE with WALK
+        String bicycle = null;
+        if (request.getBikeRental()) {
+            bicycle = oldLayout
+                    ? TraverseMode.BICYCLE.toString() + ", " + TraverseMode.WALK.toString()
+                    : TraverseMode.BICYCLE.toString() + TripRequest.OTP_RENTAL_QUALIFIER;
+        }
+        char separator = '?';
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            String value = param.getValue();
+            if (bicycle != null && value != null) {
+                value = value.replace(TraverseMode.BICYCLE.toString(), bicycle);
+            }
+            url.append(separator).append(param.getKey()).append('=').append(value);
+            separator = '&';
+        }
+        return url.toString();
+    }
+
+    /**
+     * Requests a plan from a server, trying the other URL layout if the server doesn't have the
+     * plan API at the one known for it
+     *
+     * @param baseUrl the OTP base URL of the server
+     * @return the plan response
+     * @throws IOException if the request failed (SocketTimeoutException on timeouts, and
+     *                     FileNotFoundException if neither URL layout was found)
+     */
+    public Response plan(String baseUrl, Request request) throws IOException {
+        boolean oldLayout = getUrlLayout(baseUrl) == LAYOUT_OLD;
+        Response response = execute(buildUrl(baseUrl, oldLayout, request));
+        if (response == null) {
+            Log.v(TAG, "Plan API not found, trying the " + (oldLayout ? "new" : "old")
+                    + " URL structure");
+            oldLayout = !oldLayout;
+            String url = buildUrl(baseUrl, oldLayout, request);
+            response = execute(url);
+            if (response == null) {
+                throw new FileNotFoundException(url);
+            }
+        }
+        setUrlLayout(baseUrl, oldLayout ? LAYOUT_OLD : LAYOUT_ROUTERS);
+        return response;
+    }
+
+    /**
+     * Requests plans for several requests to the same server in parallel
+     *
+     * @param baseUrl  the OTP base URL of the server
+     * @param requests the plan variants to request
+     * @return the responses, in the same order as the requests, with null for requests that
+     * failed
+     * @throws IOException if all of the requests failed (the exception of the first one), or
+     *                     the calling thread was interrupted
+     */
+    public List<Response> planAll(final String baseUrl, List<Request> requests)
+            throws IOException {
+        if (requests.size() == 1) {
+            // Nothing to wait for in parallel
+            return Collections.singletonList(plan(baseUrl, requests.get(0)));
+        }
+        ArrayList<Future<Response>> futures = new ArrayList<>(requests.size());
+        for (final Request request : requests) {
+            futures.add(mExecutor.submit(() -> plan(baseUrl, request)));
+        }
+
+        ArrayList<Response> responses = new ArrayList<>(requests.size());
+        IOException failure = null;
+        try {
+            for (Future<Response> future : futures) {
+                try {
+                    responses.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        Log.e(TAG, "Error fetching plan: " + cause);
+                        if (failure == null) {
+                            failure = (IOException) cause;
+                        }
+                        responses.add(null);
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Response> future : futures) {
+                future.cancel(true);
+            }
+            throw new InterruptedIOException(e.toString());
+        }
+        if (failure != null && Collections.frequency(responses, null) == responses.size()) {
+            throw failure;
+        }
+        return responses;
+    }
+
+    /**
+     * Makes a GET request and parses the plan
+     *
+     * @return the plan response, or null if the server returned 404 Not Found
+     */
+    private Response execute(String url) throws IOException {
+        Log.d(TAG, "URL: " + url);
+        Call call = mClient.newCall(new okhttp3.Request.Builder().url(url).build());
+        okhttp3.Response httpResponse = call.execute();
+        try {
+            if (httpResponse.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            if (!httpResponse.isSuccessful()) {
+                throw new IOException("HTTP " + httpResponse.code() + " for " + url);
+            }
+            ResponseBody body = httpResponse.body();
+            if (body == null) {
+                throw new IOException("Empty response body for " + url);
+            }
+            return JacksonConfig.getObjectReaderInstance().readValue(body.byteStream());
+        } finally {
+            // Returns the connection to the pool
+            httpResponse.close();
+        }
+    }
+
+    /**
+     * Merges the itineraries of the plans returned by planAll().  The itineraries of a single
+     * plan are returned in the order ranked by the server.
+     *
+     * @param responses plan responses, which may include null
+     * @return the itineraries, without duplicates
+     */
+    public static List<Itinerary> mergeItineraries(List<Response> responses) {
+        ArrayList<List<Itinerary>> plans = new ArrayList<>(responses.size());
+        for (Response response : responses) {
+            if (response != null && response.getPlan() != null
+                    && response.getPlan().getItinerary() != null) {
+                plans.add(response.getPlan().getItinerary());
+            }
+        }
+        return merge(plans);
+    }
+
+    /**
+     * Merges lists of itineraries.  Itineraries that start at the same time and take the same
+     * trips in the same modes are only included once.  If there is more than one list, the
+     * result is sorted by arrival time.
+     */
+    public static List<Itinerary> merge(List<List<Itinerary>> plans) {
+        if (plans.size() == 1) {
+            return plans.get(0);
+        }
+        LinkedHashMap<String, Itinerary> merged = new LinkedHashMap<>();
+        for (List<Itinerary> itineraries : plans) {
+            for (Itinerary itinerary : itineraries) {
+                String key = getKey(itinerary);
+                if (!merged.containsKey(key)) {
+                    merged.put(key, itinerary);
+                }
+            }
+        }
+        ArrayList<Itinerary> result = new ArrayList<>(merged.values());
+        Collections.sort(result, new Comparator<Itinerary>() {
+            @Override
+            public int compare(Itinerary i1, Itinerary i2) {
+                long e1 = getEndTime(i1);
+                long e2 = getEndTime(i2);
+                return e1 < e2 ? -1 : (e1 == e2 ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    private static String getKey(Itinerary itinerary) {
+        StringBuilder key = new StringBuilder(64);
+        key.append(itinerary.startTime);
+        if (itinerary.legs != null) {
+            for (Leg leg : itinerary.legs) {
+                key.append('|').append(leg.mode).append(':').append(leg.tripId);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the end time of the last leg in milliseconds, or Long.MAX_VALUE if it isn't known
+     */
+    private static long getEndTime(Itinerary itinerary) {
+        if (itinerary.legs == null || itinerary.legs.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(itinerary.legs.get(itinerary.legs.size() - 1).endTime);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
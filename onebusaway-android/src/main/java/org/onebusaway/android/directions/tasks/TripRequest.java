@@ -17,28 +17,22 @@
 package org.onebusaway.android.directions.tasks;
 
 import org.onebusaway.android.app.Application;
-import org.onebusaway.android.directions.util.JacksonConfig;
 import org.opentripplanner.api.model.Itinerary;
 import org.opentripplanner.api.ws.Message;
 import org.opentripplanner.api.ws.Request;
 import org.opentripplanner.api.ws.Response;
-import org.opentripplanner.routing.core.TraverseMode;
 
 import android.os.AsyncTask;
-import android.os.Build;
 import android.util.Log;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * AsyncTask that invokes a trip planning request to the OTP Server
+ * AsyncTask that invokes a trip planning request to the OTP Server.  Requests are made by
+ * OtpPlanClient; if more than one Request is passed to execute(), they are made in parallel and
+ * the itineraries are merged.
  *
  * @author Khoa Tran
  * @author Sean Barbeau (conversion to Jackson)
@@ -56,7 +50,6 @@ public class TripRequest extends AsyncTask<Request, Integer, Long> {
 
     // Constants that are defined in OTPApp in CUTR OTP Android app
     private static final String TAG = "TripRequest";
-    private static final String FOLDER_STRUCTURE_PREFIX_NEW = "/routers/default";
     public static final String OTP_RENTAL_QUALIFIER = "_RENT";
     public static final String PLAN_LOCATION = "/plan";
     public static final int HTTP_CONNECTION_TIMEOUT = 15000;
@@ -64,6 +57,8 @@ public class TripRequest extends AsyncTask<Request, Integer, Long> {
 
     private Response mResponse;
 
+    private List<Itinerary> mItineraries;
+
     private String mBaseUrl;
 
     private String mRequestUrl;
@@ -88,10 +83,41 @@ public class TripRequest extends AsyncTask<Request, Integer, Long> {
             mCallback.onTripRequestFailure(NO_SERVER_SELECTED, null);
             return null;
         } else {
-            String prefix = FOLDER_STRUCTURE_PREFIX_NEW;
+            OtpPlanClient client = OtpPlanClient.getInstance();
             boolean useOldUrlVersion = Application.get().getUseOldOtpApiUrlVersion();
-            for (Request req : reqs) {
-                mResponse = requestPlan(req, prefix, mBaseUrl, useOldUrlVersion);
+            if (useOldUrlVersion
+                    && client.getUrlLayout(mBaseUrl) == OtpPlanClient.LAYOUT_UNKNOWN) {
+                client.setUrlLayout(mBaseUrl, OtpPlanClient.LAYOUT_OLD);
+            }
+            try {
+                // Variants of the plan are requested in parallel, and their itineraries merged
+                List<Response> responses = client.planAll(mBaseUrl, Arrays.asList(reqs));
+                for (Response response : responses) {
+                    if (response != null) {
+                        mResponse = response;
+                        break;
+                    }
+                }
+                mItineraries = OtpPlanClient.mergeItineraries(responses);
+            } catch (java.net.SocketTimeoutException e) {
+                Log.e(TAG, "Timeout fetching JSON or XML: " + e);
+                e.printStackTrace();
+                cancel(true);
+            } catch (IOException e) {
+                Log.e(TAG, "Error fetching JSON or XML: " + e);
+                e.printStackTrace();
+                cancel(true);
+            }
+
+            if (reqs.length > 0) {
+                // Save url for error reporting purposes
+                mRequestUrl = client.getPlanUrl(mBaseUrl, reqs[0]);
+            }
+            boolean isOldUrlVersion =
+                    client.getUrlLayout(mBaseUrl) == OtpPlanClient.LAYOUT_OLD;
+            if (isOldUrlVersion != useOldUrlVersion) {
+                // Cache the url structure that worked
+                Application.get().setUseOldOtpApiUrlVersion(isOldUrlVersion);
             }
         }
         return totalSize;
@@ -106,9 +132,9 @@ public class TripRequest extends AsyncTask<Request, Integer, Long> {
             return;
         }
 
-        if (mResponse != null && mResponse.getPlan() != null
-                && mResponse.getPlan().getItinerary().get(0) != null) {
-            mCallback.onTripRequestComplete(mResponse.getPlan().getItinerary(), mRequestUrl);
+        if (mItineraries != null && !mItineraries.isEmpty()
+                && mItineraries.get(0) != null) {
+            mCallback.onTripRequestComplete(mItineraries, mRequestUrl);
         } else {
             Log.e(TAG, "Error retrieving routing from OTP server: " + mResponse);
             int errorCode = -1;
@@ -118,106 +144,4 @@ public class TripRequest extends AsyncTask<Request, Integer, Long> {
             mCallback.onTripRequestFailure(errorCode, mRequestUrl);
         }
     }
-
-    protected Response requestPlan(Request requestParams, String prefix, String baseURL,
-                                   boolean useOldUrlStructure) {
-        HashMap<String, String> tmp = requestParams.getParameters();
-
-        Collection c = tmp.entrySet();
-        Iterator itr = c.iterator();
-
-        String params = "";
-        boolean first = true;
-        while (itr.hasNext()) {
-            if (first) {
-                params += "?" + itr.next();
-                first = false;
-            } else {
-                params += "&" + itr.next();
-            }
-        }
-
-        if (requestParams.getBikeRental()) {
-            String updatedString;
-            if (prefix.equals(FOLDER_STRUCTURE_PREFIX_NEW)) {
-                updatedString = params.replace(TraverseMode.BICYCLE.toString(),
-                        TraverseMode.BICYCLE.toString() + OTP_RENTAL_QUALIFIER);
-            } else {
-                updatedString = params.replace(TraverseMode.BICYCLE.toString(),
-                        TraverseMode.BICYCLE.toString() + ", " + TraverseMode.WALK.toString());
-            }
-            params = updatedString;
-        }
-
-        String u;
-
-        if (!useOldUrlStructure) {
-            u = baseURL + prefix + PLAN_LOCATION + params;
-        } else {
-            u = baseURL + PLAN_LOCATION + params;
-        }
-
-        // Save url for error reporting purposes
-        mRequestUrl = u;
-
-        Log.d(TAG, "URL: " + u);
-
-        HttpURLConnection urlConnection = null;
-        URL url;
-        Response plan = null;
-
-        try {
-            url = new URL(u);
-
-            disableConnectionReuseIfNecessary(); // For bugs in HttpURLConnection pre-Froyo
-
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setConnectTimeout(HTTP_CONNECTION_TIMEOUT);
-            urlConnection.setReadTimeout(HTTP_SOCKET_TIMEOUT);
-            plan = JacksonConfig.getObjectReaderInstance()
-                    .readValue(urlConnection.getInputStream());
-
-            if (useOldUrlStructure) {
-                // If the old url structure is successful then cache it
-                Application.get().setUseOldOtpApiUrlVersion(true);
-            }
-        } catch (java.net.SocketTimeoutException e) {
-            Log.e(TAG, "Timeout fetching JSON or XML: " + e);
-            e.printStackTrace();
-            cancel(true);
-        } catch (FileNotFoundException e) {
-            if (!useOldUrlStructure) {
-                Log.v(TAG, "The OTP url might be old, trying  old url structure");
-                if (urlConnection != null) {
-                    urlConnection.disconnect();
-                }
-                return requestPlan(requestParams, prefix, baseURL, true);
-            } else {
-                Log.e(TAG, "Error fetching JSON or XML: " + e);
-                e.printStackTrace();
-                cancel(true);
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error fetching JSON or XML: " + e);
-            e.printStackTrace();
-            cancel(true);
-            // Reset timestamps to show there was an error
-            // requestStartTime = 0;
-            // requestEndTime = 0;
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-        }
-        return plan;
-    }
-
-    /**
-     * Disable HTTP connection reuse which was buggy pre-froyo
-     */
-    private void disableConnectionReuseIfNecessary() {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
-            System.setProperty("http.keepAlive", "false");
-        }
-    }
 }
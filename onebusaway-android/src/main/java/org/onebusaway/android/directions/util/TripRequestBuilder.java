@@ -18,6 +18,7 @@ package org.onebusaway.android.directions.util;
 
 import org.onebusaway.android.R;
 import org.onebusaway.android.app.Application;
+import org.onebusaway.android.io.ObaRequestExecutor;
 import org.onebusaway.android.directions.tasks.TripRequest;
 import org.onebusaway.android.ui.TripModes;
 import org.onebusaway.android.util.RegionUtils;
@@ -275,7 +276,10 @@ public class TripRequestBuilder {
             tripRequest = new TripRequest(fmtOtpBaseUrl, mListener);
         }
 
-        tripRequest.execute(request);
+        // Requests from RealtimeService (without an Activity) aren't being shown to the user
+        tripRequest.executeOnExecutor(ObaRequestExecutor.getInstance().getExecutor(
+                activity != null ? ObaRequestExecutor.PRIORITY_UI
+                        : ObaRequestExecutor.PRIORITY_BACKGROUND), request);
         return tripRequest;
     }
 
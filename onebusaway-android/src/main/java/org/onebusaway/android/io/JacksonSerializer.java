@@ -26,18 +26,21 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MappingJsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.TextNode;
-import com.fasterxml.jackson.databind.node.TreeTraversingParser;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JacksonSerializer implements ObaApi.SerializationHandler {
 
@@ -67,20 +70,112 @@ public class JacksonSerializer implements ObaApi.SerializationHandler {
     }
 
     /**
-     * Returns the JsonParser if the reader has valid content, null if it does not
+     * ObjectReaders are immutable and thread-safe, and they hold on to the root deserializer
+     * after the first lookup, so we keep one per response class
+     */
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> mReaders =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Returns the cached ObjectReader for the given class, creating it if needed
+     *
+     * @param cls the class to bind JSON to
+     * @return the cached ObjectReader for the given class
+     */
+    static ObjectReader getReader(Class<?> cls) {
+        ObjectReader reader = mReaders.get(cls);
+        if (reader == null) {
+            reader = mMapper.readerFor(cls);
+            ObjectReader prev = mReaders.putIfAbsent(cls, reader);
+            if (prev != null) {
+                reader = prev;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Response classes in the order they were first deserialized, with the time it took to look
+     * up their reader then - which includes introspecting the class, unless it was warmed up
+     */
+    private static final LinkedHashMap<Class<?>, Long> mFirstLookupTimes = new LinkedHashMap<>();
+
+    /**
+     * Builds and caches the reader for a response class, and binds an empty response with it,
+     * so that the class is introspected before its first real response arrives
+     *
+     * @param cls the class to bind JSON to
+     * @return the time it took, in nanoseconds
+     */
+    public static long warmUp(Class<?> cls) {
+        final long start = System.nanoTime();
+        try {
+            getReader(cls).readValue(getErrorJson(ObaApi.OBA_OK, "\"\""));
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the response classes deserialized so far, in the order they were first
+     * deserialized
+     */
+    public static List<Class<?>> getDeserializedClasses() {
+        synchronized (mFirstLookupTimes) {
+            return new ArrayList<>(mFirstLookupTimes.keySet());
+        }
+    }
+
+    /**
+     * @return the time it took to look up the reader for the first response of the given class,
+     * in nanoseconds, or -1 if no response of that class has been deserialized
+     */
+    public static long getFirstLookupTime(Class<?> cls) {
+        synchronized (mFirstLookupTimes) {
+            Long time = mFirstLookupTimes.get(cls);
+            return time != null ? time : -1;
+        }
+    }
+
+    /**
+     * Same as getReader(), but records the lookup time of the first response of each class
+     */
+    private static ObjectReader getReaderForResponse(Class<?> cls) {
+        synchronized (mFirstLookupTimes) {
+            if (mFirstLookupTimes.containsKey(cls)) {
+                return getReader(cls);
+            }
+        }
+        final long start = System.nanoTime();
+        ObjectReader reader = getReader(cls);
+        final long time = System.nanoTime() - start;
+        synchronized (mFirstLookupTimes) {
+            if (!mFirstLookupTimes.containsKey(cls)) {
+                mFirstLookupTimes.put(cls, time);
+                Log.d(TAG, String.format("First %s: reader lookup took %.1f ms",
+                        cls.getSimpleName(), time / 1e6));
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the JsonParser positioned on the first token if the reader has valid content, null
+     * if it does not
      * @param reader
-     * @return the JsonParser if the reader has valid content, null if it does not
+     * @return the JsonParser positioned on the first token if the reader has valid content, null
+     * if it does not
      * @throws IOException
      */
     private static JsonParser getJsonParser(Reader reader)
             throws IOException {
-        JsonNode node = mMapper.readTree(reader);
-        if (node == null) {
-            // According to Jackson docs, the "input has no content to bind", so return null (error)
+        JsonParser parser = mMapper.getFactory().createParser(reader);
+        if (parser.nextToken() == null) {
+            // The "input has no content to bind", so return null (error)
+            parser.close();
             return null;
         }
-        TreeTraversingParser parser = new TreeTraversingParser(node);
-        parser.setCodec(mMapper);
         return parser;
     }
 
@@ -98,7 +193,7 @@ public class JacksonSerializer implements ObaApi.SerializationHandler {
 
         try {
             // Hopefully this never returns null or throws.
-            return mMapper.readValue(json, cls);
+            return getReader(cls).readValue(json);
         } catch (JsonParseException e) {
             Log.e(TAG, e.toString());
         } catch (JsonMappingException e) {
@@ -109,7 +204,7 @@ public class JacksonSerializer implements ObaApi.SerializationHandler {
         return null;
     }
 
-    private String getErrorJson(int code, final String jsonErr) {
+    private static String getErrorJson(int code, final String jsonErr) {
         return String.format("{\"code\": %d,\"version\":\"2\",\"text\":%s}", code, jsonErr);
     }
 
@@ -118,7 +213,12 @@ public class JacksonSerializer implements ObaApi.SerializationHandler {
             T t = null;
             JsonParser parser = getJsonParser(reader);
             if (parser != null) {
-                t = parser.readValueAs(cls);
+                // Bind directly from the token stream, without building an intermediate tree
+                try {
+                    t = getReaderForResponse(cls).readValue(parser);
+                } finally {
+                    parser.close();
+                }
             }
             if (t == null) {
                 t = createFromError(cls, ObaApi.OBA_INTERNAL_ERROR, "Json error");
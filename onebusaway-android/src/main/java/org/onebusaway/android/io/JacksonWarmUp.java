@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io;
+
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaRegionsResponse;
+import org.onebusaway.android.io.request.ObaResponse;
+import org.onebusaway.android.io.request.ObaRoutesForLocationResponse;
+import org.onebusaway.android.io.request.ObaShapeResponse;
+import org.onebusaway.android.io.request.ObaStopsForLocationResponse;
+import org.onebusaway.android.io.request.ObaStopsForRouteResponse;
+import org.onebusaway.android.io.request.ObaTripDetailsResponse;
+import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Builds the JacksonSerializer readers for the response classes the app needs first, on a
+ * background thread at startup, so that introspecting them doesn't delay the first arrivals or
+ * map refresh.
+ *
+ * Jackson doesn't serialize the deserializers it builds (an ObjectReader from JacksonConfig's
+ * cache still introspects its classes on first use), so there's nothing to persist from the
+ * readers themselves.  Instead, if enabled, the classes deserialized in a session are saved
+ * and warmed up first in the next one, in the order they were needed.
+ */
+public final class JacksonWarmUp {
+
+    private static final String TAG = "JacksonWarmUp";
+
+    private static final String PREFS_NAME = "jackson_warm_up";
+
+    private static final String PREFERENCE_CLASSES = "classes";
+
+    // Maximum number of classes saved from a session
+    private static final int MAX_SAVED_CLASSES = 16;
+
+    /**
+     * Response classes warmed up by default, roughly in the order a session needs them
+     */
+    public static final List<Class<? extends ObaResponse>> HOT_CLASSES = Arrays.asList(
+            ObaArrivalInfoResponse.class,
+            ObaStopsForLocationResponse.class,
+            ObaRegionsResponse.class,
+            ObaTripsForRouteResponse.class,
+            ObaShapeResponse.class,
+            ObaStopsForRouteResponse.class,
+            ObaRoutesForLocationResponse.class,
+            ObaTripDetailsResponse.class);
+
+    private static volatile long mWarmUpTime = -1;
+
+    private JacksonWarmUp() {
+    }
+
+    /**
+     * Warms up the readers on this thread - at startup, that's a background task of
+     * Application's StartupPipeline
+     *
+     * @param context    context used to read the saved classes
+     * @param usingSaved true to warm up the classes saved by save() first, false to only warm
+     *                   up HOT_CLASSES
+     * @return the total time it took, in nanoseconds
+     */
+    public static long warmUp(Context context, boolean usingSaved) {
+        return warmUp(getClasses(usingSaved ? getPrefs(context) : null));
+    }
+
+    /**
+     * Warms up the readers for the given classes on this thread
+     *
+     * @return the total time it took, in nanoseconds
+     */
+    public static long warmUp(List<Class<?>> classes) {
+        long total = 0;
+        for (Class<?> cls : classes) {
+            total += JacksonSerializer.warmUp(cls);
+        }
+        mWarmUpTime = total;
+        Log.d(TAG, String.format("Warmed up %d classes in %.1f ms", classes.size(),
+                total / 1e6));
+        return total;
+    }
+
+    /**
+     * @return the time the last warm-up took in nanoseconds, or -1 if there hasn't been one
+     */
+    public static long getWarmUpTime() {
+        return mWarmUpTime;
+    }
+
+    /**
+     * Returns the classes to warm up - the saved classes first if prefs isn't null, then the
+     * rest of HOT_CLASSES
+     */
+    static List<Class<?>> getClasses(SharedPreferences prefs) {
+        LinkedHashSet<Class<?>> classes = new LinkedHashSet<>();
+        if (prefs != null) {
+            String saved = prefs.getString(PREFERENCE_CLASSES, null);
+            if (!TextUtils.isEmpty(saved)) {
+                for (String name : saved.split(",")) {
+                    try {
+                        Class<?> cls = Class.forName(name);
+                        if (ObaResponse.class.isAssignableFrom(cls)) {
+                            classes.add(cls);
+                        }
+                    } catch (ClassNotFoundException e) {
+                        // Renamed or removed since it was saved
+                    }
+                }
+            }
+        }
+        classes.addAll(HOT_CLASSES);
+        return new ArrayList<>(classes);
+    }
+
+    /**
+     * Saves the response classes deserialized in this session, to be warmed up first by the
+     * next call to warmUp(Context, boolean).  Does nothing if nothing was deserialized yet.
+     */
+    public static void save(Context context) {
+        List<Class<?>> classes = JacksonSerializer.getDeserializedClasses();
+        if (classes.isEmpty()) {
+            return;
+        }
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < classes.size() && i < MAX_SAVED_CLASSES; i++) {
+            if (i > 0) {
+                names.append(',');
+            }
+            names.append(classes.get(i).getName());
+        }
+        getPrefs(context).edit().putString(PREFERENCE_CLASSES, names.toString()).apply();
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
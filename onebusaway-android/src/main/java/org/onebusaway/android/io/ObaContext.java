@@ -39,6 +39,8 @@ public class ObaContext {
 
     private ObaConnectionFactory mConnectionFactory = ObaDefaultConnectionFactory.getInstance();
 
+    private ObaResponseCache mResponseCache;
+
     private ObaRegion mRegion;
 
     public ObaContext() {
@@ -88,7 +90,26 @@ public class ObaContext {
         return mConnectionFactory;
     }
 
+    /**
+     * Sets the cache used for responses that rarely change, or null to always request
+     * responses from the server
+     *
+     * @return the previous response cache
+     */
+    public ObaResponseCache setResponseCache(ObaResponseCache cache) {
+        ObaResponseCache prev = mResponseCache;
+        mResponseCache = cache;
+        return prev;
+    }
+
+    public ObaResponseCache getResponseCache() {
+        return mResponseCache;
+    }
+
     public void setBaseUrl(Context context, Uri.Builder builder) {
+        // The region is read in the background at startup
+        Application.get().awaitRegion();
+
         // If there is a custom preference, then use that.
         String serverName = Application.get().getCustomApiUrl();
 
@@ -165,6 +186,7 @@ public class ObaContext {
         result.setApiKey(mApiKey);
         result.setAppInfo(mAppVer, mAppUid);
         result.setConnectionFactory(mConnectionFactory);
+        result.setResponseCache(mResponseCache);
         return result;
     }
 }
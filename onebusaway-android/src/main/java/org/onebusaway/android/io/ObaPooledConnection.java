@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * A connection created by ObaPooledConnectionFactory.  The request is executed lazily the first
+ * time the response code or body is needed, and disconnect() returns the underlying socket to
+ * the shared pool instead of closing it.
+ */
+public final class ObaPooledConnection implements ObaConnection {
+
+    private static final String TAG = "ObaPooledConnection";
+
+    private static final MediaType FORM_URLENCODED =
+            MediaType.parse("application/x-www-form-urlencoded");
+
+    private final OkHttpClient mClient;
+
+    private final Uri mUri;
+
+    private final Semaphore mHostPermits;
+
+    // Set by disconnect(), which may be called from another thread to abort the request
+    private volatile boolean mCancelled = false;
+
+    // Guarded by this.  The monitor is never held while waiting for a permit or the network,
+    // so disconnect() doesn't wait for the request.
+    private boolean mHasPermit = false;
+
+    private Response mResponse;
+
+    // Set while the request is executing, so disconnect() can abort it
+    private Call mCall;
+
+    ObaPooledConnection(OkHttpClient client, Uri uri, Semaphore hostPermits) {
+        Log.d(TAG, uri.toString());
+        mClient = client;
+        mUri = uri;
+        mHostPermits = hostPermits;
+    }
+
+    @Override
+    public void disconnect() {
+        mCancelled = true;
+        Call call;
+        synchronized (this) {
+            call = mCall;
+        }
+        if (call != null) {
+            // Abort a request in progress
+            call.cancel();
+        }
+        release();
+    }
+
+    private synchronized void release() {
+        if (mResponse != null) {
+            // Closing the body (rather than the socket) releases the connection back to the pool
+            mResponse.close();
+        }
+        if (mHasPermit) {
+            mHasPermit = false;
+            mHostPermits.release();
+        }
+    }
+
+    @Override
+    public Reader get() throws IOException {
+        return getReader(execute(null));
+    }
+
+    @Override
+    public Reader post(String string) throws IOException {
+        return getReader(execute(RequestBody.create(FORM_URLENCODED, string.getBytes())));
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        return execute(null).code();
+    }
+
+    /**
+     * Executes the request the first time it's called, and returns the response.  Only the
+     * thread using the connection calls this, but disconnect() may be called from any thread.
+     */
+    private Response execute(RequestBody body) throws IOException {
+        synchronized (this) {
+            if (mResponse != null) {
+                return mResponse;
+            }
+        }
+        if (mCancelled) {
+            throw new InterruptedIOException("Disconnected");
+        }
+        try {
+            mHostPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(e.toString());
+        }
+        Request.Builder builder = new Request.Builder()
+                .url(mUri.toString())
+                // Setting this ourselves disables OkHttp's transparent gzip, so we can also
+                // accept deflate - see getReader()
+                .header("Accept-Encoding", "gzip, deflate");
+        if (body != null) {
+            builder.post(body);
+        }
+        Call call;
+        synchronized (this) {
+            mHasPermit = true;
+            if (mCancelled) {
+                // disconnect() came while we waited for the permit
+                release();
+                throw new InterruptedIOException("Disconnected");
+            }
+            // disconnect() sees this call from here on, and cancels it
+            call = mClient.newCall(builder.build());
+            mCall = call;
+        }
+        Response response;
+        try {
+            response = call.execute();
+        } finally {
+            synchronized (this) {
+                mCall = null;
+            }
+        }
+        synchronized (this) {
+            if (mCancelled) {
+                response.close();
+                release();
+                throw new InterruptedIOException("Disconnected");
+            }
+            mResponse = response;
+        }
+        return response;
+    }
+
+    private static Reader getReader(Response response) throws IOException {
+        if (response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+            // Match HttpURLConnection.getInputStream() behavior
+            throw new FileNotFoundException(response.request().url().toString());
+        }
+        ResponseBody body = response.body();
+        if (body == null) {
+            throw new IOException("Empty response body");
+        }
+        InputStream stream = body.byteStream();
+        String encoding = response.header("Content-Encoding");
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            stream = new GZIPInputStream(stream);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            stream = inflate(stream);
+        }
+        return new InputStreamReader(new BufferedInputStream(stream, 8 * 1024), "UTF-8");
+    }
+
+    /**
+     * Returns an InflaterInputStream for the given deflate-encoded stream.  Many servers send raw
+     * deflate data instead of the zlib-wrapped data required by the HTTP spec, so we peek at the
+     * zlib header to decide which format the Inflater should expect.
+     */
+    private static InputStream inflate(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int b0 = buffered.read();
+        int b1 = buffered.read();
+        buffered.reset();
+        boolean zlib = b0 != -1 && b1 != -1
+                && (b0 & 0x0F) == 8
+                && ((b0 << 8) | b1) % 31 == 0;
+        return new InflaterInputStream(buffered, new Inflater(!zlib));
+    }
+}
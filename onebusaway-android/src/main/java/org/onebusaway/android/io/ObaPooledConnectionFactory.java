@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io;
+
+import android.net.Uri;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * A connection factory that shares a single pool of keep-alive connections between all
+ * requests, instead of opening a new HttpURLConnection for each request like
+ * ObaDefaultConnectionFactory.  HTTP/2 is negotiated when the server supports it, and responses
+ * are requested with gzip/deflate compression.
+ *
+ * To use it, call ObaApi.getDefaultContext().setConnectionFactory(
+ * ObaPooledConnectionFactory.getInstance()).
+ */
+public class ObaPooledConnectionFactory implements ObaConnectionFactory {
+
+    /**
+     * Maximum number of idle connections to keep in the pool
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    /**
+     * Time an idle connection is kept alive in the pool, in minutes
+     */
+    private static final long KEEP_ALIVE_DURATION_MIN = 5;
+
+    /**
+     * Maximum number of concurrent requests to a single host
+     */
+    static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    private final OkHttpClient mClient;
+
+    private final HashMap<String, Semaphore> mHostPermits = new HashMap<>();
+
+    private ObaPooledConnectionFactory() {
+        mClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MIN,
+                        TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private static class SingletonHolder {
+
+        public static final ObaPooledConnectionFactory INSTANCE
+                = new ObaPooledConnectionFactory();
+    }
+
+    public static ObaPooledConnectionFactory getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    @Override
+    public ObaConnection newConnection(Uri uri) throws IOException {
+        return new ObaPooledConnection(mClient, uri, getHostPermits(uri.getAuthority()));
+    }
+
+    /**
+     * Returns the client that owns the pool, so other HTTP clients in the app (e.g. for trip
+     * planning) can share its connections and threads via OkHttpClient.newBuilder()
+     */
+    public OkHttpClient getClient() {
+        return mClient;
+    }
+
+    /**
+     * Returns the number of connections currently held open in the pool, for both active and
+     * idle connections
+     *
+     * @return the number of connections currently held open in the pool
+     */
+    public int getPooledConnectionCount() {
+        return mClient.connectionPool().connectionCount();
+    }
+
+    /**
+     * Closes all idle connections in the pool.  Active connections are not affected.
+     */
+    public void evictAll() {
+        mClient.connectionPool().evictAll();
+    }
+
+    private synchronized Semaphore getHostPermits(String host) {
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            permits = new Semaphore(MAX_CONNECTIONS_PER_HOST, true);
+            mHostPermits.put(host, permits);
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io;
+
+import org.onebusaway.android.io.request.ObaResponse;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Shares the response of a GET request between callers that make the same request at the same
+ * time - e.g., the arrivals list, header and reminders all asking for the arrivals at a stop.
+ * The first caller makes the request, and the others wait for it and get the same deserialized
+ * response.  A successful response is also returned to identical requests made within a short
+ * window after it completes (see setWindow()).
+ *
+ * Requests are identical if their URIs are the same after sorting the parameters and removing
+ * the app_uid and app_ver parameters, which don't change the response.
+ */
+public final class ObaRequestCoalescer {
+
+    /**
+     * Makes the request, for the caller that doesn't find an identical request in progress
+     */
+    public interface Fetcher<T> {
+
+        T fetch();
+    }
+
+    public static final long DEFAULT_WINDOW_MS = 2000;
+
+    private static final class Entry {
+
+        final Class<?> mCls;
+
+        Object mResult;
+
+        boolean mDone = false;
+
+        // The request was cancelled, so waiting callers need to make it themselves
+        boolean mAbandoned = false;
+
+        long mCompletedTime;
+
+        Entry(Class<?> cls) {
+            mCls = cls;
+        }
+    }
+
+    // Requests in progress, and completed requests within the window, by key
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+
+    private long mWindowMs = DEFAULT_WINDOW_MS;
+
+    private int mHitCount = 0;
+
+    private int mMissCount = 0;
+
+    private static class SingletonHolder {
+
+        static final ObaRequestCoalescer INSTANCE = new ObaRequestCoalescer();
+    }
+
+    public static ObaRequestCoalescer getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private ObaRequestCoalescer() {
+    }
+
+    /**
+     * Returns the response to an identical request in progress or completed within the window,
+     * or else makes the request with the fetcher
+     *
+     * @param uri     the URI of the GET request
+     * @param cls     the class of the response
+     * @param fetcher makes the request
+     * @return the response, or null if the calling thread was interrupted while waiting for an
+     * identical request
+     */
+    public <T> T call(Uri uri, Class<T> cls, Fetcher<T> fetcher) {
+        final String key = getKey(uri);
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                removeExpired(SystemClock.elapsedRealtime());
+                entry = mEntries.get(key);
+                if (entry == null || entry.mCls != cls) {
+                    entry = new Entry(cls);
+                    mEntries.put(key, entry);
+                    mMissCount++;
+                    // Make the request ourselves, outside the lock
+                } else {
+                    mHitCount++;
+                    try {
+                        while (!entry.mDone && !entry.mAbandoned) {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                    if (entry.mDone) {
+                        return cls.cast(entry.mResult);
+                    }
+                    // The request was cancelled - try again
+                    mHitCount--;
+                    continue;
+                }
+            }
+            return fetch(key, entry, fetcher);
+        }
+    }
+
+    private <T> T fetch(String key, Entry entry, Fetcher<T> fetcher) {
+        T result = null;
+        try {
+            result = fetcher.fetch();
+            return result;
+        } finally {
+            synchronized (this) {
+                if (result == null || Thread.currentThread().isInterrupted()) {
+                    // Cancelled, so the result is probably an error that only applies to us
+                    entry.mAbandoned = true;
+                } else {
+                    entry.mResult = result;
+                    entry.mDone = true;
+                    entry.mCompletedTime = SystemClock.elapsedRealtime();
+                }
+                if (!entry.mDone || mWindowMs <= 0 || !isReusable(result)) {
+                    // Callers already waiting still get the result
+                    if (mEntries.get(key) == entry) {
+                        mEntries.remove(key);
+                    }
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Only successful responses are returned to later requests - errors are only shared with
+     * the requests that were waiting for them
+     */
+    private static boolean isReusable(Object result) {
+        return !(result instanceof ObaResponse)
+                || ((ObaResponse) result).getCode() == ObaApi.OBA_OK;
+    }
+
+    private void removeExpired(long now) {
+        for (Iterator<Entry> i = mEntries.values().iterator(); i.hasNext(); ) {
+            Entry entry = i.next();
+            if (entry.mDone && now - entry.mCompletedTime > mWindowMs) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the key for a request - the URI with the parameters sorted by name, without the
+     * app_uid and app_ver parameters
+     */
+    public static String getKey(Uri uri) {
+        ArrayList<String> names = new ArrayList<>(uri.getQueryParameterNames());
+        Collections.sort(names);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : names) {
+            if (name.equals("app_uid") || name.equals("app_ver")) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * Sets how long a successful response is returned to identical requests after it completes.
+     * With a window of 0, only requests made while the response is in progress share it.
+     */
+    public synchronized void setWindow(long windowMs) {
+        mWindowMs = windowMs;
+        removeExpired(SystemClock.elapsedRealtime());
+    }
+
+    public synchronized long getWindow() {
+        return mWindowMs;
+    }
+
+    /**
+     * Removes the completed responses, so that the next requests are made to the server
+     */
+    public synchronized void clear() {
+        for (Iterator<Map.Entry<String, Entry>> i = mEntries.entrySet().iterator();
+                i.hasNext(); ) {
+            if (i.next().getValue().mDone) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests that got the response of an identical request
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of requests that were made to the server (or the response cache)
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ObaRequestCoalescer: " + mHitCount + " hits, " + mMissCount + " misses, "
+                + mEntries.size() + " entries";
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared, bounded pool of threads for network requests.  Requests run in priority order
+ * (PRIORITY_UI first), and then in the order they were submitted.
+ *
+ * Requests submitted with the URI of a request that is already queued or running share the
+ * result of that request, rather than making it again.  Cancelling a request disconnects the
+ * ObaConnection it's using (see setCurrentConnection()), once every caller sharing it has
+ * cancelled.
+ */
+public class ObaRequestExecutor {
+
+    private static final String TAG = "ObaRequestExecutor";
+
+    /**
+     * Requests for data that is shown on screen now
+     */
+    public static final int PRIORITY_UI = 0;
+
+    /**
+     * Requests for data that will probably be shown soon
+     */
+    public static final int PRIORITY_PREFETCH = 1;
+
+    /**
+     * Requests that the user isn't waiting for
+     */
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    private static final int MAX_THREADS = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    // The task running on the current thread, so RequestBase can register its connection
+    private static final ThreadLocal<Task<?>> sCurrentTask = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor mExecutor;
+
+    // Requests that are queued or running, by URI
+    private final HashMap<Uri, Task<?>> mInFlight = new HashMap<>();
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private int mSubmittedCount = 0;
+
+    private int mSharedCount = 0;
+
+    private int mCancelledCount = 0;
+
+    private static class SingletonHolder {
+
+        static final ObaRequestExecutor INSTANCE = new ObaRequestExecutor();
+    }
+
+    public static ObaRequestExecutor getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private ObaRequestExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "ObaRequest-" + threadCount.incrementAndGet());
+                    }
+                });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a request
+     *
+     * @param uri      URI of the request, used to share the result with identical requests that
+     *                 are queued or running, or null to not share it
+     * @param priority PRIORITY_UI, PRIORITY_PREFETCH or PRIORITY_BACKGROUND
+     * @param callable makes the request, usually by calling RequestBase.call()
+     * @return a Future for the result.  Cancelling it with cancel(true) aborts the request.
+     */
+    public <T> Future<T> submit(Uri uri, int priority, Callable<T> callable) {
+        return submit(uri, priority, callable, false);
+    }
+
+    /**
+     * @param rethrow true to rethrow any exception thrown by the callable on the pool thread, for
+     *                tasks whose result nobody reads
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Future<T> submit(Uri uri, int priority, Callable<T> callable, boolean rethrow) {
+        synchronized (this) {
+            mSubmittedCount++;
+            if (uri != null) {
+                Task<T> existing = (Task<T>) mInFlight.get(uri);
+                if (existing != null && existing.share()) {
+                    mSharedCount++;
+                    if (priority < existing.mPriority
+                            && mExecutor.getQueue().remove(existing)) {
+                        // Still queued - move it up to the priority of the new caller
+                        existing.mPriority = priority;
+                        mExecutor.getQueue().add(existing);
+                    }
+                    return new Handle<>(existing);
+                }
+            }
+            Task<T> task = new Task<>(uri, priority, mSequence.getAndIncrement(), callable,
+                    rethrow);
+            if (uri != null) {
+                mInFlight.put(uri, task);
+            }
+            mExecutor.execute(task);
+            return new Handle<>(task);
+        }
+    }
+
+    /**
+     * Returns an Executor that runs tasks (e.g., AsyncTasks via executeOnExecutor()) on this
+     * pool with the given priority.  Exceptions thrown by those tasks are logged and rethrown on
+     * the pool thread, as nobody reads their result.
+     */
+    public Executor getExecutor(final int priority) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submit(null, priority, Executors.callable(command), true);
+            }
+        };
+    }
+
+    /**
+     * Waits for the result of a request
+     *
+     * @return the result, or null if the request was cancelled or the waiting thread was
+     * interrupted
+     */
+    public static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Registers the connection used by the request running on this thread, so that it's
+     * disconnected if the request is cancelled.  If the request was already cancelled, the
+     * connection is disconnected immediately.  Does nothing on threads that don't belong to this
+     * executor.
+     */
+    public static void setCurrentConnection(ObaConnection connection) {
+        Task<?> task = sCurrentTask.get();
+        if (task != null) {
+            task.setConnection(connection);
+        }
+    }
+
+    private void release(Task<?> task) {
+        synchronized (this) {
+            if (--task.mHandles != 0) {
+                return;
+            }
+            mCancelledCount++;
+        }
+        // Outside the lock, as disconnecting may wait for the connection
+        task.cancel(true);
+    }
+
+    private synchronized void onDone(Task<?> task) {
+        if (task.mUri != null && mInFlight.get(task.mUri) == task) {
+            mInFlight.remove(task.mUri);
+        }
+        for (Handle<?> handle : task.mHandleList) {
+            handle.mDone.countDown();
+        }
+        task.mHandleList.clear();
+    }
+
+    /**
+     * @return the number of requests submitted
+     */
+    public synchronized int getSubmittedCount() {
+        return mSubmittedCount;
+    }
+
+    /**
+     * @return the number of requests that shared the result of an identical request
+     */
+    public synchronized int getSharedCount() {
+        return mSharedCount;
+    }
+
+    /**
+     * @return the number of requests that were cancelled by all of their callers
+     */
+    public synchronized int getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ObaRequestExecutor: " + mSubmittedCount + " submitted, " + mSharedCount
+                + " shared, " + mCancelledCount + " cancelled, " + mInFlight.size()
+                + " in flight, " + mExecutor.getQueue().size() + " queued";
+    }
+
+    /**
+     * A request in the queue, which may be shared by several Handles
+     */
+    private final class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+
+        final Uri mUri;
+
+        final long mSequence;
+
+        // Guarded by ObaRequestExecutor.this
+        int mPriority;
+
+        // Guarded by ObaRequestExecutor.this - the number of Handles that haven't cancelled
+        int mHandles = 1;
+
+        // Guarded by ObaRequestExecutor.this - the Handles to wake up when the task is done
+        final ArrayList<Handle<T>> mHandleList = new ArrayList<>();
+
+        private ObaConnection mConnection;
+
+        private boolean mCancelled = false;
+
+        private final boolean mRethrow;
+
+        Task(Uri uri, int priority, long sequence, Callable<T> callable, boolean rethrow) {
+            super(callable);
+            mUri = uri;
+            mPriority = priority;
+            mSequence = sequence;
+            mRethrow = rethrow;
+        }
+
+        /**
+         * Adds a Handle to this task, if it hasn't finished or been cancelled
+         */
+        boolean share() {
+            if (isDone() || mHandles == 0) {
+                return false;
+            }
+            mHandles++;
+            return true;
+        }
+
+        synchronized void setConnection(ObaConnection connection) {
+            mConnection = connection;
+            if (mCancelled && connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void run() {
+            sCurrentTask.set(this);
+            try {
+                super.run();
+            } finally {
+                sCurrentTask.remove();
+                setConnection(null);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean result = super.cancel(mayInterruptIfRunning);
+            ObaConnection connection;
+            synchronized (this) {
+                mCancelled = true;
+                connection = mConnection;
+            }
+            if (connection != null) {
+                Log.d(TAG, "Aborting " + mUri);
+                connection.disconnect();
+            }
+            return result;
+        }
+
+        @Override
+        protected void done() {
+            onDone(this);
+            if (!mRethrow || isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException e) {
+                // Can't happen - the task is done
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                Log.e(TAG, "Task failed", cause);
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * The Future returned to each caller of submit().  Cancelling it cancels the request once
+     * all callers sharing the request have cancelled.
+     */
+    private final class Handle<T> implements Future<T> {
+
+        private final Task<T> mTask;
+
+        private boolean mCancelled = false;
+
+        // Counted down when the task is done or this Handle is cancelled
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        /**
+         * Must be called with ObaRequestExecutor.this held, before the task is done
+         */
+        Handle(Task<T> task) {
+            mTask = task;
+            task.mHandleList.add(this);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (this) {
+                if (mCancelled || mTask.isDone()) {
+                    return false;
+                }
+                mCancelled = true;
+            }
+            // Wake up get(), even if other Handles still wait for the task
+            mDone.countDown();
+            release(mTask);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return mCancelled || mTask.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return isCancelled() || mTask.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            mDone.await();
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return mTask.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mDone.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return mTask.get();
+        }
+    }
+}
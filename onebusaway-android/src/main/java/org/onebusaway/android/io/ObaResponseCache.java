@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.io;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A disk cache of OBA REST API responses for data that rarely changes, such as routes, shapes
+ * and schedules.  Each endpoint has its own time-to-live (see setTtl()), and endpoints without a
+ * TTL - including all real-time endpoints such as arrivals-and-departures-for-stop - are never
+ * cached.  The cache is bounded by the total size of the stored responses, and the least
+ * recently used responses are removed first.
+ *
+ * Responses older than their TTL but younger than twice their TTL are stale - RequestBase
+ * returns them immediately and refreshes them in the background (see revalidate()).  Older
+ * responses are fetched from the server before returning.
+ *
+ * RequestBase uses the cache set on the default ObaContext, if any.
+ */
+public class ObaResponseCache {
+
+    private static final String TAG = "ObaResponseCache";
+
+    private static final long MINUTE_MS = 60 * 1000;
+
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    /**
+     * Default maximum size of the cache, in bytes
+     */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 10 * 1024 * 1024;
+
+    private static final String FILE_SUFFIX = ".json";
+
+    private static final String FILE_ENCODING = "UTF-8";
+
+    private final File mDir;
+
+    private final long mMaxSizeBytes;
+
+    // Endpoint name (e.g., "route") to TTL in milliseconds
+    private final HashMap<String, Long> mTtls = new HashMap<>();
+
+    // File name to entry size in bytes, in access order - loaded from disk on first use
+    private LinkedHashMap<String, Long> mIndex;
+
+    private long mSizeBytes = 0;
+
+    private int mHitCount = 0;
+
+    private int mStaleHitCount = 0;
+
+    private int mMissCount = 0;
+
+    // Keys of the responses being refreshed in the background
+    private final Set<String> mRevalidating = new HashSet<>();
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * A cached response
+     */
+    public static final class Entry {
+
+        private final String mBody;
+
+        private final long mStoredTime;
+
+        private final boolean mStale;
+
+        Entry(String body, long storedTime, boolean stale) {
+            mBody = body;
+            mStoredTime = storedTime;
+            mStale = stale;
+        }
+
+        /**
+         * @return a Reader for the response body, to be passed to
+         * SerializationHandler.deserialize()
+         */
+        public Reader getReader() {
+            return new StringReader(mBody);
+        }
+
+        /**
+         * @return the time the response was stored, in milliseconds since the epoch
+         */
+        public long getStoredTime() {
+            return mStoredTime;
+        }
+
+        /**
+         * @return true if the response is older than its TTL, and should be refreshed
+         */
+        public boolean isStale() {
+            return mStale;
+        }
+    }
+
+    /**
+     * Creates a cache in the given directory, with the default TTLs
+     *
+     * @param dir          directory to hold the cached responses, which is created if needed
+     * @param maxSizeBytes maximum total size of the cached responses, in bytes
+     */
+    public ObaResponseCache(File dir, long maxSizeBytes) {
+        mDir = dir;
+        mMaxSizeBytes = maxSizeBytes;
+        mTtls.put("route", DAY_MS);
+        mTtls.put("stops-for-route", DAY_MS);
+        mTtls.put("shape", 7 * DAY_MS);
+        mTtls.put("agencies-with-coverage", DAY_MS);
+        // Schedules are requested for a date, but can be changed by service alerts
+        mTtls.put("schedule-for-stop", HOUR_MS);
+    }
+
+    /**
+     * Sets the time-to-live of responses from the given endpoint
+     *
+     * @param endpoint name of the REST API method, e.g. "route" or "stops-for-route"
+     * @param ttlMs    time in milliseconds before responses are stale, or 0 to not cache
+     *                 responses from this endpoint
+     */
+    public synchronized void setTtl(String endpoint, long ttlMs) {
+        if (ttlMs <= 0) {
+            mTtls.remove(endpoint);
+        } else {
+            mTtls.put(endpoint, ttlMs);
+        }
+    }
+
+    /**
+     * @return true if responses for the given request are cached
+     */
+    public boolean isCacheable(Uri uri) {
+        return getTtl(uri) > 0;
+    }
+
+    private synchronized long getTtl(Uri uri) {
+        Long ttl = mTtls.get(getEndpoint(uri));
+        return ttl != null ? ttl : 0;
+    }
+
+    /**
+     * Returns the REST API method of the given request, e.g. "route" for
+     * /api/where/route/1_100.json, or null if this isn't an OBA REST API request
+     */
+    static String getEndpoint(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        int where = segments.lastIndexOf("where");
+        if (where == -1 || where == segments.size() - 1) {
+            return null;
+        }
+        String endpoint = segments.get(where + 1);
+        if (endpoint.endsWith(FILE_SUFFIX)) {
+            endpoint = endpoint.substring(0, endpoint.length() - FILE_SUFFIX.length());
+        }
+        return endpoint;
+    }
+
+    /**
+     * Returns the key for the given request - the URL without the app_uid and app_ver
+     * parameters, which don't change the response
+     */
+    static String getKey(Uri uri) {
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (name.equals("app_uid") || name.equals("app_ver")) {
+                continue;
+            }
+            for (String value : uri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        return builder.build().toString();
+    }
+
+    private static String getFileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(FILE_ENCODING));
+            StringBuilder name = new StringBuilder(hash.length * 2 + FILE_SUFFIX.length());
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16));
+                name.append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(FILE_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every Android device has SHA-1 and UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached response for the given request, or null if it isn't cached or is too
+     * old to return without refreshing
+     */
+    public Entry get(Uri uri) {
+        long ttl = getTtl(uri);
+        if (ttl <= 0) {
+            return null;
+        }
+        String key = getKey(uri);
+        String fileName = getFileName(key);
+        synchronized (this) {
+            loadIndex();
+            if (mIndex.get(fileName) == null) {
+                mMissCount++;
+                return null;
+            }
+        }
+
+        File file = new File(mDir, fileName);
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                    FILE_ENCODING));
+            // The header holds the key, in case of a hash collision, and the time stored
+            String storedKey = reader.readLine();
+            String storedTime = reader.readLine();
+            if (!key.equals(storedKey) || storedTime == null) {
+                synchronized (this) {
+                    mMissCount++;
+                }
+                return null;
+            }
+            long age = System.currentTimeMillis() - Long.parseLong(storedTime);
+            if (age < 0 || age >= 2 * ttl) {
+                synchronized (this) {
+                    mMissCount++;
+                }
+                return null;
+            }
+            StringBuilder body = new StringBuilder((int) file.length());
+            char[] buffer = new char[8 * 1024];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                body.append(buffer, 0, count);
+            }
+            boolean stale = age >= ttl;
+            synchronized (this) {
+                // Mark as recently used
+                mIndex.get(fileName);
+                if (stale) {
+                    mStaleHitCount++;
+                } else {
+                    mHitCount++;
+                }
+            }
+            return new Entry(body.toString(), Long.parseLong(storedTime), stale);
+        } catch (IOException | NumberFormatException e) {
+            Log.e(TAG, "Failed to read cached response: " + e.toString());
+            remove(uri);
+            synchronized (this) {
+                mMissCount++;
+            }
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Stores the body of a successful response for the given request, if the request is
+     * cacheable
+     *
+     * @param uri  the request
+     * @param body the response body
+     */
+    public void put(Uri uri, String body) {
+        if (!isCacheable(uri)) {
+            return;
+        }
+        String key = getKey(uri);
+        String fileName = getFileName(key);
+        File tmp = new File(mDir, fileName + ".tmp");
+        synchronized (this) {
+            // Loading the index removes partially written files, so do that before writing
+            loadIndex();
+        }
+        Writer writer = null;
+        try {
+            if (!mDir.exists() && !mDir.mkdirs()) {
+                throw new IOException("Can't create " + mDir);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp),
+                    FILE_ENCODING));
+            writer.write(key);
+            writer.write('\n');
+            writer.write(Long.toString(System.currentTimeMillis()));
+            writer.write('\n');
+            writer.write(body);
+            writer.close();
+            writer = null;
+
+            synchronized (this) {
+                File file = new File(mDir, fileName);
+                Long oldSize = mIndex.remove(fileName);
+                if (oldSize != null) {
+                    mSizeBytes -= oldSize;
+                }
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Can't rename " + tmp);
+                }
+                mIndex.put(fileName, file.length());
+                mSizeBytes += file.length();
+                trimToSize();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to cache response: " + e.toString());
+            tmp.delete();
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Removes the cached response for the given request, if any
+     */
+    public synchronized void remove(Uri uri) {
+        loadIndex();
+        String fileName = getFileName(getKey(uri));
+        Long size = mIndex.remove(fileName);
+        if (size != null) {
+            mSizeBytes -= size;
+        }
+        new File(mDir, fileName).delete();
+    }
+
+    /**
+     * Refreshes a stale response in the background.  If the response for the same request is
+     * already being refreshed, this does nothing.
+     *
+     * @param uri     the request
+     * @param refresh fetches the response from the server and calls put()
+     */
+    public void revalidate(Uri uri, final Runnable refresh) {
+        final String key = getKey(uri);
+        synchronized (this) {
+            if (!mRevalidating.add(key)) {
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh.run();
+                } finally {
+                    synchronized (ObaResponseCache.this) {
+                        mRevalidating.remove(key);
+                        ObaResponseCache.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Blocks until there are no background refreshes running, or the timeout expires
+     *
+     * @return true if all refreshes finished, false if the timeout expired
+     */
+    public synchronized boolean awaitRevalidation(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (!mRevalidating.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all responses from the cache
+     */
+    public synchronized void clear() {
+        loadIndex();
+        for (String fileName : mIndex.keySet()) {
+            new File(mDir, fileName).delete();
+        }
+        mIndex.clear();
+        mSizeBytes = 0;
+    }
+
+    /**
+     * @return the total size of the cached responses, in bytes
+     */
+    public synchronized long getSizeBytes() {
+        loadIndex();
+        return mSizeBytes;
+    }
+
+    public long getMaxSizeBytes() {
+        return mMaxSizeBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getStaleHitCount() {
+        return mStaleHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Builds the in-memory index from the files on disk, with the least recently modified first
+     */
+    private void loadIndex() {
+        if (mIndex != null) {
+            return;
+        }
+        mIndex = new LinkedHashMap<>(16, 0.75f, true);
+        mSizeBytes = 0;
+        File[] files = mDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (!file.getName().endsWith(FILE_SUFFIX)) {
+                // Left over from a failed write
+                file.delete();
+                continue;
+            }
+            mIndex.put(file.getName(), file.length());
+            mSizeBytes += file.length();
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = mIndex.entrySet().iterator();
+        while (mSizeBytes > mMaxSizeBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            mSizeBytes -= eldest.getValue();
+            new File(mDir, eldest.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ObaResponseCache size=%d/%d bytes, hits=%d, stale hits=%d, misses=%d",
+                mSizeBytes, mMaxSizeBytes, mHitCount, mStaleHitCount, mMissCount);
+    }
+}
@@ -18,6 +18,7 @@ package org.onebusaway.android.io.backup;
 import org.apache.commons.io.FileUtils;
 import org.onebusaway.android.provider.ObaContract;
 import org.onebusaway.android.provider.ObaProvider;
+import org.onebusaway.android.provider.RouteHeadsignFavoritesIndex;
 
 import android.content.ContentProviderClient;
 import android.content.Context;
@@ -79,6 +80,8 @@ public final class Backup {
             provider.closeDB();
 
             FileUtils.copyFile(backupPath, dbPath);
+            // The database was replaced without notifying observers
+            RouteHeadsignFavoritesIndex.getInstance().invalidate();
 
         } finally {
             if (client != null) {
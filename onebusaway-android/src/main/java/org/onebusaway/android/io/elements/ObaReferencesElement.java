@@ -17,6 +17,7 @@ package org.onebusaway.android.io.elements;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 public final class ObaReferencesElement implements ObaReferences {
@@ -33,6 +34,23 @@ public final class ObaReferencesElement implements ObaReferences {
 
     private final ObaSituationElement[] situations;
 
+    /**
+     * Reference sets at or below this size are searched linearly - building a HashMap would cost
+     * more than the lookups it saves
+     */
+    private static final int MIN_INDEX_SIZE = 8;
+
+    // Lazily built id -> element indexes.  These are transient so Jackson ignores them.
+    private transient volatile HashMap<String, ObaStopElement> stopIndex;
+
+    private transient volatile HashMap<String, ObaRouteElement> routeIndex;
+
+    private transient volatile HashMap<String, ObaTripElement> tripIndex;
+
+    private transient volatile HashMap<String, ObaAgencyElement> agencyIndex;
+
+    private transient volatile HashMap<String, ObaSituationElement> situationIndex;
+
     public ObaReferencesElement() {
         stops = ObaStopElement.EMPTY_ARRAY;
         routes = ObaRouteElement.EMPTY_ARRAY;
@@ -43,22 +61,22 @@ public final class ObaReferencesElement implements ObaReferences {
 
     @Override
     public ObaStop getStop(String id) {
-        return findById(stops, id);
+        return findById(stops, getStopIndex(), id);
     }
 
     @Override
     public List<ObaStop> getStops(String[] ids) {
-        return findList(ObaStop.class, stops, ids);
+        return findList(ObaStop.class, stops, getStopIndex(), ids);
     }
 
     @Override
     public ObaRoute getRoute(String id) {
-        return findById(routes, id);
+        return findById(routes, getRouteIndex(), id);
     }
 
     @Override
     public List<ObaRoute> getRoutes(String[] ids) {
-        return findList(ObaRoute.class, routes, ids);
+        return findList(ObaRoute.class, routes, getRouteIndex(), ids);
     }
 
     @Override
@@ -68,38 +86,93 @@ public final class ObaReferencesElement implements ObaReferences {
 
     @Override
     public ObaTrip getTrip(String id) {
-        return findById(trips, id);
+        return findById(trips, getTripIndex(), id);
     }
 
     @Override
     public List<ObaTrip> getTrips(String[] ids) {
-        return findList(ObaTrip.class, trips, ids);
+        return findList(ObaTrip.class, trips, getTripIndex(), ids);
     }
 
     @Override
     public ObaAgency getAgency(String id) {
-        return findById(agencies, id);
+        return findById(agencies, getAgencyIndex(), id);
     }
 
     @Override
     public List<ObaAgency> getAgencies(String[] ids) {
-        return findList(ObaAgency.class, agencies, ids);
+        return findList(ObaAgency.class, agencies, getAgencyIndex(), ids);
     }
 
     @Override
     public ObaSituation getSituation(String id) {
-        return findById(situations, id);
+        return findById(situations, getSituationIndex(), id);
     }
 
     @Override
     public List<ObaSituation> getSituations(String[] ids) {
-        return findList(ObaSituation.class, situations, ids);
+        return findList(ObaSituation.class, situations, getSituationIndex(),
+                ids);
     }
 
     //
-    // TODO: This will be much easier when we convert to HashMap storage.
+    // The indexes are built at most once per response, on first lookup.  Racing threads may
+    // each build one, but the results are identical so the last write wins harmlessly.
     //
-    private static <T extends ObaElement> T findById(T[] objects, String id) {
+    private HashMap<String, ObaStopElement> getStopIndex() {
+        HashMap<String, ObaStopElement> index = stopIndex;
+        if (index == null && stops.length > MIN_INDEX_SIZE) {
+            index = stopIndex = buildIndex(stops);
+        }
+        return index;
+    }
+
+    private HashMap<String, ObaRouteElement> getRouteIndex() {
+        HashMap<String, ObaRouteElement> index = routeIndex;
+        if (index == null && routes.length > MIN_INDEX_SIZE) {
+            index = routeIndex = buildIndex(routes);
+        }
+        return index;
+    }
+
+    private HashMap<String, ObaTripElement> getTripIndex() {
+        HashMap<String, ObaTripElement> index = tripIndex;
+        if (index == null && trips.length > MIN_INDEX_SIZE) {
+            index = tripIndex = buildIndex(trips);
+        }
+        return index;
+    }
+
+    private HashMap<String, ObaAgencyElement> getAgencyIndex() {
+        HashMap<String, ObaAgencyElement> index = agencyIndex;
+        if (index == null && agencies.length > MIN_INDEX_SIZE) {
+            index = agencyIndex = buildIndex(agencies);
+        }
+        return index;
+    }
+
+    private HashMap<String, ObaSituationElement> getSituationIndex() {
+        HashMap<String, ObaSituationElement> index = situationIndex;
+        if (index == null && situations.length > MIN_INDEX_SIZE) {
+            index = situationIndex = buildIndex(situations);
+        }
+        return index;
+    }
+
+    private static <T extends ObaElement> HashMap<String, T> buildIndex(T[] objects) {
+        HashMap<String, T> index = new HashMap<String, T>(objects.length * 4 / 3 + 1);
+        // Walk backwards so the first element wins for duplicate IDs, like the linear search
+        for (int i = objects.length - 1; i >= 0; --i) {
+            index.put(objects[i].getId(), objects[i]);
+        }
+        return index;
+    }
+
+    private static <T extends ObaElement> T findById(T[] objects, HashMap<String, T> index,
+            String id) {
+        if (index != null) {
+            return index.get(id);
+        }
         final int len = objects.length;
         for (int i = 0; i < len; ++i) {
             final T obj = objects[i];
@@ -111,12 +184,12 @@ public final class ObaReferencesElement implements ObaReferences {
     }
 
     private static <E extends ObaElement, T extends E> List<E> findList(
-            Class<E> cls, T[] objects, String[] ids) {
-        ArrayList<E> result = new ArrayList<E>();
+            Class<E> cls, T[] objects, HashMap<String, T> index, String[] ids) {
         final int len = ids.length;
+        ArrayList<E> result = new ArrayList<E>(len);
         for (int i = 0; i < len; ++i) {
             final String id = ids[i];
-            final T obj = findById(objects, id);
+            final T obj = findById(objects, index, id);
             if (obj != null) {
                 result.add(obj);
             }
@@ -16,6 +16,7 @@
 package org.onebusaway.android.io.elements;
 
 import org.onebusaway.android.util.LocationUtils;
+import org.onebusaway.android.util.ShapeCache;
 
 import android.location.Location;
 
@@ -57,7 +58,7 @@ public final class ObaShapeElement implements ObaShape {
 
     @Override
     public List<Location> getPoints() {
-        return decodeLine(points, length);
+        return ShapeCache.getInstance().get(points, length).toLocations();
     }
 
     @Override
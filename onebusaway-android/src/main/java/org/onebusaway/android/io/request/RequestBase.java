@@ -19,6 +19,9 @@ package org.onebusaway.android.io.request;
 import org.onebusaway.android.io.ObaApi;
 import org.onebusaway.android.io.ObaConnection;
 import org.onebusaway.android.io.ObaContext;
+import org.onebusaway.android.io.ObaRequestCoalescer;
+import org.onebusaway.android.io.ObaRequestExecutor;
+import org.onebusaway.android.io.ObaResponseCache;
 
 import android.content.Context;
 import android.net.Uri;
@@ -28,6 +31,7 @@ import android.util.Log;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 
 /**
@@ -128,11 +132,36 @@ public class RequestBase {
         }
     }
 
-    protected <T> T call(Class<T> cls) {
+    /**
+     * @return the URI of this request, which identifies identical requests
+     */
+    public Uri getUri() {
+        return mUri;
+    }
+
+    protected <T> T call(final Class<T> cls) {
+        if (mPostData != null) {
+            return callUncoalesced(cls);
+        }
+        T t = ObaRequestCoalescer.getInstance().call(mUri, cls, () -> callUncoalesced(cls));
+        if (t == null) {
+            // Interrupted while waiting for an identical request
+            return ObaApi.getSerializer(cls).createFromError(cls, ObaApi.OBA_IO_EXCEPTION,
+                    "Interrupted");
+        }
+        return t;
+    }
+
+    private <T> T callUncoalesced(Class<T> cls) {
+        ObaResponseCache cache = ObaApi.getDefaultContext().getResponseCache();
+        if (mPostData == null && cache != null && cache.isCacheable(mUri)) {
+            return callWithCache(cls, cache);
+        }
         ObaApi.SerializationHandler handler = ObaApi.getSerializer(cls);
         ObaConnection conn = null;
         try {
             conn = ObaApi.getDefaultContext().getConnectionFactory().newConnection(mUri);
+            ObaRequestExecutor.setCurrentConnection(conn);
             Reader reader;
             if (mPostData != null) {
                 reader = conn.post(mPostData);
@@ -167,4 +196,75 @@ public class RequestBase {
         }
     }
 
+    /**
+     * Returns the cached response if there is one, otherwise requests the response from the
+     * server and caches it.  A stale cached response is returned immediately and refreshed in the
+     * background.
+     */
+    private <T> T callWithCache(final Class<T> cls, final ObaResponseCache cache) {
+        ObaResponseCache.Entry entry = cache.get(mUri);
+        if (entry != null) {
+            T t = ObaApi.getSerializer(cls).deserialize(entry.getReader(), cls);
+            if (t != null) {
+                if (entry.isStale()) {
+                    cache.revalidate(mUri, new Runnable() {
+                        @Override
+                        public void run() {
+                            fetchAndCache(cls, cache);
+                        }
+                    });
+                }
+                return t;
+            }
+            // Can't be parsed - maybe the response classes changed
+            cache.remove(mUri);
+        }
+        return fetchAndCache(cls, cache);
+    }
+
+    /**
+     * Requests the response from the server, and caches the body if the request succeeded
+     */
+    private <T> T fetchAndCache(Class<T> cls, ObaResponseCache cache) {
+        ObaApi.SerializationHandler handler = ObaApi.getSerializer(cls);
+        ObaConnection conn = null;
+        try {
+            conn = ObaApi.getDefaultContext().getConnectionFactory().newConnection(mUri);
+            ObaRequestExecutor.setCurrentConnection(conn);
+            int responseCode = conn.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                return handler.createFromError(cls, responseCode, "");
+            }
+            // The body is needed twice, so read it into memory rather than streaming it
+            String body = readFully(conn.get());
+            T t = handler.deserialize(new StringReader(body), cls);
+            if (t == null) {
+                return handler.createFromError(cls, ObaApi.OBA_INTERNAL_ERROR, "Json error");
+            }
+            if (!(t instanceof ObaResponse) || ((ObaResponse) t).getCode() == ObaApi.OBA_OK) {
+                cache.put(mUri, body);
+            }
+            return t;
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, e.toString());
+            return handler.createFromError(cls, ObaApi.OBA_NOT_FOUND, e.toString());
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            return handler.createFromError(cls, ObaApi.OBA_IO_EXCEPTION, e.toString());
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        StringBuilder body = new StringBuilder();
+        char[] buffer = new char[8 * 1024];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            body.append(buffer, 0, count);
+        }
+        return body.toString();
+    }
 }
@@ -127,6 +127,12 @@ public interface MapModeController {
         // Remove the vehicles from the map
         void removeVehicleOverlay();
 
+        // Stop moving the vehicles on the map between refreshes
+        void pauseVehicleOverlay();
+
+        // Continue moving the vehicles on the map between refreshes
+        void resumeVehicleOverlay();
+
         // Zoom to line overlay of route
         void zoomToRoute();
 
@@ -19,14 +19,24 @@ package org.onebusaway.android.map;
 import org.onebusaway.android.R;
 import org.onebusaway.android.app.Application;
 import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.ObaRequestExecutor;
 import org.onebusaway.android.io.elements.ObaRoute;
 import org.onebusaway.android.io.elements.ObaStop;
+import org.onebusaway.android.io.elements.ObaTrip;
+import org.onebusaway.android.io.elements.ObaTripDetails;
+import org.onebusaway.android.io.elements.ObaTripStatus;
+import org.onebusaway.android.io.request.ObaShapeRequest;
+import org.onebusaway.android.io.request.ObaShapeResponse;
 import org.onebusaway.android.io.request.ObaStopsForRouteRequest;
 import org.onebusaway.android.io.request.ObaStopsForRouteResponse;
 import org.onebusaway.android.io.request.ObaTripsForRouteRequest;
 import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
 import org.onebusaway.android.map.googlemapsv2.BaseMapFragment;
+import org.onebusaway.android.ui.RequestLoader;
+import org.onebusaway.android.util.AdaptiveRefreshPolicy;
 import org.onebusaway.android.util.LocationUtils;
+import org.onebusaway.android.util.RefreshPolicy;
+import org.onebusaway.android.util.ShapeCache;
 import org.onebusaway.android.util.UIUtils;
 
 import android.app.Activity;
@@ -40,12 +50,14 @@ import android.view.View;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 public class RouteMapController implements MapModeController {
@@ -143,6 +155,7 @@ public class RouteMapController implements MapModeController {
         mVehiclesLoader.stopLoading();
         mVehiclesLoader.reset();
         mVehicleRefreshHandler.removeCallbacks(mVehicleRefresh);
+        cancelShapes();
 
         // Clear the existing route and vehicle overlays
         mFragment.getMapView().removeRouteOverlay();
@@ -162,12 +175,15 @@ public class RouteMapController implements MapModeController {
         mRoutePopup.hide();
         mFragment.getMapView().removeRouteOverlay();
         mVehicleRefreshHandler.removeCallbacks(mVehicleRefresh);
+        cancelShapes();
         mFragment.getMapView().removeVehicleOverlay();
     }
 
     @Override
     public void onPause() {
         mVehicleRefreshHandler.removeCallbacks(mVehicleRefresh);
+        // Stop animating the vehicles while the map isn't visible
+        mFragment.getMapView().pauseVehicleOverlay();
     }
 
     /**
@@ -187,25 +203,29 @@ public class RouteMapController implements MapModeController {
 
     @Override
     public void onResume() {
+        mFragment.getMapView().resumeVehicleOverlay();
+
         // Make sure we schedule a future update for vehicles
         mVehicleRefreshHandler.removeCallbacks(mVehicleRefresh);
 
         if (mLastUpdatedTimeVehicles == 0) {
             // We haven't loaded any vehicles yet - schedule the refresh for the full period and defer
             // to the loader to reschedule when load is complete
-            mVehicleRefreshHandler.postDelayed(mVehicleRefresh, VEHICLE_REFRESH_PERIOD);
+            mVehicleRefreshHandler.postDelayed(mVehicleRefresh,
+                    mVehicleRefreshPolicy.getCurrentDelay());
             return;
         }
 
         long elapsedTimeMillis = TimeUnit.NANOSECONDS.toMillis(UIUtils.getCurrentTimeForComparison()
                 - mLastUpdatedTimeVehicles);
+        long refreshDelay = mVehicleRefreshPolicy.getCurrentDelay();
         long refreshPeriod;
-        if (elapsedTimeMillis > VEHICLE_REFRESH_PERIOD) {
-            // Schedule an immediate update, if we're past the normal period after a load
+        if (elapsedTimeMillis > refreshDelay) {
+            // Schedule an immediate update, if we're past the refresh delay after a load
             refreshPeriod = 100;
         } else {
-            // Schedule an update so a total of VEHICLE_REFRESH_PERIOD has elapsed since the last update
-            refreshPeriod = VEHICLE_REFRESH_PERIOD - elapsedTimeMillis;
+            // Schedule an update so a total of the refresh delay has elapsed since the last update
+            refreshPeriod = refreshDelay - elapsedTimeMillis;
         }
         mVehicleRefreshHandler.postDelayed(mVehicleRefresh, refreshPeriod);
     }
@@ -354,7 +374,9 @@ public class RouteMapController implements MapModeController {
         }
     }
 
-    private static final long VEHICLE_REFRESH_PERIOD = TimeUnit.SECONDS.toMillis(10);
+    private final RefreshPolicy mVehicleRefreshPolicy = AdaptiveRefreshPolicy.newVehiclesPolicy();
+
+    private boolean mVehicleErrorShown = false;
 
     private final Handler mVehicleRefreshHandler = new Handler();
 
@@ -373,11 +395,88 @@ public class RouteMapController implements MapModeController {
         }
     }
 
+    // Upper bound on the shapes fetched for each vehicles response
+    private static final int MAX_SHAPE_REQUESTS = 8;
+
+    // Shapes of the vehicles' trips that are being fetched, by shape ID
+    private final HashMap<String, Future<ObaShapeResponse>> mShapeRequests = new HashMap<>();
+
+    // The vehicles shown last, to show again when the shapes of their trips arrive
+    private ObaTripsForRouteResponse mLastVehicles;
+
+    private final Runnable mShapesLoaded = new Runnable() {
+        public void run() {
+            if (mLastVehicles != null) {
+                HashSet<String> routes = new HashSet<>(1);
+                routes.add(mRouteId);
+                // VehicleOverlay passes the vehicles with newly cached shapes to its interpolator
+                mFragment.getMapView().updateVehicles(routes, mLastVehicles);
+            }
+        }
+    };
+
+    /**
+     * Fetches the shapes of the vehicles' trips that aren't in the ShapeCache, in the background
+     * at prefetch priority, so VehicleOverlay can move the vehicles along them between refreshes.
+     * The vehicles are shown again once shapes arrive.
+     */
+    private void loadShapes(ObaTripsForRouteResponse response) {
+        mLastVehicles = response;
+        for (Iterator<Future<ObaShapeResponse>> i = mShapeRequests.values().iterator();
+                i.hasNext(); ) {
+            if (i.next().isDone()) {
+                i.remove();
+            }
+        }
+        final ShapeCache cache = ShapeCache.getInstance();
+        for (ObaTripDetails trip : response.getTrips()) {
+            ObaTripStatus status = trip.getStatus();
+            if (status == null || mShapeRequests.size() >= MAX_SHAPE_REQUESTS) {
+                continue;
+            }
+            ObaTrip activeTrip = response.getTrip(status.getActiveTripId());
+            if (activeTrip == null) {
+                continue;
+            }
+            final String shapeId = activeTrip.getShapeId();
+            if (TextUtils.isEmpty(shapeId) || mShapeRequests.containsKey(shapeId)
+                    || cache.getByShapeId(shapeId) != null) {
+                continue;
+            }
+            final ObaShapeRequest request = ObaShapeRequest.newRequest(Application.get(),
+                    shapeId);
+            mShapeRequests.put(shapeId, ObaRequestExecutor.getInstance().submit(
+                    request.getUri(), ObaRequestExecutor.PRIORITY_PREFETCH, () -> {
+                        ObaShapeResponse shape = request.call();
+                        if (shape.getCode() == ObaApi.OBA_OK
+                                && !TextUtils.isEmpty(shape.getRawPoints())) {
+                            cache.putShapeId(shapeId, shape.getRawPoints(), shape.getLength());
+                            // Shapes that arrive together are shown with one update
+                            mVehicleRefreshHandler.removeCallbacks(mShapesLoaded);
+                            mVehicleRefreshHandler.post(mShapesLoaded);
+                        }
+                        return shape;
+                    }));
+        }
+    }
+
+    /**
+     * Cancels the shape requests in progress, and forgets the vehicles shown last
+     */
+    private void cancelShapes() {
+        for (Future<ObaShapeResponse> future : mShapeRequests.values()) {
+            future.cancel(true);
+        }
+        mShapeRequests.clear();
+        mLastVehicles = null;
+        mVehicleRefreshHandler.removeCallbacks(mShapesLoaded);
+    }
+
     //
     // Loaders
     //
 
-    private static class RoutesLoader extends AsyncTaskLoader<ObaStopsForRouteResponse> {
+    private static class RoutesLoader extends RequestLoader<ObaStopsForRouteResponse> {
 
         private final String mRouteId;
 
@@ -396,10 +495,11 @@ public class RouteMapController implements MapModeController {
                 return null;
             }
             //Make OBA REST API call to the server and return result
-            return new ObaStopsForRouteRequest.Builder(getContext(), mRouteId)
-                    .setIncludeShapes(true)
-                    .build()
-                    .call();
+            final ObaStopsForRouteRequest request =
+                    new ObaStopsForRouteRequest.Builder(getContext(), mRouteId)
+                            .setIncludeShapes(true)
+                            .build();
+            return execute(request.getUri(), () -> request.call());
         }
 
         @Override
@@ -412,6 +512,12 @@ public class RouteMapController implements MapModeController {
         public void onStartLoading() {
             forceLoad();
         }
+
+        @Override
+        protected void onStopLoading() {
+            // Abort the request in progress
+            cancelLoad();
+        }
     }
 
     class RouteLoaderListener implements LoaderManager.LoaderCallbacks<ObaStopsForRouteResponse>,
@@ -471,7 +577,7 @@ public class RouteMapController implements MapModeController {
         }
     }
 
-    private static class VehiclesLoader extends AsyncTaskLoader<ObaTripsForRouteResponse> {
+    private static class VehiclesLoader extends RequestLoader<ObaTripsForRouteResponse> {
 
         private final String mRouteId;
 
@@ -490,10 +596,11 @@ public class RouteMapController implements MapModeController {
                 return null;
             }
             //Make OBA REST API call to the server and return result
-            return new ObaTripsForRouteRequest.Builder(getContext(), mRouteId)
-                    .setIncludeStatus(true)
-                    .build()
-                    .call();
+            final ObaTripsForRouteRequest request =
+                    new ObaTripsForRouteRequest.Builder(getContext(), mRouteId)
+                            .setIncludeStatus(true)
+                            .build();
+            return execute(request.getUri(), () -> request.call());
         }
 
         @Override
@@ -505,6 +612,12 @@ public class RouteMapController implements MapModeController {
         public void onStartLoading() {
             forceLoad();
         }
+
+        @Override
+        protected void onStopLoading() {
+            // Abort the request in progress
+            cancelLoad();
+        }
     }
 
     class VehicleLoaderListener implements LoaderManager.LoaderCallbacks<ObaTripsForRouteResponse>,
@@ -525,14 +638,26 @@ public class RouteMapController implements MapModeController {
             ObaMapView obaMapView = mFragment.getMapView();
 
             if (response == null || response.getCode() != ObaApi.OBA_OK) {
-                BaseMapFragment.showMapError(response);
+                if (!mVehicleErrorShown) {
+                    // Only show the first of consecutive errors while retrying
+                    BaseMapFragment.showMapError(response);
+                    mVehicleErrorShown = true;
+                }
+                if (response != null) {
+                    // Keep trying, backing off if the server is having problems
+                    mVehicleRefreshHandler.removeCallbacks(mVehicleRefresh);
+                    mVehicleRefreshHandler.postDelayed(mVehicleRefresh,
+                            mVehicleRefreshPolicy.getNextDelay(response));
+                }
                 return;
             }
 
+            mVehicleErrorShown = false;
             routes.clear();
             routes.add(mRouteId);
 
             obaMapView.updateVehicles(routes, response);
+            loadShapes(response);
 
             if (mZoomIncludeClosestVehicle) {
                 obaMapView.zoomIncludeClosestVehicle(routes, response);
@@ -544,8 +669,9 @@ public class RouteMapController implements MapModeController {
             // Clear any pending refreshes
             mVehicleRefreshHandler.removeCallbacks(mVehicleRefresh);
 
-            // Post an update
-            mVehicleRefreshHandler.postDelayed(mVehicleRefresh, VEHICLE_REFRESH_PERIOD);
+            // Post an update, later if none of the vehicles have real-time positions
+            mVehicleRefreshHandler.postDelayed(mVehicleRefresh,
+                    mVehicleRefreshPolicy.getNextDelay(response));
         }
 
         @Override
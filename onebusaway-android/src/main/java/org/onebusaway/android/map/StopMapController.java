@@ -20,8 +20,8 @@ import com.google.android.gms.common.api.GoogleApiClient;
 
 import org.onebusaway.android.app.Application;
 import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.elements.ObaReferences;
 import org.onebusaway.android.io.elements.ObaStop;
-import org.onebusaway.android.io.request.ObaStopsForLocationRequest;
 import org.onebusaway.android.io.request.ObaStopsForLocationResponse;
 import org.onebusaway.android.map.googlemapsv2.BaseMapFragment;
 import org.onebusaway.android.util.RegionUtils;
@@ -78,9 +78,22 @@ final class StopsResponse {
 
     private final ObaStopsForLocationResponse mResponse;
 
+    private final List<ObaStop> mStops;
+
+    private final ObaReferences mRefs;
+
     StopsResponse(StopsRequest req, ObaStopsForLocationResponse response) {
         mRequest = req;
         mResponse = response;
+        mStops = response != null ? Arrays.asList(response.getStops()) : null;
+        mRefs = response;
+    }
+
+    StopsResponse(StopsRequest req, StopTileCache.Result result) {
+        mRequest = req;
+        mResponse = result.getResponse();
+        mStops = result.getStops();
+        mRefs = result.getRefs();
     }
 
     StopsRequest getRequest() {
@@ -91,6 +104,20 @@ final class StopsResponse {
         return mResponse;
     }
 
+    /**
+     * @return the stops in all map tiles covering the request
+     */
+    List<ObaStop> getStops() {
+        return mStops;
+    }
+
+    /**
+     * @return references for all stops returned by getStops()
+     */
+    ObaReferences getRefs() {
+        return mRefs;
+    }
+
     /**
      * Returns true if newReq also fulfills response.
      */
@@ -234,15 +261,14 @@ public class StopMapController extends BaseMapController implements
                         + ", long = " + myLocation.getLongitude());
             }
 
-            if (!inRegion && Arrays.asList(response.getStops()).isEmpty()) {
+            if (!inRegion && _response.getStops().isEmpty()) {
                 Log.d(TAG, "Device location is outside region range, notifying...");
                 mCallback.notifyOutOfRange();
                 return;
             }
         }
 
-        List<ObaStop> stops = Arrays.asList(response.getStops());
-        mCallback.showStops(stops, response);
+        mCallback.showStops(_response.getStops(), _response.getRefs());
     }
 
     @Override
@@ -285,14 +311,14 @@ public class StopMapController extends BaseMapController implements
                             "OBA REST API endpoint, aborting...");
                 return new StopsResponse(req, null);
             }
-            //Make OBA REST API call to the server and return result
-            ObaStopsForLocationResponse response =
-                    new ObaStopsForLocationRequest.Builder(getContext(),
-                            req.getCenter())
-                            .setSpan(req.getLatSpan(), req.getLonSpan())
-                            .build()
-                            .call();
-            return new StopsResponse(req, response);
+            //Get stops from the tile cache, which calls the OBA REST API for any missing tiles
+            String scope = Application.get().getCurrentRegion() != null ?
+                    String.valueOf(Application.get().getCurrentRegion().getId()) :
+                    Application.get().getCustomApiUrl();
+            StopTileCache.Result result = StopTileCache.getInstance().getStops(getContext(),
+                    scope, req.getCenter(), req.getLatSpan(), req.getLonSpan(),
+                    req.getZoomLevel());
+            return new StopsResponse(req, result);
         }
 
         @Override
@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map;
+
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.elements.ObaAgency;
+import org.onebusaway.android.io.elements.ObaReferences;
+import org.onebusaway.android.io.elements.ObaRoute;
+import org.onebusaway.android.io.elements.ObaSituation;
+import org.onebusaway.android.io.elements.ObaStop;
+import org.onebusaway.android.io.elements.ObaTrip;
+import org.onebusaway.android.io.request.ObaStopsForLocationRequest;
+import org.onebusaway.android.io.request.ObaStopsForLocationResponse;
+import org.onebusaway.android.util.LocationUtils;
+
+import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import androidx.collection.LruCache;
+
+/**
+ * Caches stops-for-location results by geographic tile so that panning the map only requests
+ * stops for the tiles that have just scrolled into view.
+ *
+ * The world is divided into a square grid of tiles for each zoom band, where a tile is about two
+ * map tiles wide at that zoom level.  Each cached tile holds the stops inside it and the
+ * references from the response they came from.  Tiles expire after TILE_TTL_MS (or
+ * INCOMPLETE_TILE_TTL_MS if the server truncated the response) and the least recently used tiles
+ * are evicted once MAX_TILES are cached.
+ */
+public class StopTileCache {
+
+    private static final String TAG = "StopTileCache";
+
+    /**
+     * Maximum number of tiles kept in the cache
+     */
+    static final int MAX_TILES = 256;
+
+    /**
+     * Time after which a cached tile is requested again, in milliseconds
+     */
+    static final long TILE_TTL_MS = 10 * 60 * 1000;
+
+    /**
+     * Time after which a tile from a response that exceeded the server's result limit (and
+     * therefore may be missing stops) is requested again, in milliseconds
+     */
+    static final long INCOMPLETE_TILE_TTL_MS = 60 * 1000;
+
+    /**
+     * Maximum number of tiles requested one by one when the request for all missing tiles
+     * exceeded the server's result limit.  If more tiles are missing, the truncated response is
+     * used for them, so a load never makes more than MAX_TILE_REQUESTS + 1 requests.
+     */
+    static final int MAX_TILE_REQUESTS = 4;
+
+    /**
+     * Views that cover more tiles than this bypass the cache - this happens when zoomed far out
+     */
+    static final int MAX_TILES_PER_VIEW = 24;
+
+    /**
+     * Zoom bands are this many levels below the map zoom, so a tile is 2^offset map tiles wide
+     */
+    private static final int ZOOM_BAND_OFFSET = 1;
+
+    private static final int MAX_ZOOM_BAND = 21;
+
+    private final LruCache<Long, Tile> mTiles = new LruCache<>(MAX_TILES);
+
+    // The region or custom API that the cached tiles were loaded from
+    private String mScope;
+
+    private int mRequestCount = 0;
+
+    private StopTileCache() {
+    }
+
+    private static class SingletonHolder {
+
+        public static final StopTileCache INSTANCE = new StopTileCache();
+    }
+
+    public static StopTileCache getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * The stops in a single tile, and the references from the response they were loaded from
+     */
+    private static final class Tile {
+
+        final ArrayList<ObaStop> mStops = new ArrayList<>();
+
+        final ObaStopsForLocationResponse mResponse;
+
+        final long mExpiresAt;
+
+        Tile(ObaStopsForLocationResponse response, long loadedAt) {
+            mResponse = response;
+            mExpiresAt = loadedAt + (response.getLimitExceeded() ? INCOMPLETE_TILE_TTL_MS
+                    : TILE_TTL_MS);
+        }
+    }
+
+    /**
+     * The merged result of all tiles covering a map view
+     */
+    public static final class Result {
+
+        private final ObaStopsForLocationResponse mResponse;
+
+        private final List<ObaStop> mStops;
+
+        private final ObaReferences mRefs;
+
+        Result(ObaStopsForLocationResponse response, List<ObaStop> stops, ObaReferences refs) {
+            mResponse = response;
+            mStops = stops;
+            mRefs = refs;
+        }
+
+        /**
+         * @return a response that represents the status of the view - an error response if any
+         * request failed, or an OK response otherwise
+         */
+        public ObaStopsForLocationResponse getResponse() {
+            return mResponse;
+        }
+
+        /**
+         * @return the stops in all tiles covering the view
+         */
+        public List<ObaStop> getStops() {
+            return mStops;
+        }
+
+        /**
+         * @return references for all stops in the view
+         */
+        public ObaReferences getRefs() {
+            return mRefs;
+        }
+    }
+
+    /**
+     * Returns the stops for the given map view, requesting stops from the server only for the
+     * tiles in the view that aren't cached yet.  This makes a blocking network call if any tiles
+     * are missing, so it must not be called on the UI thread.  Requests are made without holding
+     * the cache lock, so views can be loaded from other threads in the meantime.
+     *
+     * @param context Context used to build the request
+     * @param scope   identifies the region or custom API the stops are loaded from.  The cache
+     *                is cleared when the scope changes.
+     * @param center  center of the map view
+     * @param latSpan latitude span of the map view, in decimal degrees
+     * @param lonSpan longitude span of the map view, in decimal degrees
+     * @param zoom    zoom level of the map view
+     * @return the stops for the given map view
+     */
+    public Result getStops(Context context, String scope, Location center,
+            double latSpan, double lonSpan, double zoom) {
+        final int band = getZoomBand(zoom);
+        final double tileSize = getTileSize(band);
+        final int minX = getTileIndex(center.getLongitude() - lonSpan / 2 + 180, tileSize);
+        final int maxX = getTileIndex(center.getLongitude() + lonSpan / 2 + 180, tileSize);
+        final int minY = getTileIndex(center.getLatitude() - latSpan / 2 + 90, tileSize);
+        final int maxY = getTileIndex(center.getLatitude() + latSpan / 2 + 90, tileSize);
+
+        if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_TILES_PER_VIEW) {
+            // Too many tiles to be worth caching, so make a single request for the view
+            ObaStopsForLocationResponse response = request(context, center, latSpan, lonSpan);
+            return new Result(response, Arrays.asList(response.getStops()), response);
+        }
+
+        final long now = System.currentTimeMillis();
+        LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<>();
+        int missingMinX = Integer.MAX_VALUE, missingMaxX = Integer.MIN_VALUE;
+        int missingMinY = Integer.MAX_VALUE, missingMaxY = Integer.MIN_VALUE;
+        int missingCount = 0;
+        synchronized (this) {
+            if (mScope == null || !mScope.equals(scope)) {
+                mTiles.evictAll();
+                mScope = scope;
+            }
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    long key = getKey(band, x, y);
+                    Tile tile = mTiles.get(key);
+                    if (tile != null && now > tile.mExpiresAt) {
+                        mTiles.remove(key);
+                        tile = null;
+                    }
+                    if (tile == null) {
+                        missingCount++;
+                        missingMinX = Math.min(missingMinX, x);
+                        missingMaxX = Math.max(missingMaxX, x);
+                        missingMinY = Math.min(missingMinY, y);
+                        missingMaxY = Math.max(missingMaxY, y);
+                    }
+                    tiles.put(key, tile);
+                }
+            }
+        }
+
+        ObaStopsForLocationResponse status = null;
+        if (missingMinX != Integer.MAX_VALUE) {
+            // Make one request for the bounding box of all missing tiles
+            ObaStopsForLocationResponse response = requestTiles(context, tileSize,
+                    missingMinX, missingMaxX, missingMinY, missingMaxY);
+            if (response.getCode() != ObaApi.OBA_OK) {
+                return new Result(response, null, null);
+            }
+            status = response;
+
+            HashMap<Long, Tile> loaded = new HashMap<>();
+            if (response.getLimitExceeded() && missingCount > 1
+                    && missingCount <= MAX_TILE_REQUESTS) {
+                // The server left out some of the stops in the box, so request the few missing
+                // tiles one by one instead, as each of them holds fewer stops
+                for (int x = missingMinX; x <= missingMaxX; x++) {
+                    for (int y = missingMinY; y <= missingMaxY; y++) {
+                        long key = getKey(band, x, y);
+                        if (tiles.get(key) != null) {
+                            continue;
+                        }
+                        response = requestTiles(context, tileSize, x, x, y, y);
+                        if (response.getCode() != ObaApi.OBA_OK) {
+                            return new Result(response, null, null);
+                        }
+                        addTiles(loaded, response, band, tileSize, x, x, y, y, now);
+                    }
+                }
+            } else {
+                addTiles(loaded, response, band, tileSize, missingMinX, missingMaxX,
+                        missingMinY, missingMaxY, now);
+            }
+
+            synchronized (this) {
+                // Don't cache tiles if the scope changed while they were requested.  Tiles that
+                // may be missing stops are cached too, but expire sooner, so that panning a
+                // dense area doesn't request them on every load.
+                boolean sameScope = mScope != null && mScope.equals(scope);
+                for (Long key : loaded.keySet()) {
+                    Tile tile = loaded.get(key);
+                    if (sameScope) {
+                        mTiles.put(key, tile);
+                    }
+                    if (tiles.containsKey(key)) {
+                        tiles.put(key, tile);
+                    }
+                }
+            }
+        }
+
+        ArrayList<ObaStop> stops = new ArrayList<>();
+        ArrayList<ObaReferences> refs = new ArrayList<>();
+        for (Tile tile : tiles.values()) {
+            stops.addAll(tile.mStops);
+            if (!refs.contains(tile.mResponse)) {
+                refs.add(tile.mResponse);
+            }
+            if (status == null || (status.getOutOfRange() && !tile.mResponse.getOutOfRange())) {
+                status = tile.mResponse;
+            }
+        }
+        return new Result(status, stops, new MergedReferences(refs));
+    }
+
+    /**
+     * Splits the stops in a response into the tiles of the box it was requested for
+     */
+    private static void addTiles(HashMap<Long, Tile> loaded,
+            ObaStopsForLocationResponse response, int band, double tileSize, int minX, int maxX,
+            int minY, int maxY, long now) {
+        HashMap<Long, Tile> tiles = new HashMap<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                tiles.put(getKey(band, x, y), new Tile(response, now));
+            }
+        }
+        for (ObaStop stop : response.getStops()) {
+            Tile tile = tiles.get(getKey(band,
+                    getTileIndex(stop.getLongitude() + 180, tileSize),
+                    getTileIndex(stop.getLatitude() + 90, tileSize)));
+            if (tile != null) {
+                tile.mStops.add(stop);
+            }
+        }
+        loaded.putAll(tiles);
+    }
+
+    /**
+     * Removes all tiles from the cache.  Called when the region changes, so that the stops of
+     * the previous region don't stay in memory until the next map load.
+     */
+    public synchronized void clear() {
+        mTiles.evictAll();
+        mScope = null;
+    }
+
+    /**
+     * @return the number of stops-for-location requests made by this cache
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    private ObaStopsForLocationResponse requestTiles(Context context, double tileSize,
+            int minX, int maxX, int minY, int maxY) {
+        final double minLon = minX * tileSize - 180;
+        final double minLat = minY * tileSize - 90;
+        final double lonSpan = (maxX - minX + 1) * tileSize;
+        final double latSpan = (maxY - minY + 1) * tileSize;
+        return request(context,
+                LocationUtils.makeLocation(minLat + latSpan / 2, minLon + lonSpan / 2),
+                latSpan, lonSpan);
+    }
+
+    private ObaStopsForLocationResponse request(Context context, Location center,
+            double latSpan, double lonSpan) {
+        synchronized (this) {
+            mRequestCount++;
+        }
+        Log.d(TAG, "Requesting stops for " + center.getLatitude() + "," + center.getLongitude()
+                + " span " + latSpan + "," + lonSpan);
+        return new ObaStopsForLocationRequest.Builder(context, center)
+                .setSpan(latSpan, lonSpan)
+                .build()
+                .call();
+    }
+
+    static int getZoomBand(double zoom) {
+        return Math.max(0, Math.min(MAX_ZOOM_BAND, (int) Math.floor(zoom) - ZOOM_BAND_OFFSET));
+    }
+
+    static double getTileSize(int band) {
+        return 360.0 / (1 << band);
+    }
+
+    private static int getTileIndex(double degrees, double tileSize) {
+        return (int) Math.floor(degrees / tileSize);
+    }
+
+    private static long getKey(int band, int x, int y) {
+        return ((long) band << 56) | (((long) x & 0xFFFFFFF) << 28) | ((long) y & 0xFFFFFFF);
+    }
+
+    /**
+     * Resolves references against the responses of all tiles in a view
+     */
+    private static final class MergedReferences implements ObaReferences {
+
+        private final List<ObaReferences> mRefs;
+
+        MergedReferences(List<ObaReferences> refs) {
+            mRefs = refs;
+        }
+
+        @Override
+        public ObaStop getStop(String id) {
+            for (ObaReferences refs : mRefs) {
+                ObaStop stop = refs.getStop(id);
+                if (stop != null) {
+                    return stop;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<ObaStop> getStops(String[] ids) {
+            ArrayList<ObaStop> result = new ArrayList<>();
+            for (String id : ids) {
+                ObaStop stop = getStop(id);
+                if (stop != null) {
+                    result.add(stop);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public ObaRoute getRoute(String id) {
+            for (ObaReferences refs : mRefs) {
+                ObaRoute route = refs.getRoute(id);
+                if (route != null) {
+                    return route;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<ObaRoute> getRoutes(String[] ids) {
+            ArrayList<ObaRoute> result = new ArrayList<>();
+            for (String id : ids) {
+                ObaRoute route = getRoute(id);
+                if (route != null) {
+                    result.add(route);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<ObaRoute> getRoutes() {
+            LinkedHashMap<String, ObaRoute> routes = new LinkedHashMap<>();
+            for (ObaReferences refs : mRefs) {
+                for (ObaRoute route : refs.getRoutes()) {
+                    if (!routes.containsKey(route.getId())) {
+                        routes.put(route.getId(), route);
+                    }
+                }
+            }
+            return new ArrayList<>(routes.values());
+        }
+
+        @Override
+        public ObaTrip getTrip(String id) {
+            for (ObaReferences refs : mRefs) {
+                ObaTrip trip = refs.getTrip(id);
+                if (trip != null) {
+                    return trip;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<ObaTrip> getTrips(String[] ids) {
+            ArrayList<ObaTrip> result = new ArrayList<>();
+            for (String id : ids) {
+                ObaTrip trip = getTrip(id);
+                if (trip != null) {
+                    result.add(trip);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public ObaAgency getAgency(String id) {
+            for (ObaReferences refs : mRefs) {
+                ObaAgency agency = refs.getAgency(id);
+                if (agency != null) {
+                    return agency;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<ObaAgency> getAgencies(String[] ids) {
+            ArrayList<ObaAgency> result = new ArrayList<>();
+            for (String id : ids) {
+                ObaAgency agency = getAgency(id);
+                if (agency != null) {
+                    result.add(agency);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public ObaSituation getSituation(String id) {
+            for (ObaReferences refs : mRefs) {
+                ObaSituation situation = refs.getSituation(id);
+                if (situation != null) {
+                    return situation;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<ObaSituation> getSituations(String[] ids) {
+            ArrayList<ObaSituation> result = new ArrayList<>();
+            for (String id : ids) {
+                ObaSituation situation = getSituation(id);
+                if (situation != null) {
+                    result.add(situation);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tracks what was last drawn for each vehicle (by activeTripId), so that a vehicle refresh
+ * only updates the markers of trips whose position, heading, real-time flag or color changed.
+ *
+ * Each refresh calls beginRefresh(), then update() for each trip in the response, then
+ * endRefresh() to get the trips that are no longer in the response.
+ */
+public class VehicleDeltaTracker {
+
+    public static final int ADDED = 0;
+
+    public static final int CHANGED = 1;
+
+    public static final int UNCHANGED = 2;
+
+    /**
+     * The values that determine how a vehicle marker is drawn
+     */
+    private static final class Fingerprint {
+
+        double mLat;
+
+        double mLon;
+
+        int mHalfWind;
+
+        boolean mRealtime;
+
+        int mColor;
+
+        int mRefresh;
+
+        boolean set(double lat, double lon, int halfWind, boolean realtime, int color) {
+            boolean changed = mLat != lat || mLon != lon || mHalfWind != halfWind
+                    || mRealtime != realtime || mColor != color;
+            mLat = lat;
+            mLon = lon;
+            mHalfWind = halfWind;
+            mRealtime = realtime;
+            mColor = color;
+            return changed;
+        }
+    }
+
+    private final HashMap<String, Fingerprint> mFingerprints = new HashMap<>();
+
+    // Incremented on each refresh - trips that weren't updated in the current refresh are removed
+    private int mRefresh = 0;
+
+    private int mAdded;
+
+    private int mChanged;
+
+    private int mUnchanged;
+
+    private int mRemoved;
+
+    private long mTotalChanged;
+
+    private long mTotalUnchanged;
+
+    /**
+     * Starts a refresh, and resets the counts for it
+     */
+    public void beginRefresh() {
+        mRefresh++;
+        mAdded = 0;
+        mChanged = 0;
+        mUnchanged = 0;
+        mRemoved = 0;
+    }
+
+    /**
+     * Records the current state of a trip in this refresh
+     *
+     * @param tripId   activeTripId of the vehicle
+     * @param lat      latitude of the marker
+     * @param lon      longitude of the marker
+     * @param halfWind direction of the marker icon
+     * @param realtime true if the marker shows real-time info, false if it shows schedule info
+     * @param color    color resource of the marker icon
+     * @return ADDED if the trip wasn't in the previous refresh, CHANGED if its marker needs to be
+     * updated, or UNCHANGED if its marker is already current
+     */
+    public int update(String tripId, double lat, double lon, int halfWind, boolean realtime,
+            int color) {
+        Fingerprint f = mFingerprints.get(tripId);
+        if (f == null) {
+            f = new Fingerprint();
+            f.set(lat, lon, halfWind, realtime, color);
+            f.mRefresh = mRefresh;
+            mFingerprints.put(tripId, f);
+            mAdded++;
+            return ADDED;
+        }
+        f.mRefresh = mRefresh;
+        if (f.set(lat, lon, halfWind, realtime, color)) {
+            mChanged++;
+            mTotalChanged++;
+            return CHANGED;
+        }
+        mUnchanged++;
+        mTotalUnchanged++;
+        return UNCHANGED;
+    }
+
+    /**
+     * Ends the refresh, and stops tracking the trips that weren't updated in it
+     *
+     * @return the activeTripIds of the trips that weren't updated in this refresh
+     */
+    public List<String> endRefresh() {
+        List<String> removed = new ArrayList<>();
+        Iterator<Map.Entry<String, Fingerprint>> iterator = mFingerprints.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Fingerprint> entry = iterator.next();
+            if (entry.getValue().mRefresh != mRefresh) {
+                removed.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        mRemoved = removed.size();
+        return removed;
+    }
+
+    /**
+     * Stops tracking a trip, so it's reported as added on its next update
+     */
+    public void remove(String tripId) {
+        mFingerprints.remove(tripId);
+    }
+
+    public void clear() {
+        mFingerprints.clear();
+    }
+
+    /**
+     * @return the number of trips tracked
+     */
+    public int size() {
+        return mFingerprints.size();
+    }
+
+    public int getAddedCount() {
+        return mAdded;
+    }
+
+    public int getChangedCount() {
+        return mChanged;
+    }
+
+    public int getUnchangedCount() {
+        return mUnchanged;
+    }
+
+    public int getRemovedCount() {
+        return mRemoved;
+    }
+
+    @Override
+    public String toString() {
+        long total = mTotalChanged + mTotalUnchanged;
+        return String.format(Locale.US,
+                "Vehicles: added %d, changed %d, unchanged %d, removed %d "
+                        + "(%d%% of existing vehicle updates skipped since start)",
+                mAdded, mChanged, mUnchanged, mRemoved,
+                total == 0 ? 0 : mTotalUnchanged * 100 / total);
+    }
+}
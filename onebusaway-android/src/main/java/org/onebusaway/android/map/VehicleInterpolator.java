@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map;
+
+import org.onebusaway.android.util.DecodedShape;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates where vehicles are between refreshes of their trip status, by moving each one along
+ * its trip's shape from the last reported distance along the trip ("dead reckoning").
+ *
+ * The speed of a vehicle is measured from the change in distance between refreshes.  Until
+ * there are two refreshes, it's estimated from how far the vehicle is behind its scheduled
+ * distance, or a typical speed is used.  Vehicles aren't moved if their trip isn't in
+ * progress or we haven't heard from them recently, and they are never moved past
+ * maxExtrapolationMs after a refresh.  When a refresh puts a vehicle somewhere else than the
+ * estimate, the difference is corrected over CORRECTION_MS so the vehicle doesn't jump.
+ *
+ * Times can be on any clock, as long as it's the same for the snapshots and queries.  This
+ * class doesn't use the Android framework, so it can be tested and benchmarked on the JVM.
+ */
+public class VehicleInterpolator {
+
+    public static final long DEFAULT_MAX_EXTRAPOLATION_MS = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Time over which the difference between the estimated and reported position is corrected
+     */
+    public static final long CORRECTION_MS = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * If the reported position is further than this from the estimate (in meters), the vehicle
+     * moves there immediately - as VehicleOverlay does for large moves
+     */
+    public static final double MAX_CORRECTION = 400;
+
+    /**
+     * Speed used when there isn't enough information to estimate one, in meters per second
+     */
+    public static final double DEFAULT_SPEED = 5;
+
+    /**
+     * Upper bound on estimated speeds, in meters per second
+     */
+    public static final double MAX_SPEED = 35;
+
+    /**
+     * Real-time vehicles we haven't heard from for this long aren't moved
+     */
+    public static final long STALE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    // Minimum time between snapshots to measure the speed
+    private static final long MIN_SPEED_INTERVAL_MS = 1000;
+
+    // Minimum schedule deviation to estimate the speed from, in seconds
+    private static final long MIN_DEVIATION = 60;
+
+    /**
+     * The status of a vehicle at a point in time, from ObaTripStatus
+     */
+    public static final class Snapshot {
+
+        final long mTime;
+
+        final double mDistanceAlongTrip;
+
+        final double mTotalDistanceAlongTrip;
+
+        final double mScheduledDistanceAlongTrip;
+
+        final long mScheduleDeviation;
+
+        final long mLastUpdateTime;
+
+        final boolean mPredicted;
+
+        final boolean mInProgress;
+
+        /**
+         * @param time                       time of the status, e.g. the current time of the
+         *                                   response
+         * @param distanceAlongTrip          distance of the vehicle along the trip at that time,
+         *                                   in meters
+         * @param totalDistanceAlongTrip     length of the trip in meters, or 0 if unknown
+         * @param scheduledDistanceAlongTrip scheduled distance along the trip at that time, in
+         *                                   meters, or NaN if unknown
+         * @param scheduleDeviation          deviation from the schedule in seconds, positive if
+         *                                   the vehicle is late
+         * @param lastUpdateTime             time we last heard from the vehicle, or 0 if never
+         * @param predicted                  true if the status is from real-time data
+         * @param inProgress                 true if the vehicle is running the trip, false if
+         *                                   it's e.g. in a layover
+         */
+        public Snapshot(long time, double distanceAlongTrip, double totalDistanceAlongTrip,
+                double scheduledDistanceAlongTrip, long scheduleDeviation, long lastUpdateTime,
+                boolean predicted, boolean inProgress) {
+            mTime = time;
+            mDistanceAlongTrip = distanceAlongTrip;
+            mTotalDistanceAlongTrip = totalDistanceAlongTrip;
+            mScheduledDistanceAlongTrip = scheduledDistanceAlongTrip;
+            mScheduleDeviation = scheduleDeviation;
+            mLastUpdateTime = lastUpdateTime;
+            mPredicted = predicted;
+            mInProgress = inProgress;
+        }
+    }
+
+    private static final class Vehicle {
+
+        DecodedShape mShape;
+
+        // Meters along the shape per meter along the trip
+        double mScale;
+
+        // Length of the trip, in meters
+        double mEndDistance;
+
+        Snapshot mLast;
+
+        boolean mSpeedMeasured;
+
+        // Meters per second
+        double mSpeed;
+
+        long mBaseTime;
+
+        double mBaseDistance;
+
+        // Estimated minus reported distance at mBaseTime, faded out over CORRECTION_MS
+        double mCorrection;
+
+        double getDistance(long time, long maxExtrapolationMs) {
+            long elapsed = Math.max(time - mBaseTime, 0);
+            double distance = mBaseDistance
+                    + mSpeed * Math.min(elapsed, maxExtrapolationMs) / 1000.0;
+            if (elapsed < CORRECTION_MS) {
+                distance += mCorrection * (1 - (double) elapsed / CORRECTION_MS);
+            }
+            return Math.max(0, Math.min(distance, mEndDistance));
+        }
+    }
+
+    private final HashMap<String, Vehicle> mVehicles = new HashMap<>();
+
+    private final long mMaxExtrapolationMs;
+
+    public VehicleInterpolator() {
+        this(DEFAULT_MAX_EXTRAPOLATION_MS);
+    }
+
+    /**
+     * @param maxExtrapolationMs vehicles aren't moved further than this time after a snapshot
+     */
+    public VehicleInterpolator(long maxExtrapolationMs) {
+        if (maxExtrapolationMs < 0) {
+            throw new IllegalArgumentException("maxExtrapolationMs must be >= 0");
+        }
+        mMaxExtrapolationMs = maxExtrapolationMs;
+    }
+
+    /**
+     * Updates a vehicle with a new snapshot of its status
+     *
+     * @param id       identifies the vehicle, e.g. the active trip ID
+     * @param shape    shape of the vehicle's trip, or null if it isn't known
+     * @param snapshot the new status
+     * @param now      the current time
+     * @return true if the vehicle can be interpolated, false if it was removed because its
+     * shape or distance along the trip isn't known
+     */
+    public synchronized boolean update(String id, DecodedShape shape, Snapshot snapshot,
+            long now) {
+        if (shape == null || shape.size() < 2 || Double.isNaN(snapshot.mDistanceAlongTrip)) {
+            mVehicles.remove(id);
+            return false;
+        }
+        Vehicle vehicle = mVehicles.get(id);
+        double estimate = Double.NaN;
+        if (vehicle != null && vehicle.mShape == shape) {
+            estimate = vehicle.getDistance(now, mMaxExtrapolationMs);
+        } else {
+            // A new vehicle, or one that started another trip
+            vehicle = new Vehicle();
+            vehicle.mShape = shape;
+            mVehicles.put(id, vehicle);
+        }
+
+        double shapeLength = shape.getLength();
+        if (snapshot.mTotalDistanceAlongTrip > 0) {
+            vehicle.mEndDistance = snapshot.mTotalDistanceAlongTrip;
+            vehicle.mScale = shapeLength / snapshot.mTotalDistanceAlongTrip;
+        } else {
+            vehicle.mEndDistance = shapeLength;
+            vehicle.mScale = 1;
+        }
+        updateSpeed(vehicle, snapshot);
+        vehicle.mLast = snapshot;
+
+        // Move the reported position forward to now, if the snapshot is older
+        long age = Math.max(now - snapshot.mTime, 0);
+        vehicle.mBaseTime = now;
+        vehicle.mBaseDistance = snapshot.mDistanceAlongTrip
+                + vehicle.mSpeed * Math.min(age, mMaxExtrapolationMs) / 1000.0;
+        vehicle.mBaseDistance = Math.max(0, Math.min(vehicle.mBaseDistance,
+                vehicle.mEndDistance));
+        vehicle.mCorrection = 0;
+        if (!Double.isNaN(estimate)) {
+            double correction = estimate - vehicle.mBaseDistance;
+            if (Math.abs(correction) <= MAX_CORRECTION) {
+                vehicle.mCorrection = correction;
+            }
+        }
+        return true;
+    }
+
+    private static void updateSpeed(Vehicle vehicle, Snapshot snapshot) {
+        if (!snapshot.mInProgress || (snapshot.mTotalDistanceAlongTrip > 0
+                && snapshot.mDistanceAlongTrip >= snapshot.mTotalDistanceAlongTrip)) {
+            vehicle.mSpeed = 0;
+            vehicle.mSpeedMeasured = false;
+            return;
+        }
+        if (snapshot.mPredicted && snapshot.mLastUpdateTime > 0
+                && snapshot.mTime - snapshot.mLastUpdateTime > STALE_MS) {
+            vehicle.mSpeed = 0;
+            vehicle.mSpeedMeasured = false;
+            return;
+        }
+        Snapshot previous = vehicle.mLast;
+        if (previous != null) {
+            long elapsed = snapshot.mTime - previous.mTime;
+            if (elapsed >= MIN_SPEED_INTERVAL_MS) {
+                double moved = snapshot.mDistanceAlongTrip - previous.mDistanceAlongTrip;
+                double measured = Math.min(Math.max(moved, 0) / (elapsed / 1000.0), MAX_SPEED);
+                // Average with the last measurement, to smooth out stops
+                vehicle.mSpeed = vehicle.mSpeedMeasured ? (vehicle.mSpeed + measured) / 2
+                        : measured;
+                vehicle.mSpeedMeasured = true;
+                return;
+            }
+            if (elapsed >= 0) {
+                // The same status again - keep the speed
+                return;
+            }
+        }
+        vehicle.mSpeedMeasured = false;
+        if (snapshot.mScheduleDeviation >= MIN_DEVIATION
+                && snapshot.mScheduledDistanceAlongTrip > snapshot.mDistanceAlongTrip) {
+            // The vehicle is where it was scheduled to be mScheduleDeviation seconds ago
+            vehicle.mSpeed = Math.min((snapshot.mScheduledDistanceAlongTrip
+                    - snapshot.mDistanceAlongTrip) / snapshot.mScheduleDeviation, MAX_SPEED);
+        } else {
+            vehicle.mSpeed = DEFAULT_SPEED;
+        }
+    }
+
+    /**
+     * Gets the estimated position of a vehicle.  This doesn't allocate, so it can be called for
+     * each frame of an animation.
+     *
+     * @param result array to receive the latitude (result[0]) and longitude (result[1])
+     * @return true if the position was estimated, false if the vehicle isn't known
+     */
+    public synchronized boolean getPosition(String id, long time, double[] result) {
+        Vehicle vehicle = mVehicles.get(id);
+        if (vehicle == null) {
+            return false;
+        }
+        double distance = vehicle.getDistance(time, mMaxExtrapolationMs);
+        vehicle.mShape.getPointAtDistance(distance * vehicle.mScale, result);
+        return true;
+    }
+
+    /**
+     * @return the estimated distance of the vehicle along its trip in meters, or NaN if the
+     * vehicle isn't known
+     */
+    public synchronized double getDistanceAlongTrip(String id, long time) {
+        Vehicle vehicle = mVehicles.get(id);
+        if (vehicle == null) {
+            return Double.NaN;
+        }
+        return vehicle.getDistance(time, mMaxExtrapolationMs);
+    }
+
+    /**
+     * @return the estimated speed of the vehicle in meters per second, or NaN if the vehicle
+     * isn't known
+     */
+    public synchronized double getSpeed(String id) {
+        Vehicle vehicle = mVehicles.get(id);
+        return vehicle != null ? vehicle.mSpeed : Double.NaN;
+    }
+
+    /**
+     * @return true if the vehicle is moving at the given time, so its position needs updating
+     */
+    public synchronized boolean isMoving(String id, long time) {
+        Vehicle vehicle = mVehicles.get(id);
+        if (vehicle == null) {
+            return false;
+        }
+        long elapsed = time - vehicle.mBaseTime;
+        return (vehicle.mSpeed > 0 && elapsed < mMaxExtrapolationMs)
+                || (vehicle.mCorrection != 0 && elapsed < CORRECTION_MS);
+    }
+
+    public synchronized boolean contains(String id) {
+        return mVehicles.containsKey(id);
+    }
+
+    public synchronized void remove(String id) {
+        mVehicles.remove(id);
+    }
+
+    public synchronized void clear() {
+        mVehicles.clear();
+    }
+
+    public synchronized int size() {
+        return mVehicles.size();
+    }
+}
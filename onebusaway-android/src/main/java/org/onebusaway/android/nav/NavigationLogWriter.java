@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.nav;
+
+import android.location.Location;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * Appends the GPS fixes recorded during a trip to the navigation log file (see
+ * DESTINATION_REMINDERS.md) on a background thread.  Fixes are copied into a bounded ring buffer
+ * on the caller's thread, and the writer thread formats and appends them in batches - every
+ * FLUSH_INTERVAL_MS, when the buffer is half full, or when flush() or close() is called.  The
+ * file stays open between batches.
+ *
+ * Rows are formatted exactly as NavigationService previously wrote them, so that
+ * NavigationUploadWorker can read the file.
+ */
+public class NavigationLogWriter {
+
+    public static final String TAG = "NavigationLogWriter";
+
+    /**
+     * Format of each row - coordinate ID, get ready flag, pull the cord flag, elapsed realtime
+     * nanos, time, latitude, longitude, altitude, speed, bearing, accuracy, satellites, provider
+     */
+    public static final String ROW_FORMAT = "%d,%s,%s,%s,%d,%f,%f,%f,%f,%f,%f,%d,%s\n";
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final long FLUSH_INTERVAL_MS = 5000;
+
+    private final File mFile;
+
+    private final Object mLock = new Object();
+
+    // Ring buffer of fixes waiting to be written - slots are reused, not reallocated
+    private final Fix[] mBuffer;
+
+    private int mHead = 0;
+
+    private int mSize = 0;
+
+    // Number of fixes given to write(), and the number that have been written or dropped
+    private long mEnqueuedCount = 0;
+
+    private long mCompletedCount = 0;
+
+    private long mFlushTarget = 0;
+
+    private long mDroppedCount = 0;
+
+    private boolean mClosed = false;
+
+    private final Thread mThread;
+
+    /**
+     * A single row of the log
+     */
+    private static final class Fix {
+
+        int mCoordId;
+
+        boolean mGetReady;
+
+        boolean mFinished;
+
+        boolean mHasNanos;
+
+        long mNanos;
+
+        long mTime;
+
+        double mLatitude;
+
+        double mLongitude;
+
+        double mAltitude;
+
+        float mSpeed;
+
+        float mBearing;
+
+        float mAccuracy;
+
+        int mSatellites;
+
+        String mProvider;
+
+        void set(int coordId, boolean getReady, boolean finished, Location l) {
+            mCoordId = coordId;
+            mGetReady = getReady;
+            mFinished = finished;
+            mHasNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1;
+            mNanos = mHasNanos ? l.getElapsedRealtimeNanos() : 0;
+            mTime = l.getTime();
+            mLatitude = l.getLatitude();
+            mLongitude = l.getLongitude();
+            mAltitude = l.getAltitude();
+            mSpeed = l.getSpeed();
+            mBearing = l.getBearing();
+            mAccuracy = l.getAccuracy();
+            mSatellites = l.getExtras() != null ? l.getExtras().getInt("satellites", 0) : 0;
+            mProvider = l.getProvider();
+        }
+
+        void format(Formatter formatter) {
+            formatter.format(ROW_FORMAT, mCoordId, mGetReady, mFinished,
+                    mHasNanos ? Long.toString(mNanos) : "", mTime, mLatitude, mLongitude,
+                    mAltitude, mSpeed, mBearing, mAccuracy, mSatellites, mProvider);
+        }
+    }
+
+    /**
+     * Creates a writer that appends to the given file, which should already contain the header
+     *
+     * @param file the log file to append fixes to
+     */
+    public NavigationLogWriter(File file) {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a writer that appends to the given file, which should already contain the header
+     *
+     * @param file     the log file to append fixes to
+     * @param capacity the maximum number of fixes to hold before the oldest ones are dropped
+     */
+    public NavigationLogWriter(File file, int capacity) {
+        mFile = file;
+        mBuffer = new Fix[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mBuffer[i] = new Fix();
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, TAG);
+        mThread.setPriority(Thread.MIN_PRIORITY);
+        mThread.start();
+    }
+
+    /**
+     * Adds a row for the given fix to the log.  This doesn't block on file I/O.
+     *
+     * @param coordId  ID of this coordinate within the trip
+     * @param getReady true if the "Get Ready" alert has been triggered
+     * @param finished true if the "Pull the Cord" alert has been triggered
+     * @param l        the location fix
+     */
+    public void write(int coordId, boolean getReady, boolean finished, Location l) {
+        synchronized (mLock) {
+            if (mClosed) {
+                Log.e(TAG, "Failed to write to file - log is closed");
+                return;
+            }
+            if (mSize == mBuffer.length) {
+                // The writer has fallen behind - drop the oldest fix rather than block
+                mHead = (mHead + 1) % mBuffer.length;
+                mSize--;
+                mDroppedCount++;
+                mCompletedCount++;
+            }
+            mBuffer[(mHead + mSize) % mBuffer.length].set(coordId, getReady, finished, l);
+            mSize++;
+            mEnqueuedCount++;
+            if (mSize >= mBuffer.length / 2) {
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Blocks until all fixes passed to write() have been written to the file
+     */
+    public void flush() {
+        synchronized (mLock) {
+            final long target = mEnqueuedCount;
+            mFlushTarget = Math.max(mFlushTarget, target);
+            mLock.notifyAll();
+            while (mCompletedCount < target && mThread.isAlive()) {
+                try {
+                    mLock.wait(FLUSH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes any remaining fixes and closes the file.  Fixes written after this are ignored.
+     */
+    public void close() {
+        synchronized (mLock) {
+            mClosed = true;
+            mLock.notifyAll();
+        }
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of fixes that were dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        synchronized (mLock) {
+            return mDroppedCount;
+        }
+    }
+
+    private void writeLoop() {
+        Writer out = null;
+        final StringBuilder sb = new StringBuilder();
+        final Formatter formatter = new Formatter(sb, Locale.US);
+        // Slots are swapped with the ring buffer, so neither side allocates fixes
+        Fix[] batch = new Fix[mBuffer.length];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Fix();
+        }
+
+        while (true) {
+            int count;
+            boolean closed;
+            synchronized (mLock) {
+                long deadline = System.currentTimeMillis() + FLUSH_INTERVAL_MS;
+                // Wait until the interval is up, the buffer is half full, or a flush is pending
+                while (!mClosed && mSize < mBuffer.length / 2
+                        && mFlushTarget <= mCompletedCount) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        mLock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        // Write what we have, then exit
+                        mClosed = true;
+                    }
+                }
+                count = mSize;
+                for (int i = 0; i < count; i++) {
+                    int index = (mHead + i) % mBuffer.length;
+                    Fix tmp = mBuffer[index];
+                    mBuffer[index] = batch[i];
+                    batch[i] = tmp;
+                }
+                mHead = 0;
+                mSize = 0;
+                closed = mClosed;
+            }
+
+            if (count > 0) {
+                sb.setLength(0);
+                for (int i = 0; i < count; i++) {
+                    batch[i].format(formatter);
+                }
+                try {
+                    if (out == null) {
+                        out = new BufferedWriter(new OutputStreamWriter(
+                                new FileOutputStream(mFile, true), "UTF-8"));
+                    }
+                    out.append(sb);
+                    out.flush();
+                } catch (IOException e) {
+                    Log.e(TAG, "File write failed: " + e.toString());
+                }
+            }
+
+            synchronized (mLock) {
+                mCompletedCount += count;
+                mLock.notifyAll();
+            }
+
+            if (closed) {
+                break;
+            }
+        }
+
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.e(TAG, "File close failed: " + e.toString());
+            }
+        }
+    }
+}
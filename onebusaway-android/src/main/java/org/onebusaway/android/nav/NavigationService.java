@@ -93,6 +93,7 @@ public class NavigationService extends Service implements LocationHelper.Listene
 
     private NavigationServiceProvider mNavProvider;
     private File mLogFile = null;
+    private NavigationLogWriter mLogWriter = null;
 
     private long mFinishedTime;
 
@@ -172,6 +173,10 @@ public class NavigationService extends Service implements LocationHelper.Listene
     public void onDestroy() {
         Log.d(TAG, "Destroying Service.");
         mLocationHelper.unregisterListener(this);
+        if (mLogWriter != null) {
+            mLogWriter.close();
+            mLogWriter = null;
+        }
         super.onDestroy();
 
         // Send Broadcast
@@ -205,6 +210,10 @@ public class NavigationService extends Service implements LocationHelper.Listene
             if (mFinishedTime == 0) {
                 mFinishedTime = System.currentTimeMillis();
             } else if (System.currentTimeMillis() - mFinishedTime >= 30000) {
+                // Make sure the whole trip is in the log before asking for feedback on it
+                if (mLogWriter != null) {
+                    mLogWriter.flush();
+                }
                 getUserFeedback();
                 stopSelf();
                 setupLogCleanupTask();
@@ -263,6 +272,9 @@ public class NavigationService extends Service implements LocationHelper.Listene
 
             if (mLogFile != null) {
                 FileUtils.write(mLogFile, header, false);
+                if (mLogFile.canWrite()) {
+                    mLogWriter = new NavigationLogWriter(mLogFile);
+                }
             } else {
                 Log.e(TAG, "Failed to write to file - null file");
             }
@@ -272,39 +284,18 @@ public class NavigationService extends Service implements LocationHelper.Listene
     }
 
     private void writeToLog(Location l) {
-        try {
-            String nanoTime = "";
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-                nanoTime = Long.toString(l.getElapsedRealtimeNanos());
-            }
-
-            int satellites = 0;
-            if (l.getExtras() != null) {
-                satellites = l.getExtras().getInt("satellites", 0);
-            }
-
-            // mGetReadyFlag =mNavProvider.getGetReady();
-            //  mPullTheCordFlag = mNavProvider.getFinished();
-
-            // TODO: Add isMockProvider
-            String log = String.format(Locale.US, "%d,%s,%s,%s,%d,%f,%f,%f,%f,%f,%f,%d,%s\n",
-                    mCoordId, mNavProvider.getGetReady(), mNavProvider.getFinished(), nanoTime, l.getTime(),
-                    l.getLatitude(), l.getLongitude(), l.getAltitude(), l.getSpeed(),
-                    l.getBearing(), l.getAccuracy(), satellites, l.getProvider());
-
+        // mGetReadyFlag =mNavProvider.getGetReady();
+        //  mPullTheCordFlag = mNavProvider.getFinished();
 
-            //Increments the id for each coordinate
-            mCoordId++;
-
-            if (mLogFile != null && mLogFile.canWrite()) {
-                FileUtils.write(mLogFile, log, true);
-            } else {
-                Log.e(TAG, "Failed to write to file");
-            }
-
-        } catch (IOException e) {
-            Log.e(TAG, "File write failed: " + e.toString());
+        // TODO: Add isMockProvider
+        if (mLogWriter != null) {
+            mLogWriter.write(mCoordId, mNavProvider.getGetReady(), mNavProvider.getFinished(), l);
+        } else {
+            Log.e(TAG, "Failed to write to file");
         }
+
+        //Increments the id for each coordinate
+        mCoordId++;
     }
 
     public void getUserFeedback() {
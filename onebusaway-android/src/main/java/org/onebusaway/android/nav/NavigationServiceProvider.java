@@ -287,8 +287,8 @@ public class NavigationServiceProvider implements TextToSpeech.OnInitListener {
 
         private boolean mReady = false; //Has get ready alert been played?
 
-        private boolean m100_a, m50_a, m20_a, m20_d, m50_d, m100_d = false;
-        // Variables for handling arrival/departure from 2nd to last stop
+        private final StopDetector mStopDetector = new StopDetector();
+        // Handles arrival/departure from 2nd to last stop
 
         ProximityCalculator(NavigationServiceProvider navProvider) {
             mNavProvider = navProvider;
@@ -428,41 +428,11 @@ public class NavigationServiceProvider implements TextToSpeech.OnInitListener {
                     distance_d + ". stop_type=" + stop_type + " speed=" + speed);
             if (stop_type == 1) {
                 /* Check if the bus is on the second to last stop */
-                if ((distance_d > 50) && (distance_d < 100) && (distance_d != -1) && !m100_a) {
-                    m100_a = true;
-                    Log.d(TAG, "Case 1: false");
-                    return false;
-                }
-                if ((distance_d > 20) && (distance_d < 50) && (distance_d != -1) && !m50_a) {
-                    m50_a = true;
-                    Log.d(TAG, "Case 2: false");
-                    return false;
-                }
-                if ((distance_d < 20) && (distance_d != -1) && !m20_a) {
-                    m20_a = true;
-                    if (speed > 15 && lastToSecDistance < 100) {
-                        Log.d(TAG, "Case 3: true");
-                        return true;
-                    }
-                    Log.d(TAG, "Case 3: false");
-                    return false;
-                }
-                if ((distance_d < 20) && (distance_d != -1) && m20_a && !m20_d) {
-                    m20_d = true;
-                    if (speed < 10) {
-                        Log.d(TAG, "Case 4: false");
-                        return false;
-                    } else if (speed > 15) {
-                        Log.d(TAG, "Case 4: true");
-                        return true;
-                    }
-                }
-                if ((distance_d > 20) && (distance_d < 50) && (distance_d != -1) && !m50_d && (m20_d
-                        || m20_a)) {
-                    m50_d = true;
-                    Log.d(TAG, "Case 5: true");
-                    return true;
+                boolean result = mStopDetector.detect(distance_d, lastToSecDistance, speed);
+                if (mStopDetector.getLastCase() != StopDetector.CASE_NONE) {
+                    Log.d(TAG, "Case " + mStopDetector.getLastCase() + ": " + result);
                 }
+                return result;
             }
             return false;
         }
@@ -511,12 +481,7 @@ public class NavigationServiceProvider implements TextToSpeech.OnInitListener {
 
         public void resetVariablesAfterPathLinkSwitching() {
             Log.d(TAG, "Reseting variables after path link switching!");
-            m100_a = false;
-            m50_a = false;
-            m20_a = false;
-            m20_d = false;
-            m50_d = false;
-            m100_d = false;
+            mStopDetector.reset();
         }
 
         public void setOnlyTrigger(boolean value) {
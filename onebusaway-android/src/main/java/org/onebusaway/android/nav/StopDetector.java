@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.nav;
+
+/**
+ * Detects when the vehicle arrives at and departs from the second-to-last stop of a path link,
+ * which is when the rider should pull the cord to request the destination stop.  This holds the
+ * state used by NavigationServiceProvider.ProximityCalculator, and doesn't depend on the Android
+ * framework so recorded trips can be replayed through it on the JVM.
+ */
+public class StopDetector {
+
+    /**
+     * No case matched for the last fix
+     */
+    public static final int CASE_NONE = 0;
+
+    // Variables for handling arrival/departure from 2nd to last stop
+    private boolean m100_a, m50_a, m20_a, m20_d, m50_d = false;
+
+    private int mLastCase = CASE_NONE;
+
+    /**
+     * Updates the detector with the distance from the current location to the second-to-last
+     * stop, and returns true if the rider should pull the cord
+     *
+     * @param distance          distance from the current location to the second-to-last stop
+     *                          in meters, or -1 if it isn't known
+     * @param lastToSecDistance distance between the second-to-last stop and the last stop in
+     *                          meters
+     * @param speed             current speed of the vehicle in meters/second
+     * @return true if the vehicle is at or departing the second-to-last stop, false if not
+     */
+    public boolean detect(float distance, float lastToSecDistance, float speed) {
+        mLastCase = CASE_NONE;
+        /* Check if the bus is on the second to last stop */
+        if ((distance > 50) && (distance < 100) && (distance != -1) && !m100_a) {
+            m100_a = true;
+            mLastCase = 1;
+            return false;
+        }
+        if ((distance > 20) && (distance < 50) && (distance != -1) && !m50_a) {
+            m50_a = true;
+            mLastCase = 2;
+            return false;
+        }
+        if ((distance < 20) && (distance != -1) && !m20_a) {
+            m20_a = true;
+            mLastCase = 3;
+            return speed > 15 && lastToSecDistance < 100;
+        }
+        if ((distance < 20) && (distance != -1) && m20_a && !m20_d) {
+            m20_d = true;
+            mLastCase = 4;
+            if (speed < 10) {
+                return false;
+            } else if (speed > 15) {
+                return true;
+            }
+        }
+        if ((distance > 20) && (distance < 50) && (distance != -1) && !m50_d && (m20_d
+                || m20_a)) {
+            m50_d = true;
+            mLastCase = 5;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the case (1-5) that matched for the last call to detect(), or CASE_NONE.  This is
+     * useful for logging.
+     *
+     * @return the case that matched for the last call to detect(), or CASE_NONE
+     */
+    public int getLastCase() {
+        return mLastCase;
+    }
+
+    /**
+     * Resets the detector for a new path link
+     */
+    public void reset() {
+        m100_a = false;
+        m50_a = false;
+        m20_a = false;
+        m20_d = false;
+        m50_d = false;
+        mLastCase = CASE_NONE;
+    }
+}
@@ -62,6 +62,49 @@ public final class ObaContract {
     /** The base URI for the Oba provider */
     public static final Uri AUTHORITY_URI = Uri.parse("content://" + AUTHORITY);
 
+    /**
+     * Query parameter for inserts to stops, routes, service alerts and regions.  If true, the
+     * row with the _ID in the values is updated if it exists, and inserted if it doesn't.
+     */
+    public static final String PARAM_UPSERT = "upsert";
+
+    /**
+     * Query parameter for upserts to stops and routes.  If true, the USE_COUNT of an existing row
+     * is incremented.
+     */
+    public static final String PARAM_INCREMENT_USE_COUNT = "increment_use_count";
+
+    /**
+     * Returns the URI to insert to the given table with upsert semantics (see PARAM_UPSERT)
+     *
+     * @param contentUri        CONTENT_URI of the table
+     * @param incrementUseCount true to increment USE_COUNT of an existing stop or route
+     */
+    public static Uri getUpsertUri(Uri contentUri, boolean incrementUseCount) {
+        Uri.Builder builder = contentUri.buildUpon()
+                .appendQueryParameter(PARAM_UPSERT, "true");
+        if (incrementUseCount) {
+            builder.appendQueryParameter(PARAM_INCREMENT_USE_COUNT, "true");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Adds the ID and use count columns for an upsert to stops or routes.  USE_COUNT is only
+     * used if the row is inserted - existing rows are incremented if markAsUsed is true.
+     */
+    private static ContentValues toUpsertValues(String id, ContentValues values,
+            boolean markAsUsed) {
+        values.put(BaseColumns._ID, id);
+        if (markAsUsed) {
+            values.put(UserColumns.USE_COUNT, 1);
+            values.put(UserColumns.ACCESS_TIME, System.currentTimeMillis());
+        } else {
+            values.put(UserColumns.USE_COUNT, 0);
+        }
+        return values;
+    }
+
     protected interface StopsColumns {
 
         /**
@@ -645,35 +688,8 @@ public final class ObaContract {
                 ContentValues values,
                 boolean markAsUsed) {
             ContentResolver cr = Application.get().getContentResolver();
-            final Uri uri = Uri.withAppendedPath(CONTENT_URI, id);
-            Cursor c = cr.query(uri, new String[]{USE_COUNT}, null, null,
-                    null);
-            Uri result;
-            if (c != null && c.getCount() > 0) {
-                // Update
-                if (markAsUsed) {
-                    c.moveToFirst();
-                    int count = c.getInt(0);
-                    values.put(USE_COUNT, count + 1);
-                    values.put(ACCESS_TIME, System.currentTimeMillis());
-                }
-                cr.update(uri, values, null, null);
-                result = uri;
-            } else {
-                // Insert
-                if (markAsUsed) {
-                    values.put(USE_COUNT, 1);
-                    values.put(ACCESS_TIME, System.currentTimeMillis());
-                } else {
-                    values.put(USE_COUNT, 0);
-                }
-                values.put(_ID, id);
-                result = cr.insert(CONTENT_URI, values);
-            }
-            if (c != null) {
-                c.close();
-            }
-            return result;
+            return cr.insert(getUpsertUri(CONTENT_URI, markAsUsed),
+                    toUpsertValues(id, values, markAsUsed));
         }
 
         public static boolean isFavorite(Context context, String stopId)
@@ -771,35 +787,8 @@ public final class ObaContract {
                 ContentValues values,
                 boolean markAsUsed) {
             ContentResolver cr = context.getContentResolver();
-            final Uri uri = Uri.withAppendedPath(CONTENT_URI, id);
-            Cursor c = cr.query(uri, new String[]{USE_COUNT}, null, null,
-                    null);
-            Uri result;
-            if (c != null && c.getCount() > 0) {
-                // Update
-                if (markAsUsed) {
-                    c.moveToFirst();
-                    int count = c.getInt(0);
-                    values.put(USE_COUNT, count + 1);
-                    values.put(ACCESS_TIME, System.currentTimeMillis());
-                }
-                cr.update(uri, values, null, null);
-                result = uri;
-            } else {
-                // Insert
-                if (markAsUsed) {
-                    values.put(USE_COUNT, 1);
-                    values.put(ACCESS_TIME, System.currentTimeMillis());
-                } else {
-                    values.put(USE_COUNT, 0);
-                }
-                values.put(_ID, id);
-                result = cr.insert(CONTENT_URI, values);
-            }
-            if (c != null) {
-                c.close();
-            }
-            return result;
+            return cr.insert(getUpsertUri(CONTENT_URI, markAsUsed),
+                    toUpsertValues(id, values, markAsUsed));
         }
 
         protected static boolean markAsFavorite(Context context,
@@ -1085,6 +1074,14 @@ public final class ObaContract {
         public static final String CONTENT_DIR_TYPE
                 = "vnd.android.dir/" + BuildConfig.DATABASE_AUTHORITY + ".trip_alert";
 
+        /**
+         * The content:// style URI for trip alerts joined with the name and reminder time of
+         * their trip, of the form content://<authority>/trip_alerts/reminders.  Columns are
+         * those of TripAlerts plus Trips.NAME and Trips.REMINDER.  Columns in selections must be
+         * qualified with the table name, since both tables have _ID and STOP_ID columns.
+         */
+        public static final Uri REMINDERS_URI = Uri.withAppendedPath(CONTENT_URI, "reminders");
+
         public static final int STATE_SCHEDULED = 0;
 
         public static final int STATE_POLLING = 1;
@@ -1185,47 +1182,19 @@ public final class ObaContract {
             if (values == null) {
                 values = new ContentValues();
             }
-            ContentResolver cr = Application.get().getContentResolver();
-            final Uri uri = Uri.withAppendedPath(CONTENT_URI, id);
-            Cursor c = cr.query(uri, new String[]{}, null, null, null);
-            Uri result;
-            if (c != null && c.getCount() > 0) {
-                // Update
-                if (markAsRead) {
-                    c.moveToFirst();
-                    values.put(MARKED_READ_TIME, System.currentTimeMillis());
-                }
-                if (hidden != null) {
-                    c.moveToFirst();
-                    if (hidden) {
-                        values.put(HIDDEN, 1);
-                    } else {
-                        values.put(HIDDEN, 0);
-                    }
-                }
-                if (values.size() != 0) {
-                    cr.update(uri, values, null, null);
-                }
-                result = uri;
-            } else {
-                // Insert
-                if (markAsRead) {
-                    values.put(MARKED_READ_TIME, System.currentTimeMillis());
-                }
-                if (hidden != null) {
-                    if (hidden) {
-                        values.put(HIDDEN, 1);
-                    } else {
-                        values.put(HIDDEN, 0);
-                    }
-                }
-                values.put(_ID, id);
-                result = cr.insert(CONTENT_URI, values);
+            if (markAsRead) {
+                values.put(MARKED_READ_TIME, System.currentTimeMillis());
             }
-            if (c != null) {
-                c.close();
+            if (hidden != null) {
+                if (hidden) {
+                    values.put(HIDDEN, 1);
+                } else {
+                    values.put(HIDDEN, 0);
+                }
             }
-            return result;
+            values.put(_ID, id);
+            ContentResolver cr = Application.get().getContentResolver();
+            return cr.insert(getUpsertUri(CONTENT_URI, false), values);
         }
 
         /**
@@ -1302,20 +1271,8 @@ public final class ObaContract {
         public static Uri insertOrUpdate(ContentResolver cr,
                 int id,
                 ContentValues values) {
-            final Uri uri = Uri.withAppendedPath(CONTENT_URI, String.valueOf(id));
-            Cursor c = cr.query(uri, new String[]{}, null, null, null);
-            Uri result;
-            if (c != null && c.getCount() > 0) {
-                cr.update(uri, values, null, null);
-                result = uri;
-            } else {
-                values.put(_ID, id);
-                result = cr.insert(CONTENT_URI, values);
-            }
-            if (c != null) {
-                c.close();
-            }
-            return result;
+            values.put(_ID, id);
+            return cr.insert(getUpsertUri(CONTENT_URI, false), values);
         }
 
         public static ObaRegion get(Context context, int id) {
@@ -1544,7 +1501,7 @@ public final class ObaContract {
                 = "vnd.android.dir/" + BuildConfig.DATABASE_AUTHORITY + ".routeheadsignfavorites";
 
         // String used to indicate that a route/headsign combination is a favorite for all stops
-        private static final String ALL_STOPS = "all";
+        static final String ALL_STOPS = "all";
 
         /**
          * Set the specified route and headsign combination as a favorite, optionally for a specific
@@ -1594,6 +1551,7 @@ public final class ObaContract {
                 values.put(STOP_ID, stopIdInternal);
                 values.put(EXCLUDE, 0);
                 cr.insert(CONTENT_URI, values);
+                RouteHeadsignFavoritesIndex.getInstance().invalidate();
 
                 // Mark the route as a favorite also in the routes table
                 Routes.markAsFavorite(context, routeUri, true);
@@ -1607,6 +1565,7 @@ public final class ObaContract {
                     final String WHERE2 = ROUTE_ID + "=? AND " + HEADSIGN + "=?";
                     cr.delete(CONTENT_URI, WHERE2, selectionArgs2);
                 }
+                RouteHeadsignFavoritesIndex.getInstance().invalidate();
 
                 // If there are no more route/headsign combinations that are favorites for this route,
                 // then mark the route as not a favorite
@@ -1625,6 +1584,7 @@ public final class ObaContract {
                     values.put(STOP_ID, stopIdInternal);
                     values.put(EXCLUDE, 1);
                     cr.insert(CONTENT_URI, values);
+                    RouteHeadsignFavoritesIndex.getInstance().invalidate();
                 }
             }
 
@@ -1648,7 +1608,9 @@ public final class ObaContract {
 
         /**
          * Returns true if this combination of routeId and headsign is a favorite for this stop
-         * or all stops (and that stop is not excluded as a favorite), false if it is not
+         * or all stops (and that stop is not excluded as a favorite), false if it is not.  This
+         * is answered from RouteHeadsignFavoritesIndex, so it doesn't query the provider unless
+         * the favorites have changed.
          *
          * @param routeId  The routeId to check for favorite
          * @param headsign The headsign to check for favorite
@@ -1658,50 +1620,7 @@ public final class ObaContract {
          */
         public static boolean isFavorite(String routeId, String headsign,
                 String stopId) {
-            if (headsign == null) {
-                headsign = "";
-            }
-            final String[] selection = {ROUTE_ID, HEADSIGN, STOP_ID, EXCLUDE};
-            final String[] selectionArgs = {routeId, headsign, stopId, Integer.toString(0)};
-            ContentResolver cr = Application.get().getContentResolver();
-            final String FILTER_WHERE_ALL_FIELDS = ROUTE_ID + "=? AND " + HEADSIGN + "=? AND "
-                    + STOP_ID + "=? AND " + EXCLUDE + "=?";
-            Cursor c = cr.query(CONTENT_URI, selection, FILTER_WHERE_ALL_FIELDS,
-                    selectionArgs, null);
-            boolean favorite;
-            if (c != null && c.getCount() > 0) {
-                favorite = true;
-            } else {
-                // Check again to see if the user has favorited this route/headsign combo for all stops
-                final String[] selectionArgs2 = {routeId, headsign, ALL_STOPS};
-                String WHERE_PARTIAL = ROUTE_ID + "=? AND " + HEADSIGN + "=? AND "
-                        + STOP_ID + "=?";
-                Cursor c2 = cr.query(CONTENT_URI, selection, WHERE_PARTIAL,
-                        selectionArgs2, null);
-                favorite = c2 != null && c2.getCount() > 0;
-                if (c2 != null) {
-                    c2.close();
-                }
-
-                if (favorite) {
-                    // Finally, make sure the user hasn't excluded this stop as a favorite
-                    final String[] selectionArgs3 = {routeId, headsign, stopId,
-                            Integer.toString(1)};
-                    Cursor c3 = cr.query(CONTENT_URI, selection, FILTER_WHERE_ALL_FIELDS,
-                            selectionArgs3, null);
-                    // If this query returns at least one record, it means the stop has been excluded as
-                    // a favorite (i.e., the user explicitly de-selected it)
-                    boolean isStopExcluded = c3 != null && c3.getCount() > 0;
-                    favorite = !isStopExcluded;
-                    if (c3 != null) {
-                        c3.close();
-                    }
-                }
-            }
-            if (c != null) {
-                c.close();
-            }
-            return favorite;
+            return RouteHeadsignFavoritesIndex.getInstance().isFavorite(routeId, headsign, stopId);
         }
 
         /**
@@ -20,9 +20,12 @@ package org.onebusaway.android.provider;
 import org.onebusaway.android.BuildConfig;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
@@ -31,10 +34,13 @@ import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.provider.BaseColumns;
 import android.util.Log;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 public class ObaProvider extends ContentProvider {
@@ -49,7 +55,7 @@ public class ObaProvider extends ContentProvider {
 
     private class OpenHelper extends SQLiteOpenHelper {
 
-        private static final int DATABASE_VERSION = 29;
+        private static final int DATABASE_VERSION = 30;
 
         public OpenHelper(Context context) {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -297,6 +303,11 @@ public class ObaProvider extends ContentProvider {
                             + ObaContract.NavStops.ACTIVE + " INTEGER NOT NULL " +
                             ");"
                 );
+                ++oldVersion;
+            }
+            if (oldVersion == 29) {
+                createIndexes(db);
+                ++oldVersion;
             }
         }
 
@@ -347,6 +358,55 @@ public class ObaProvider extends ContentProvider {
                             ");");
         }
 
+        /**
+         * Creates the indexes used by the queries in ObaContract and the trip service, which
+         * otherwise scan the whole table.  ProviderQueryPlanTest checks that these are used.
+         */
+        private void createIndexes(SQLiteDatabase db) {
+            // SchedulerTask and TripAlerts.insertIfNotExists(), and the trip_alerts_cleanup
+            // trigger
+            db.execSQL("CREATE INDEX IF NOT EXISTS trip_alerts_trip_stop_time ON " +
+                    ObaContract.TripAlerts.PATH + " (" +
+                    ObaContract.TripAlerts.TRIP_ID + ", " +
+                    ObaContract.TripAlerts.STOP_ID + ", " +
+                    ObaContract.TripAlerts.START_TIME + ");");
+            // PollerTask reminders by stop
+            db.execSQL("CREATE INDEX IF NOT EXISTS trip_alerts_stop_state ON " +
+                    ObaContract.TripAlerts.PATH + " (" +
+                    ObaContract.TripAlerts.STOP_ID + ", " +
+                    ObaContract.TripAlerts.STATE + ");");
+            // Cleanup of old alerts
+            db.execSQL("CREATE INDEX IF NOT EXISTS trip_alerts_start_time ON " +
+                    ObaContract.TripAlerts.PATH + " (" +
+                    ObaContract.TripAlerts.START_TIME + ");");
+            // Trips don't have a primary key - they are looked up by trip and stop
+            db.execSQL("CREATE INDEX IF NOT EXISTS trips_id_stop ON " +
+                    ObaContract.Trips.PATH + " (" +
+                    ObaContract.Trips._ID + ", " +
+                    ObaContract.Trips.STOP_ID + ");");
+            db.execSQL("CREATE INDEX IF NOT EXISTS stop_route_filters_stop ON " +
+                    ObaContract.StopRouteFilters.PATH + " (" +
+                    ObaContract.StopRouteFilters.STOP_ID + ", " +
+                    ObaContract.StopRouteFilters.ROUTE_ID + ");");
+            db.execSQL("CREATE INDEX IF NOT EXISTS route_headsign_favorites_key ON " +
+                    ObaContract.RouteHeadsignFavorites.PATH + " (" +
+                    ObaContract.RouteHeadsignFavorites.ROUTE_ID + ", " +
+                    ObaContract.RouteHeadsignFavorites.HEADSIGN + ", " +
+                    ObaContract.RouteHeadsignFavorites.STOP_ID + ", " +
+                    ObaContract.RouteHeadsignFavorites.EXCLUDE + ");");
+            // RegionBounds.getRegion() and the region_bounds_cleanup trigger
+            db.execSQL("CREATE INDEX IF NOT EXISTS region_bounds_region ON " +
+                    ObaContract.RegionBounds.PATH + " (" +
+                    ObaContract.RegionBounds.REGION_ID + ");");
+            db.execSQL("CREATE INDEX IF NOT EXISTS region_open311_servers_region ON " +
+                    ObaContract.RegionOpen311Servers.PATH + " (" +
+                    ObaContract.RegionOpen311Servers.REGION_ID + ");");
+            db.execSQL("CREATE INDEX IF NOT EXISTS nav_stops_nav_sequence ON " +
+                    ObaContract.NavStops.PATH + " (" +
+                    ObaContract.NavStops.NAV_ID + ", " +
+                    ObaContract.NavStops.SEQUENCE + ");");
+        }
+
         private void dropTables(SQLiteDatabase db) {
             db.execSQL("DROP TABLE IF EXISTS " + ObaContract.StopRouteFilters.PATH);
             db.execSQL("DROP TABLE IF EXISTS " + ObaContract.Routes.PATH);
@@ -400,6 +460,8 @@ public class ObaProvider extends ContentProvider {
 
     private static final int NAV_STOPS = 19;
 
+    private static final int TRIP_ALERT_REMINDERS = 20;
+
     private static final UriMatcher sUriMatcher;
 
     private static final HashMap<String, String> sStopsProjectionMap;
@@ -410,6 +472,8 @@ public class ObaProvider extends ContentProvider {
 
     private static final HashMap<String, String> sTripAlertsProjectionMap;
 
+    private static final HashMap<String, String> sTripAlertRemindersProjectionMap;
+
     private static final HashMap<String, String> sServiceAlertsProjectionMap;
 
     private static final HashMap<String, String> sRegionsProjectionMap;
@@ -441,6 +505,10 @@ public class ObaProvider extends ContentProvider {
 
     private DatabaseUtils.InsertHelper mNavStopsInserter;
 
+    // Tables changed by the applyBatch() call on this thread, which are notified once the batch
+    // is committed - null if no batch is running
+    private final ThreadLocal<LinkedHashSet<Uri>> mBatchChanges = new ThreadLocal<>();
+
     static {
         sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
         sUriMatcher.addURI(ObaContract.AUTHORITY, ObaContract.Stops.PATH, STOPS);
@@ -452,6 +520,8 @@ public class ObaProvider extends ContentProvider {
         sUriMatcher.addURI(ObaContract.AUTHORITY, ObaContract.TripAlerts.PATH, TRIP_ALERTS);
         sUriMatcher
                 .addURI(ObaContract.AUTHORITY, ObaContract.TripAlerts.PATH + "/#", TRIP_ALERTS_ID);
+        sUriMatcher.addURI(ObaContract.AUTHORITY, ObaContract.TripAlerts.PATH + "/reminders",
+                TRIP_ALERT_REMINDERS);
         sUriMatcher.addURI(ObaContract.AUTHORITY, ObaContract.StopRouteFilters.PATH,
                 STOP_ROUTE_FILTERS);
         sUriMatcher.addURI(ObaContract.AUTHORITY, ObaContract.ServiceAlerts.PATH, SERVICE_ALERTS);
@@ -520,6 +590,21 @@ public class ObaProvider extends ContentProvider {
         sTripAlertsProjectionMap.put(ObaContract.TripAlerts.STATE, ObaContract.TripAlerts.STATE);
         sTripAlertsProjectionMap.put(ObaContract.TripAlerts._COUNT, "count(*)");
 
+        // Trip alerts joined with their trips - qualify the columns that both tables share
+        sTripAlertRemindersProjectionMap = new HashMap<String, String>();
+        for (String column : new String[]{ObaContract.TripAlerts._ID,
+                ObaContract.TripAlerts.TRIP_ID, ObaContract.TripAlerts.STOP_ID,
+                ObaContract.TripAlerts.START_TIME, ObaContract.TripAlerts.STATE}) {
+            sTripAlertRemindersProjectionMap.put(column,
+                    ObaContract.TripAlerts.PATH + "." + column + " AS " + column);
+        }
+        sTripAlertRemindersProjectionMap.put(ObaContract.Trips.NAME,
+                ObaContract.Trips.PATH + "." + ObaContract.Trips.NAME
+                        + " AS " + ObaContract.Trips.NAME);
+        sTripAlertRemindersProjectionMap.put(ObaContract.Trips.REMINDER,
+                ObaContract.Trips.PATH + "." + ObaContract.Trips.REMINDER
+                        + " AS " + ObaContract.Trips.REMINDER);
+
         sServiceAlertsProjectionMap = new HashMap<String, String>();
         sServiceAlertsProjectionMap
                 .put(ObaContract.ServiceAlerts._ID, ObaContract.ServiceAlerts._ID);
@@ -624,6 +709,8 @@ public class ObaProvider extends ContentProvider {
                 return ObaContract.TripAlerts.CONTENT_DIR_TYPE;
             case TRIP_ALERTS_ID:
                 return ObaContract.TripAlerts.CONTENT_TYPE;
+            case TRIP_ALERT_REMINDERS:
+                return ObaContract.TripAlerts.CONTENT_DIR_TYPE;
             case STOP_ROUTE_FILTERS:
                 return ObaContract.StopRouteFilters.CONTENT_DIR_TYPE;
             case SERVICE_ALERTS:
@@ -656,8 +743,13 @@ public class ObaProvider extends ContentProvider {
         final SQLiteDatabase db = getDatabase();
         db.beginTransaction();
         try {
-            Uri result = insertInternal(db, uri, values);
-            getContext().getContentResolver().notifyChange(uri, null);
+            Uri result;
+            if (isUpsert(uri)) {
+                result = upsertInternal(db, uri, values);
+            } else {
+                result = insertInternal(db, uri, values);
+            }
+            notifyChange(uri);
             db.setTransactionSuccessful();
             return result;
         } finally {
@@ -665,6 +757,77 @@ public class ObaProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Inserts all rows in a single transaction, with a single change notification.  Upserts are
+     * supported in the same way as insert() - see ObaContract.getUpsertUri().
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final SQLiteDatabase db = getDatabase();
+        final boolean upsert = isUpsert(uri);
+        db.beginTransaction();
+        try {
+            for (ContentValues v : values) {
+                if (upsert) {
+                    upsertInternal(db, uri, v);
+                } else {
+                    insertInternal(db, uri, v);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (values.length > 0) {
+            notifyChange(uri);
+        }
+        return values.length;
+    }
+
+    /**
+     * Applies all operations in a single transaction.  Each table that was changed is notified
+     * once, after the transaction is committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = getDatabase();
+        LinkedHashSet<Uri> changes = new LinkedHashSet<>();
+        mBatchChanges.set(changes);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+        for (Uri uri : changes) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * Notifies observers of a change to the given URI, or records the change to the table if a
+     * batch is running on this thread
+     */
+    private void notifyChange(Uri uri) {
+        LinkedHashSet<Uri> changes = mBatchChanges.get();
+        if (changes != null) {
+            // Observers of the table are also notified of changes to its rows
+            changes.add(Uri.withAppendedPath(ObaContract.AUTHORITY_URI,
+                    uri.getPathSegments().get(0)));
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    private static boolean isUpsert(Uri uri) {
+        return uri.getBooleanQueryParameter(ObaContract.PARAM_UPSERT, false);
+    }
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
@@ -680,7 +843,7 @@ public class ObaProvider extends ContentProvider {
         try {
             int result = updateInternal(db, uri, values, selection, selectionArgs);
             if (result > 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
             }
             db.setTransactionSuccessful();
             return result;
@@ -696,7 +859,7 @@ public class ObaProvider extends ContentProvider {
         try {
             int result = deleteInternal(db, uri, selection, selectionArgs);
             if (result > 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
             }
             db.setTransactionSuccessful();
             return result;
@@ -817,11 +980,102 @@ public class ObaProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Updates the row with the _ID in the given values, or inserts it if it doesn't exist, with
+     * one call to the provider.  INSERT ... ON CONFLICT DO UPDATE needs SQLite 3.24 (Android 11),
+     * and insertWithOnConflict() with CONFLICT_REPLACE would reset the columns that aren't in the
+     * values (e.g., favorites), so this tries an UPDATE, then an INSERT that ignores conflicts.
+     *
+     * For stops and routes, USE_COUNT in the values is only used for new rows.  If the URI has
+     * PARAM_INCREMENT_USE_COUNT, USE_COUNT of an existing row is incremented.
+     */
+    private Uri upsertInternal(SQLiteDatabase db, Uri uri, ContentValues values) {
+        final int match = sUriMatcher.match(uri);
+        final String table;
+        final Uri contentUri;
+        boolean hasUseCount = false;
+
+        switch (match) {
+            case STOPS:
+                table = ObaContract.Stops.PATH;
+                contentUri = ObaContract.Stops.CONTENT_URI;
+                hasUseCount = true;
+                break;
+            case ROUTES:
+                table = ObaContract.Routes.PATH;
+                contentUri = ObaContract.Routes.CONTENT_URI;
+                hasUseCount = true;
+                break;
+            case SERVICE_ALERTS:
+                table = ObaContract.ServiceAlerts.PATH;
+                contentUri = ObaContract.ServiceAlerts.CONTENT_URI;
+                break;
+            case REGIONS:
+                table = ObaContract.Regions.PATH;
+                contentUri = ObaContract.Regions.CONTENT_URI;
+                break;
+            default:
+                throw new UnsupportedOperationException("Cannot upsert to this URI: " + uri);
+        }
+
+        final String id = values.getAsString(BaseColumns._ID);
+        if (id == null) {
+            throw new IllegalArgumentException("Need an ID to upsert! " + uri);
+        }
+        final String[] whereArgs = {id};
+        final String where = BaseColumns._ID + "=?";
+
+        ContentValues updateValues = values;
+        if (hasUseCount && values.containsKey(ObaContract.Stops.USE_COUNT)) {
+            updateValues = new ContentValues(values);
+            updateValues.remove(ObaContract.Stops.USE_COUNT);
+        }
+        int updated = db.update(table, updateValues, where, whereArgs);
+        if (updated == 0) {
+            db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        } else if (hasUseCount
+                && uri.getBooleanQueryParameter(ObaContract.PARAM_INCREMENT_USE_COUNT, false)) {
+            db.execSQL("UPDATE " + table + " SET " + ObaContract.Stops.USE_COUNT + "="
+                    + ObaContract.Stops.USE_COUNT + "+1 WHERE " + where, whereArgs);
+        }
+        return Uri.withAppendedPath(contentUri, id);
+    }
+
     private Cursor queryInternal(SQLiteDatabase db,
                                  Uri uri, String[] projection, String selection,
                                  String[] selectionArgs, String sortOrder) {
+        SQLiteQueryBuilder qb = newQueryBuilder(uri);
+        return qb.query(db, projection, selection, selectionArgs,
+                null, null, sortOrder, uri.getQueryParameter("limit"));
+    }
+
+    /**
+     * Returns the rows of EXPLAIN QUERY PLAN for the query that query() would run with these
+     * arguments, so tests can check that queries are using the indexes
+     */
+    public List<String> getQueryPlan(Uri uri, String[] projection, String selection,
+                                     String[] selectionArgs, String sortOrder) {
+        SQLiteQueryBuilder qb = newQueryBuilder(uri);
+        String sql = qb.buildQuery(projection, selection, null, null, sortOrder,
+                uri.getQueryParameter("limit"));
+        List<String> plan = new ArrayList<>();
+        Cursor c = getDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detail = c.getColumnIndexOrThrow("detail");
+            while (c.moveToNext()) {
+                plan.add(c.getString(detail));
+            }
+        } finally {
+            c.close();
+        }
+        return plan;
+    }
+
+    /**
+     * Returns a query builder for the table, projection map and where clause of the URI
+     */
+    private SQLiteQueryBuilder newQueryBuilder(Uri uri) {
         final int match = sUriMatcher.match(uri);
-        final String limit = uri.getQueryParameter("limit");
 
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
 
@@ -829,8 +1083,7 @@ public class ObaProvider extends ContentProvider {
             case STOPS:
                 qb.setTables(ObaContract.Stops.PATH);
                 qb.setProjectionMap(sStopsProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case STOPS_ID:
                 qb.setTables(ObaContract.Stops.PATH);
@@ -838,14 +1091,12 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.Stops._ID);
                 qb.appendWhere("=");
                 qb.appendWhereEscapeString(uri.getLastPathSegment());
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case ROUTES:
                 qb.setTables(ObaContract.Routes.PATH);
                 qb.setProjectionMap(sRoutesProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case ROUTES_ID:
                 qb.setTables(ObaContract.Routes.PATH);
@@ -853,27 +1104,23 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.Routes._ID);
                 qb.appendWhere("=");
                 qb.appendWhereEscapeString(uri.getLastPathSegment());
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case TRIPS:
                 qb.setTables(ObaContract.Trips.PATH);
                 qb.setProjectionMap(sTripsProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case TRIPS_ID:
                 qb.setTables(ObaContract.Trips.PATH);
                 qb.setProjectionMap(sTripsProjectionMap);
                 qb.appendWhere(tripWhere(uri));
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case TRIP_ALERTS:
                 qb.setTables(ObaContract.TripAlerts.PATH);
                 qb.setProjectionMap(sTripAlertsProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case TRIP_ALERTS_ID:
                 qb.setTables(ObaContract.TripAlerts.PATH);
@@ -881,19 +1128,26 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.TripAlerts._ID);
                 qb.appendWhere("=");
                 qb.appendWhere(String.valueOf(ContentUris.parseId(uri)));
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
+
+            case TRIP_ALERT_REMINDERS:
+                qb.setTables(ObaContract.TripAlerts.PATH + " LEFT JOIN " + ObaContract.Trips.PATH
+                        + " ON (" + ObaContract.TripAlerts.PATH + "."
+                        + ObaContract.TripAlerts.TRIP_ID + " = " + ObaContract.Trips.PATH + "."
+                        + ObaContract.Trips._ID + " AND " + ObaContract.TripAlerts.PATH + "."
+                        + ObaContract.TripAlerts.STOP_ID + " = " + ObaContract.Trips.PATH + "."
+                        + ObaContract.Trips.STOP_ID + ")");
+                qb.setProjectionMap(sTripAlertRemindersProjectionMap);
+                break;
 
             case STOP_ROUTE_FILTERS:
                 qb.setTables(ObaContract.StopRouteFilters.PATH);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case SERVICE_ALERTS:
                 qb.setTables(ObaContract.ServiceAlerts.PATH);
                 qb.setProjectionMap(sServiceAlertsProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case SERVICE_ALERTS_ID:
                 qb.setTables(ObaContract.ServiceAlerts.PATH);
@@ -901,14 +1155,12 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.ServiceAlerts._ID);
                 qb.appendWhere("=");
                 qb.appendWhereEscapeString(uri.getLastPathSegment());
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case REGIONS:
                 qb.setTables(ObaContract.Regions.PATH);
                 qb.setProjectionMap(sRegionsProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case REGIONS_ID:
                 qb.setTables(ObaContract.Regions.PATH);
@@ -916,14 +1168,12 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.Regions._ID);
                 qb.appendWhere("=");
                 qb.appendWhere(String.valueOf(ContentUris.parseId(uri)));
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case REGION_BOUNDS:
                 qb.setTables(ObaContract.RegionBounds.PATH);
                 qb.setProjectionMap(sRegionBoundsProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case REGION_BOUNDS_ID:
                 qb.setTables(ObaContract.RegionBounds.PATH);
@@ -931,14 +1181,12 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.RegionBounds._ID);
                 qb.appendWhere("=");
                 qb.appendWhere(String.valueOf(ContentUris.parseId(uri)));
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case REGION_OPEN311_SERVERS:
                 qb.setTables(ObaContract.RegionOpen311Servers.PATH);
                 qb.setProjectionMap(sRegionOpen311ProjectionMap);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case REGION_OPEN311_SERVERS_ID:
                 qb.setTables(ObaContract.RegionOpen311Servers.PATH);
@@ -946,20 +1194,18 @@ public class ObaProvider extends ContentProvider {
                 qb.appendWhere(ObaContract.RegionOpen311Servers._ID);
                 qb.appendWhere("=");
                 qb.appendWhere(String.valueOf(ContentUris.parseId(uri)));
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
 
             case ROUTE_HEADSIGN_FAVORITES:
                 qb.setTables(ObaContract.RouteHeadsignFavorites.PATH);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
             case NAV_STOPS:
                 qb.setTables(ObaContract.NavStops.PATH);
-                return qb.query(mDb, projection, selection, selectionArgs,
-                        null, null, sortOrder, limit);
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
+        return qb;
     }
 
     private int updateInternal(SQLiteDatabase db,
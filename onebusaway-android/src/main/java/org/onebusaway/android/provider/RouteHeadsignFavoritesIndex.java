@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.provider;
+
+import org.onebusaway.android.app.Application;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+
+import java.util.HashSet;
+
+/**
+ * An in-memory copy of the route_headsign_favorites table, so that the favorite status of each
+ * arrival can be checked without querying the provider (see
+ * ObaContract.RouteHeadsignFavorites.isFavorite(String, String, String)).  The table is loaded
+ * on first use, and loaded again after the provider notifies a change to it.
+ */
+public class RouteHeadsignFavoritesIndex {
+
+    private static final char SEPARATOR = '\u0000';
+
+    // Keys of route/headsign/stop rows with EXCLUDE = 0
+    private HashSet<String> mFavorites = new HashSet<>();
+
+    // Keys of route/headsign/stop rows with EXCLUDE = 1
+    private HashSet<String> mExcluded = new HashSet<>();
+
+    // Keys of route/headsign that are favorites for all stops
+    private HashSet<String> mAllStops = new HashSet<>();
+
+    // Incremented on each change to the table - the index is current if it was loaded at the
+    // latest generation
+    private volatile int mGeneration = 0;
+
+    private int mLoadedGeneration = -1;
+
+    private boolean mObserving = false;
+
+    private int mLoadCount = 0;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+    };
+
+    private static class SingletonHolder {
+
+        static final RouteHeadsignFavoritesIndex INSTANCE = new RouteHeadsignFavoritesIndex();
+    }
+
+    public static RouteHeadsignFavoritesIndex getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private RouteHeadsignFavoritesIndex() {
+    }
+
+    /**
+     * Returns true if this combination of routeId and headsign is a favorite for this stop
+     * or all stops (and that stop is not excluded as a favorite), false if it is not.  This
+     * gives the same result as ObaContract.RouteHeadsignFavorites.isFavorite(), without
+     * querying the provider unless the table has changed.
+     *
+     * @param routeId  The routeId to check for favorite
+     * @param headsign The headsign to check for favorite
+     * @param stopId   The stopId to check for favorite
+     */
+    public synchronized boolean isFavorite(String routeId, String headsign, String stopId) {
+        if (headsign == null) {
+            headsign = "";
+        }
+        loadIfNeeded();
+        String key = key(routeId, headsign, stopId);
+        if (mFavorites.contains(key)) {
+            return true;
+        }
+        return mAllStops.contains(key(routeId, headsign)) && !mExcluded.contains(key);
+    }
+
+    /**
+     * Discards the index, so it's loaded again on next use.  This is called when the provider
+     * notifies a change, and directly after changes made by ObaContract, since observers are
+     * notified asynchronously.
+     */
+    public void invalidate() {
+        mGeneration++;
+    }
+
+    /**
+     * @return the number of times the table has been loaded
+     */
+    public synchronized int getLoadCount() {
+        return mLoadCount;
+    }
+
+    private void loadIfNeeded() {
+        ContentResolver cr = Application.get().getContentResolver();
+        if (!mObserving) {
+            cr.registerContentObserver(ObaContract.RouteHeadsignFavorites.CONTENT_URI, true,
+                    mObserver);
+            mObserving = true;
+        }
+        int generation = mGeneration;
+        if (generation == mLoadedGeneration) {
+            return;
+        }
+
+        HashSet<String> favorites = new HashSet<>();
+        HashSet<String> excluded = new HashSet<>();
+        HashSet<String> allStops = new HashSet<>();
+        final String[] projection = {
+                ObaContract.RouteHeadsignFavorites.ROUTE_ID,
+                ObaContract.RouteHeadsignFavorites.HEADSIGN,
+                ObaContract.RouteHeadsignFavorites.STOP_ID,
+                ObaContract.RouteHeadsignFavorites.EXCLUDE
+        };
+        Cursor c = cr.query(ObaContract.RouteHeadsignFavorites.CONTENT_URI, projection, null,
+                null, null);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    String routeId = c.getString(0);
+                    String headsign = c.getString(1);
+                    String stopId = c.getString(2);
+                    String key = key(routeId, headsign, stopId);
+                    if (c.getInt(3) == 0) {
+                        favorites.add(key);
+                    } else {
+                        excluded.add(key);
+                    }
+                    if (ObaContract.RouteHeadsignFavorites.ALL_STOPS.equals(stopId)) {
+                        allStops.add(key(routeId, headsign));
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        mFavorites = favorites;
+        mExcluded = excluded;
+        mAllStops = allStops;
+        mLoadCount++;
+        // If the table changed while loading, load again on next use
+        mLoadedGeneration = generation;
+    }
+
+    private static String key(String routeId, String headsign) {
+        return routeId + SEPARATOR + headsign;
+    }
+
+    private static String key(String routeId, String headsign, String stopId) {
+        return routeId + SEPARATOR + headsign + SEPARATOR + stopId;
+    }
+}
@@ -127,7 +127,12 @@ public class ObaRegionsTask extends AsyncTask<Void, Integer, ArrayList<ObaRegion
 
     @Override
     protected ArrayList<ObaRegion> doInBackground(Void... params) {
-        return RegionUtils.getRegions(mContext, mForceReload);
+        ArrayList<ObaRegion> results = RegionUtils.getRegions(mContext, mForceReload);
+        if (results != null) {
+            // Index the regions on this thread, so onPostExecute() only has to query the index
+            RegionUtils.getRegionIndex(results);
+        }
+        return results;
     }
 
     @Override
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.region;
+
+import org.onebusaway.android.io.elements.ObaRegion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A spatial index over the bounds of a list of regions, built once when the regions are loaded.
+ * It answers the queries in RegionUtils without looping over every region and bound:
+ * <ul>
+ * <li>The closest region, by the distance to the center of its closest bound (see
+ * RegionUtils.getDistanceAway()).  The centers are kept in a k-d tree of points on the unit
+ * sphere, where the nearest point by straight-line distance is also the nearest by great-circle
+ * distance.</li>
+ * <li>Whether a location is within a region, by the span of all its bounds (see
+ * RegionUtils.getRegionSpan()).  The spans are computed once, instead of for each query.</li>
+ * </ul>
+ * Queries don't allocate.  Instances are immutable, and the regions must not be changed after
+ * they are indexed.
+ */
+public final class RegionIndex {
+
+    /**
+     * Mean radius of the Earth, in meters
+     */
+    private static final double EARTH_RADIUS = 6371009;
+
+    private final IdentityHashMap<ObaRegion, Integer> mSpanIndex = new IdentityHashMap<>();
+
+    // k-d tree of bound centers - the node for a range of the arrays is the middle element
+    private final double[] mX;
+
+    private final double[] mY;
+
+    private final double[] mZ;
+
+    private final ObaRegion[] mPointRegions;
+
+    // Spans of the regions, in the order of mSpanIndex - each is minLat, maxLat, minLon, maxLon
+    private final double[] mSpans;
+
+    /**
+     * @param regions the regions to index.  Regions without bounds are ignored.
+     */
+    public RegionIndex(List<ObaRegion> regions) {
+        // Bound centers
+        ArrayList<double[]> points = new ArrayList<>();
+        ArrayList<ObaRegion> pointRegions = new ArrayList<>();
+        // Region spans
+        ArrayList<double[]> spans = new ArrayList<>();
+
+        for (ObaRegion region : regions) {
+            ObaRegion.Bounds[] bounds = region.getBounds();
+            if (bounds == null || bounds.length == 0) {
+                continue;
+            }
+            double[] span = {90, -90, 180, -180};
+            for (ObaRegion.Bounds bound : bounds) {
+                points.add(toUnitVector(bound.getLat(), bound.getLon()));
+                pointRegions.add(region);
+
+                double latSpanHalf = bound.getLatSpan() / 2.0;
+                double lonSpanHalf = bound.getLonSpan() / 2.0;
+                span[0] = Math.min(span[0], bound.getLat() - latSpanHalf);
+                span[1] = Math.max(span[1], bound.getLat() + latSpanHalf);
+                span[2] = Math.min(span[2], bound.getLon() - lonSpanHalf);
+                span[3] = Math.max(span[3], bound.getLon() + lonSpanHalf);
+            }
+            mSpanIndex.put(region, spans.size());
+            spans.add(span);
+        }
+
+        // Build the k-d tree by sorting each range on its axis, and then its halves on the next
+        final int n = points.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        buildKdTree(order, 0, n, 0, points);
+        mX = new double[n];
+        mY = new double[n];
+        mZ = new double[n];
+        mPointRegions = new ObaRegion[n];
+        for (int i = 0; i < n; i++) {
+            double[] p = points.get(order[i]);
+            mX[i] = p[0];
+            mY[i] = p[1];
+            mZ[i] = p[2];
+            mPointRegions[i] = pointRegions.get(order[i]);
+        }
+
+        mSpans = new double[spans.size() * 4];
+        for (int i = 0; i < spans.size(); i++) {
+            System.arraycopy(spans.get(i), 0, mSpans, i * 4, 4);
+        }
+    }
+
+    private static void buildKdTree(Integer[] order, int lo, int hi, final int axis,
+            final List<double[]> points) {
+        if (hi - lo < 2) {
+            return;
+        }
+        Arrays.sort(order, lo, hi, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(points.get(a)[axis], points.get(b)[axis]);
+            }
+        });
+        int mid = (lo + hi) >>> 1;
+        buildKdTree(order, lo, mid, (axis + 1) % 3, points);
+        buildKdTree(order, mid + 1, hi, (axis + 1) % 3, points);
+    }
+
+    private static double[] toUnitVector(double lat, double lon) {
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        return new double[]{
+                Math.cos(latRad) * Math.cos(lonRad),
+                Math.cos(latRad) * Math.sin(lonRad),
+                Math.sin(latRad)};
+    }
+
+    /**
+     * @return the number of regions with bounds in this index
+     */
+    public int size() {
+        return mSpanIndex.size();
+    }
+
+    /**
+     * Returns the region with the closest bound center to the location
+     *
+     * @param maxDistance the maximum distance to the bound center, in meters
+     * @return the closest region, or null if there isn't one within maxDistance
+     */
+    public ObaRegion getClosestRegion(double lat, double lon, double maxDistance) {
+        if (mX.length == 0) {
+            return null;
+        }
+        final double latRad = Math.toRadians(lat);
+        final double lonRad = Math.toRadians(lon);
+        final double x = Math.cos(latRad) * Math.cos(lonRad);
+        final double y = Math.cos(latRad) * Math.sin(lonRad);
+        final double z = Math.sin(latRad);
+        int best = nearest(0, mX.length, 0, x, y, z, -1);
+        if (getDistance(best, x, y, z) > maxDistance) {
+            return null;
+        }
+        return mPointRegions[best];
+    }
+
+    private int nearest(int lo, int hi, int axis, double x, double y, double z, int best) {
+        if (lo >= hi) {
+            return best;
+        }
+        final int mid = (lo + hi) >>> 1;
+        if (best == -1 || distanceSq(mid, x, y, z) < distanceSq(best, x, y, z)) {
+            best = mid;
+        }
+        final double diff;
+        if (axis == 0) {
+            diff = x - mX[mid];
+        } else if (axis == 1) {
+            diff = y - mY[mid];
+        } else {
+            diff = z - mZ[mid];
+        }
+        final int next = (axis + 1) % 3;
+        // Search the side of the split containing the location first, and then the other side
+        // only if it could contain a closer point
+        if (diff < 0) {
+            best = nearest(lo, mid, next, x, y, z, best);
+            if (diff * diff < distanceSq(best, x, y, z)) {
+                best = nearest(mid + 1, hi, next, x, y, z, best);
+            }
+        } else {
+            best = nearest(mid + 1, hi, next, x, y, z, best);
+            if (diff * diff < distanceSq(best, x, y, z)) {
+                best = nearest(lo, mid, next, x, y, z, best);
+            }
+        }
+        return best;
+    }
+
+    private double distanceSq(int i, double x, double y, double z) {
+        final double dx = mX[i] - x;
+        final double dy = mY[i] - y;
+        final double dz = mZ[i] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Converts the straight-line distance between points on the unit sphere to meters
+     */
+    private double getDistance(int i, double x, double y, double z) {
+        double chord = Math.sqrt(distanceSq(i, x, y, z));
+        return 2 * Math.asin(Math.min(chord / 2, 1)) * EARTH_RADIUS;
+    }
+
+    private static boolean contains(double[] spans, int i, double lat, double lon) {
+        return spans[i * 4] <= lat && lat <= spans[i * 4 + 1]
+                && spans[i * 4 + 2] <= lon && lon <= spans[i * 4 + 3];
+    }
+
+    /**
+     * @return true if the region is in this index, so it can be used with isLocationWithinRegion()
+     */
+    public boolean contains(ObaRegion region) {
+        return mSpanIndex.containsKey(region);
+    }
+
+    /**
+     * Determines if the location is within the span of a region in this index
+     *
+     * @throws IllegalArgumentException if the region isn't in this index
+     */
+    public boolean isLocationWithinRegion(double lat, double lon, ObaRegion region) {
+        Integer span = mSpanIndex.get(region);
+        if (span == null) {
+            throw new IllegalArgumentException("Region isn't in the index");
+        }
+        return contains(mSpans, span, lat, lon);
+    }
+}
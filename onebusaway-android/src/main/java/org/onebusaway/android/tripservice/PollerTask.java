@@ -22,7 +22,6 @@ import org.onebusaway.android.io.request.ObaArrivalInfoRequest;
 import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
 import org.onebusaway.android.provider.ObaContract;
 import org.onebusaway.android.ui.ArrivalInfo;
-import org.onebusaway.android.util.UIUtils;
 
 import android.content.ContentResolver;
 import android.content.ContentValues;
@@ -30,21 +29,46 @@ import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * A task (thread) that is responsible for polling the server to determine if a Notification to
  * remind the user of an arriving bus should be triggered.
+ *
+ * Each poll is a batch pass over all of the alerts that are polling at the same stops as the
+ * alerts for the task's URI - arrivals are fetched once per stop, and all alerts for that stop
+ * are evaluated against the same response and rescheduled together.  Since the rescheduled
+ * alarms fire at the same time, alerts that were evaluated by a recent pass are skipped.
  */
 public final class PollerTask implements Runnable {
     //private static final String TAG = "PollerTask";
 
     private static final long ONE_MINUTE = 60 * 1000;
 
+    /**
+     * Alerts evaluated by a pass within this window won't be polled again
+     */
+    private static final long RECENT_POLL_WINDOW = ONE_MINUTE / 2;
+
     private static final String[] ALERT_PROJECTION = {
+            ObaContract.TripAlerts._ID,
+            ObaContract.TripAlerts.STOP_ID,
+    };
+
+    private static final String[] REMINDER_PROJECTION = {
             ObaContract.TripAlerts._ID,
             ObaContract.TripAlerts.TRIP_ID,
             ObaContract.TripAlerts.STOP_ID,
             ObaContract.TripAlerts.START_TIME,
             ObaContract.TripAlerts.STATE,
+            ObaContract.Trips.NAME,
+            ObaContract.Trips.REMINDER,
     };
 
     private static final int COL_ID = 0;
@@ -57,6 +81,16 @@ public final class PollerTask implements Runnable {
 
     private static final int COL_STATE = 4;
 
+    private static final int COL_NAME = 5;
+
+    private static final int COL_REMINDER = 6;
+
+    /**
+     * Alert IDs -> the time they were last evaluated by a poll pass.  Tasks run on the single
+     * TripService thread, but access is synchronized in case that changes.
+     */
+    private static final HashMap<Integer, Long> sRecentlyPolled = new HashMap<>();
+
     private final Context mContext;
 
     private final ContentResolver mCR;
@@ -65,6 +99,36 @@ public final class PollerTask implements Runnable {
 
     private final Uri mUri;
 
+    /**
+     * A trip alert and the reminder metadata of its trip
+     */
+    private static final class Alert {
+
+        final int mId;
+
+        final Uri mUri;
+
+        final String mTripId;
+
+        final long mStartTime;
+
+        final int mState;
+
+        final String mName;
+
+        final long mReminderMin;
+
+        Alert(Cursor c) {
+            mId = c.getInt(COL_ID);
+            mUri = ObaContract.TripAlerts.buildUri(mId);
+            mTripId = c.getString(COL_TRIP_ID);
+            mStartTime = c.getLong(COL_START_TIME);
+            mState = c.getInt(COL_STATE);
+            mName = c.getString(COL_NAME);
+            mReminderMin = c.getInt(COL_REMINDER);
+        }
+    }
+
     public PollerTask(Context context, TaskContext taskContext, Uri uri) {
         mContext = context;
         mCR = mContext.getContentResolver();
@@ -74,82 +138,170 @@ public final class PollerTask implements Runnable {
 
     @Override
     public void run() {
-        Cursor c = mCR.query(mUri, ALERT_PROJECTION, null, null, null);
-
         try {
-            if (c != null) {
-                while (c.moveToNext()) {
-                    poll1(c);
-                }
+            final long now = System.currentTimeMillis();
+            Map<String, List<Alert>> alertsByStop = getAlertsByStop(now);
+            for (Map.Entry<String, List<Alert>> entry : alertsByStop.entrySet()) {
+                pollStop(entry.getKey(), entry.getValue(), now);
             }
         } finally {
-            if (c != null) {
-                c.close();
-            }
             mTaskContext.taskComplete();
         }
     }
 
-    private void poll1(Cursor c) {
-        final Uri alertUri = ObaContract.TripAlerts.buildUri(c.getInt(COL_ID));
-        final int state = c.getInt(COL_STATE);
-        if (state == ObaContract.TripAlerts.STATE_CANCELLED) {
-            return;
+    /**
+     * Returns the alerts that should be evaluated by this pass, grouped by stop.  This includes
+     * the alerts for this task's URI that weren't evaluated by a recent pass, and any other
+     * alerts that are polling at the same stops.
+     */
+    private Map<String, List<Alert>> getAlertsByStop(long now) {
+        final HashSet<Integer> triggeredIds = new HashSet<>();
+        final HashSet<String> stopIds = new HashSet<>();
+        Cursor c = mCR.query(mUri, ALERT_PROJECTION, null, null, null);
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    int id = c.getInt(0);
+                    if (!wasRecentlyPolled(id, now)) {
+                        triggeredIds.add(id);
+                        stopIds.add(c.getString(1));
+                    }
+                }
+            } finally {
+                c.close();
+            }
         }
-        long now = System.currentTimeMillis();
 
-        final long startTime = c.getLong(COL_START_TIME);
-        // After a half-hour we can completely give up.
-        if (startTime < (now - ONE_MINUTE * 30)) {
-            ContentValues values = new ContentValues();
-            values.put(ObaContract.TripAlerts.STATE, ObaContract.TripAlerts.STATE_CANCELLED);
-            mCR.update(alertUri, values, null, null);
+        LinkedHashMap<String, List<Alert>> result = new LinkedHashMap<>();
+        if (stopIds.isEmpty()) {
+            return result;
+        }
 
-            TripService.scheduleAll(mContext, true);
-            return;
+        // Read the alerts and their reminder metadata for all stops in a single query
+        StringBuilder where = new StringBuilder();
+        where.append(ObaContract.TripAlerts.PATH).append('.')
+                .append(ObaContract.TripAlerts.STOP_ID).append(" IN (");
+        for (int i = 0; i < stopIds.size(); i++) {
+            where.append(i == 0 ? "?" : ",?");
+        }
+        where.append(") AND ").append(ObaContract.TripAlerts.STATE).append("!=")
+                .append(ObaContract.TripAlerts.STATE_CANCELLED);
+
+        c = mCR.query(ObaContract.TripAlerts.REMINDERS_URI, REMINDER_PROJECTION,
+                where.toString(), stopIds.toArray(new String[stopIds.size()]), null);
+        if (c == null) {
+            return result;
         }
+        try {
+            while (c.moveToNext()) {
+                final int id = c.getInt(COL_ID);
+                final int state = c.getInt(COL_STATE);
+                // Alerts that are still scheduled begin polling when their own alarm fires
+                if (!triggeredIds.contains(id) && (state != ObaContract.TripAlerts.STATE_POLLING
+                        || wasRecentlyPolled(id, now))) {
+                    continue;
+                }
+                final String stopId = c.getString(COL_STOP_ID);
+                List<Alert> alerts = result.get(stopId);
+                if (alerts == null) {
+                    alerts = new ArrayList<>();
+                    result.put(stopId, alerts);
+                }
+                alerts.add(new Alert(c));
+            }
+        } finally {
+            c.close();
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates all of the given alerts for a stop against a single arrivals request
+     */
+    private void pollStop(String stopId, List<Alert> alerts, long now) {
+        boolean cancelled = false;
+
+        Iterator<Alert> it = alerts.iterator();
+        while (it.hasNext()) {
+            Alert alert = it.next();
+            markPolled(alert.mId, now);
 
-        // Before we do anything else, schedule another poll in a minute.
-        // That way we know the polling will continue even if we're killed.
-        TripService.pollTrip(mContext, alertUri, now + ONE_MINUTE);
+            // After a half-hour we can completely give up.
+            if (alert.mStartTime < (now - ONE_MINUTE * 30)) {
+                ContentValues values = new ContentValues();
+                values.put(ObaContract.TripAlerts.STATE, ObaContract.TripAlerts.STATE_CANCELLED);
+                mCR.update(alert.mUri, values, null, null);
+                cancelled = true;
+                it.remove();
+                continue;
+            }
+
+            // Before we do anything else, schedule another poll in a minute.
+            // That way we know the polling will continue even if we're killed.
+            TripService.pollTrip(mContext, alert.mUri, now + ONE_MINUTE);
 
-        // If this is just scheduled, mark it as polling.
-        if (state == ObaContract.TripAlerts.STATE_SCHEDULED) {
-            ObaContract.TripAlerts
-                    .setState(mContext, alertUri, ObaContract.TripAlerts.STATE_POLLING);
+            // If this is just scheduled, mark it as polling.
+            if (alert.mState == ObaContract.TripAlerts.STATE_SCHEDULED) {
+                ObaContract.TripAlerts
+                        .setState(mContext, alert.mUri, ObaContract.TripAlerts.STATE_POLLING);
+            }
         }
 
-        final String tripId = c.getString(COL_TRIP_ID);
-        final String stopId = c.getString(COL_STOP_ID);
-        final long reminderMin = getReminderMin(tripId, stopId);
+        if (cancelled) {
+            TripService.scheduleAll(mContext, true);
+        }
+        if (alerts.isEmpty()) {
+            return;
+        }
 
         ObaArrivalInfoResponse response = ObaArrivalInfoRequest
                 .newRequest(mContext, stopId).call();
-
-        // Arrival information
-        ArrivalInfo arrivalInfo = null;
-        if (response.getCode() == ObaApi.OBA_OK) {
-            arrivalInfo = checkArrivals(response, c.getString(COL_TRIP_ID));
+        if (response.getCode() != ObaApi.OBA_OK) {
+            return;
         }
 
-        if (arrivalInfo != null) {
-            if (arrivalInfo.getEta() <= reminderMin) {
-                // Bus is within the reminder interval (or it possibly has left!)
-                // Send off a notification.
-                //Log.d(TAG, "Notify for trip: " + alertUri);
-                TripService.notifyTrip(mContext, mUri, getReminderName(tripId, stopId), arrivalInfo.getNotifyText());
+        for (Alert alert : alerts) {
+            // Arrival information
+            ArrivalInfo arrivalInfo = checkArrivals(response, alert.mTripId);
+            if (arrivalInfo != null) {
+                if (arrivalInfo.getEta() <= alert.mReminderMin) {
+                    // Bus is within the reminder interval (or it possibly has left!)
+                    // Send off a notification.
+                    //Log.d(TAG, "Notify for trip: " + alert.mUri);
+                    TripService.notifyTrip(mContext, alert.mUri, alert.mName,
+                            arrivalInfo.getNotifyText());
+                }
             }
         }
     }
 
-    private String getReminderName(String tripId, String stopId) {
-        final Uri uri = ObaContract.Trips.buildUri(tripId, stopId);
-        return UIUtils.stringForQuery(mContext, uri, ObaContract.Trips.NAME);
+    private static boolean wasRecentlyPolled(int alertId, long now) {
+        synchronized (sRecentlyPolled) {
+            Long lastPoll = sRecentlyPolled.get(alertId);
+            return lastPoll != null && now - lastPoll < RECENT_POLL_WINDOW;
+        }
     }
 
-    private long getReminderMin(String tripId, String stopId) {
-        final Uri uri = ObaContract.Trips.buildUri(tripId, stopId);
-        return (long) UIUtils.intForQuery(mContext, uri, ObaContract.Trips.REMINDER);
+    private static void markPolled(int alertId, long now) {
+        synchronized (sRecentlyPolled) {
+            // Drop entries that are too old to matter
+            Iterator<Long> it = sRecentlyPolled.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next() >= RECENT_POLL_WINDOW) {
+                    it.remove();
+                }
+            }
+            sRecentlyPolled.put(alertId, now);
+        }
+    }
+
+    /**
+     * Forgets which alerts were evaluated by recent passes, so the next pass polls them again
+     */
+    public static void clearRecentlyPolled() {
+        synchronized (sRecentlyPolled) {
+            sRecentlyPolled.clear();
+        }
     }
 
     /**
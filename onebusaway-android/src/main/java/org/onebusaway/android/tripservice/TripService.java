@@ -57,7 +57,7 @@ import androidx.core.app.NotificationCompat;
  *
  * This Service is not constructed to continously run - instead, it can shut down in between the
  * execution of tasks.  For example, the PollerTask actually reschedules itself each time it polls
- * (in PollerTask.poll1()), so the TripService service could shut down in between polling events.
+ * (in PollerTask.pollStop()), so the TripService service could shut down in between polling events.
  *
  * Following #290, mNotifications is only used as a semaphore to synchronize the multiple tasks and
  * shutdown of the Service.  This is a complex implementation prone to multi-threading and
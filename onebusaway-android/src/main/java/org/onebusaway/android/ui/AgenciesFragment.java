@@ -33,7 +33,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 public class AgenciesFragment extends ListFragment
@@ -85,7 +84,7 @@ public class AgenciesFragment extends ListFragment
     // Loader
     //
     private final static class AgenciesLoader
-            extends AsyncTaskLoader<ObaAgenciesWithCoverageResponse> {
+            extends RequestLoader<ObaAgenciesWithCoverageResponse> {
 
         AgenciesLoader(Context context) {
             super(context);
@@ -98,7 +97,9 @@ public class AgenciesFragment extends ListFragment
 
         @Override
         public ObaAgenciesWithCoverageResponse loadInBackground() {
-            return ObaAgenciesWithCoverageRequest.newRequest(getContext()).call();
+            final ObaAgenciesWithCoverageRequest request =
+                    ObaAgenciesWithCoverageRequest.newRequest(getContext());
+            return execute(request.getUri(), () -> request.call());
         }
     }
 
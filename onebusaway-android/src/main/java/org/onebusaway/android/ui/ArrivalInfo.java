@@ -29,20 +29,45 @@ import org.onebusaway.android.util.UIUtils;
 
 import java.text.DateFormat;
 import java.util.Date;
-
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * An arrival or departure shown in the arrivals list.  The ETA, color and favorite status are
+ * computed when the object is created, so lists can be sorted and filtered cheaply, but the
+ * status, time and notification text are only formatted the first time they are requested -
+ * usually when the row is displayed.
+ */
 public final class ArrivalInfo {
 
+    // Short time formats, by locale - DateFormat isn't thread-safe, so synchronize on this
+    private static final HashMap<Locale, DateFormat> sShortTimeFormats = new HashMap<>();
+
     private final ObaArrivalInfo mInfo;
 
     private final long mEta;
 
     private final long mDisplayTime;
 
-    private final String mStatusText;
+    // Application context used to format the text on first access, or null if none was given
+    private final Context mContext;
+
+    private final long mNow;
+
+    private final long mPredictedTime;
 
-    private final String mTimeText;
+    private final long mScheduledMins;
 
-    private final String mNotifyText;
+    private final long mPredictedMins;
+
+    private final boolean mIncludeArrivalDepartureInStatusLabel;
+
+    private String mStatusText;
+
+    private String mTimeText;
+
+    private String mNotifyText;
 
     private final int mColor;
 
@@ -97,16 +122,18 @@ public final class ArrivalInfo {
 
         mColor = ArrivalInfoUtils.computeColor(scheduledMins, predictedMins);
 
-        mStatusText = computeStatusLabel(context, info, now, predicted,
-                scheduledMins, predictedMins, includeArrivalDepartureInStatusLabel);
-        mTimeText = computeTimeLabel(context);
+        // Keep what's needed to format the text later
+        mContext = context != null ? context.getApplicationContext() : null;
+        mNow = now;
+        mPredictedTime = predicted;
+        mScheduledMins = scheduledMins;
+        mPredictedMins = predictedMins;
+        mIncludeArrivalDepartureInStatusLabel = includeArrivalDepartureInStatusLabel;
 
         // Check if the user has marked this routeId/headsign/stopId as a favorite
         mIsRouteAndHeadsignFavorite = ObaContract.RouteHeadsignFavorites
                 .isFavorite(info.getRouteId(), info.getHeadsign(), info.getStopId());
 
-        mNotifyText = computeNotifyText(context);
-
         mHistoricalOccupancy = info.getHistoricalOccupancy();
         mPredictedOccupancy = info.getPredictedOccupancy();
     }
@@ -122,7 +149,7 @@ public final class ArrivalInfo {
                                       final long scheduledMins,
                                       final long predictedMins, boolean includeArrivalDeparture) {
         if (context == null) {
-            // The Activity has been destroyed, so just return an empty string to avoid an NPE
+            // The caller didn't pass a Context, so just return an empty string to avoid an NPE
             return "";
         }
 
@@ -133,7 +160,6 @@ public final class ArrivalInfo {
         if (frequency != null) {
 
             int headwayAsMinutes = (int) (frequency.getHeadway() / 60);
-            DateFormat formatter = DateFormat.getTimeInstance(DateFormat.SHORT);
 
             int statusLabelId = -1;
             long time = 0;
@@ -146,7 +172,7 @@ public final class ArrivalInfo {
                 time = frequency.getEndTime();
             }
 
-            String label = formatter.format(new Date(time));
+            String label = formatShortTime(time);
             return context.getString(statusLabelId, headwayAsMinutes, label);
         }
 
@@ -233,7 +259,7 @@ public final class ArrivalInfo {
 
     private String computeTimeLabel(Context context) {
         if (context == null) {
-            // The Activity has been destroyed, so just return an empty string to avoid an NPE
+            // The caller didn't pass a Context, so just return an empty string to avoid an NPE
             return "";
         }
 
@@ -259,7 +285,7 @@ public final class ArrivalInfo {
 
     private String computeNotifyText(Context context) {
         if (context == null) {
-            // The Activity has been destroyed, so just return an empty string to avoid an NPE
+            // The caller didn't pass a Context, so just return an empty string to avoid an NPE
             return "";
         }
 
@@ -291,6 +317,24 @@ public final class ArrivalInfo {
         }
     }
 
+    /**
+     * Formats the given time with the short time format for the current locale, reusing the
+     * DateFormat for that locale
+     */
+    private static String formatShortTime(long time) {
+        Locale locale = Locale.getDefault();
+        synchronized (sShortTimeFormats) {
+            DateFormat format = sShortTimeFormats.get(locale);
+            if (format == null) {
+                format = DateFormat.getTimeInstance(DateFormat.SHORT, locale);
+                sShortTimeFormats.put(locale, format);
+            }
+            // The time zone may have changed since the format was created
+            format.setTimeZone(TimeZone.getDefault());
+            return format.format(new Date(time));
+        }
+    }
+
     public final ObaArrivalInfo getInfo() {
         return mInfo;
     }
@@ -304,14 +348,24 @@ public final class ArrivalInfo {
     }
 
     public final String getStatusText() {
+        if (mStatusText == null) {
+            mStatusText = computeStatusLabel(mContext, mInfo, mNow, mPredictedTime,
+                    mScheduledMins, mPredictedMins, mIncludeArrivalDepartureInStatusLabel);
+        }
         return mStatusText;
     }
 
     public final String getTimeText() {
+        if (mTimeText == null) {
+            mTimeText = computeTimeLabel(mContext);
+        }
         return mTimeText;
     }
 
     public final String getNotifyText() {
+        if (mNotifyText == null) {
+            mNotifyText = computeNotifyText(mContext);
+        }
         return mNotifyText;
     }
 
@@ -41,5 +41,36 @@ public abstract class ArrivalsListAdapterBase<T> extends ArrayAdapter<T> {
         notifyDataSetChanged();
     }
 
-    abstract public void setData(ObaArrivalInfo[] arrivals, ArrayList<String> routesFilter, long currentTime);
+    /**
+     * Sets the data to be used with the adapter, building the model on this thread
+     *
+     * @param routesFilter routeIds to filter for
+     * @param currentTime  current time in milliseconds
+     */
+    public void setData(ObaArrivalInfo[] arrivals, ArrayList<String> routesFilter, long currentTime) {
+        if (arrivals != null) {
+            setModel(ArrivalsListModel.build(getContext(), arrivals, routesFilter, currentTime,
+                    isGrouped(), getModel()));
+        } else {
+            setModel(null);
+        }
+    }
+
+    /**
+     * Sets the model to be used with the adapter, which must have been built for this style of
+     * adapter (see isGrouped())
+     *
+     * @param model the model to show, or null to clear the adapter
+     */
+    abstract public void setModel(ArrivalsListModel model);
+
+    /**
+     * @return the model currently shown, or null if there isn't one
+     */
+    abstract public ArrivalsListModel getModel();
+
+    /**
+     * @return true if this adapter shows arrivals grouped into cards by route and headsign
+     */
+    abstract public boolean isGrouped();
 }
@@ -28,11 +28,8 @@ import org.onebusaway.android.R;
 import org.onebusaway.android.io.elements.ObaArrivalInfo;
 import org.onebusaway.android.io.elements.OccupancyState;
 import org.onebusaway.android.provider.ObaContract;
-import org.onebusaway.android.util.ArrivalInfoUtils;
 import org.onebusaway.android.util.UIUtils;
 
-import java.util.ArrayList;
-
 import androidx.core.graphics.drawable.DrawableCompat;
 
 /**
@@ -40,26 +37,26 @@ import androidx.core.graphics.drawable.DrawableCompat;
  */
 public class ArrivalsListAdapterStyleA extends ArrivalsListAdapterBase<ArrivalInfo> {
 
+    private ArrivalsListModel mModel;
+
     public ArrivalsListAdapterStyleA(Context context) {
         super(context, R.layout.arrivals_list_item);
     }
 
-    /**
-     * Sets the data to be used with the adapter
-     *
-     * @param routesFilter routeIds to filter for
-     * @param currentTime  current time in milliseconds
-     */
-    public void setData(ObaArrivalInfo[] arrivals, ArrayList<String> routesFilter,
-            long currentTime) {
-        if (arrivals != null) {
-            ArrayList<ArrivalInfo> list =
-                    ArrivalInfoUtils.convertObaArrivalInfo(getContext(),
-                            arrivals, routesFilter, currentTime, false);
-            setData(list);
-        } else {
-            setData(null);
-        }
+    @Override
+    public void setModel(ArrivalsListModel model) {
+        mModel = model;
+        setData(model != null ? model.getArrivals() : null);
+    }
+
+    @Override
+    public ArrivalsListModel getModel() {
+        return mModel;
+    }
+
+    @Override
+    public boolean isGrouped() {
+        return false;
     }
 
     @Override
@@ -18,13 +18,16 @@
  */
 package org.onebusaway.android.ui;
 
+import android.content.ContentQueryMap;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
@@ -41,14 +44,10 @@ import org.onebusaway.android.io.elements.ObaArrivalInfo;
 import org.onebusaway.android.io.elements.ObaRegion;
 import org.onebusaway.android.io.elements.OccupancyState;
 import org.onebusaway.android.provider.ObaContract;
-import org.onebusaway.android.util.ArrivalInfoUtils;
 import org.onebusaway.android.util.EmbeddedSocialUtils;
 import org.onebusaway.android.util.UIUtils;
-import org.onebusaway.util.comparators.AlphanumComparator;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.graphics.drawable.DrawableCompat;
@@ -60,10 +59,17 @@ public class ArrivalsListAdapterStyleB extends ArrivalsListAdapterBase<CombinedA
 
     private static final String TAG = "ArrivalsListAdapStyleB";
 
-    AlphanumComparator mAlphanumComparator = new AlphanumComparator();
-
     ArrivalsListFragment mFragment;
 
+    private ArrivalsListModel mModel;
+
+    // Changed when all cards need to be bound again, even if they haven't changed
+    private int mGeneration = 0;
+
+    private int mBindCount = 0;
+
+    private final HashMap<String, Long> mItemIds = new HashMap<>();
+
     public ArrivalsListAdapterStyleB(Context context) {
         super(context, R.layout.arrivals_list_item_style_b);
     }
@@ -72,67 +78,100 @@ public class ArrivalsListAdapterStyleB extends ArrivalsListAdapterBase<CombinedA
         mFragment = fragment;
     }
 
+    @Override
+    public void setModel(ArrivalsListModel model) {
+        ArrivalsListModel previous = mModel;
+        mModel = model;
+        if (model == null || model.getCards().isEmpty()) {
+            setData(null);
+            return;
+        }
+        ArrivalsListModel.Diff diff = model.getDiff();
+        if (previous == null || diff == null || diff.getFromVersion() != previous.getVersion()) {
+            // The cards weren't carried over from the ones shown, so they all need to be bound
+            mGeneration++;
+        } else if (diff.isEmpty()) {
+            // The cards are the ones already shown
+            return;
+        } else {
+            Log.d(TAG, "Cards inserted: " + diff.getInserted() + ", removed: " + diff.getRemoved()
+                    + ", changed: " + diff.getChanged());
+        }
+        setData(model.getCards());
+    }
+
+    @Override
+    public ArrivalsListModel getModel() {
+        return mModel;
+    }
+
+    @Override
+    public boolean isGrouped() {
+        return true;
+    }
+
+    @Override
+    public void setTripsForStop(ContentQueryMap tripsForStop) {
+        // Reminders are shown on the cards, so bind them all again
+        mGeneration++;
+        super.setTripsForStop(tripsForStop);
+    }
+
     /**
-     * Sets the data to be used with the adapter
-     *
-     * @param routesFilter routeIds to filter for
-     * @param currentTime  current time in milliseconds
+     * Cards have stable IDs by route and headsign, so the ListView passes each card the view that
+     * showed it before, and the view is only bound again if the card changed
      */
-    public void setData(ObaArrivalInfo[] arrivals, ArrayList<String> routesFilter,
-            long currentTime) {
-        if (arrivals != null) {
-            ArrayList<ArrivalInfo> list =
-                    ArrivalInfoUtils.convertObaArrivalInfo(getContext(),
-                            arrivals, routesFilter, currentTime, true);
-
-            // Sort list by route and headsign, in that order
-            Collections.sort(list, new Comparator<ArrivalInfo>() {
-                @Override
-                public int compare(ArrivalInfo s1, ArrivalInfo s2) {
-                    int routeCompare = mAlphanumComparator
-                            .compare(s1.getInfo().getRouteId(), s2.getInfo().getRouteId());
-                    if (routeCompare != 0) {
-                        return routeCompare;
-                    } else {
-                        // Compare headsigns when the route is the same
-                        return mAlphanumComparator
-                                .compare(s1.getInfo().getHeadsign(), s2.getInfo().getHeadsign());
-                    }
-                }
-            });
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
 
-            if (list.size() > 0) {
-                ArrayList<CombinedArrivalInfoStyleB> newList
-                        = new ArrayList<CombinedArrivalInfoStyleB>();
-                String currentRouteName = null;
-                String currentHeadsign = null;
-                CombinedArrivalInfoStyleB cArrivalInfo = new CombinedArrivalInfoStyleB();
-                for (int i = 0; i < list.size(); i++) {
-                    if (currentRouteName == null) {
-                        // Initialize fields
-                        currentRouteName = list.get(i).getInfo().getRouteId();
-                        currentHeadsign = list.get(i).getInfo().getHeadsign();
-                    } else {
-                        if (!currentRouteName.equals(list.get(i).getInfo().getRouteId()) ||
-                                !currentHeadsign.equals(list.get(i).getInfo().getHeadsign())) {
-                            // Create a new card
-                            newList.add(cArrivalInfo);
-                            cArrivalInfo = new CombinedArrivalInfoStyleB();
-                            currentRouteName = list.get(i).getInfo().getRouteId();
-                            currentHeadsign = list.get(i).getInfo().getHeadsign();
-                        }
-                    }
-                    cArrivalInfo.getArrivalInfoList().add(list.get(i));
-                }
-                if (!cArrivalInfo.getArrivalInfoList().isEmpty()) {
-                    newList.add(cArrivalInfo);
-                    setData(newList);
-                    return;
-                }
+    @Override
+    public long getItemId(int position) {
+        String key = getItem(position).getKey();
+        Long id = mItemIds.get(key);
+        if (id == null) {
+            id = (long) mItemIds.size();
+            mItemIds.put(key, id);
+        }
+        return id;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        CombinedArrivalInfoStyleB card = getItem(position);
+        if (convertView != null && convertView.getTag() instanceof BoundCard) {
+            BoundCard bound = (BoundCard) convertView.getTag();
+            if (bound.mCard == card && bound.mGeneration == mGeneration) {
+                return convertView;
             }
         }
-        // If we get this far, we don't have any data to use
-        setData(null);
+        View view = super.getView(position, convertView, parent);
+        view.setTag(new BoundCard(card, mGeneration));
+        mBindCount++;
+        return view;
+    }
+
+    /**
+     * @return the number of times a card has been bound to a view, for measuring refreshes
+     */
+    public int getBindCount() {
+        return mBindCount;
+    }
+
+    /**
+     * The card a view was last bound to
+     */
+    private static class BoundCard {
+
+        final CombinedArrivalInfoStyleB mCard;
+
+        final int mGeneration;
+
+        BoundCard(CombinedArrivalInfoStyleB card, int generation) {
+            mCard = card;
+            mGeneration = generation;
+        }
     }
 
     @Override
@@ -66,6 +66,7 @@ import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
 import org.onebusaway.android.map.MapParams;
 import org.onebusaway.android.provider.ObaContract;
 import org.onebusaway.android.report.ui.InfrastructureIssueActivity;
+import org.onebusaway.android.util.AdaptiveRefreshPolicy;
 import org.onebusaway.android.util.ArrayAdapterWithIcon;
 import org.onebusaway.android.util.ArrivalInfoUtils;
 import org.onebusaway.android.util.BuildFlavorUtils;
@@ -74,6 +75,7 @@ import org.onebusaway.android.util.EmbeddedSocialUtils;
 import org.onebusaway.android.util.FragmentUtils;
 import org.onebusaway.android.util.LocationUtils;
 import org.onebusaway.android.util.PreferenceUtils;
+import org.onebusaway.android.util.RefreshPolicy;
 import org.onebusaway.android.util.ShowcaseViewUtils;
 import org.onebusaway.android.util.UIUtils;
 
@@ -128,8 +130,6 @@ public class ArrivalsListFragment extends ListFragment
      */
     public static final String EXTERNAL_HEADER = ".ExternalHeader";
 
-    private static final long RefreshPeriod = 60 * 1000;
-
     private static int TRIPS_FOR_STOP_LOADER = 1;
 
     private static int ARRIVALS_LIST_LOADER = 2;
@@ -343,6 +343,7 @@ public class ArrivalsListFragment extends ListFragment
 
         mgr.initLoader(TRIPS_FOR_STOP_LOADER, null, mTripsForStopCallback);
         mgr.initLoader(ARRIVALS_LIST_LOADER, getArguments(), this);
+        updateLoaderModelOptions();
 
         // Set initial minutesAfter value in the empty list view
         setEmptyText(
@@ -393,8 +394,8 @@ public class ArrivalsListFragment extends ListFragment
         if (loader != null) {
             ObaArrivalInfoResponse lastGood = loader.getLastGoodResponse();
             if (lastGood != null) {
-                setResponseData(lastGood.getArrivalInfo(), UIUtils.getAllSituations(lastGood, mRoutesFilter),
-                        lastGood.getRefs());
+                setResponseData(lastGood.getArrivalInfo(), null,
+                        UIUtils.getAllSituations(lastGood, mRoutesFilter), lastGood.getRefs());
             }
         }
 
@@ -402,9 +403,10 @@ public class ArrivalsListFragment extends ListFragment
 
         // If our timer would have gone off, then refresh.
         long lastResponseTime = getArrivalsLoader().getLastResponseTime();
-        long newPeriod = Math.min(RefreshPeriod, (lastResponseTime + RefreshPeriod)
+        long refreshDelay = mRefreshPolicy.getCurrentDelay();
+        long newPeriod = Math.min(refreshDelay, (lastResponseTime + refreshDelay)
                 - System.currentTimeMillis());
-        // Wait at least one second at least, and the full minute at most.
+        // Wait for the rest of the refresh delay at most
         //Log.d(TAG, "Refresh period:" + newPeriod);
         if (newPeriod <= 0) {
             refresh();
@@ -437,6 +439,7 @@ public class ArrivalsListFragment extends ListFragment
         showProgress(false);
 
         ObaArrivalInfo[] info = null;
+        ArrivalsListModel model = null;
         List<ObaSituation> situations = null;
         ObaReferences refs = null;
 
@@ -446,6 +449,9 @@ public class ArrivalsListFragment extends ListFragment
                 DBUtil.addToDB(mStop);
             }
             info = result.getArrivalInfo();
+            // Use the model the loader built in the background, if the options haven't changed
+            model = ((ArrivalsListLoader) loader).getModel(info, mRoutesFilter,
+                    mAdapter.isGrouped());
             situations = UIUtils.getAllSituations(result, mRoutesFilter);
             refs = result.getRefs();
 
@@ -471,7 +477,7 @@ public class ArrivalsListFragment extends ListFragment
             }
         }
 
-        setResponseData(info, situations, refs);
+        setResponseData(info, model, situations, refs);
 
         // The list should now be shown.
         if (isResumed()) {
@@ -485,8 +491,9 @@ public class ArrivalsListFragment extends ListFragment
         // Clear any pending refreshes
         mRefreshHandler.removeCallbacks(mRefresh);
 
-        // Post an update
-        mRefreshHandler.postDelayed(mRefresh, RefreshPeriod);
+        // Post an update, sooner if real-time arrivals are near and later if they aren't (or
+        // the server is having problems)
+        mRefreshHandler.postDelayed(mRefresh, mRefreshPolicy.getNextDelay(result));
 
         // If the user just tried to load more arrivals, determine if we
         // should show a Toast in the case where no additional arrivals were loaded
@@ -543,8 +550,11 @@ public class ArrivalsListFragment extends ListFragment
         mExternalHeader = true;
     }
 
-    private void setResponseData(ObaArrivalInfo[] info, List<ObaSituation> situations,
-                                 ObaReferences refs) {
+    /**
+     * @param model the model for the arrivals, or null if it should be built from info
+     */
+    private void setResponseData(ObaArrivalInfo[] info, ArrivalsListModel model,
+                                 List<ObaSituation> situations, ObaReferences refs) {
         mArrivalInfo = info;
 
         mObaReferences = refs;
@@ -567,7 +577,11 @@ public class ArrivalsListFragment extends ListFragment
             // Reset the empty text just in case there is no data.
             setEmptyText(UIUtils.getNoArrivalsMessage(Application.get().getApplicationContext(),
                     minutesAfter, false, false));
-            mAdapter.setData(info, mRoutesFilter, System.currentTimeMillis());
+            if (model != null) {
+                mAdapter.setModel(model);
+            } else {
+                mAdapter.setData(info, mRoutesFilter, System.currentTimeMillis());
+            }
         }
 
         if (mHeader != null) {
@@ -637,6 +651,7 @@ public class ArrivalsListFragment extends ListFragment
             }
             return true;
         } else if (id == R.id.refresh) {
+            mRefreshPolicy.reset();
             refresh();
             return true;
         } else if (id == R.id.sort_arrivals) {
@@ -1012,6 +1027,7 @@ public class ArrivalsListFragment extends ListFragment
     public void setRoutesFilter(ArrayList<String> routes) {
         mRoutesFilter = routes;
         ObaContract.StopRouteFilters.set(getActivity(), mStopId, mRoutesFilter);
+        updateLoaderModelOptions();
         refreshSituations(UIUtils.getAllSituations(getArrivalsLoader().getLastGoodResponse(), mRoutesFilter));
         refreshLocal();
     }
@@ -1227,6 +1243,18 @@ public class ArrivalsListFragment extends ListFragment
         // We present arrivals as cards, so hide the divider in the listview
         getListView().setDivider(null);
         setListAdapter(mAdapter);
+        updateLoaderModelOptions();
+    }
+
+    /**
+     * Tells the loader how to build the model for the adapter from each response, so it can be
+     * done in the background
+     */
+    private void updateLoaderModelOptions() {
+        ArrivalsListLoader loader = getArrivalsLoader();
+        if (loader != null && mAdapter != null) {
+            loader.setModelOptions(mRoutesFilter, mAdapter.isGrouped());
+        }
     }
 
     private void showSortByDialog() {
@@ -1566,6 +1594,16 @@ public class ArrivalsListFragment extends ListFragment
 
     private final Handler mRefreshHandler = new Handler();
 
+    private RefreshPolicy mRefreshPolicy = AdaptiveRefreshPolicy.newArrivalsPolicy();
+
+    /**
+     * Sets the policy that decides how often the arrivals are refreshed.  Refreshing stops while
+     * the fragment is paused, regardless of the policy.
+     */
+    public void setRefreshPolicy(RefreshPolicy policy) {
+        mRefreshPolicy = policy;
+    }
+
     private final Runnable mRefresh = new Runnable() {
         public void run() {
             refresh();
@@ -17,15 +17,15 @@
 package org.onebusaway.android.ui;
 
 import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.io.elements.ObaArrivalInfo;
 import org.onebusaway.android.io.request.ObaArrivalInfoRequest;
 import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
 
 import android.content.Context;
 
-import androidx.loader.content.AsyncTaskLoader;
+import java.util.ArrayList;
 
-
-public class ArrivalsListLoader extends AsyncTaskLoader<ObaArrivalInfoResponse> {
+public class ArrivalsListLoader extends RequestLoader<ObaArrivalInfoResponse> {
 
     private final String mStopId;
 
@@ -38,6 +38,14 @@ public class ArrivalsListLoader extends AsyncTaskLoader<ObaArrivalInfoResponse>
     // Shows vehicles arriving or departing in the next "mMinutesAfter" minutes
     private int mMinutesAfter = DEFAULT_MINUTES_AFTER;
 
+    // Options for the model built from each response, set by the UI thread
+    private volatile ArrayList<String> mRoutesFilter;
+
+    private volatile boolean mGrouped;
+
+    // The model built from the last response, on the background thread
+    private volatile ArrivalsListModel mModel;
+
     public static final int DEFAULT_MINUTES_AFTER = 65;
 
     private static final int MINUTES_INCREMENT = 60; // minutes
@@ -49,7 +57,42 @@ public class ArrivalsListLoader extends AsyncTaskLoader<ObaArrivalInfoResponse>
 
     @Override
     public ObaArrivalInfoResponse loadInBackground() {
-        return ObaArrivalInfoRequest.newRequest(getContext(), mStopId, mMinutesAfter).call();
+        final ObaArrivalInfoRequest request =
+                ObaArrivalInfoRequest.newRequest(getContext(), mStopId, mMinutesAfter);
+        ObaArrivalInfoResponse response = execute(request.getUri(), () -> request.call());
+        if (response != null && response.getCode() == ObaApi.OBA_OK
+                && response.getArrivalInfo() != null) {
+            // Convert, sort and group the arrivals here rather than on the UI thread
+            mModel = ArrivalsListModel.build(getContext(), response.getArrivalInfo(),
+                    mRoutesFilter, System.currentTimeMillis(), mGrouped, mModel);
+        }
+        return response;
+    }
+
+    /**
+     * Sets the options for the model built from each response (see getModel())
+     *
+     * @param routesFilter routeIds to filter for
+     * @param grouped      true if arrivals are grouped into cards (see ArrivalsListModel.build())
+     */
+    public void setModelOptions(ArrayList<String> routesFilter, boolean grouped) {
+        mRoutesFilter = routesFilter != null ? new ArrayList<>(routesFilter) : null;
+        mGrouped = grouped;
+    }
+
+    /**
+     * Returns the model built from the arrivals in the background, if it was built with the
+     * same options
+     *
+     * @return the model for the arrivals, or null if it must be built by the caller
+     */
+    public ArrivalsListModel getModel(ObaArrivalInfo[] arrivals, ArrayList<String> routesFilter,
+            boolean grouped) {
+        ArrivalsListModel model = mModel;
+        if (model != null && model.isFor(arrivals, routesFilter, grouped)) {
+            return model;
+        }
+        return null;
     }
 
     @Override
@@ -99,6 +142,7 @@ public class ArrivalsListLoader extends AsyncTaskLoader<ObaArrivalInfoResponse>
         super.onReset();
         mLastGoodResponse = null;
         mLastGoodResponseTime = 0;
+        mModel = null;
         // Ensure the loader is stopped
         onStopLoading();
     }
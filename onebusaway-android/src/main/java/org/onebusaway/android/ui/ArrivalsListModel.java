@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.ui;
+
+import org.onebusaway.android.io.elements.ObaArrivalInfo;
+import org.onebusaway.android.util.ArrivalInfoUtils;
+import org.onebusaway.util.comparators.AlphanumComparator;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The arrivals for a stop, converted, filtered, sorted and (for ArrivalsListAdapterStyleB)
+ * grouped into cards so they are ready for an adapter to bind.  Models are built by
+ * ArrivalsListLoader on its background thread, and aren't changed after they are built.
+ *
+ * When a model is built from a previous one, cards that haven't changed are carried over from
+ * the previous model, and getDiff() reports which cards were inserted, removed or changed.
+ */
+public final class ArrivalsListModel {
+
+    private static final AtomicLong sVersion = new AtomicLong();
+
+    private final long mVersion = sVersion.incrementAndGet();
+
+    private final ObaArrivalInfo[] mSource;
+
+    private final ArrayList<String> mRoutesFilter;
+
+    private final boolean mGrouped;
+
+    private final List<ArrivalInfo> mArrivals;
+
+    private final List<CombinedArrivalInfoStyleB> mCards;
+
+    private final Diff mDiff;
+
+    private ArrivalsListModel(ObaArrivalInfo[] source, ArrayList<String> routesFilter,
+            boolean grouped, List<ArrivalInfo> arrivals, List<CombinedArrivalInfoStyleB> cards,
+            Diff diff) {
+        mSource = source;
+        mRoutesFilter = routesFilter;
+        mGrouped = grouped;
+        mArrivals = Collections.unmodifiableList(arrivals);
+        mCards = Collections.unmodifiableList(cards);
+        mDiff = diff;
+    }
+
+    /**
+     * Builds the model for a list of arrivals
+     *
+     * @param arrivals     arrivals from the server
+     * @param routesFilter routeIds to filter for, or null or empty for all routes
+     * @param currentTime  current time in milliseconds
+     * @param grouped      true to group the arrivals into cards by route and headsign, with the
+     *                     arrival/departure label in the status (ArrivalsListAdapterStyleB), false
+     *                     for a list of arrivals sorted by ETA (ArrivalsListAdapterStyleA)
+     * @param previous     the model currently shown, to carry unchanged cards over from, or null
+     */
+    public static ArrivalsListModel build(Context context, ObaArrivalInfo[] arrivals,
+            ArrayList<String> routesFilter, long currentTime, boolean grouped,
+            ArrivalsListModel previous) {
+        ArrayList<String> filter = routesFilter != null ? new ArrayList<>(routesFilter)
+                : new ArrayList<String>();
+        ArrayList<ArrivalInfo> list = ArrivalInfoUtils.convertObaArrivalInfo(context, arrivals,
+                filter, currentTime, grouped);
+        if (!grouped) {
+            return new ArrivalsListModel(arrivals, filter, false, list,
+                    new ArrayList<CombinedArrivalInfoStyleB>(), null);
+        }
+
+        // Sort list by route and headsign, in that order
+        final AlphanumComparator alphanumComparator = new AlphanumComparator();
+        Collections.sort(list, new Comparator<ArrivalInfo>() {
+            @Override
+            public int compare(ArrivalInfo s1, ArrivalInfo s2) {
+                int routeCompare = alphanumComparator
+                        .compare(s1.getInfo().getRouteId(), s2.getInfo().getRouteId());
+                if (routeCompare != 0) {
+                    return routeCompare;
+                } else {
+                    // Compare headsigns when the route is the same
+                    return alphanumComparator
+                            .compare(s1.getInfo().getHeadsign(), s2.getInfo().getHeadsign());
+                }
+            }
+        });
+
+        ArrayList<CombinedArrivalInfoStyleB> cards = new ArrayList<>();
+        String currentRouteName = null;
+        String currentHeadsign = null;
+        CombinedArrivalInfoStyleB cArrivalInfo = new CombinedArrivalInfoStyleB();
+        for (ArrivalInfo info : list) {
+            // The status label is computed when it's first used, so do it here rather than
+            // when the card is bound
+            info.getStatusText();
+            if (currentRouteName == null) {
+                // Initialize fields
+                currentRouteName = info.getInfo().getRouteId();
+                currentHeadsign = info.getInfo().getHeadsign();
+            } else if (!currentRouteName.equals(info.getInfo().getRouteId()) ||
+                    !currentHeadsign.equals(info.getInfo().getHeadsign())) {
+                // Create a new card
+                cards.add(cArrivalInfo);
+                cArrivalInfo = new CombinedArrivalInfoStyleB();
+                currentRouteName = info.getInfo().getRouteId();
+                currentHeadsign = info.getInfo().getHeadsign();
+            }
+            cArrivalInfo.getArrivalInfoList().add(info);
+        }
+        if (!cArrivalInfo.getArrivalInfoList().isEmpty()) {
+            cards.add(cArrivalInfo);
+        }
+
+        Diff diff = null;
+        if (previous != null && previous.mGrouped) {
+            diff = diff(previous, cards);
+        }
+        return new ArrivalsListModel(arrivals, filter, true, list, cards, diff);
+    }
+
+    /**
+     * Compares the new cards to the previous model, and replaces the cards that haven't
+     * changed with the previous ones
+     */
+    private static Diff diff(ArrivalsListModel previous, ArrayList<CombinedArrivalInfoStyleB> cards) {
+        HashMap<String, CombinedArrivalInfoStyleB> previousCards = new HashMap<>();
+        for (CombinedArrivalInfoStyleB card : previous.mCards) {
+            previousCards.put(card.getKey(), card);
+        }
+        int inserted = 0;
+        int changed = 0;
+        for (int i = 0; i < cards.size(); i++) {
+            CombinedArrivalInfoStyleB card = cards.get(i);
+            CombinedArrivalInfoStyleB previousCard = previousCards.remove(card.getKey());
+            if (previousCard == null) {
+                inserted++;
+            } else if (previousCard.isSameAs(card)) {
+                cards.set(i, previousCard);
+            } else {
+                changed++;
+            }
+        }
+        return new Diff(previous.mVersion, inserted, previousCards.size(), changed);
+    }
+
+    /**
+     * @return true if this model was built from the arrivals with the same options
+     */
+    public boolean isFor(ObaArrivalInfo[] arrivals, ArrayList<String> routesFilter,
+            boolean grouped) {
+        if (arrivals != mSource || grouped != mGrouped) {
+            return false;
+        }
+        if (routesFilter == null || routesFilter.isEmpty()) {
+            return mRoutesFilter.isEmpty();
+        }
+        return mRoutesFilter.equals(routesFilter);
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    public boolean isGrouped() {
+        return mGrouped;
+    }
+
+    /**
+     * @return the arrivals that weren't filtered out - sorted by ETA, or by route and headsign if
+     * the model is grouped
+     */
+    public List<ArrivalInfo> getArrivals() {
+        return mArrivals;
+    }
+
+    /**
+     * @return the cards for ArrivalsListAdapterStyleB, or an empty list if the model isn't grouped
+     */
+    List<CombinedArrivalInfoStyleB> getCards() {
+        return mCards;
+    }
+
+    /**
+     * @return the changes to the cards since the previous model passed to build(), or null if
+     * there wasn't one
+     */
+    public Diff getDiff() {
+        return mDiff;
+    }
+
+    /**
+     * The changes to the cards between two models
+     */
+    public static final class Diff {
+
+        private final long mFromVersion;
+
+        private final int mInserted;
+
+        private final int mRemoved;
+
+        private final int mChanged;
+
+        Diff(long fromVersion, int inserted, int removed, int changed) {
+            mFromVersion = fromVersion;
+            mInserted = inserted;
+            mRemoved = removed;
+            mChanged = changed;
+        }
+
+        /**
+         * @return the version of the model these changes are from
+         */
+        public long getFromVersion() {
+            return mFromVersion;
+        }
+
+        public int getInserted() {
+            return mInserted;
+        }
+
+        public int getRemoved() {
+            return mRemoved;
+        }
+
+        public int getChanged() {
+            return mChanged;
+        }
+
+        /**
+         * @return true if no cards were inserted, removed or changed
+         */
+        public boolean isEmpty() {
+            return mInserted == 0 && mRemoved == 0 && mChanged == 0;
+        }
+    }
+}
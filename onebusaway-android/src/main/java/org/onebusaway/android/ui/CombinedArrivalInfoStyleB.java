@@ -15,6 +15,8 @@
  */
 package org.onebusaway.android.ui;
 
+import org.onebusaway.android.io.elements.ObaArrivalInfo;
+
 import java.util.ArrayList;
 
 final class CombinedArrivalInfoStyleB {
@@ -28,4 +30,50 @@ final class CombinedArrivalInfoStyleB {
     public ArrayList<ArrivalInfo> getArrivalInfoList() {
         return mArrivalInfo;
     }
+
+    /**
+     * @return the route and headsign of this card, which are unique within a list of cards
+     */
+    public String getKey() {
+        ObaArrivalInfo info = mArrivalInfo.get(0).getInfo();
+        return info.getRouteId() + "\n" + info.getHeadsign();
+    }
+
+    /**
+     * @return true if the other card would be shown the same as this one, and is for the same
+     * trips
+     */
+    public boolean isSameAs(CombinedArrivalInfoStyleB other) {
+        if (mArrivalInfo.size() != other.mArrivalInfo.size()) {
+            return false;
+        }
+        for (int i = 0; i < mArrivalInfo.size(); i++) {
+            if (!isSameAs(mArrivalInfo.get(i), other.mArrivalInfo.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSameAs(ArrivalInfo a, ArrivalInfo b) {
+        ObaArrivalInfo infoA = a.getInfo();
+        ObaArrivalInfo infoB = b.getInfo();
+        return a.getEta() == b.getEta()
+                && a.getPredicted() == b.getPredicted()
+                && a.getColor() == b.getColor()
+                && a.isRouteAndHeadsignFavorite() == b.isRouteAndHeadsignFavorite()
+                && a.getPredictedOccupancy() == b.getPredictedOccupancy()
+                && a.getHistoricalOccupancy() == b.getHistoricalOccupancy()
+                && equals(a.getStatusText(), b.getStatusText())
+                && infoA.getScheduledArrivalTime() == infoB.getScheduledArrivalTime()
+                && infoA.getServiceDate() == infoB.getServiceDate()
+                && infoA.getStopSequence() == infoB.getStopSequence()
+                && equals(infoA.getTripId(), infoB.getTripId())
+                && equals(infoA.getVehicleId(), infoB.getVehicleId())
+                && equals(infoA.getShortName(), infoB.getShortName());
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
@@ -39,6 +39,7 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.accessibility.AccessibilityManager;
 import android.view.animation.Animation;
@@ -67,6 +68,7 @@ import org.onebusaway.android.BuildConfig;
 import org.onebusaway.android.R;
 import org.onebusaway.android.app.Application;
 import org.onebusaway.android.io.ObaAnalytics;
+import org.onebusaway.android.io.ObaRequestExecutor;
 import org.onebusaway.android.io.elements.ObaRegion;
 import org.onebusaway.android.io.elements.ObaRoute;
 import org.onebusaway.android.io.elements.ObaStop;
@@ -362,6 +364,8 @@ public class HomeActivity extends AppCompatActivity
 
         setContentView(R.layout.main);
 
+        observeFirstFrame();
+
         mActivityWeakRef = new WeakReference<>(this);
 
         mInitialStartup = Application.getPrefs().getBoolean(INITIAL_STARTUP, true);
@@ -398,6 +402,22 @@ public class HomeActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * Reports the first frame to Application, to measure the time a cold start takes
+     */
+    private void observeFirstFrame() {
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        content.getViewTreeObserver().removeOnPreDrawListener(this);
+                        Application.get().reportFirstFrame();
+                        return true;
+                    }
+                });
+    }
+
     @Override
     public void onStart() {
         super.onStart();
@@ -1477,7 +1497,10 @@ public class HomeActivity extends AppCompatActivity
         callbacks.add(mMapFragment);
         callbacks.add(this);
         ObaRegionsTask task = new ObaRegionsTask(this, callbacks, forceReload, showProgressDialog);
-        task.execute();
+        // The user is only waiting for the regions if we're showing progress
+        task.executeOnExecutor(ObaRequestExecutor.getInstance().getExecutor(
+                showProgressDialog ? ObaRequestExecutor.PRIORITY_UI
+                        : ObaRequestExecutor.PRIORITY_BACKGROUND));
     }
 
     //
@@ -45,7 +45,6 @@ import java.util.Arrays;
 
 import androidx.core.content.pm.ShortcutInfoCompat;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 public class MySearchRoutesFragment extends MySearchFragmentBase
@@ -228,7 +227,7 @@ public class MySearchRoutesFragment extends MySearchFragmentBase
     //
     // Loader
     //
-    private static final class MyLoader extends AsyncTaskLoader<ObaRoutesForLocationResponse> {
+    private static final class MyLoader extends RequestLoader<ObaRoutesForLocationResponse> {
 
         private final String mQueryText;
 
@@ -242,11 +241,16 @@ public class MySearchRoutesFragment extends MySearchFragmentBase
 
         @Override
         public ObaRoutesForLocationResponse loadInBackground() {
-            ObaRoutesForLocationResponse response =
+            final ObaRoutesForLocationRequest request =
                     new ObaRoutesForLocationRequest.Builder(getContext(), mCenter)
                             .setQuery(mQueryText)
-                            .build()
-                            .call();
+                            .build();
+            ObaRoutesForLocationResponse response =
+                    execute(request.getUri(), () -> request.call());
+            if (response == null) {
+                // Cancelled
+                return null;
+            }
             // If there is no results from the user-centered query,
             // open a wider next in some "default" location
             //Log.d(TAG, "Server returns: " + response.getCode());
@@ -259,11 +263,12 @@ public class MySearchRoutesFragment extends MySearchFragmentBase
 
             Location center = LocationUtils.getDefaultSearchCenter();
             if (center != null) {
-                return new ObaRoutesForLocationRequest.Builder(getContext(), center)
-                        .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
-                        .setQuery(mQueryText)
-                        .build()
-                        .call();
+                final ObaRoutesForLocationRequest defaultRequest =
+                        new ObaRoutesForLocationRequest.Builder(getContext(), center)
+                                .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
+                                .setQuery(mQueryText)
+                                .build();
+                return execute(defaultRequest.getUri(), () -> defaultRequest.call());
             }
             return response;
         }
@@ -42,7 +42,6 @@ import java.util.Arrays;
 
 import androidx.core.content.pm.ShortcutInfoCompat;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 public class MySearchStopsFragment extends MySearchFragmentBase
@@ -226,7 +225,7 @@ public class MySearchStopsFragment extends MySearchFragmentBase
     //
     // Loader
     //
-    private static final class MyLoader extends AsyncTaskLoader<ObaStopsForLocationResponse> {
+    private static final class MyLoader extends RequestLoader<ObaStopsForLocationResponse> {
 
         private final String mQueryText;
 
@@ -240,10 +239,11 @@ public class MySearchStopsFragment extends MySearchFragmentBase
 
         @Override
         public ObaStopsForLocationResponse loadInBackground() {
-            return new ObaStopsForLocationRequest.Builder(getContext(), mCenter)
-                    .setQuery(mQueryText)
-                    .build()
-                    .call();
+            final ObaStopsForLocationRequest request =
+                    new ObaStopsForLocationRequest.Builder(getContext(), mCenter)
+                            .setQuery(mQueryText)
+                            .build();
+            return execute(request.getUri(), () -> request.call());
         }
     }
 }
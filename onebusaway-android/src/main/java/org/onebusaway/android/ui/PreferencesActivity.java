@@ -51,6 +51,7 @@ import org.onebusaway.android.BuildConfig;
 import org.onebusaway.android.R;
 import org.onebusaway.android.app.Application;
 import org.onebusaway.android.io.ObaAnalytics;
+import org.onebusaway.android.io.ObaRequestExecutor;
 import org.onebusaway.android.io.elements.ObaRegion;
 import org.onebusaway.android.region.ObaRegionsTask;
 import org.onebusaway.android.util.BackupUtils;
@@ -484,7 +485,8 @@ public class PreferencesActivity extends PreferenceActivity
             List<ObaRegionsTask.Callback> callbacks = new ArrayList<>();
             callbacks.add(this);
             ObaRegionsTask task = new ObaRegionsTask(this, callbacks, true, false);
-            task.execute();
+            task.executeOnExecutor(ObaRequestExecutor.getInstance()
+                    .getExecutor(ObaRequestExecutor.PRIORITY_UI));
 
             // Wait to change the region preference description until the task callback
             //Analytics
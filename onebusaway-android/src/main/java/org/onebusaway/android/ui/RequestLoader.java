@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.ui;
+
+import org.onebusaway.android.io.ObaRequestExecutor;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import androidx.loader.content.AsyncTaskLoader;
+
+/**
+ * An AsyncTaskLoader that makes its requests on the shared ObaRequestExecutor.  Cancelling the
+ * load (e.g., when the loader is stopped or restarted) aborts the requests in progress, and
+ * requests that are independent of each other can run at the same time with submit().
+ */
+public abstract class RequestLoader<D> extends AsyncTaskLoader<D> {
+
+    // Requests submitted by the current load that haven't been cancelled
+    private final ArrayList<Future<?>> mFutures = new ArrayList<>();
+
+    public RequestLoader(Context context) {
+        super(context);
+    }
+
+    /**
+     * @return the ObaRequestExecutor priority of this loader's requests
+     */
+    protected int getPriority() {
+        return ObaRequestExecutor.PRIORITY_UI;
+    }
+
+    /**
+     * Submits a request to run in parallel with the calling thread
+     *
+     * @param uri      URI of a GET request, to share the result of an identical request in
+     *                 progress, or null
+     * @param callable makes the request
+     */
+    protected <T> Future<T> submit(Uri uri, Callable<T> callable) {
+        Future<T> future = ObaRequestExecutor.getInstance().submit(uri, getPriority(), callable);
+        synchronized (mFutures) {
+            for (Iterator<Future<?>> i = mFutures.iterator(); i.hasNext(); ) {
+                if (i.next().isDone()) {
+                    i.remove();
+                }
+            }
+            mFutures.add(future);
+        }
+        if (isLoadInBackgroundCanceled()) {
+            future.cancel(true);
+        }
+        return future;
+    }
+
+    /**
+     * Makes a request and waits for the result
+     *
+     * @param uri      URI of a GET request, to share the result of an identical request in
+     *                 progress, or null
+     * @param callable makes the request
+     * @return the result, or null if the load was cancelled
+     */
+    protected <T> T execute(Uri uri, Callable<T> callable) {
+        return get(submit(uri, callable));
+    }
+
+    /**
+     * Waits for the result of a request returned by submit()
+     *
+     * @return the result, or null if the load was cancelled
+     */
+    protected static <T> T get(Future<T> future) {
+        return ObaRequestExecutor.getResult(future);
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        synchronized (mFutures) {
+            for (Future<?> future : mFutures) {
+                future.cancel(true);
+            }
+            mFutures.clear();
+        }
+    }
+}
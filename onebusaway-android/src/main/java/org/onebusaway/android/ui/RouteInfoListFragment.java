@@ -53,7 +53,6 @@ import java.util.List;
 import java.util.Map;
 
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 public class RouteInfoListFragment extends ListFragment {
@@ -268,7 +267,7 @@ public class RouteInfoListFragment extends ListFragment {
     //
     // Loader
     //
-    private final static class RouteInfoLoader extends AsyncTaskLoader<ObaRouteResponse> {
+    private final static class RouteInfoLoader extends RequestLoader<ObaRouteResponse> {
 
         private final String mRouteId;
 
@@ -284,11 +283,12 @@ public class RouteInfoListFragment extends ListFragment {
 
         @Override
         public ObaRouteResponse loadInBackground() {
-            return ObaRouteRequest.newRequest(getContext(), mRouteId).call();
+            final ObaRouteRequest request = ObaRouteRequest.newRequest(getContext(), mRouteId);
+            return execute(request.getUri(), () -> request.call());
         }
     }
 
-    private final static class StopsForRouteLoader extends AsyncTaskLoader<StopsForRouteInfo> {
+    private final static class StopsForRouteLoader extends RequestLoader<StopsForRouteInfo> {
 
         private final String mRouteId;
 
@@ -304,11 +304,16 @@ public class RouteInfoListFragment extends ListFragment {
 
         @Override
         public StopsForRouteInfo loadInBackground() {
-            final ObaStopsForRouteResponse response =
+            final ObaStopsForRouteRequest request =
                     new ObaStopsForRouteRequest.Builder(getContext(), mRouteId)
                             .setIncludeShapes(false)
-                            .build()
-                            .call();
+                            .build();
+            final ObaStopsForRouteResponse response =
+                    execute(request.getUri(), () -> request.call());
+            if (response == null) {
+                // Cancelled
+                return null;
+            }
             return new StopsForRouteInfo(getContext(), response);
         }
     }
@@ -50,9 +50,9 @@ import org.onebusaway.android.util.UIUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 /**
@@ -285,7 +285,7 @@ public class SearchResultsFragment extends ListFragment
     //
     // Loader
     //
-    private static final class MyLoader extends AsyncTaskLoader<SearchResponse> {
+    private static final class MyLoader extends RequestLoader<SearchResponse> {
 
         private final String mQueryText;
 
@@ -298,12 +298,17 @@ public class SearchResultsFragment extends ListFragment
         }
 
         private ObaRoutesForLocationResponse getRoutes() {
-            ObaRoutesForLocationResponse response =
+            final ObaRoutesForLocationRequest request =
                     new ObaRoutesForLocationRequest.Builder(getContext(), mCenter)
                             .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
                             .setQuery(mQueryText)
-                            .build()
-                            .call();
+                            .build();
+            ObaRoutesForLocationResponse response =
+                    execute(request.getUri(), () -> request.call());
+            if (response == null) {
+                // Cancelled
+                return null;
+            }
             // If there is no results from the user-centered query,
             // open a wider next in some "default" location
             //Log.d(TAG, "Server returns: " + response.getCode());
@@ -315,31 +320,39 @@ public class SearchResultsFragment extends ListFragment
             }
             Location center = LocationUtils.getDefaultSearchCenter();
             if (center != null) {
-                return new ObaRoutesForLocationRequest.Builder(getContext(), center)
-                        .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
-                        .setQuery(mQueryText)
-                        .build()
-                        .call();
+                final ObaRoutesForLocationRequest defaultRequest =
+                        new ObaRoutesForLocationRequest.Builder(getContext(), center)
+                                .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
+                                .setQuery(mQueryText)
+                                .build();
+                return execute(defaultRequest.getUri(), () -> defaultRequest.call());
             }
             // I suppose we just return what was there...
             return response;
 
         }
 
-        private ObaStopsForLocationResponse getStops() {
-            return new ObaStopsForLocationRequest.Builder(getContext(), mCenter)
-                    .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
-                    .setQuery(mQueryText)
-                    .build()
-                    .call();
+        private Future<ObaStopsForLocationResponse> submitStops() {
+            final ObaStopsForLocationRequest request =
+                    new ObaStopsForLocationRequest.Builder(getContext(), mCenter)
+                            .setRadius(LocationUtils.DEFAULT_SEARCH_RADIUS)
+                            .setQuery(mQueryText)
+                            .build();
+            return submit(request.getUri(), () -> request.call());
         }
 
         @Override
         public SearchResponse loadInBackground() {
             ArrayList<ObaElement> results = new ArrayList<ObaElement>();
 
+            // The stops and routes don't depend on each other, so request them at the same time
+            Future<ObaStopsForLocationResponse> stopsFuture = submitStops();
             ObaRoutesForLocationResponse routes = getRoutes();
-            ObaStopsForLocationResponse stops = getStops();
+            ObaStopsForLocationResponse stops = get(stopsFuture);
+            if (routes == null || stops == null) {
+                // Cancelled
+                return null;
+            }
 
             int routeCode = routes.getCode();
             int stopCode = stops.getCode();
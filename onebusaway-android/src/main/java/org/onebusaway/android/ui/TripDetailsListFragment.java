@@ -87,7 +87,6 @@ import java.util.concurrent.TimeUnit;
 
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.loader.app.LoaderManager;
-import androidx.loader.content.AsyncTaskLoader;
 import androidx.loader.content.Loader;
 
 public class TripDetailsListFragment extends ListFragment {
@@ -752,7 +751,7 @@ public class TripDetailsListFragment extends ListFragment {
         }
     }
 
-    private final static class TripDetailsLoader extends AsyncTaskLoader<ObaTripDetailsResponse> {
+    private final static class TripDetailsLoader extends RequestLoader<ObaTripDetailsResponse> {
 
         private final String mTripId;
 
@@ -769,7 +768,9 @@ public class TripDetailsListFragment extends ListFragment {
 
         @Override
         public ObaTripDetailsResponse loadInBackground() {
-            return ObaTripDetailsRequest.newRequest(getContext(), mTripId).call();
+            final ObaTripDetailsRequest request =
+                    ObaTripDetailsRequest.newRequest(getContext(), mTripId);
+            return execute(request.getUri(), () -> request.call());
         }
 
         @Override
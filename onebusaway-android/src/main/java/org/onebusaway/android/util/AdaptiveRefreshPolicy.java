@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util;
+
+import org.onebusaway.android.io.ObaApi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A RefreshPolicy that refreshes quickly when a real-time arrival is near, at the normal rate
+ * when the soonest real-time arrival is further away, and slowly when there are only scheduled
+ * arrivals or the soonest is far in the future.  After a network or server error, the delay
+ * doubles with each consecutive error, up to a maximum.
+ */
+public class AdaptiveRefreshPolicy extends RefreshPolicy {
+
+    /**
+     * Real-time arrivals within this time are refreshed at the fast rate
+     */
+    public static final long NEAR_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * If the soonest arrival is further away than this, refresh at the slow rate
+     */
+    public static final long FAR_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private final long mFastMs;
+
+    private final long mNormalMs;
+
+    private final long mSlowMs;
+
+    private final long mMaxBackoffMs;
+
+    // Number of consecutive network or server errors
+    private int mErrorCount = 0;
+
+    private long mCurrentDelayMs;
+
+    /**
+     * @param fastMs       delay when a real-time arrival is near
+     * @param normalMs     delay when the soonest real-time arrival isn't near, after errors that
+     *                     aren't backed off, and before the first response
+     * @param slowMs       delay when there are only scheduled arrivals, or they are far away
+     * @param maxBackoffMs maximum delay after consecutive network or server errors
+     */
+    public AdaptiveRefreshPolicy(long fastMs, long normalMs, long slowMs, long maxBackoffMs) {
+        if (fastMs <= 0 || fastMs > normalMs || normalMs > slowMs || slowMs > maxBackoffMs) {
+            throw new IllegalArgumentException("Delays must be 0 < fast <= normal <= slow <= max");
+        }
+        mFastMs = fastMs;
+        mNormalMs = normalMs;
+        mSlowMs = slowMs;
+        mMaxBackoffMs = maxBackoffMs;
+        mCurrentDelayMs = normalMs;
+    }
+
+    /**
+     * @return a policy for the arrivals at a stop, which were refreshed every minute
+     */
+    public static AdaptiveRefreshPolicy newArrivalsPolicy() {
+        return new AdaptiveRefreshPolicy(TimeUnit.SECONDS.toMillis(30),
+                TimeUnit.SECONDS.toMillis(60), TimeUnit.SECONDS.toMillis(120),
+                TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * @return a policy for the vehicles on the map, which were refreshed every 10 seconds
+     */
+    public static AdaptiveRefreshPolicy newVehiclesPolicy() {
+        return new AdaptiveRefreshPolicy(TimeUnit.SECONDS.toMillis(10),
+                TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(30),
+                TimeUnit.MINUTES.toMillis(5));
+    }
+
+    @Override
+    public synchronized long getNextDelay(int code, long soonestEtaMs, boolean realtime) {
+        if (isBackoffError(code)) {
+            mErrorCount++;
+            // The normal delay after the first error, then twice that, and so on
+            long delay = mNormalMs;
+            for (int i = 1; i < mErrorCount && delay < mMaxBackoffMs; i++) {
+                delay *= 2;
+            }
+            mCurrentDelayMs = Math.min(delay, mMaxBackoffMs);
+            return mCurrentDelayMs;
+        }
+        mErrorCount = 0;
+        if (code != ObaApi.OBA_OK) {
+            // e.g., the stop wasn't found - retrying sooner or later won't help
+            mCurrentDelayMs = mNormalMs;
+        } else if (!realtime || soonestEtaMs > FAR_MS) {
+            mCurrentDelayMs = mSlowMs;
+        } else if (soonestEtaMs <= NEAR_MS) {
+            mCurrentDelayMs = mFastMs;
+        } else {
+            mCurrentDelayMs = mNormalMs;
+        }
+        return mCurrentDelayMs;
+    }
+
+    @Override
+    public synchronized long getCurrentDelay() {
+        return mCurrentDelayMs;
+    }
+
+    @Override
+    public synchronized void reset() {
+        mErrorCount = 0;
+        mCurrentDelayMs = mNormalMs;
+    }
+
+    /**
+     * @return true if the code is for a network error or a server error, which may be caused by
+     * load on the server
+     */
+    public static boolean isBackoffError(int code) {
+        return code == ObaApi.OBA_IO_EXCEPTION || (code >= 500 && code < 600);
+    }
+}
@@ -55,6 +55,10 @@ public class ArrivalInfoUtils {
                                                                      boolean includeArrivalDepartureInStatusLabel) {
         final int len = arrivalInfo.length;
         ArrayList<ArrivalInfo> result = new ArrayList<ArrivalInfo>(len);
+        // Read the preference once, rather than for each arrival
+        final boolean showNegativeArrivals = Application.getPrefs()
+                .getBoolean(Application.get().getResources()
+                        .getString(R.string.preference_key_show_negative_arrivals), true);
         if (filter != null && filter.size() > 0) {
             // Only add routes that haven't been filtered out
             for (int i = 0; i < len; ++i) {
@@ -62,7 +66,7 @@ public class ArrivalInfoUtils {
                 if (filter.contains(arrival.getRouteId())) {
                     ArrivalInfo info = new ArrivalInfo(context, arrival, ms,
                             includeArrivalDepartureInStatusLabel);
-                    if (shouldAddEta(info)) {
+                    if (shouldAddEta(info, showNegativeArrivals)) {
                         result.add(info);
                     }
                 }
@@ -72,7 +76,7 @@ public class ArrivalInfoUtils {
             for (int i = 0; i < len; ++i) {
                 ArrivalInfo info = new ArrivalInfo(context, arrivalInfo[i], ms,
                         includeArrivalDepartureInStatusLabel);
-                if (shouldAddEta(info)) {
+                if (shouldAddEta(info, showNegativeArrivals)) {
                     result.add(info);
                 }
             }
@@ -87,14 +91,12 @@ public class ArrivalInfoUtils {
      * Returns true if this ETA should be added based on the user preference for adding negative
      * arrival times, and false if it should not
      *
-     * @param info info that includes the ETA to be evaluated
+     * @param info                 info that includes the ETA to be evaluated
+     * @param showNegativeArrivals the user preference for adding negative arrival times
      * @return true if this ETA should be added based on the user preference for adding negative
      * arrival times, and false if it should not
      */
-    private static boolean shouldAddEta(ArrivalInfo info) {
-        boolean showNegativeArrivals = Application.getPrefs()
-                .getBoolean(Application.get().getResources()
-                        .getString(R.string.preference_key_show_negative_arrivals), true);
+    private static boolean shouldAddEta(ArrivalInfo info, boolean showNegativeArrivals) {
         if (info.getEta() >= 0) {
             // Always add positive ETAs
             return true;
@@ -25,6 +25,7 @@ import com.google.firebase.analytics.FirebaseAnalytics;
 import org.onebusaway.android.R;
 import org.onebusaway.android.app.Application;
 import org.onebusaway.android.io.ObaAnalytics;
+import org.onebusaway.android.io.ObaRequestExecutor;
 import org.onebusaway.android.io.backup.Backup;
 import org.onebusaway.android.region.ObaRegionsTask;
 
@@ -75,7 +76,8 @@ public class BackupUtils {
                         Toast.LENGTH_LONG).show());
                 ObaRegionsTask task = new ObaRegionsTask(activityContext, callbacks, true, true);
                 task.setProgressDialogMessage(context.getString(R.string.preferences_restore_loading));
-                task.execute();
+                task.executeOnExecutor(ObaRequestExecutor.getInstance()
+                        .getExecutor(ObaRequestExecutor.PRIORITY_UI));
             }
         } catch (IOException e) {
             Toast.makeText(context,
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The points of a polyline, stored as arrays of latitudes and longitudes rather than a
+ * Location per point.  Instances are immutable.
+ */
+public final class DecodedShape {
+
+    private final double[] mLats;
+
+    private final double[] mLons;
+
+    // Distance from the first point to each point, in meters, computed when first needed
+    private volatile double[] mDistances;
+
+    private static final double EARTH_RADIUS = 6371009;
+
+    private DecodedShape(double[] lats, double[] lons) {
+        mLats = lats;
+        mLons = lons;
+    }
+
+    /**
+     * Decodes an encoded polyline - see ObaShapeElement.decodeLine() for the format
+     *
+     * @param encoded   The encoded string.
+     * @param numPoints The number of points. This is used as a hint to allocate memory; the
+     *                  result always contains the points in the encoded string.
+     */
+    public static DecodedShape decode(String encoded, int numPoints) {
+        if (numPoints < 0) {
+            throw new IllegalArgumentException("numPoints must be >= 0");
+        }
+        double[] lats = new double[Math.max(numPoints, 1)];
+        double[] lons = new double[lats.length];
+        int count = 0;
+
+        final int len = encoded.length();
+        int i = 0;
+        int lat = 0, lon = 0;
+
+        while (i < len) {
+            int shift = 0;
+            int result = 0;
+            int b;
+            do {
+                b = encoded.charAt(i++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lat += ((result & 1) == 1 ? ~(result >> 1) : (result >> 1));
+
+            shift = 0;
+            result = 0;
+            do {
+                b = encoded.charAt(i++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lon += ((result & 1) == 1 ? ~(result >> 1) : (result >> 1));
+
+            if (count == lats.length) {
+                lats = copyOf(lats, count * 2);
+                lons = copyOf(lons, count * 2);
+            }
+            // The polyline encodes in degrees * 1E5, we need decimal degrees
+            lats[count] = lat / 1E5;
+            lons[count] = lon / 1E5;
+            count++;
+        }
+
+        if (count != lats.length) {
+            lats = copyOf(lats, count);
+            lons = copyOf(lons, count);
+        }
+        return new DecodedShape(lats, lons);
+    }
+
+    public int size() {
+        return mLats.length;
+    }
+
+    public double getLatitude(int i) {
+        return mLats[i];
+    }
+
+    public double getLongitude(int i) {
+        return mLons[i];
+    }
+
+    /**
+     * @return the length of the line, in meters
+     */
+    public double getLength() {
+        double[] distances = getDistances();
+        return distances.length > 0 ? distances[distances.length - 1] : 0;
+    }
+
+    /**
+     * Finds the point at a distance along the line
+     *
+     * @param distance distance from the first point, in meters.  Distances before the start or
+     *                 past the end of the line are moved to the first or last point.
+     * @param result   array to receive the latitude (result[0]) and longitude (result[1])
+     * @throws IndexOutOfBoundsException if the line has no points
+     */
+    public void getPointAtDistance(double distance, double[] result) {
+        final double[] distances = getDistances();
+        final int n = distances.length;
+        if (distance <= 0 || n == 1) {
+            result[0] = mLats[0];
+            result[1] = mLons[0];
+            return;
+        }
+        if (distance >= distances[n - 1]) {
+            result[0] = mLats[n - 1];
+            result[1] = mLons[n - 1];
+            return;
+        }
+        // Find the segment containing the distance
+        int lo = 0;
+        int hi = n - 1;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (distances[mid] <= distance) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        final double segment = distances[hi] - distances[lo];
+        final double fraction = segment > 0 ? (distance - distances[lo]) / segment : 0;
+        result[0] = mLats[lo] + (mLats[hi] - mLats[lo]) * fraction;
+        result[1] = mLons[lo] + (mLons[hi] - mLons[lo]) * fraction;
+    }
+
+    private double[] getDistances() {
+        double[] distances = mDistances;
+        if (distances == null) {
+            distances = new double[mLats.length];
+            for (int i = 1; i < mLats.length; i++) {
+                // Segments are short, so treat each as flat
+                final double dLat = Math.toRadians(mLats[i] - mLats[i - 1]);
+                final double dLon = Math.toRadians(mLons[i] - mLons[i - 1])
+                        * Math.cos(Math.toRadians((mLats[i] + mLats[i - 1]) / 2));
+                distances[i] = distances[i - 1]
+                        + Math.sqrt(dLat * dLat + dLon * dLon) * EARTH_RADIUS;
+            }
+            mDistances = distances;
+        }
+        return distances;
+    }
+
+    /**
+     * @return the points as Locations, for code that needs the ObaShape.getPoints() format
+     */
+    public List<Location> toLocations() {
+        ArrayList<Location> result = new ArrayList<>(mLats.length);
+        for (int i = 0; i < mLats.length; i++) {
+            result.add(LocationUtils.makeLocation(mLats[i], mLons[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies the line with the Douglas-Peucker algorithm.  The first and last points are
+     * always kept, and no removed point is further than the tolerance from the simplified line.
+     *
+     * @param tolerance maximum distance of a removed point from the line, in degrees of
+     *                  longitude (which, like map pixels, are the same width at any latitude)
+     * @return the simplified shape, or this shape if no points can be removed
+     */
+    public DecodedShape simplify(double tolerance) {
+        final int n = mLats.length;
+        if (n < 3) {
+            return this;
+        }
+        // Scale longitudes to degrees of latitude, so that distances are uniform at this
+        // latitude, and the tolerance with them
+        final double lonScale = Math.cos(Math.toRadians(mLats[0]));
+        final double toleranceSq = tolerance * lonScale * tolerance * lonScale;
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int kept = 2;
+
+        // Stack of [first, last] index ranges still to be simplified
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+
+        while (top > 0) {
+            final int last = stack[--top];
+            final int first = stack[--top];
+
+            double maxDistSq = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(i, first, last, lonScale);
+                if (d > maxDistSq) {
+                    maxDistSq = d;
+                    index = i;
+                }
+            }
+            if (index != -1 && maxDistSq > toleranceSq) {
+                keep[index] = true;
+                kept++;
+                if (top + 4 > stack.length) {
+                    int[] larger = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, larger, 0, top);
+                    stack = larger;
+                }
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        if (kept == n) {
+            return this;
+        }
+        double[] lats = new double[kept];
+        double[] lons = new double[kept];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                lats[j] = mLats[i];
+                lons[j] = mLons[i];
+                j++;
+            }
+        }
+        return new DecodedShape(lats, lons);
+    }
+
+    /**
+     * Returns the squared distance of point i from the segment between points a and b
+     */
+    private double segmentDistanceSq(int i, int a, int b, double lonScale) {
+        final double ax = mLons[a] * lonScale;
+        final double ay = mLats[a];
+        final double dx = mLons[b] * lonScale - ax;
+        final double dy = mLats[b] - ay;
+        final double px = mLons[i] * lonScale - ax;
+        final double py = mLats[i] - ay;
+
+        final double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : (px * dx + py * dy) / lengthSq;
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+        final double ex = px - t * dx;
+        final double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    private static double[] copyOf(double[] array, int length) {
+        double[] result = new double[length];
+        System.arraycopy(array, 0, result, 0, Math.min(length, array.length));
+        return result;
+    }
+}
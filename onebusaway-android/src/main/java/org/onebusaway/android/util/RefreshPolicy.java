@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util;
+
+import org.onebusaway.android.io.elements.ObaArrivalInfo;
+import org.onebusaway.android.io.elements.ObaTripDetails;
+import org.onebusaway.android.io.elements.ObaTripStatus;
+import org.onebusaway.android.io.request.ObaArrivalInfoResponse;
+import org.onebusaway.android.io.request.ObaTripsForRouteResponse;
+
+/**
+ * Decides how long to wait before refreshing real-time data, based on the last response.
+ * Screens that poll the server (e.g., arrivals and vehicle positions) ask the policy for the
+ * delay after each response, and stop polling while they are paused.
+ */
+public abstract class RefreshPolicy {
+
+    /**
+     * Returns how long to wait before the next refresh
+     *
+     * @param code         the code of the response, e.g. ObaApi.OBA_OK
+     * @param soonestEtaMs time until the soonest arrival, in milliseconds - the soonest
+     *                     real-time arrival if there is one - or Long.MAX_VALUE if there
+     *                     aren't any arrivals
+     * @param realtime     true if soonestEtaMs is from a real-time prediction
+     * @return the delay before the next refresh, in milliseconds
+     */
+    public abstract long getNextDelay(int code, long soonestEtaMs, boolean realtime);
+
+    /**
+     * Returns the delay to use when there hasn't been a response yet (e.g., after an error that
+     * was already delayed, or when resuming a screen)
+     */
+    public abstract long getCurrentDelay();
+
+    /**
+     * Forgets the previous responses, e.g. when the user explicitly refreshes
+     */
+    public abstract void reset();
+
+    /**
+     * Returns how long to wait before refreshing the arrivals in the response
+     */
+    public final long getNextDelay(ObaArrivalInfoResponse response) {
+        long soonestRealtime = Long.MAX_VALUE;
+        long soonestScheduled = Long.MAX_VALUE;
+        ObaArrivalInfo[] info = response.getArrivalInfo();
+        if (info != null) {
+            final long now = response.getCurrentTime();
+            for (ObaArrivalInfo arrival : info) {
+                if (arrival.getPredicted() && arrival.getPredictedArrivalTime() != 0) {
+                    long eta = arrival.getPredictedArrivalTime() - now;
+                    if (eta >= 0 && eta < soonestRealtime) {
+                        soonestRealtime = eta;
+                    }
+                } else {
+                    long eta = arrival.getScheduledArrivalTime() - now;
+                    if (eta >= 0 && eta < soonestScheduled) {
+                        soonestScheduled = eta;
+                    }
+                }
+            }
+        }
+        if (soonestRealtime != Long.MAX_VALUE) {
+            return getNextDelay(response.getCode(), soonestRealtime, true);
+        }
+        return getNextDelay(response.getCode(), soonestScheduled, false);
+    }
+
+    /**
+     * Returns how long to wait before refreshing the vehicles in the response.  Vehicles on the
+     * map are treated as arriving now if any of them have real-time positions.
+     */
+    public final long getNextDelay(ObaTripsForRouteResponse response) {
+        boolean realtime = false;
+        ObaTripDetails[] trips = response.getTrips();
+        if (trips != null) {
+            for (ObaTripDetails trip : trips) {
+                ObaTripStatus status = trip.getStatus();
+                if (status != null && status.isPredicted()) {
+                    realtime = true;
+                    break;
+                }
+            }
+        }
+        return getNextDelay(response.getCode(), realtime ? 0 : Long.MAX_VALUE, realtime);
+    }
+}
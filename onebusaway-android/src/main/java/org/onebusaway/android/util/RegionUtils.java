@@ -25,18 +25,20 @@ import org.onebusaway.android.io.elements.ObaRegionElement;
 import org.onebusaway.android.io.request.ObaRegionsRequest;
 import org.onebusaway.android.io.request.ObaRegionsResponse;
 import org.onebusaway.android.provider.ObaContract;
+import org.onebusaway.android.region.RegionIndex;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.location.Location;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.util.Log;
 
 import java.security.MessageDigest;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -60,6 +62,10 @@ public class RegionUtils {
 
     private static final int DISTANCE_LIMITER = 100;  // miles
 
+    private static volatile IndexEntry sIndexEntry;
+
+    private static volatile SpanEntry sSpanEntry;
+
     /**
      * Get the closest region from a list of regions and a given location
      *
@@ -79,46 +85,130 @@ public class RegionUtils {
         if (loc == null) {
             return null;
         }
-        float minDist = Float.MAX_VALUE;
-        ObaRegion closestRegion = null;
-        Float distToRegion;
+        Log.d(TAG, "Finding region closest to " + loc.getLatitude() + "," + loc.getLongitude());
 
-        NumberFormat fmt = NumberFormat.getInstance();
-        if (fmt instanceof DecimalFormat) {
-            ((DecimalFormat) fmt).setMaximumFractionDigits(1);
+        double maxDistance = enforceThreshold ? DISTANCE_LIMITER / METERS_TO_MILES
+                : Double.MAX_VALUE;
+        ObaRegion closest = getRegionIndex(regions).getClosestRegion(loc.getLatitude(),
+                loc.getLongitude(), maxDistance);
+        if (closest == null) {
+            return null;
         }
-        double miles;
-
-        Log.d(TAG, "Finding region closest to " + loc.getLatitude() + "," + loc.getLongitude());
+        // The index may have been built from an earlier copy of the same regions, so return
+        // the region from this list
+        for (ObaRegion region : regions) {
+            if (region.getId() == closest.getId()) {
+                return region;
+            }
+        }
+        return closest;
+    }
 
+    /**
+     * Returns a spatial index of the usable regions in the list (see isRegionUsable()).  The
+     * index is built when regions are loaded (see ObaRegionsTask), and reused while the regions
+     * passed in have the same IDs, bounds and usability flags and the experimental regions
+     * preference doesn't change - regions are loaded into new objects each time, so the list
+     * itself usually differs.
+     *
+     * @param regions list of regions, which must not be changed after they are indexed
+     * @return an index of the usable regions in the list.  It may hold the regions of an
+     * earlier list with the same data.
+     */
+    public static RegionIndex getRegionIndex(List<ObaRegion> regions) {
+        boolean experimental = Application.getPrefs().getBoolean(
+                Application.get().getString(R.string.preference_key_experimental_regions), false);
+        IndexEntry entry = sIndexEntry;
+        if (entry != null && entry.isIndexOf(regions, experimental)) {
+            return entry.mIndex;
+        }
+        ArrayList<ObaRegion> usable = new ArrayList<>();
         for (ObaRegion region : regions) {
-            if (!isRegionUsable(region)) {
+            if (isRegionUsable(region)) {
+                usable.add(region);
+            } else {
                 Log.d(TAG,
                         "Excluding '" + region.getName() + "' from 'closest region' consideration");
-                continue;
             }
+        }
+        entry = new IndexEntry(regions, experimental, new RegionIndex(usable));
+        sIndexEntry = entry;
+        return entry.mIndex;
+    }
 
-            distToRegion = getDistanceAway(region, loc.getLatitude(), loc.getLongitude());
-            if (distToRegion == null) {
-                Log.e(TAG, "Couldn't measure distance to region '" + region.getName() + "'");
-                continue;
+    /**
+     * The last region index, and the regions it was built from
+     */
+    private static class IndexEntry {
+
+        private final ObaRegion[] mRegions;
+
+        private final boolean mExperimental;
+
+        private final RegionIndex mIndex;
+
+        IndexEntry(List<ObaRegion> regions, boolean experimental, RegionIndex index) {
+            mRegions = regions.toArray(new ObaRegion[regions.size()]);
+            mExperimental = experimental;
+            mIndex = index;
+        }
+
+        boolean isIndexOf(List<ObaRegion> regions, boolean experimental) {
+            if (experimental != mExperimental || regions.size() != mRegions.length) {
+                return false;
             }
-            miles = distToRegion * METERS_TO_MILES;
-            Log.d(TAG, "Region '" + region.getName() + "' is " + fmt.format(miles) + " miles away");
-            if (distToRegion < minDist) {
-                closestRegion = region;
-                minDist = distToRegion;
+            for (int i = 0; i < mRegions.length; i++) {
+                if (regions.get(i) != mRegions[i] && !isSameIndexData(regions.get(i),
+                        mRegions[i])) {
+                    return false;
+                }
             }
+            return true;
         }
 
-        if (enforceThreshold) {
-            if (minDist * METERS_TO_MILES < DISTANCE_LIMITER) {
-                return closestRegion;
-            } else {
-                return null;
+        /**
+         * @return true if the regions have the same ID, and the same data used to index them
+         */
+        private static boolean isSameIndexData(ObaRegion a, ObaRegion b) {
+            if (a.getId() != b.getId() || a.getActive() != b.getActive()
+                    || a.getSupportsObaDiscoveryApis() != b.getSupportsObaDiscoveryApis()
+                    || a.getSupportsObaRealtimeApis() != b.getSupportsObaRealtimeApis()
+                    || a.getExperimental() != b.getExperimental()) {
+                return false;
             }
+            ObaRegion.Bounds[] boundsA = a.getBounds();
+            ObaRegion.Bounds[] boundsB = b.getBounds();
+            if (boundsA == null || boundsB == null) {
+                return boundsA == boundsB;
+            }
+            if (boundsA.length != boundsB.length) {
+                return false;
+            }
+            for (int i = 0; i < boundsA.length; i++) {
+                if (boundsA[i].getLat() != boundsB[i].getLat()
+                        || boundsA[i].getLon() != boundsB[i].getLon()
+                        || boundsA[i].getLatSpan() != boundsB[i].getLatSpan()
+                        || boundsA[i].getLonSpan() != boundsB[i].getLonSpan()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The span of the last region passed to isLocationWithinRegion() that wasn't in the index
+     */
+    private static class SpanEntry {
+
+        private final ObaRegion mRegion;
+
+        private final double[] mSpan = new double[4];
+
+        SpanEntry(ObaRegion region) {
+            mRegion = region;
+            getRegionSpan(region, mSpan);
         }
-        return closestRegion;
     }
 
     /**
@@ -249,11 +339,7 @@ public class RegionUtils {
             throw new IllegalArgumentException("regionSpan is null or has length < 4");
         }
 
-        if (location == null || location.getLongitude() > 180.0 || location.getLongitude() < -180.0
-                ||
-                location.getLatitude() > 90 || location.getLatitude() < -90) {
-            throw new IllegalArgumentException("Location must be a valid location");
-        }
+        checkLocation(location);
 
         double minLat = regionSpan[2] - (regionSpan[0] / 2);
         double minLon = regionSpan[3] - (regionSpan[1] / 2);
@@ -275,9 +361,27 @@ public class RegionUtils {
      * @return true if the location is within the region, false if it is not
      */
     public static boolean isLocationWithinRegion(Location location, ObaRegion region) {
-        double[] regionSpan = new double[4];
-        getRegionSpan(region, regionSpan);
-        return isLocationWithinRegion(location, regionSpan);
+        IndexEntry indexEntry = sIndexEntry;
+        if (indexEntry != null && location != null && indexEntry.mIndex.contains(region)) {
+            checkLocation(location);
+            return indexEntry.mIndex.isLocationWithinRegion(location.getLatitude(),
+                    location.getLongitude(), region);
+        }
+        // This is called with each response on the map, so keep the span of the last region
+        SpanEntry spanEntry = sSpanEntry;
+        if (spanEntry == null || spanEntry.mRegion != region) {
+            spanEntry = new SpanEntry(region);
+            sSpanEntry = spanEntry;
+        }
+        return isLocationWithinRegion(location, spanEntry.mSpan);
+    }
+
+    private static void checkLocation(Location location) {
+        if (location == null || location.getLongitude() > 180.0 || location.getLongitude() < -180.0
+                ||
+                location.getLatitude() > 90 || location.getLatitude() < -90) {
+            throw new IllegalArgumentException("Location must be a valid location");
+        }
     }
 
     /**
@@ -660,13 +764,13 @@ public class RegionUtils {
     // Saving
     //
     public synchronized static void saveToProvider(Context context, List<ObaRegion> regions) {
-        // Delete all the existing regions
-        ContentResolver cr = context.getContentResolver();
-        cr.delete(ObaContract.Regions.CONTENT_URI, null, null);
-        // Should be a no-op?
-        cr.delete(ObaContract.RegionBounds.CONTENT_URI, null, null);
-        // Delete all existing open311 endpoints
-        cr.delete(ObaContract.RegionOpen311Servers.CONTENT_URI, null, null);
+        // Replace all the existing regions, bounds and open311 endpoints in a single batch, so
+        // the provider writes them in one transaction and notifies observers once
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        ops.add(ContentProviderOperation.newDelete(ObaContract.Regions.CONTENT_URI).build());
+        ops.add(ContentProviderOperation.newDelete(ObaContract.RegionBounds.CONTENT_URI).build());
+        ops.add(ContentProviderOperation.newDelete(ObaContract.RegionOpen311Servers.CONTENT_URI)
+                .build());
 
         for (ObaRegion region : regions) {
             if (!isRegionUsable(region)) {
@@ -674,29 +778,37 @@ public class RegionUtils {
                 continue;
             }
 
-            cr.insert(ObaContract.Regions.CONTENT_URI, toContentValues(region));
-            Log.d(TAG, "Saved region '" + region.getName() + "' to provider");
+            ops.add(ContentProviderOperation.newInsert(ObaContract.Regions.CONTENT_URI)
+                    .withValues(toContentValues(region))
+                    .build());
             long regionId = region.getId();
-            // Bulk insert the bounds
             ObaRegion.Bounds[] bounds = region.getBounds();
             if (bounds != null) {
-                ContentValues[] values = new ContentValues[bounds.length];
-                for (int i = 0; i < bounds.length; ++i) {
-                    values[i] = toContentValues(regionId, bounds[i]);
+                for (ObaRegion.Bounds b : bounds) {
+                    ops.add(ContentProviderOperation.newInsert(
+                            ObaContract.RegionBounds.CONTENT_URI)
+                            .withValues(toContentValues(regionId, b))
+                            .build());
                 }
-                cr.bulkInsert(ObaContract.RegionBounds.CONTENT_URI, values);
             }
 
             ObaRegion.Open311Server[] open311Servers = region.getOpen311Servers();
-
             if (open311Servers != null) {
-                ContentValues[] values = new ContentValues[open311Servers.length];
-                for (int i = 0; i < open311Servers.length; ++i) {
-                    values[i] = toContentValues(regionId, open311Servers[i]);
+                for (ObaRegion.Open311Server server : open311Servers) {
+                    ops.add(ContentProviderOperation.newInsert(
+                            ObaContract.RegionOpen311Servers.CONTENT_URI)
+                            .withValues(toContentValues(regionId, server))
+                            .build());
                 }
-                cr.bulkInsert(ObaContract.RegionOpen311Servers.CONTENT_URI, values);
             }
         }
+
+        try {
+            context.getContentResolver().applyBatch(ObaContract.AUTHORITY, ops);
+            Log.d(TAG, "Saved " + regions.size() + " regions to provider");
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to save regions to provider: " + e);
+        }
     }
 
     private static ContentValues toContentValues(ObaRegion region) {
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util;
+
+import java.util.Locale;
+
+import androidx.collection.LruCache;
+
+/**
+ * A cache of decoded route shapes, and of the shapes simplified for each map zoom level, so
+ * that showing the same route again doesn't decode and rebuild its polylines.
+ *
+ * Shapes are identified by their encoded points.  The polylines in stops-for-route responses
+ * don't have shape IDs, and the encoded string identifies the shape exactly.  The cache is
+ * bounded by the total number of points it holds.  Shapes fetched by shape ID (e.g. for the
+ * trips of vehicles) can also be looked up by that ID.
+ */
+public class ShapeCache {
+
+    /**
+     * Upper bound on the number of points held, for the decoded and simplified shapes together.
+     * Each point is two doubles, so this is around 3 MB.
+     */
+    private static final int MAX_POINTS = 200000;
+
+    /**
+     * At this zoom level and above, a pixel is smaller than the 1E-5 degree precision of the
+     * encoded polyline, so shapes aren't simplified
+     */
+    public static final int MAX_SIMPLIFIED_ZOOM = 17;
+
+    /**
+     * Points within this many pixels of the simplified line are removed
+     */
+    private static final double TOLERANCE_PIXELS = 0.5;
+
+    /**
+     * Number of shape IDs to remember the encoded points for
+     */
+    private static final int MAX_SHAPE_IDS = 200;
+
+    private static final class Key {
+
+        final String mEncoded;
+
+        // Zoom level of a simplified shape, or -1 for the decoded shape
+        final int mZoom;
+
+        Key(String encoded, int zoom) {
+            mEncoded = encoded;
+            mZoom = zoom;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mZoom == other.mZoom && mEncoded.equals(other.mEncoded);
+        }
+
+        @Override
+        public int hashCode() {
+            // String caches its hash code, so this is cheap for long shapes after the first call
+            return 31 * mEncoded.hashCode() + mZoom;
+        }
+    }
+
+    private final LruCache<Key, DecodedShape> mCache =
+            new LruCache<Key, DecodedShape>(MAX_POINTS) {
+                @Override
+                protected int sizeOf(Key key, DecodedShape value) {
+                    return Math.max(value.size(), 1);
+                }
+            };
+
+    private static final class ShapeRef {
+
+        final String mEncoded;
+
+        final int mNumPoints;
+
+        ShapeRef(String encoded, int numPoints) {
+            mEncoded = encoded;
+            mNumPoints = numPoints;
+        }
+    }
+
+    private final LruCache<String, ShapeRef> mShapeIds = new LruCache<>(MAX_SHAPE_IDS);
+
+    private static class SingletonHolder {
+
+        static final ShapeCache INSTANCE = new ShapeCache();
+    }
+
+    public static ShapeCache getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private ShapeCache() {
+    }
+
+    /**
+     * Returns the decoded points of an encoded polyline
+     *
+     * @param encoded   the encoded points
+     * @param numPoints the number of points, as a hint to allocate memory
+     */
+    public DecodedShape get(String encoded, int numPoints) {
+        Key key = new Key(encoded, -1);
+        DecodedShape shape = mCache.get(key);
+        if (shape == null) {
+            shape = DecodedShape.decode(encoded, numPoints);
+            mCache.put(key, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Returns the points of an encoded polyline, with the points that can't be seen at the given
+     * zoom level removed
+     *
+     * @param encoded   the encoded points
+     * @param numPoints the number of points, as a hint to allocate memory
+     * @param zoom      the map zoom level
+     */
+    public DecodedShape get(String encoded, int numPoints, float zoom) {
+        int level = (int) zoom;
+        if (level >= MAX_SIMPLIFIED_ZOOM) {
+            return get(encoded, numPoints);
+        }
+        if (level < 0) {
+            level = 0;
+        }
+        Key key = new Key(encoded, level);
+        DecodedShape shape = mCache.get(key);
+        if (shape == null) {
+            shape = get(encoded, numPoints).simplify(getTolerance(level));
+            mCache.put(key, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Remembers the encoded points of a shape, so it can be found by getByShapeId()
+     *
+     * @param shapeId   the ID of the shape
+     * @param encoded   the encoded points
+     * @param numPoints the number of points
+     * @return the decoded shape
+     */
+    public DecodedShape putShapeId(String shapeId, String encoded, int numPoints) {
+        mShapeIds.put(shapeId, new ShapeRef(encoded, numPoints));
+        return get(encoded, numPoints);
+    }
+
+    /**
+     * Returns the decoded points of a shape passed to putShapeId()
+     *
+     * @param shapeId the ID of the shape
+     * @return the decoded shape, or null if the shape ID isn't known
+     */
+    public DecodedShape getByShapeId(String shapeId) {
+        ShapeRef ref = mShapeIds.get(shapeId);
+        return ref != null ? get(ref.mEncoded, ref.mNumPoints) : null;
+    }
+
+    /**
+     * Returns the size of TOLERANCE_PIXELS at the zoom level, in degrees.  A 256 pixel map tile
+     * covers 360 degrees of longitude at zoom level 0, and half that at each level above.
+     */
+    public static double getTolerance(int zoom) {
+        return TOLERANCE_PIXELS * 360.0 / (256.0 * (1 << zoom));
+    }
+
+    public void clear() {
+        mCache.evictAll();
+        mShapeIds.evictAll();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "ShapeCache: %d points, %d hits, %d misses",
+                mCache.size(), mCache.hitCount(), mCache.missCount());
+    }
+}
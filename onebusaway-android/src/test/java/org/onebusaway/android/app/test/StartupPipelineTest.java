@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.app.test;
+
+import org.junit.Test;
+import org.onebusaway.android.app.StartupPipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests StartupPipeline, and compares running tasks shaped like Application's startup in
+ * sequence on one thread with running them in the pipeline.  Prints a summary to stdout.
+ */
+public class StartupPipelineTest {
+
+    // Time each simulated background task takes
+    private static final long TASK_MS = 100;
+
+    private final List<String> mOrder = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void testDependencies() {
+        final String main = Thread.currentThread().getName();
+        StartupPipeline pipeline = new StartupPipeline()
+                .add("a", StartupPipeline.BACKGROUND, record("a", 50))
+                .add("b", StartupPipeline.BACKGROUND, record("b", 0), "a")
+                .add("c", StartupPipeline.BACKGROUND, record("c", 0), "a", "b")
+                .add("main", StartupPipeline.MAIN, record("main", 0));
+        pipeline.start();
+
+        // MAIN tasks run before start() returns, on this thread
+        assertTrue(pipeline.isDone("main"));
+        pipeline.await("c");
+        assertEquals(4, mOrder.size());
+        assertTrue(mOrder.indexOf("a") < mOrder.indexOf("b"));
+        assertTrue(mOrder.indexOf("b") < mOrder.indexOf("c"));
+
+        for (StartupPipeline.Span span : pipeline.getSpans()) {
+            if (span.getName().equals("main")) {
+                assertEquals(main, span.getThread());
+            } else if (!span.getName().startsWith("await:")) {
+                assertTrue(span.getThread().startsWith("Startup-"));
+            }
+        }
+    }
+
+    @Test
+    public void testMainWaitsForDependencies() {
+        StartupPipeline pipeline = new StartupPipeline()
+                .add("region", StartupPipeline.BACKGROUND, record("region", TASK_MS))
+                .add("main", StartupPipeline.MAIN, record("main", 0), "region");
+        pipeline.start();
+
+        assertEquals("region", mOrder.get(0));
+        assertEquals("main", mOrder.get(1));
+        StartupPipeline.Span wait = getSpan(pipeline, "await:region");
+        assertNotNull(wait);
+        assertTrue(wait.getDuration() > 0);
+    }
+
+    @Test
+    public void testAwait() {
+        StartupPipeline pipeline = new StartupPipeline()
+                .add("slow", StartupPipeline.BACKGROUND, record("slow", TASK_MS));
+
+        // Nothing to wait for before the pipeline is started
+        pipeline.await("slow");
+        assertFalse(pipeline.isDone("slow"));
+
+        pipeline.start();
+        pipeline.await("slow");
+        assertTrue(pipeline.isDone("slow"));
+        assertNotNull(getSpan(pipeline, "await:slow"));
+
+        // Unknown tasks are done
+        assertTrue(pipeline.isDone("unknown"));
+        pipeline.await("unknown");
+    }
+
+    @Test
+    public void testInvalidTasks() {
+        StartupPipeline pipeline = new StartupPipeline()
+                .add("a", StartupPipeline.MAIN, record("a", 0));
+        try {
+            pipeline.add("a", StartupPipeline.MAIN, record("a", 0));
+            fail("Duplicate names should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            // Dependencies must be added first, which also rules out cycles
+            pipeline.add("b", StartupPipeline.MAIN, record("b", 0), "c");
+            fail("Unknown dependencies should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        pipeline.start();
+        try {
+            pipeline.add("d", StartupPipeline.MAIN, record("d", 0));
+            fail("Tasks shouldn't be added after start()");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testStartupTimeline() {
+        // The main thread does a little work, and the rest is done by tasks that take TASK_MS,
+        // like Application's: region, then open311 and analytics, and in parallel with them
+        // notifications and jackson
+        long start = System.nanoTime();
+        record("oba", 5).run();
+        record("region", TASK_MS).run();
+        record("open311", TASK_MS).run();
+        record("analytics", TASK_MS).run();
+        record("notifications", TASK_MS).run();
+        record("jackson", TASK_MS).run();
+        long sequentialMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        StartupPipeline pipeline = new StartupPipeline()
+                .add("oba", StartupPipeline.MAIN, record("oba", 5))
+                .add("region", StartupPipeline.BACKGROUND, record("region", TASK_MS))
+                .add("open311", StartupPipeline.BACKGROUND, record("open311", TASK_MS),
+                        "region")
+                .add("analytics", StartupPipeline.BACKGROUND, record("analytics", TASK_MS),
+                        "region")
+                .add("notifications", StartupPipeline.BACKGROUND,
+                        record("notifications", TASK_MS))
+                .add("jackson", StartupPipeline.BACKGROUND, record("jackson", TASK_MS));
+        pipeline.start();
+        long mainMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        pipeline.mark("first_frame");
+        for (String name : new String[]{"open311", "analytics", "notifications", "jackson"}) {
+            pipeline.await(name);
+        }
+        long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The main thread only runs its own task
+        assertTrue("Main thread took " + mainMs + " ms", mainMs < TASK_MS);
+        // With 3 threads, the background tasks take about two task times
+        assertTrue("Pipeline took " + totalMs + " ms", totalMs < 4 * TASK_MS);
+        assertTrue(pipeline.dump().contains("first_frame"));
+
+        System.out.println(String.format(Locale.US,
+                "Startup: %d ms sequential, %d ms on the main thread and %d ms in total "
+                        + "with the pipeline", sequentialMs, mainMs, totalMs));
+        System.out.println(pipeline.dump());
+    }
+
+    private Runnable record(final String name, final long sleepMs) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (sleepMs > 0) {
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                mOrder.add(name);
+            }
+        };
+    }
+
+    private static StartupPipeline.Span getSpan(StartupPipeline pipeline, String name) {
+        for (StartupPipeline.Span span : pipeline.getSpans()) {
+            if (span.getName().equals(name)) {
+                return span;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map.test;
+
+import org.junit.Test;
+import org.onebusaway.android.map.VehicleDeltaTracker;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the tracking of changed vehicles between refreshes of VehicleOverlay
+ */
+public class VehicleDeltaTrackerTest {
+
+    @Test
+    public void testRefreshes() {
+        VehicleDeltaTracker tracker = new VehicleDeltaTracker();
+
+        tracker.beginRefresh();
+        assertEquals(VehicleDeltaTracker.ADDED, tracker.update("a", 47.6, -122.3, 2, true, 1));
+        assertEquals(VehicleDeltaTracker.ADDED, tracker.update("b", 47.7, -122.3, 4, false, 2));
+        assertEquals(VehicleDeltaTracker.ADDED, tracker.update("c", 47.8, -122.3, 0, true, 1));
+        assertTrue(tracker.endRefresh().isEmpty());
+        assertEquals(3, tracker.getAddedCount());
+
+        // a moved, b changed color, c is gone, d is new
+        tracker.beginRefresh();
+        assertEquals(VehicleDeltaTracker.CHANGED,
+                tracker.update("a", 47.61, -122.3, 2, true, 1));
+        assertEquals(VehicleDeltaTracker.CHANGED,
+                tracker.update("b", 47.7, -122.3, 4, false, 3));
+        assertEquals(VehicleDeltaTracker.ADDED, tracker.update("d", 47.9, -122.3, 8, true, 1));
+        List<String> removed = tracker.endRefresh();
+        assertEquals(1, removed.size());
+        assertEquals("c", removed.get(0));
+        assertEquals(1, tracker.getAddedCount());
+        assertEquals(2, tracker.getChangedCount());
+        assertEquals(0, tracker.getUnchangedCount());
+        assertEquals(1, tracker.getRemovedCount());
+        assertEquals(3, tracker.size());
+
+        // Nothing changed except the real-time flag of d
+        tracker.beginRefresh();
+        assertEquals(VehicleDeltaTracker.UNCHANGED,
+                tracker.update("a", 47.61, -122.3, 2, true, 1));
+        assertEquals(VehicleDeltaTracker.UNCHANGED,
+                tracker.update("b", 47.7, -122.3, 4, false, 3));
+        assertEquals(VehicleDeltaTracker.CHANGED,
+                tracker.update("d", 47.9, -122.3, 8, false, 1));
+        assertTrue(tracker.endRefresh().isEmpty());
+        assertEquals(2, tracker.getUnchangedCount());
+        assertEquals(1, tracker.getChangedCount());
+        assertEquals(0, tracker.getRemovedCount());
+    }
+
+    @Test
+    public void testRemove() {
+        VehicleDeltaTracker tracker = new VehicleDeltaTracker();
+        tracker.beginRefresh();
+        tracker.update("a", 47.6, -122.3, 2, true, 1);
+        tracker.endRefresh();
+
+        tracker.remove("a");
+        tracker.beginRefresh();
+        assertEquals(VehicleDeltaTracker.ADDED, tracker.update("a", 47.6, -122.3, 2, true, 1));
+        assertTrue(tracker.endRefresh().isEmpty());
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.map.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.android.map.VehicleInterpolator;
+import org.onebusaway.android.util.DecodedShape;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests VehicleInterpolator, and replays the vehicles in the trips_for_route_hart_5 fixture
+ * along a recorded shape to compare the interpolated positions with showing the last reported
+ * position.  The fixture doesn't include the shapes of its trips, so the King County shape in
+ * shape_1_40046045 stands in for them, scaled to each trip's length.  Prints a summary to stdout.
+ */
+public class VehicleInterpolatorTest {
+
+    // Unit tests run from the module directory
+    private static final File RAW_DIR = new File("src/androidTest/res/raw");
+
+    private static final double EARTH_RADIUS = 6371009;
+
+    // How often the vehicles are refreshed in the replay, as by RouteMapController
+    private static final long POLL_MS = 30000;
+
+    // Time from the status on the server to the response being shown
+    private static final long LATENCY_MS = 500;
+
+    private static final long FRAME_MS = 100;
+
+    private static final long REPLAY_MS = 10 * 60 * 1000;
+
+    // Stop-and-go motion in the replay
+    private static final double STOP_SPACING = 500;
+
+    private static final long DWELL_MS = 20000;
+
+    private DecodedShape mShape;
+
+    private final double[] mPoint = new double[2];
+
+    @Before
+    public void before() throws IOException {
+        JsonNode entry = read("shape_1_40046045").path("data").path("entry");
+        mShape = DecodedShape.decode(entry.path("points").asText(), entry.path("length").asInt());
+    }
+
+    @Test
+    public void testPointAtDistance() {
+        double length = mShape.getLength();
+        assertTrue(length > 0);
+
+        mShape.getPointAtDistance(-10, mPoint);
+        assertEquals(mShape.getLatitude(0), mPoint[0], 0);
+        assertEquals(mShape.getLongitude(0), mPoint[1], 0);
+        mShape.getPointAtDistance(length + 10, mPoint);
+        assertEquals(mShape.getLatitude(mShape.size() - 1), mPoint[0], 0);
+        assertEquals(mShape.getLongitude(mShape.size() - 1), mPoint[1], 0);
+
+        // Points 10 m apart along the shape are at most 10 m apart
+        double[] previous = new double[2];
+        mShape.getPointAtDistance(0, previous);
+        for (double d = 10; d < length; d += 10) {
+            mShape.getPointAtDistance(d, mPoint);
+            assertTrue(distance(previous, mPoint) <= 10.01);
+            previous[0] = mPoint[0];
+            previous[1] = mPoint[1];
+        }
+    }
+
+    @Test
+    public void testMeasuredSpeed() {
+        VehicleInterpolator interpolator = new VehicleInterpolator();
+        assertTrue(interpolator.update("a", mShape, snapshot(0, 1000, 0, 0), 0));
+        assertEquals(VehicleInterpolator.DEFAULT_SPEED, interpolator.getSpeed("a"), 0);
+        assertEquals(1050, interpolator.getDistanceAlongTrip("a", 10000), 1e-9);
+
+        // The vehicle was at 1100 after 10 seconds - 10 m/s, and 50 m ahead of the estimate
+        assertTrue(interpolator.update("a", mShape, snapshot(10000, 1100, 0, 0), 10000));
+        assertEquals(10, interpolator.getSpeed("a"), 1e-9);
+        // The estimate is corrected gradually
+        assertEquals(1050, interpolator.getDistanceAlongTrip("a", 10000), 1e-9);
+        assertEquals(1085, interpolator.getDistanceAlongTrip("a", 11000), 1e-9);
+        assertEquals(1120, interpolator.getDistanceAlongTrip("a", 12000), 1e-9);
+        assertEquals(1150, interpolator.getDistanceAlongTrip("a", 15000), 1e-9);
+        assertTrue(interpolator.isMoving("a", 15000));
+
+        // Vehicles aren't moved past the maximum extrapolation time
+        long end = 10000 + VehicleInterpolator.DEFAULT_MAX_EXTRAPOLATION_MS;
+        assertEquals(1700, interpolator.getDistanceAlongTrip("a", end), 1e-9);
+        assertEquals(1700, interpolator.getDistanceAlongTrip("a", end + 60000), 1e-9);
+        assertFalse(interpolator.isMoving("a", end));
+
+        // Speeds are averaged with the last measurement
+        assertTrue(interpolator.update("a", mShape, snapshot(20000, 1100, 0, 0), 20000));
+        assertEquals(5, interpolator.getSpeed("a"), 1e-9);
+    }
+
+    @Test
+    public void testScheduleSpeed() {
+        VehicleInterpolator interpolator = new VehicleInterpolator();
+        // Two minutes late, at the distance scheduled 1200 m ago
+        interpolator.update("a", mShape, snapshot(0, 1000, 2200, 120), 0);
+        assertEquals(10, interpolator.getSpeed("a"), 1e-9);
+        // Snapshots older than now are moved forward
+        interpolator.update("b", mShape, snapshot(0, 1000, 2200, 120), 3000);
+        assertEquals(1030, interpolator.getDistanceAlongTrip("b", 3000), 1e-9);
+    }
+
+    @Test
+    public void testStoppedVehicles() {
+        VehicleInterpolator interpolator = new VehicleInterpolator();
+        long now = VehicleInterpolator.STALE_MS * 2;
+
+        // Not in progress
+        interpolator.update("a", mShape, new VehicleInterpolator.Snapshot(now, 1000, 0, Double.NaN,
+                0, now, true, false), now);
+        assertEquals(0, interpolator.getSpeed("a"), 0);
+        assertFalse(interpolator.isMoving("a", now));
+
+        // We haven't heard from the vehicle for too long
+        interpolator.update("b", mShape, new VehicleInterpolator.Snapshot(now, 1000, 0, Double.NaN,
+                0, now - VehicleInterpolator.STALE_MS - 1, true, true), now);
+        assertEquals(0, interpolator.getSpeed("b"), 0);
+
+        // At the end of the trip
+        interpolator.update("c", mShape, new VehicleInterpolator.Snapshot(now, 5000, 5000,
+                Double.NaN, 0, now, true, true), now);
+        assertEquals(0, interpolator.getSpeed("c"), 0);
+
+        // Vehicles don't go past the end of the trip
+        interpolator.update("d", mShape, new VehicleInterpolator.Snapshot(now, 4990, 5000,
+                Double.NaN, 0, now, true, true), now);
+        assertEquals(5000, interpolator.getDistanceAlongTrip("d", now + 10000), 1e-9);
+        assertTrue(interpolator.getPosition("d", now + 10000, mPoint));
+        assertEquals(mShape.getLatitude(mShape.size() - 1), mPoint[0], 1e-9);
+        assertEquals(mShape.getLongitude(mShape.size() - 1), mPoint[1], 1e-9);
+    }
+
+    @Test
+    public void testJumps() {
+        VehicleInterpolator interpolator = new VehicleInterpolator();
+        interpolator.update("a", mShape, snapshot(0, 1000, 0, 0), 0);
+        // Large corrections aren't smoothed
+        interpolator.update("a", mShape, snapshot(10000, 2000, 0, 0), 10000);
+        assertEquals(2000, interpolator.getDistanceAlongTrip("a", 10000), 1e-9);
+
+        // Unknown shapes and distances remove the vehicle
+        assertFalse(interpolator.update("a", null, snapshot(20000, 2000, 0, 0), 20000));
+        assertFalse(interpolator.contains("a"));
+        assertFalse(interpolator.getPosition("a", 20000, mPoint));
+        interpolator.update("a", mShape, snapshot(20000, 2000, 0, 0), 20000);
+        assertFalse(interpolator.update("a", mShape, snapshot(20000, Double.NaN, 0, 0), 20000));
+        assertEquals(0, interpolator.size());
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        JsonNode response = read("trips_for_route_hart_5");
+        long startTime = response.path("currentTime").asLong();
+        List<JsonNode> statuses = new ArrayList<>();
+        for (JsonNode trip : response.path("data").path("list")) {
+            statuses.add(trip.path("status"));
+        }
+        assertEquals(38, statuses.size());
+
+        VehicleInterpolator interpolator = new VehicleInterpolator();
+        double[] truth = new double[2];
+        double[] reported = new double[2];
+        double interpolatedError = 0;
+        double reportedError = 0;
+        double maxInterpolatedError = 0;
+        long samples = 0;
+        long positionNanos = 0;
+
+        for (int i = 0; i < statuses.size(); i++) {
+            JsonNode status = statuses.get(i);
+            String id = status.path("activeTripId").asText();
+            double total = status.path("totalDistanceAlongTrip").asDouble();
+            double start = status.path("distanceAlongTrip").asDouble();
+            long lastUpdateAge = startTime - status.path("lastUpdateTime").asLong();
+            // Cruising speeds between 6 and 10 m/s
+            double cruise = 6 + i % 5;
+            double scale = mShape.getLength() / total;
+
+            double reportedDistance = Double.NaN;
+            for (long t = 0; t <= REPLAY_MS; t += FRAME_MS) {
+                double distance = getTruth(start, total, cruise, t);
+                if (t % POLL_MS == LATENCY_MS) {
+                    long polled = t - LATENCY_MS;
+                    reportedDistance = getTruth(start, total, cruise, polled);
+                    // The first snapshot is the fixture itself
+                    interpolator.update(id, mShape, new VehicleInterpolator.Snapshot(
+                            startTime + polled, reportedDistance, total,
+                            polled == 0 ? status.path("scheduledDistanceAlongTrip").asDouble()
+                                    : Double.NaN,
+                            polled == 0 ? status.path("scheduleDeviation").asLong() : 0,
+                            startTime + polled - lastUpdateAge, true, true), startTime + t);
+                }
+                if (Double.isNaN(reportedDistance)) {
+                    continue;
+                }
+                long start2 = System.nanoTime();
+                assertTrue(interpolator.getPosition(id, startTime + t, mPoint));
+                positionNanos += System.nanoTime() - start2;
+
+                mShape.getPointAtDistance(distance * scale, truth);
+                mShape.getPointAtDistance(reportedDistance * scale, reported);
+                double error = distance(mPoint, truth);
+                interpolatedError += error;
+                reportedError += distance(reported, truth);
+                maxInterpolatedError = Math.max(maxInterpolatedError, error);
+                samples++;
+            }
+        }
+
+        double meanInterpolated = interpolatedError / samples;
+        double meanReported = reportedError / samples;
+        System.out.println(String.format(Locale.US,
+                "Replayed %d vehicles, %d frames: mean error %.1f m interpolated, %.1f m "
+                        + "showing the last report; max %.1f m interpolated; %.0f ns per position",
+                statuses.size(), samples, meanInterpolated, meanReported, maxInterpolatedError,
+                (double) positionNanos / samples));
+        assertTrue(meanInterpolated < meanReported);
+    }
+
+    /**
+     * Returns the distance along the trip in the replay, t ms after starting at the given
+     * distance.  The vehicle dwells DWELL_MS at a stop every STOP_SPACING meters, and moves at
+     * the cruising speed between them.
+     */
+    private static double getTruth(double start, double total, double cruise, long t) {
+        double distance = start;
+        double remaining = t / 1000.0;
+        double dwell = DWELL_MS / 1000.0;
+        while (remaining > 0 && distance < total) {
+            double nextStop = (Math.floor(distance / STOP_SPACING) + 1) * STOP_SPACING;
+            double drive = (nextStop - distance) / cruise;
+            if (remaining <= drive) {
+                distance += remaining * cruise;
+                break;
+            }
+            distance = nextStop;
+            remaining -= drive + dwell;
+        }
+        return Math.min(distance, total);
+    }
+
+    private static VehicleInterpolator.Snapshot snapshot(long time, double distance,
+            double scheduledDistance, long deviation) {
+        return new VehicleInterpolator.Snapshot(time, distance, 0, scheduledDistance, deviation,
+                time, true, true);
+    }
+
+    private static JsonNode read(String name) throws IOException {
+        return new ObjectMapper().readTree(new File(RAW_DIR, name + ".json"));
+    }
+
+    /**
+     * Returns the distance between two points in meters, treating the earth as flat between them
+     */
+    private static double distance(double[] a, double[] b) {
+        double dLat = Math.toRadians(b[0] - a[0]);
+        double dLon = Math.toRadians(b[1] - a[1]) * Math.cos(Math.toRadians((a[0] + b[0]) / 2));
+        return Math.sqrt(dLat * dLat + dLon * dLon) * EARTH_RADIUS;
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.nav.test;
+
+import org.onebusaway.android.nav.NavigationServiceProvider;
+import org.onebusaway.android.nav.StopDetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays recorded trips through the stop detection used by NavigationServiceProvider on the
+ * JVM, as fast as possible rather than in real time.  NavigationServiceProvider itself needs the
+ * Android framework (preferences, TTS, notifications), so this mirrors the logic of
+ * ProximityCalculator.checkProximityAll() for a single path link around the shared StopDetector,
+ * and computes distances the same way as android.location.Location.distanceTo().
+ */
+public class NavigationReplay {
+
+    /**
+     * A recorded trip - the destination and second-to-last stop, and the fixes in the order they
+     * were received
+     */
+    public static final class Trip {
+
+        final String mName;
+
+        final double mDestLat, mDestLon;
+
+        final double mBeforeLat, mBeforeLon;
+
+        final long[] mTimes;
+
+        final double[] mLats;
+
+        final double[] mLons;
+
+        final float[] mSpeeds;
+
+        Trip(String name, double destLat, double destLon, double beforeLat, double beforeLon,
+                long[] times, double[] lats, double[] lons, float[] speeds) {
+            mName = name;
+            mDestLat = destLat;
+            mDestLon = destLon;
+            mBeforeLat = beforeLat;
+            mBeforeLon = beforeLon;
+            mTimes = times;
+            mLats = lats;
+            mLons = lons;
+            mSpeeds = speeds;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int size() {
+            return mTimes.length;
+        }
+
+        /**
+         * @return the time of the fix at the given index, in milliseconds since the epoch
+         */
+        public long getTime(int index) {
+            return mTimes[index];
+        }
+    }
+
+    /**
+     * The alerts triggered while replaying a trip
+     */
+    public static final class Result {
+
+        /**
+         * Index of the fix that triggered the "Get ready" alert, or -1 if it wasn't triggered
+         */
+        int mGetReadyIndex = -1;
+
+        /**
+         * Index of the fix that triggered the "Pull the cord" alert, or -1 if it wasn't triggered
+         */
+        int mPullCordIndex = -1;
+
+        /**
+         * Number of fixes passed to the detector, after dropping duplicates
+         */
+        int mFixCount;
+
+        public int getGetReadyIndex() {
+            return mGetReadyIndex;
+        }
+
+        public int getPullCordIndex() {
+            return mPullCordIndex;
+        }
+
+        public int getFixCount() {
+            return mFixCount;
+        }
+    }
+
+    private static final Pattern TRKPT = Pattern.compile(
+            "<trkpt\\s+lat=\"([-0-9.]+)\"\\s+lon=\"([-0-9.]+)\"");
+
+    /**
+     * Reads a trip recorded by NavigationService - see NavigationTest for the format
+     *
+     * @param file CSV file with a header row followed by one row per fix
+     */
+    public static Trip readCsv(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        String[] details = lines.get(0).split(",");
+        int count = lines.size() - 1;
+        long[] times = new long[count];
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        float[] speeds = new float[count];
+        for (int i = 0; i < count; i++) {
+            String[] values = lines.get(i + 1).split(",");
+            times[i] = Long.parseLong(values[4]);
+            lats[i] = Double.parseDouble(values[5]);
+            lons[i] = Double.parseDouble(values[6]);
+            speeds[i] = Float.parseFloat(values[8]);
+        }
+        return new Trip(stripExtension(file), Double.parseDouble(details[2]),
+                Double.parseDouble(details[3]), Double.parseDouble(details[5]),
+                Double.parseDouble(details[6]), times, lats, lons, speeds);
+    }
+
+    /**
+     * Reads the track points from a GPX file, and places the second-to-last and destination
+     * stops the given distances north of the first point.  Fixes are a second apart and
+     * stationary, since GPX points don't include speed.
+     *
+     * @param file               GPX file
+     * @param beforeDistance     distance of the second-to-last stop from the first point, in
+     *                           meters
+     * @param destinationDistance distance of the destination from the first point, in meters
+     */
+    public static Trip readGpx(File file, double beforeDistance, double destinationDistance)
+            throws IOException {
+        String xml = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        List<double[]> points = new ArrayList<>();
+        Matcher m = TRKPT.matcher(xml);
+        while (m.find()) {
+            points.add(new double[]{Double.parseDouble(m.group(1)),
+                    Double.parseDouble(m.group(2))});
+        }
+        if (points.isEmpty()) {
+            throw new IOException("No track points in " + file);
+        }
+        int count = points.size();
+        long[] times = new long[count];
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = i * 1000L;
+            lats[i] = points.get(i)[0];
+            lons[i] = points.get(i)[1];
+        }
+        // About 111,320 meters per degree of latitude
+        double beforeLat = lats[0] + beforeDistance / 111320.0;
+        double destLat = lats[0] + destinationDistance / 111320.0;
+        return new Trip(stripExtension(file), destLat, lons[0], beforeLat, lons[0], times,
+                lats, lons, new float[count]);
+    }
+
+    private static String stripExtension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * Replays the trip for a single path link, stopping once the "Pull the cord" alert is
+     * triggered, like NavigationServiceProvider does while it waits for the rider to confirm
+     *
+     * @param trip the trip to replay
+     * @return the alerts that were triggered
+     */
+    public static Result replay(Trip trip) {
+        Result result = new Result();
+        StopDetector detector = new StopDetector();
+        float lastToSecDistance = distanceBetween(trip.mDestLat, trip.mDestLon,
+                trip.mBeforeLat, trip.mBeforeLon);
+        boolean ready = false;
+
+        for (int i = 0; i < trip.mTimes.length; i++) {
+            // Same as LocationUtils.isDuplicate()
+            if (i > 0 && trip.mTimes[i] == trip.mTimes[i - 1]
+                    && trip.mLats[i] == trip.mLats[i - 1]
+                    && trip.mLons[i] == trip.mLons[i - 1]) {
+                continue;
+            }
+            result.mFixCount++;
+            float directDistance = distanceBetween(trip.mBeforeLat, trip.mBeforeLon,
+                    trip.mLats[i], trip.mLons[i]);
+            if (directDistance < NavigationServiceProvider.DISTANCE_THRESHOLD && !ready) {
+                ready = true;
+                result.mGetReadyIndex = i;
+                continue;
+            }
+            if (detector.detect(directDistance, lastToSecDistance, trip.mSpeeds[i])) {
+                result.mPullCordIndex = i;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the distance in meters between two points, using the same method and precision
+     * as android.location.Location.distanceBetween() - Vincenty's inverse formula on the WGS84
+     * ellipsoid
+     */
+    static float distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+        final int maxIters = 20;
+        lat1 *= Math.PI / 180.0;
+        lat2 *= Math.PI / 180.0;
+        lon1 *= Math.PI / 180.0;
+        lon2 *= Math.PI / 180.0;
+
+        double a = 6378137.0; // WGS84 major axis
+        double b = 6356752.3142; // WGS84 semi-major axis
+        double f = (a - b) / a;
+        double aSqMinusBSqOverBSq = (a * a - b * b) / (b * b);
+
+        double l = lon2 - lon1;
+        double bigA = 0.0;
+        double u1 = Math.atan((1.0 - f) * Math.tan(lat1));
+        double u2 = Math.atan((1.0 - f) * Math.tan(lat2));
+
+        double cosU1 = Math.cos(u1);
+        double cosU2 = Math.cos(u2);
+        double sinU1 = Math.sin(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU1cosU2 = cosU1 * cosU2;
+        double sinU1sinU2 = sinU1 * sinU2;
+
+        double sigma = 0.0;
+        double deltaSigma = 0.0;
+        double lambda = l;
+        for (int iter = 0; iter < maxIters; iter++) {
+            double lambdaOrig = lambda;
+            double cosLambda = Math.cos(lambda);
+            double sinLambda = Math.sin(lambda);
+            double t1 = cosU2 * sinLambda;
+            double t2 = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSqSigma = t1 * t1 + t2 * t2;
+            double sinSigma = Math.sqrt(sinSqSigma);
+            double cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = (sinSigma == 0) ? 0.0 : cosU1cosU2 * sinLambda / sinSigma;
+            double cosSqAlpha = 1.0 - sinAlpha * sinAlpha;
+            double cos2SM = (cosSqAlpha == 0) ? 0.0 : cosSigma - 2.0 * sinU1sinU2 / cosSqAlpha;
+
+            double uSquared = cosSqAlpha * aSqMinusBSqOverBSq;
+            bigA = 1 + (uSquared / 16384.0) * (4096.0 + uSquared * (-768 + uSquared
+                    * (320.0 - 175.0 * uSquared)));
+            double bigB = (uSquared / 1024.0) * (256.0 + uSquared * (-128.0 + uSquared
+                    * (74.0 - 47.0 * uSquared)));
+            double c = (f / 16.0) * cosSqAlpha * (4.0 + f * (4.0 - 3.0 * cosSqAlpha));
+            double cos2SMSq = cos2SM * cos2SM;
+            deltaSigma = bigB * sinSigma * (cos2SM + (bigB / 4.0) * (cosSigma
+                    * (-1.0 + 2.0 * cos2SMSq) - (bigB / 6.0) * cos2SM
+                    * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SMSq)));
+
+            lambda = l + (1.0 - c) * f * sinAlpha * (sigma + c * sinSigma * (cos2SM
+                    + c * cosSigma * (-1.0 + 2.0 * cos2SM * cos2SM)));
+
+            double delta = (lambda - lambdaOrig) / lambda;
+            if (Math.abs(delta) < 1.0e-12) {
+                break;
+            }
+        }
+        return (float) (b * bigA * (sigma - deltaSigma));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.nav.test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the trips recorded for NavigationTest through the stop detection on the JVM, and checks
+ * that the "Get ready" and "Pull the cord" alerts fire on the same fixes that NavigationTest
+ * expects on a device.  Also measures the cost of processing each fix, and prints a summary to
+ * stdout.
+ */
+public class NavigationReplayTest {
+
+    // Unit tests run from the module directory
+    private static final File TRIP_DIR = new File("src/androidTest/res/raw");
+
+    private static final File GPX_DIR = new File("../gpx_files");
+
+    // Trip name, expected "Get ready" index, expected "Pull the cord" index - see NavigationTest
+    private static final Object[][] TRIPS = {
+            {"nav_trip1", 848, 978}, {"nav_trip1c", 665, 929},
+            {"nav_trip2", 0, 15}, {"nav_trip2c", 0, 64},
+            {"nav_trip3", 95, 111}, {"nav_trip3c", 87, 109},
+            {"nav_trip4", 294, 329}, {"nav_trip4c", 253, 329},
+            {"nav_trip5", 372, 660}, {"nav_trip5c", 284, 492},
+            {"nav_trip6", 801, 837}, {"nav_trip6c", 676, 704},
+            {"nav_trip7", 183, 208}, {"nav_trip7c", 172, 285},
+            {"nav_trip8", 0, 18}, {"nav_trip8c", 0, 20},
+            {"nav_trip9", 1041, 1071}, {"nav_trip9c", 570, 634},
+            {"nav_trip10", 589, 605}, {"nav_trip10c", 484, 509},
+            {"nav_trip11", 331, 371}, {"nav_trip11c", 119, 158},
+            {"nav_trip12", 69, 199}, {"nav_trip12c", 880, 901},
+            {"nav_trip13", 2549, 2732}, {"nav_trip13c", 230, 519},
+            {"nav_trip14", 548, 571}, {"nav_trip14c", 387, 429},
+            {"nav_trip15", 225, 417}, {"nav_trip15c", 217, 287},
+            {"nav_trip16", 142, 192}, {"nav_trip16c", 121, 168},
+            {"nav_trip17", 100, 181},
+            {"nav_trip18", 31, 51}, {"nav_trip18c", 31, 58},
+            {"nav_trip20", 133, 195}, {"nav_trip20c", 53, 117},
+            {"nav_trip21", 547, 686}, {"nav_trip21c", 323, 402},
+            {"nav_trip22", 1085, 1198}, {"nav_trip22c", 1032, 1099},
+            {"nav_trip23", 0, 24}, {"nav_trip23c", 0, 19},
+            {"nav_trip24", 115, 178}, {"nav_trip24c", 203, 262},
+            {"nav_trip25", 209, 235}, {"nav_trip25c", 217, 247},
+            {"nav_trip26", 367, 463}, {"nav_trip27", 909, 944},
+            {"nav_trip28", 400, 473}, {"nav_trip29", 472, 594},
+            {"nav_trip30", 1001, 1048}, {"nav_trip31", 2508, 2654},
+            {"nav_trip32", 1847, 1888}, {"nav_trip33", 335, 401}};
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int MEASURED_ROUNDS = 20;
+
+    @Test
+    public void testRecordedTrips() throws IOException {
+        List<String> failures = new ArrayList<>();
+        for (Object[] row : TRIPS) {
+            NavigationReplay.Trip trip = NavigationReplay.readCsv(
+                    new File(TRIP_DIR, row[0] + ".csv"));
+            int expectedGetReady = (Integer) row[1];
+            int expectedPullCord = (Integer) row[2];
+            NavigationReplay.Result result = NavigationReplay.replay(trip);
+
+            String line = String.format(Locale.US,
+                    "%-12s get ready %5d (expected %5d), pull cord %5d (expected %5d), %4d s apart",
+                    trip.getName(), result.getGetReadyIndex(), expectedGetReady,
+                    result.getPullCordIndex(), expectedPullCord, secondsBetween(trip, result));
+            System.out.println(line);
+            if (result.getGetReadyIndex() != expectedGetReady
+                    || result.getPullCordIndex() != expectedPullCord) {
+                failures.add(line);
+            }
+        }
+        assertTrue("Missed or false alerts:\n" + String.join("\n", failures),
+                failures.isEmpty());
+    }
+
+    /**
+     * The GPX files are single points used to set the emulator location, nowhere near a
+     * destination, so no alerts should fire
+     */
+    @Test
+    public void testGpxFilesTriggerNoAlerts() throws IOException {
+        File[] files = GPX_DIR.listFiles();
+        assertTrue(files != null);
+        int count = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".gpx")) {
+                continue;
+            }
+            NavigationReplay.Result result = NavigationReplay.replay(
+                    NavigationReplay.readGpx(file, 1000, 1200));
+            assertEquals(file.getName(), -1, result.getGetReadyIndex());
+            assertEquals(file.getName(), -1, result.getPullCordIndex());
+            count++;
+        }
+        assertTrue(count > 0);
+    }
+
+    /**
+     * Replays all recorded trips several times and reports the average cost of each fix
+     */
+    @Test
+    public void testBenchmark() throws IOException {
+        List<NavigationReplay.Trip> trips = new ArrayList<>(TRIPS.length);
+        for (Object[] row : TRIPS) {
+            trips.add(NavigationReplay.readCsv(new File(TRIP_DIR, row[0] + ".csv")));
+        }
+
+        // Let the JIT compile the detector and distance calculation first
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            replayAll(trips);
+        }
+
+        long fixes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            fixes += replayAll(trips);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(fixes > 0);
+        System.out.println(String.format(Locale.US,
+                "Replayed %d trips x %d rounds: %d fixes, %.1f ns/fix, %.2f ms/round",
+                trips.size(), MEASURED_ROUNDS, fixes, (double) elapsed / fixes,
+                elapsed / 1e6 / MEASURED_ROUNDS));
+    }
+
+    private static long replayAll(List<NavigationReplay.Trip> trips) {
+        long fixes = 0;
+        for (NavigationReplay.Trip trip : trips) {
+            fixes += NavigationReplay.replay(trip).getFixCount();
+        }
+        return fixes;
+    }
+
+    /**
+     * Returns the time between the "Get ready" and "Pull the cord" fixes in seconds, or -1 if
+     * either wasn't triggered
+     */
+    private static long secondsBetween(NavigationReplay.Trip trip,
+            NavigationReplay.Result result) {
+        if (result.getGetReadyIndex() == -1 || result.getPullCordIndex() == -1) {
+            return -1;
+        }
+        return (trip.getTime(result.getPullCordIndex())
+                - trip.getTime(result.getGetReadyIndex())) / 1000;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2019 University of South Florida
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.android.util.test;
+
+import org.junit.Test;
+import org.onebusaway.android.io.ObaApi;
+import org.onebusaway.android.util.AdaptiveRefreshPolicy;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the delays chosen by AdaptiveRefreshPolicy, without responses
+ */
+public class AdaptiveRefreshPolicyTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private final AdaptiveRefreshPolicy mPolicy =
+            new AdaptiveRefreshPolicy(1000, 2000, 4000, 10000);
+
+    @Test
+    public void testEta() {
+        assertEquals(2000, mPolicy.getCurrentDelay());
+        assertEquals(1000, mPolicy.getNextDelay(ObaApi.OBA_OK, 0, true));
+        assertEquals(1000, mPolicy.getNextDelay(ObaApi.OBA_OK, 5 * MINUTE, true));
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_OK, 5 * MINUTE + 1, true));
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_OK, 30 * MINUTE, true));
+        assertEquals(4000, mPolicy.getNextDelay(ObaApi.OBA_OK, 30 * MINUTE + 1, true));
+        // Schedule-only arrivals are refreshed slowly, however near they are
+        assertEquals(4000, mPolicy.getNextDelay(ObaApi.OBA_OK, MINUTE, false));
+        assertEquals(4000, mPolicy.getNextDelay(ObaApi.OBA_OK, Long.MAX_VALUE, false));
+        assertEquals(4000, mPolicy.getCurrentDelay());
+    }
+
+    @Test
+    public void testBackoff() {
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false));
+        assertEquals(4000, mPolicy.getNextDelay(ObaApi.OBA_BAD_GATEWAY, 0, false));
+        assertEquals(8000, mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false));
+        assertEquals(10000, mPolicy.getNextDelay(503, 0, false));
+        assertEquals(10000, mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false));
+        assertEquals(10000, mPolicy.getCurrentDelay());
+
+        // Success ends the backoff
+        assertEquals(1000, mPolicy.getNextDelay(ObaApi.OBA_OK, MINUTE, true));
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false));
+
+        // Client errors aren't backed off
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_NOT_FOUND, 0, false));
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false));
+
+        mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false);
+        mPolicy.reset();
+        assertEquals(2000, mPolicy.getCurrentDelay());
+        assertEquals(2000, mPolicy.getNextDelay(ObaApi.OBA_IO_EXCEPTION, 0, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDelays() {
+        new AdaptiveRefreshPolicy(2000, 1000, 4000, 10000);
+    }
+}